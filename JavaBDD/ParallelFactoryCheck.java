@@ -0,0 +1,149 @@
+// ParallelFactoryCheck.java, part of Gamer's extensions of JavaBDD
+// Copyright (C) 2007-2012 Peter Kissmann
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+import java.util.Random;
+
+import net.sf.javabdd.*;
+
+/**
+ * Differential test of the ParallelFactory: performs the same operations on
+ * random BDDs with the ParallelFactory and with the JFactory and compares the
+ * results.
+ *
+ * @author Peter Kissmann
+ */
+public class ParallelFactoryCheck {
+    static final int VARS = 10;
+
+    static final String[] OPERATIONS = { "and", "or", "xor", "imp", "not",
+            "ite", "exist", "forAll", "unique", "applyEx", "applyAll",
+            "applyUni", "relprod", "relnext", "replace", "compose",
+            "veccompose", "restrict", "constrain", "simplify", "satOne" };
+
+    public static void main(String[] args) {
+        int cases = 200;
+        if (args.length > 0)
+            cases = Integer.parseInt(args[0]);
+        BDDFactory parallel = BDDFactory.init("parallel", 10000, 1000);
+        BDDFactory java = BDDFactory.init("java", 10000, 1000);
+        parallel.setVarNum(VARS);
+        java.setVarNum(VARS);
+
+        int mismatches = 0;
+        for (int c = 0; c < cases; c++) {
+            String[] expected = results(java, c);
+            String[] actual = results(parallel, c);
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (!expected[i].equals(actual[i])) {
+                    System.out.println("case " + c + ": " + OPERATIONS[i]
+                            + " differs");
+                    System.out.println("   java:     " + expected[i]);
+                    System.out.println("   parallel: " + actual[i]);
+                    mismatches++;
+                }
+            }
+        }
+        parallel.done();
+        java.done();
+        if (mismatches > 0) {
+            System.out.println(mismatches + " mismatches");
+            System.exit(1);
+        }
+        System.out.println("all " + cases + " cases match");
+    }
+
+    /*
+     * The results of all operations on the random BDDs of the given case, in
+     * the order of OPERATIONS. The same seed gives the same BDDs in each
+     * factory.
+     */
+    private static String[] results(BDDFactory factory, long seed) {
+        Random random = new Random(seed);
+        BDD x = random(factory, random, 6);
+        BDD y = random(factory, random, 5);
+        BDD z = random(factory, random, 4);
+        BDDVarSet cube = randomCube(factory, random).toVarSet();
+        BDD literals = randomLiterals(factory, random);
+        int var = random.nextInt(VARS);
+        boolean polarity = random.nextBoolean();
+
+        BDDPairing shift = factory.makePair();
+        for (int i = 0; i < VARS; i++)
+            shift.set(i, (i + 1) % VARS);
+        BDDPairing functions = factory.makePair();
+        functions.set(random.nextInt(VARS), random(factory, random, 3));
+        functions.set(random.nextInt(VARS), random(factory, random, 2));
+
+        String[] ret = new String[OPERATIONS.length];
+        int i = 0;
+        ret[i++] = string(x.and(y));
+        ret[i++] = string(x.or(y));
+        ret[i++] = string(x.xor(y));
+        ret[i++] = string(x.imp(y));
+        ret[i++] = string(x.not());
+        ret[i++] = string(x.ite(y, z));
+        ret[i++] = string(x.exist(cube));
+        ret[i++] = string(x.forAll(cube));
+        ret[i++] = string(x.unique(cube));
+        ret[i++] = string(x.applyEx(y, BDDFactory.xor, cube));
+        ret[i++] = string(x.applyAll(y, BDDFactory.or, cube));
+        ret[i++] = string(x.applyUni(y, BDDFactory.and, cube));
+        ret[i++] = string(x.relprod(y, cube));
+        ret[i++] = string(x.relnext(y, cube, shift));
+        ret[i++] = string(x.replace(shift));
+        ret[i++] = string(x.compose(y, var));
+        ret[i++] = string(x.veccompose(functions));
+        ret[i++] = string(x.restrict(literals));
+        ret[i++] = string(x.constrain(y));
+        ret[i++] = string(x.simplify(y.id().toVarSet()));
+        ret[i++] = string(x.satOne(cube, polarity));
+
+        x.free();
+        y.free();
+        z.free();
+        cube.free();
+        literals.free();
+        shift.reset();
+        functions.reset();
+        return ret;
+    }
+
+    private static String string(BDD b) {
+        String ret = b.toString();
+        b.free();
+        return ret;
+    }
+
+    /* A random function of up to 2^depth paths. */
+    private static BDD random(BDDFactory factory, Random random, int depth) {
+        if (depth == 0)
+            return random.nextBoolean() ? factory.one() : factory.zero();
+        BDD var = factory.ithVar(random.nextInt(VARS));
+        BDD high = random(factory, random, depth - 1);
+        BDD low = random(factory, random, depth - 1);
+        BDD ret = var.ite(high, low);
+        var.free();
+        high.free();
+        low.free();
+        return ret;
+    }
+
+    /* The conjunction of a random set of variables. */
+    private static BDD randomCube(BDDFactory factory, Random random) {
+        BDD ret = factory.one();
+        for (int i = 0; i < VARS; i++)
+            if (random.nextInt(3) == 0)
+                ret.andWith(factory.ithVar(i));
+        return ret;
+    }
+
+    /* The conjunction of random literals. */
+    private static BDD randomLiterals(BDDFactory factory, Random random) {
+        BDD ret = factory.one();
+        for (int i = 0; i < VARS; i++)
+            if (random.nextInt(3) == 0)
+                ret.andWith(random.nextBoolean() ? factory.ithVar(i)
+                        : factory.nithVar(i));
+        return ret;
+    }
+}
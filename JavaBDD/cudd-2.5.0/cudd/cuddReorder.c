@@ -169,10 +169,6 @@ static int ddCheckPermuation (DdManager *table, MtrNode *treenode, int *perm, in
 
 ******************************************************************************/
 
-unsigned long lastReorderingTime = 0;
-unsigned long lastTotalTime = 0;
-unsigned long lastRunsTotalTime = 0;
-
 int
 Cudd_ReduceHeap(
                 DdManager * table /* DD manager */,
@@ -204,40 +200,6 @@ Cudd_ReduceHeap(
   */
   table->reorderings++;
 
-  FILE* file;
-  file = fopen("lastReorderingTime", "r");
-  if (file != NULL) {
-    char line[128];
-    while (fgets(line, sizeof line, file) != NULL) {
-      lastReorderingTime = atol(line);
-    }
-    fclose(file);
-  }
-  file = fopen("lastTotalTime", "r");
-  if (file != NULL) {
-    char line[128];
-    long tmpTime = 0;
-    while (fgets(line, sizeof line, file) != NULL) {
-      tmpTime = atol(line);
-    }
-    if (lastTotalTime < tmpTime) {
-      lastRunsTotalTime = tmpTime;
-      lastTotalTime = tmpTime;
-    }
-    fclose(file);
-  }
-  file = fopen("totalReordTime", "r");
-  if (file != NULL) {
-    char line[128];
-    long tmpTime = 0;
-    while (fgets(line, sizeof line, file) != NULL) {
-      tmpTime = atol(line);
-    }
-    if (table->reordTime < tmpTime) {
-      table->reordTime = tmpTime;
-    }
-    fclose(file);
-  }
   localTime = util_cpu_time();
 
   /* Run the hook functions. */
@@ -315,138 +277,9 @@ Cudd_ReduceHeap(
   printf("final size: %d\n", table->keys - table->isolated);
   printf("reordering time (step): %g\n", ((double) (util_cpu_time() - localTime) / 1000.0));
   printf("reordering time (total): %g\n", (table->reordTime / 1000.0 + ((double) (util_cpu_time() - localTime) / 1000.0)));
-  printf("runtime (total): %g\n", ((double) (util_cpu_time() + lastRunsTotalTime) / 1000.0));
+  printf("runtime (total): %g\n", ((double) util_cpu_time() / 1000.0));
   printf("swaps (total): %d\n", ddTotalNumberSwapping);
 
-  unsigned long thisReorderingTime = util_cpu_time() - localTime;
-
-#define CRITERION_FACTOR
-#define CRITERION_PERCENTAGE
-//#define CRITERION_LEARNED
-
-#if defined(CRITERION_FACTOR) || defined(CRITERION_PERCENTAGE)
-#define REORD_INC_FACTOR 1.52
-  if (table->reorderings > 1) {
-#ifdef CRITERION_FACTOR
-    if ((double) thisReorderingTime / (double) lastReorderingTime > REORD_INC_FACTOR) {
-      printf("criterion \"reordering time factor > %g\" fulfilled\n", REORD_INC_FACTOR);
-      table->maxReorderings = 1;
-    }
-#endif
-#ifdef CRITERION_PERCENTAGE
-    if (((double) thisReorderingTime / (double) util_cpu_time()) > ((double) lastReorderingTime / (double) lastTotalTime)) {
-      printf("criterion \"percentage increase\" fulfilled\n");
-      table->maxReorderings = 1;
-    }
-#endif
-  }
-#else
-#if defined(CRITERION_LEARNED)
-  unsigned long classStuff[96];
-  int counter;
-  for (counter = 0; counter < 96; counter++)
-    classStuff[counter] = 0;
-  file = fopen("classificationStuff", "r");
-  if (file != NULL) {
-    counter = 0;
-    char line[128];
-    while (fgets(line, sizeof line, file) != NULL) {
-      classStuff[counter] = atol(line);
-      counter++;
-    }
-    fclose(file);
-  }
-  classStuff[0]++;
-  file = fopen("classificationStuff", "w");
-  fprintf(file, "%ld\n", classStuff[0]);
-  int newFound = 0;
-  for (counter = 1; counter < 20; counter++) {
-    if (classStuff[counter] == 0 && newFound == 0) {
-      classStuff[counter] = oldSize;
-      newFound = 1;
-    }
-    fprintf(file, "%ld\n", classStuff[counter]);
-  }
-  newFound = 0;
-  for (counter = 20; counter < 39; counter++) {
-    if (classStuff[counter] == 0 && newFound == 0) {
-      classStuff[counter] = table->keys - table->isolated;
-      newFound = 1;
-    }
-    fprintf(file, "%ld\n", classStuff[counter]);
-  }
-  newFound = 0;
-  for (counter = 39; counter < 58; counter++) {
-    if (classStuff[counter] == 0 && newFound == 0) {
-      classStuff[counter] = util_cpu_time() - localTime;
-      newFound = 1;
-    }
-    fprintf(file, "%ld\n", classStuff[counter]);
-  }
-  newFound = 0;
-  for (counter = 58; counter < 77; counter++) {
-    if (classStuff[counter] == 0 && newFound == 0) {
-      classStuff[counter] = table->reordTime + (util_cpu_time() - localTime);
-      newFound = 1;
-    }
-    fprintf(file, "%ld\n", classStuff[counter]);
-  }
-  newFound = 0;
-  for (counter = 77; counter < 96; counter++) {
-    if (classStuff[counter] == 0 && newFound == 0) {
-      classStuff[counter] = util_cpu_time() + lastRunsTotalTime;
-      newFound = 1;
-    }
-    fprintf(file, "%ld\n", classStuff[counter]);
-  }
-  fclose(file);
-  file = fopen("classification.mallet", "w");
-  fprintf(file, "test");
-  for (counter = 0; counter < 39; counter++) {
-    if (classStuff[counter] != 0) {
-      fprintf(file, " %d:%ld", counter + 1, classStuff[counter]);
-    }
-  }
-  for (counter = 39; counter < 96; counter++) {
-    if (classStuff[counter] != 0) {
-      fprintf(file, " %d:%lf", counter + 1, (double) classStuff[counter] / 1000.0);
-    }
-  }
-  fclose(file);
-  system("`sed s/,/./g classification.mallet > classification.tmp`");
-  system("mv classification.tmp classification.mallet");
-  system("mallet-2.0.7/bin/mallet classify-file --input classification.mallet --output classification.out --classifier binod.classifier");
-  system("`sed s/[.]/,/g classification.out > classification.tmp`");
-  system("mv classification.tmp classification.out");
-  file = fopen("classification.out", "r");
-  char line[1024];
-  fgets(line, sizeof line, file);
-  char* linePart;
-  linePart = strtok(line, "\t");
-  counter = 0;
-  while (linePart != NULL) {
-    if (counter == 2) {
-      double val = atof(linePart);
-      if (val < 0.5) {
-        printf("learned criterion fulfilled\n");
-        table->maxReorderings = 1;
-      }
-      break;
-    }
-    linePart = strtok(NULL, "\t");
-    counter++;
-  }
-#endif
-#endif
-
-  lastReorderingTime = thisReorderingTime;
-  lastTotalTime = util_cpu_time() + lastRunsTotalTime;
-  file = fopen("lastReorderingTime", "a+");
-  fprintf(file, "%ld\n", lastReorderingTime);
-  fclose(file);
-  file = fopen("lastTotalTime", "a+");
-  fprintf(file, "%ld\n", lastTotalTime);
-  fclose(file);
   printf("\n");
   fflush(stdout);
 
@@ -500,9 +333,6 @@ Cudd_ReduceHeap(
   }
   /* Update cumulative reordering time. */
   table->reordTime += util_cpu_time() - localTime;
-  file = fopen("totalReordTime", "a+");
-  fprintf(file, "%ld\n", table->reordTime);
-  fclose(file);
 
   return(result);
 
@@ -1215,25 +1215,6 @@ cuddUniqueInter(
       printf("Stopping dynamic reordering\n");
       fflush(stdout);
     }
-    FILE *file;
-    file = fopen("reorderingsRemaining", "a+");
-    fprintf(file, "%d\n", unique->maxReorderings);
-    fclose(file);
-    file = fopen("nextReorderingLimit", "a+");
-    fprintf(file, "%d\n", unique->nextDyn);
-    fclose(file);
-    file = fopen("variableOrdering", "a+");
-    int counter = 0;
-    int variable;
-    while (1) {
-      variable = Cudd_ReadPerm(unique, counter);
-      if (variable == -1)
-        break;
-      fprintf(file, "%d ", variable);
-      counter++;
-    }
-    fprintf(file, "\n");
-    fclose(file);
 	if (retval == 0) {
       unique->reordered = 2;
     } else if ((cpuTime = util_cpu_time()) - unique->startTime > unique->timeLimit) {
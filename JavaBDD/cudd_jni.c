@@ -69,6 +69,55 @@ typedef struct CuddPairing {
 
 static CuddPairing *pair_list;
 
+static JavaVM *jvm;
+static jclass factory_cls;
+static jmethodID reorder_mid;
+static jmethodID gc_mid;
+
+/* Reports the start and the end of every reordering to
+ * CUDDFactory.reorderHook(boolean), which runs the reorder callbacks. */
+static int reorder_hook(jboolean pre) {
+    JNIEnv *env;
+    if ((*jvm)->GetEnv(jvm, (void **) &env, JNI_VERSION_1_2) != JNI_OK)
+        return 1;
+    if ((*env)->ExceptionCheck(env))
+        return 1;
+    (*env)->CallStaticVoidMethod(env, factory_cls, reorder_mid, pre);
+    return 1;
+}
+
+static int pre_reorder_hook(DdManager *dd, const char *str, void *data) {
+    return reorder_hook(JNI_TRUE);
+}
+
+static int post_reorder_hook(DdManager *dd, const char *str, void *data) {
+    return reorder_hook(JNI_FALSE);
+}
+
+/* Reports the start and the end of every garbage collection to
+ * CUDDFactory.gcHook(boolean, int, int, long, int), which runs the GC
+ * callbacks. */
+static int gc_hook(DdManager *dd, jboolean pre) {
+    JNIEnv *env;
+    if ((*jvm)->GetEnv(jvm, (void **) &env, JNI_VERSION_1_2) != JNI_OK)
+        return 1;
+    if ((*env)->ExceptionCheck(env))
+        return 1;
+    (*env)->CallStaticVoidMethod(env, factory_cls, gc_mid, pre,
+            (jint) Cudd_ReadKeys(dd), (jint) Cudd_ReadDead(dd),
+            (jlong) Cudd_ReadGarbageCollectionTime(dd),
+            (jint) Cudd_ReadGarbageCollections(dd));
+    return 1;
+}
+
+static int pre_gc_hook(DdManager *dd, const char *str, void *data) {
+    return gc_hook(dd, JNI_TRUE);
+}
+
+static int post_gc_hook(DdManager *dd, const char *str, void *data) {
+    return gc_hook(dd, JNI_FALSE);
+}
+
 /*
  * Class:     net_sf_javabdd_CUDDFactory
  * Method:    initialize0
@@ -110,6 +159,18 @@ JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_initialize0
     }
     (*env)->SetStaticLongField(env, cl, one_fid, bdd_one);
     (*env)->SetStaticLongField(env, cl, zero_fid, bdd_zero);
+
+    reorder_mid = (*env)->GetStaticMethodID(env, cl, "reorderHook", "(Z)V");
+    gc_mid = (*env)->GetStaticMethodID(env, cl, "gcHook", "(ZIIJI)V");
+    if (!reorder_mid || !gc_mid || (*env)->GetJavaVM(env, &jvm) != 0) {
+        die(env, "cannot find members: version mismatch?");
+        return;
+    }
+    factory_cls = (jclass) (*env)->NewGlobalRef(env, cl);
+    Cudd_AddHook(manager, pre_reorder_hook, CUDD_PRE_REORDERING_HOOK);
+    Cudd_AddHook(manager, post_reorder_hook, CUDD_POST_REORDERING_HOOK);
+    Cudd_AddHook(manager, pre_gc_hook, CUDD_PRE_GC_HOOK);
+    Cudd_AddHook(manager, post_gc_hook, CUDD_POST_GC_HOOK);
 }
 
 /*
@@ -165,6 +226,8 @@ JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_done0
     printf("\n=== End of CUDD Statistics ===\n\n");
     fflush(stdout);
     Cudd_Quit(m);
+    (*env)->DeleteGlobalRef(env, factory_cls);
+    factory_cls = NULL;
 }
 
 JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_printStat0(JNIEnv *env, jclass cl) {
@@ -204,6 +267,137 @@ JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_unsetRuntimeLimit0(JNIEnv
     Cudd_UnsetTimeLimit(manager);
 }
 
+JNIEXPORT jlong JNICALL Java_net_sf_javabdd_CUDDFactory_getRuntimeLimit0(JNIEnv* env, jclass cl) {
+    unsigned long limit = Cudd_ReadTimeLimit(manager);
+    /* no limit is ~0UL */
+    if (limit > (unsigned long) 0x7fffffffffffffffL) return 0x7fffffffffffffffL;
+    return (jlong) limit;
+}
+
+/*
+ * Class:     net_sf_javabdd_CUDDFactory
+ * Method:    image0
+ * Signature: ([JJJJJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_javabdd_CUDDFactory_image0
+        (JNIEnv *env, jclass cl, jlongArray a, jlong b, jlong c, jlong d, jlong p, jlong remaining) {
+    DdNode* from;
+    DdNode* conjunct;
+    DdNode* cube;
+    DdNode* g;
+    DdNode* h;
+    DdNode** parts;
+    CuddPairing* pair;
+    jlong* rels;
+    jlong result;
+    int i;
+    int m;
+    int n;
+    int ok;
+    int *arr = NULL;
+    int varnum = Cudd_ReadSize(manager);
+    jsize num = (*env)->GetArrayLength(env, a);
+    unsigned long oldLimit = Cudd_ReadTimeLimit(manager);
+
+    from = (DdNode*) (intptr_cast_type) b;
+    conjunct = (DdNode*) (intptr_cast_type) c;
+    cube = (DdNode*) (intptr_cast_type) d;
+    pair = (CuddPairing*) (intptr_cast_type) p;
+    parts = (DdNode**) malloc(sizeof(DdNode*)*(num > 0 ? num : 1));
+    if (parts == NULL) {
+        die(env, "image: out of memory");
+        return INVALID_BDD;
+    }
+    if (pair != NULL) {
+        arr = (int*) malloc(sizeof(int)*varnum);
+        if (arr == NULL) {
+            free(parts);
+            die(env, "image: out of memory");
+            return INVALID_BDD;
+        }
+        for (n=0; n<varnum; ++n) {
+            arr[n] = Cudd_Regular(pair->table[n])->index;
+        }
+    }
+    if (remaining >= 0) {
+        unsigned long limit = Cudd_ReadElapsedTime(manager) + (unsigned long) remaining;
+        if (limit < oldLimit) Cudd_SetTimeLimit(manager, limit);
+    }
+
+    /* the relational products, each renamed and conjoined */
+    rels = (*env)->GetLongArrayElements(env, a, NULL);
+    ok = 1;
+    n = 0;
+    for (i=0; ok && i<num; ++i) {
+        g = Cudd_bddAndAbstract(manager, (DdNode*) (intptr_cast_type) rels[i], from, cube);
+        if (g == NULL) { ok = 0; break; }
+        Cudd_Ref(g);
+        if (arr != NULL) {
+            h = Cudd_bddPermute(manager, g, arr);
+            if (h != NULL) Cudd_Ref(h);
+            Cudd_RecursiveDeref(manager, g);
+            if (h == NULL) { ok = 0; break; }
+            g = h;
+        }
+        if (conjunct != Cudd_ReadOne(manager)) {
+            h = Cudd_bddAnd(manager, g, conjunct);
+            if (h != NULL) Cudd_Ref(h);
+            Cudd_RecursiveDeref(manager, g);
+            if (h == NULL) { ok = 0; break; }
+            g = h;
+        }
+        parts[n++] = g;
+    }
+    (*env)->ReleaseLongArrayElements(env, a, rels, JNI_ABORT);
+
+    /* balanced disjunction of the results */
+    while (ok && n > 1) {
+        m = 0;
+        for (i=0; i<n; i+=2) {
+            if (i+1 < n) {
+                h = Cudd_bddOr(manager, parts[i], parts[i+1]);
+                if (h == NULL) {
+                    /* keep the remaining parts for the cleanup */
+                    for (; i<n; ++i) parts[m++] = parts[i];
+                    ok = 0;
+                    break;
+                }
+                Cudd_Ref(h);
+                Cudd_RecursiveDeref(manager, parts[i]);
+                Cudd_RecursiveDeref(manager, parts[i+1]);
+                parts[m++] = h;
+            } else {
+                parts[m++] = parts[i];
+            }
+        }
+        n = m;
+    }
+
+    if (ok) {
+        if (n == 0) {
+            parts[0] = Cudd_ReadLogicZero(manager);
+            Cudd_Ref(parts[0]);
+        }
+        Cudd_Deref(parts[0]);
+        result = (jlong) (intptr_cast_type) parts[0];
+    } else {
+        for (i=0; i<n; ++i) Cudd_RecursiveDeref(manager, parts[i]);
+        /* only an expired time limit is an ordinary end of the step */
+        if (Cudd_ReadErrorCode(manager) == CUDD_TIMEOUT_EXPIRED) {
+            Cudd_ClearErrorCode(manager);
+        } else if (Cudd_ReadErrorCode(manager) == CUDD_MEMORY_OUT) {
+            die(env, "image: CUDD ran out of memory");
+        } else {
+            die(env, "image: CUDD operation failed");
+        }
+        result = INVALID_BDD;
+    }
+    Cudd_SetTimeLimit(manager, oldLimit);
+    free(parts);
+    if (arr != NULL) free(arr);
+    return result;
+}
+
 /*
  * Class:     net_sf_javabdd_CUDDFactory
  * Method:    varNum0
@@ -366,6 +560,11 @@ JNIEXPORT int JNICALL Java_net_sf_javabdd_CUDDFactory_getNextReorder0
   return Cudd_ReadNextReordering(manager);
 }
 
+JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_setNextReorder0
+(JNIEnv *env, jclass cl, jint nodes) {
+  Cudd_SetNextReordering(manager, nodes);
+}
+
 JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_disableAutoReorder0 (JNIEnv* env, jclass cl) {
   Cudd_AutodynDisable(manager);
 }
@@ -393,12 +592,12 @@ JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_setVarOrder0
 }
 
 JNIEXPORT void JNICALL Java_net_sf_javabdd_CUDDFactory_addVarBlock0 (JNIEnv *env, jclass cl, jint first, jint last, jboolean fixed) {
-  printf("creating group from variable %d of length %d\n", first, (last - first));
+  printf("creating group from variable %d of length %d\n", first, (last - first + 1));
   fflush(stdout);
   if (fixed)
-    Cudd_MakeTreeNode(manager, first, (last - first), 4);
+    Cudd_MakeTreeNode(manager, first, (last - first + 1), 4);
   else
-    Cudd_MakeTreeNode(manager, first, (last - first), 0);
+    Cudd_MakeTreeNode(manager, first, (last - first + 1), 0);
 }
 
 /*
@@ -560,6 +759,48 @@ JNIEXPORT jlong JNICALL Java_net_sf_javabdd_CUDDFactory_00024CUDDBDD_relprod0
     return result;
 }
 
+/*
+ * Class:     net_sf_javabdd_CUDDFactory_CUDDBDD
+ * Method:    relnext0
+ * Signature: (JJJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_sf_javabdd_CUDDFactory_00024CUDDBDD_relnext0
+        (JNIEnv *env, jclass cl, jlong a, jlong b, jlong c, jlong p) {
+    DdNode* d;
+    DdNode* e;
+    DdNode* f;
+    DdNode* g;
+    DdNode* h;
+    CuddPairing* pair;
+    jlong result;
+    int n;
+    int *arr;
+    int varnum = Cudd_ReadSize(manager);
+    arr = (int*) malloc(sizeof(int)*varnum);
+    if (arr == NULL) return INVALID_BDD;
+    d = (DdNode*) (intptr_cast_type) a;
+    e = (DdNode*) (intptr_cast_type) b;
+    f = (DdNode*) (intptr_cast_type) c;
+    pair = (CuddPairing*) (intptr_cast_type) p;
+    for (n=0; n<varnum; ++n) {
+        arr[n] = Cudd_Regular(pair->table[n])->index;
+    }
+    g = Cudd_bddAndAbstract(manager, d, e, f);
+    if (g == NULL) {
+        free(arr);
+        return INVALID_BDD;
+    }
+    /* the product must survive a garbage collection during the renaming */
+    Cudd_Ref(g);
+    h = Cudd_bddPermute(manager, g, arr);
+    if (h != NULL) Cudd_Ref(h);
+    Cudd_RecursiveDeref(manager, g);
+    if (h != NULL) Cudd_Deref(h);
+    free(arr);
+    result = (jlong) (intptr_cast_type) h;
+    return result;
+}
+
 /*
  * Class:     net_sf_javabdd_CUDDFactory_CUDDBDD
  * Method:    compose0
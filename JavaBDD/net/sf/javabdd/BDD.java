@@ -283,6 +283,29 @@ public abstract class BDD {
     public BDD relprod(BDD that, BDDVarSet var) {
         return applyEx(that, BDDFactory.and, var);
     }
+
+    /**
+     * <p>Relational product followed by a renaming.  Calculates the relational
+     * product of the two BDDs and replaces the variables of the result as
+     * given by the pairing.  Identical to relprod(that, var).replace(pair),
+     * but factories may compute it in a single pass without building the
+     * intermediate result.</p>
+     * 
+     * <p>With the transition relation as this BDD this is the image of a set
+     * of states (quantifying the current state variables and renaming the
+     * next state variables), or, with the roles of the variables exchanged,
+     * the preimage.</p>
+     * 
+     * @param that the BDD to 'and' with
+     * @param var the BDDVarSet to existentially quantify with
+     * @param pair the pairing to rename the result with
+     * @return the result of the relational product, renamed
+     * @see net.sf.javabdd.BDD#relprod(BDD, BDDVarSet)
+     * @see net.sf.javabdd.BDD#replace(BDDPairing)
+     */
+    public BDD relnext(BDD that, BDDVarSet var, BDDPairing pair) {
+        return relprod(that, var).replaceWith(pair);
+    }
     
     /**
      * <p>Functional composition.  Substitutes the variable var with the BDD that
@@ -96,7 +96,7 @@ public abstract class BDDBitVector {
         int n;
         for (n = 0; n < minnum; n++)
             dst.bitvec[n] = bitvec[n].id();
-        for (; n < minnum; n++)
+        for (; n < bitnum; n++)
             dst.bitvec[n] = bdd.zero();
         return dst;
     }
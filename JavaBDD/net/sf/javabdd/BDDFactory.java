@@ -57,8 +57,9 @@ public abstract class BDDFactory {
     /**
      * <p>Initializes a BDD factory of the given type with the given initial
      * node table size and operation cache size.  The type is a string that
-     * can be "buddy", "cudd", "cal", "j", "java", "jdd", "test", "typed", or
-     * a name of a class that has an init() method that returns a BDDFactory.
+     * can be "buddy", "cudd", "cal", "j", "java", "parallel", "jdd", "test",
+     * "typed", or a name of a class that has an init() method that returns a
+     * BDDFactory.
      * If it fails, it falls back to the "java" factory.</p>
      * 
      * @param bddpackage BDD package string identifier
@@ -76,6 +77,8 @@ public abstract class BDDFactory {
                 return CALFactory.init(nodenum, cachesize);
             if (bddpackage.equals("j") || bddpackage.equals("java"))
                 return JFactory.init(nodenum, cachesize);
+            if (bddpackage.equals("parallel"))
+                return ParallelFactory.init(nodenum, cachesize);
             if (bddpackage.equals("u"))
                 return UberMicroFactory.init(nodenum, cachesize);
             if (bddpackage.equals("micro"))
@@ -917,6 +920,21 @@ public abstract class BDDFactory {
         System.err.println("setReorderTimes not yet implemented!");
     }
 
+    /**
+     * <p>Delays the next automatic reordering until the given number of
+     * nodes is in use.  Unlike autoReorder(method, max), this does not change
+     * the number of allowed reorderings.</p>
+     * 
+     * <p>Compare to Cudd_SetNextReordering.</p>
+     * 
+     * @param nodes the number of nodes
+     * @throws UnsupportedOperationException if the factory cannot delay the
+     *         reordering
+     */
+    public void setNextReorder(int nodes) {
+        throw new UnsupportedOperationException();
+    }
+
     public double getReorderRuntime() {
         System.err.println("getReorderTimes not yet implemented!");
         return 0.0;
@@ -934,6 +952,411 @@ public abstract class BDDFactory {
 	public void unsetRuntimeLimit() {
 		System.err.println("unsetRuntimeLimit not yet implemented!");
 	}
+
+	/**
+	 * <p>Returns the runtime limit set with setRuntimeLimit(), or
+	 * Long.MAX_VALUE if there is none.</p>
+	 */
+	public long getRuntimeLimit() {
+		System.err.println("getRuntimeLimit not yet implemented!");
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * <p>Returns true if the operations honor the runtime limit.  The pure
+	 * Java factories abandon an operation that exceeds it with a
+	 * BDDLimitException, CUDD returns an invalid result.</p>
+	 */
+	public boolean supportsRuntimeLimit() {
+		return false;
+	}
+
+	/**
+	 * <p>Limits the number of nodes that may be created from now on.  An
+	 * operation that exceeds the limit is abandoned with a
+	 * BDDLimitException.</p>
+	 */
+	public void setNewNodeLimit(long limit) {
+		System.err.println("setNewNodeLimit not yet implemented!");
+	}
+
+	public void unsetNewNodeLimit() {
+		System.err.println("unsetNewNodeLimit not yet implemented!");
+	}
+
+    /**
+     * <p>Image of a set of states under a number of transition relations.
+     * Calculates relations[i].relnext(from, var, pair).and(conjunct) for all
+     * relations and returns the disjunction of the results, which are
+     * combined pairwise in a balanced manner.  If pair is null the results
+     * are not renamed.</p>
+     * 
+     * <p>The calculation is given up as soon as the deadline has passed, in
+     * which case all intermediate results are freed and null is returned.
+     * If the factory supports a runtime limit, the deadline is also checked
+     * inside the single operations.  Factories backed by a native library may
+     * perform the whole calculation in a single native call.</p>
+     * 
+     * @param relations the transition relations
+     * @param from the set of states
+     * @param conjunct the BDD the results are conjoined with
+     * @param var the BDDVarSet to existentially quantify with
+     * @param pair the pairing to rename the results with, or null
+     * @param deadline the time (as in System.currentTimeMillis()) at which
+     *                 the calculation is given up, or Long.MAX_VALUE
+     * @return the image, or null if the deadline has passed
+     * @see net.sf.javabdd.BDD#relnext(BDD, BDDVarSet, BDDPairing)
+     */
+    public BDD image(BDD[] relations, BDD from, BDD conjunct, BDDVarSet var, BDDPairing pair, long deadline) {
+        BDD[] parts = new BDD[relations.length];
+        boolean limited = deadline != Long.MAX_VALUE && supportsRuntimeLimit();
+        long oldLimit = 0;
+        if (limited) {
+            // the deadline is also checked inside the operations
+            oldLimit = getRuntimeLimit();
+            long limit = getRuntime() + deadline - System.currentTimeMillis();
+            if (limit < oldLimit)
+                setRuntimeLimit(limit);
+        }
+        try {
+            int n = 0;
+            while (n < relations.length) {
+                if (System.currentTimeMillis() > deadline) {
+                    freeAll(parts);
+                    return null;
+                }
+                BDD tmp = pair == null ? relations[n].relprod(from, var) : relations[n].relnext(from, var, pair);
+                parts[n++] = tmp;
+                if (!conjunct.isUniverse()) {
+                    BDD c = conjunct.id();
+                    try {
+                        tmp.andWith(c);
+                    } catch (BDDLimitException e) {
+                        c.free();
+                        throw e;
+                    }
+                }
+            }
+            if (n == 0)
+                return zero();
+            // a slot is set to null as soon as its BDD has been consumed
+            while (n > 1) {
+                int m = 0;
+                for (int i = 0; i < n; i += 2) {
+                    if (i + 1 < n) {
+                        parts[i].orWith(parts[i + 1]);
+                        parts[i + 1] = null;
+                    }
+                    parts[m] = parts[i];
+                    if (m++ != i)
+                        parts[i] = null;
+                }
+                n = m;
+                if (n > 1 && System.currentTimeMillis() > deadline) {
+                    freeAll(parts);
+                    return null;
+                }
+            }
+            return parts[0];
+        } catch (BDDLimitException e) {
+            freeAll(parts);
+            return null;
+        } finally {
+            if (limited)
+                setRuntimeLimit(oldLimit);
+        }
+    }
+
+    private static void freeAll(BDD[] bdds) {
+        for (int i = 0; i < bdds.length; i++)
+            if (bdds[i] != null)
+                bdds[i].free();
+    }
+
+    /**** Raw handle API ****/
+    
+    /*
+     * The following operations work on handles instead of BDD objects, so
+     * that they do not allocate any Java objects.  Each returned handle is
+     * referenced and has to be released with deref() once it is no longer
+     * needed; the arguments are left untouched.  Handles are canonical, i.e.,
+     * two handles represent the same function if and only if they are equal.
+     * Factories that do not support this API throw an
+     * UnsupportedOperationException.
+     */
+    
+    /**
+     * A value that is no valid handle in any factory; returned by imageRaw()
+     * if the deadline has passed.
+     */
+    public static final long INVALID_RAW = -1;
+    
+    /**
+     * <p>Returns a referenced handle of the given BDD.</p>
+     * 
+     * @param b the BDD
+     * @return the handle
+     */
+    public long handle(BDD b) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns a new BDD object for the given handle.  The reference held by
+     * the caller is not consumed.</p>
+     * 
+     * @param h the handle
+     * @return the BDD
+     */
+    public BDD fromHandle(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Increases the reference count of the given handle.</p>
+     * 
+     * @param h the handle
+     */
+    public void ref(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Decreases the reference count of the given handle.</p>
+     * 
+     * @param h the handle
+     */
+    public void deref(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns a referenced handle of the constant false.</p>
+     * 
+     * @return the handle
+     */
+    public long zeroRaw() {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns a referenced handle of the constant true.</p>
+     * 
+     * @return the handle
+     */
+    public long oneRaw() {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns a referenced handle of the universe, i.e., of the BDD
+     * returned by universe().</p>
+     * 
+     * @return the handle
+     */
+    public long universeRaw() {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Returns true if the given handle represents the constant false.</p>
+     * 
+     * @param h the handle
+     * @return whether the handle represents false
+     */
+    public boolean isZeroRaw(long h) {
+        throw new UnsupportedOperationException();
+    }    
+    
+    /**
+     * <p>Returns true if the given handle represents the constant true.</p>
+     *
+     * @param h the handle
+     * @return whether the handle represents true
+     */
+    public boolean isOneRaw(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.level().</p>
+     *
+     * @param h the handle
+     * @return the level of the root node
+     */
+    public int levelRaw(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.low().</p>
+     *
+     * @param h the handle
+     * @return the handle of the false branch
+     */
+    public long lowRaw(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.high().</p>
+     *
+     * @param h the handle
+     * @return the handle of the true branch
+     */
+    public long highRaw(long h) {
+        throw new UnsupportedOperationException();
+    }
+    
+        /**
+     * <p>Raw version of BDD.apply().</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @param opr the operator
+     * @return a referenced handle of the result
+     */
+    public long applyRaw(long a, long b, BDDOp opr) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.and().</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @return a referenced handle of the result
+     */
+    public long andRaw(long a, long b) {
+        return applyRaw(a, b, and);
+    }
+    
+    /**
+     * <p>Raw version of BDD.or().</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @return a referenced handle of the result
+     */
+    public long orRaw(long a, long b) {
+        return applyRaw(a, b, or);
+    }
+    
+    /**
+     * <p>Raw version of a.and(b.not()).</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @return a referenced handle of the result
+     */
+    public long diffRaw(long a, long b) {
+        return applyRaw(a, b, diff);
+    }
+    
+    /**
+     * <p>Raw version of BDD.applyWith().  Replaces the given BDD by the result
+     * of the operation, without creating a new BDD object; the handle is
+     * left untouched.</p>
+     * 
+     * @param b the left operand, which is replaced by the result
+     * @param h the right operand
+     * @param opr the operator
+     */
+    public void applyWithRaw(BDD b, long h, BDDOp opr) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.not().</p>
+     * 
+     * @param a the operand
+     * @return a referenced handle of the result
+     */
+    public long notRaw(long a) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.exist().</p>
+     * 
+     * @param a the operand
+     * @param var the BDDVarSet to existentially quantify with
+     * @return a referenced handle of the result
+     */
+    public long existRaw(long a, BDDVarSet var) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.relprod().</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @param var the BDDVarSet to existentially quantify with
+     * @return a referenced handle of the result
+     */
+    public long relprodRaw(long a, long b, BDDVarSet var) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.relnext().</p>
+     * 
+     * @param a the left operand
+     * @param b the right operand
+     * @param var the BDDVarSet to existentially quantify with
+     * @param pair the pairing to rename the result with
+     * @return a referenced handle of the result
+     */
+    public long relnextRaw(long a, long b, BDDVarSet var, BDDPairing pair) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of BDD.replace().</p>
+     * 
+     * @param a the operand
+     * @param pair the pairing
+     * @return a referenced handle of the result
+     */
+    public long replaceRaw(long a, BDDPairing pair) {
+        throw new UnsupportedOperationException();
+    }
+    
+    /**
+     * <p>Raw version of image().  This implementation wraps the handles and
+     * calls image(); factories with a native image override it.</p>
+     * 
+     * @param relations the handles of the transition relations
+     * @param from the set of states
+     * @param conjunct the handle the results are conjoined with
+     * @param var the BDDVarSet to existentially quantify with
+     * @param pair the pairing to rename the results with, or null
+     * @param deadline the time (as in System.currentTimeMillis()) at which
+     *                 the calculation is given up, or Long.MAX_VALUE
+     * @return a referenced handle of the image, or INVALID_RAW if the
+     *         deadline has passed
+     * @see #image(BDD[], BDD, BDD, BDDVarSet, BDDPairing, long)
+     */
+    public long imageRaw(long[] relations, long from, long conjunct, BDDVarSet var, BDDPairing pair, long deadline) {
+        BDD[] bdds = new BDD[relations.length];
+        for (int i = 0; i < relations.length; i++)
+            bdds[i] = fromHandle(relations[i]);
+        BDD f = fromHandle(from);
+        BDD c = fromHandle(conjunct);
+        try {
+            BDD result = image(bdds, f, c, var, pair, deadline);
+            if (result == null)
+                return INVALID_RAW;
+            long h = handle(result);
+            result.free();
+            return h;
+        } finally {
+            freeAll(bdds);
+            f.free();
+            c.free();
+        }
+    }
     
     /**
      * <p>Disable automatic reordering until enableReorder is called.  Reordering
@@ -1153,6 +1576,15 @@ public abstract class BDDFactory {
      */
     public abstract int getNodeNum();
 
+    /**
+     * <p>Get the largest number of nodes that have been in use at the same
+     * time, including dead nodes.  Factories that do not keep track of it
+     * return the number of allocated nodes.</p>
+     */
+    public int getPeakNodeNum() {
+        return getNodeTableSize();
+    }
+
     /**
      * <p>Get the current size of the cache, in entries.</p>
      * 
@@ -1238,6 +1670,17 @@ public abstract class BDDFactory {
         public long time;
         public int usednum_before, usednum_after;
         
+        /**
+         * Blocks sifted, block moves made and sifting directions cut short by
+         * the lower bound during the reordering, if the factory reports them.
+         */
+        public int sifted, moves, pruned;
+        
+        /**
+         * True if the reordering stopped early because its budget was used up.
+         */
+        public boolean budgetExceeded;
+        
         protected ReorderStats() { }
         
         public int gain() {
@@ -1258,6 +1701,17 @@ public abstract class BDDFactory {
             sb.append("% (");
             sb.append((float) time / 1000f);
             sb.append(" sec)");
+            if (sifted > 0) {
+                sb.append(", sifted ");
+                sb.append(sifted);
+                sb.append(" blocks in ");
+                sb.append(moves);
+                sb.append(" moves, ");
+                sb.append(pruned);
+                sb.append(" pruned");
+            }
+            if (budgetExceeded)
+                sb.append(", budget exhausted");
             return sb.toString();
         }
     }
@@ -1290,6 +1744,8 @@ public abstract class BDDFactory {
         public int opHit;
         public int opMiss;
         public int swapCount;
+        public long cacheKept;
+        public long cacheCleared;
         
         protected CacheStats() { }
         
@@ -1301,6 +1757,8 @@ public abstract class BDDFactory {
             this.opHit = that.opHit;
             this.opMiss = that.opMiss;
             this.swapCount = that.swapCount;
+            this.cacheKept = that.cacheKept;
+            this.cacheCleared = that.cacheCleared;
         }
         
         /* (non-Javadoc)
@@ -1354,6 +1812,18 @@ public abstract class BDDFactory {
             sb.append("Swap count =    ");
             sb.append(swapCount);
             sb.append(newLine);
+            sb.append("GC Kept:        ");
+            sb.append(cacheKept);
+            sb.append(newLine);
+            sb.append("GC Cleared:     ");
+            sb.append(cacheCleared);
+            sb.append(newLine);
+            sb.append("=> Kept rate =  ");
+            if (cacheKept + cacheCleared > 0)
+                sb.append(((float) cacheKept) / ((float) cacheKept + cacheCleared));
+            else
+                sb.append((float)0);
+            sb.append(newLine);
             return sb.toString();
         }
     }
@@ -1878,7 +2348,7 @@ public abstract class BDDFactory {
         }
     }
     
-    protected static void bdd_default_gbchandler(boolean pre, GCStats s) {
+    public static void bdd_default_gbchandler(boolean pre, GCStats s) {
         if (pre) {
             if (s.freenodes != 0)
                 System.err.println("Starting GC cycle  #"+(s.num+1)+
@@ -1892,6 +2362,8 @@ public abstract class BDDFactory {
         if (b) {
             s.usednum_before = getNodeNum();
             s.time = System.currentTimeMillis();
+            s.sifted = s.moves = s.pruned = 0;
+            s.budgetExceeded = false;
         } else {
             s.time = System.currentTimeMillis() - s.time;
             s.usednum_after = getNodeNum();
@@ -1922,7 +2394,7 @@ public abstract class BDDFactory {
         }
     }
 
-    protected static void bdd_default_reshandler(int oldsize, int newsize) {
+    public static void bdd_default_reshandler(int oldsize, int newsize) {
         int verbose = 1;
         if (verbose > 0) {
             System.out.println("Resizing node table from "+oldsize+" to "+newsize);
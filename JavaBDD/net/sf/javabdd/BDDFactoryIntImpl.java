@@ -3,8 +3,11 @@
 // Licensed under the terms of the GNU LGPL; see COPYING for details.
 package net.sf.javabdd;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A shared superclass for BDD factories that refer to BDDs as ints.
@@ -14,7 +17,14 @@ import java.util.Iterator;
  */
 public abstract class BDDFactoryIntImpl extends BDDFactory {
     
-    static final boolean USE_FINALIZER = false;
+    /**
+     * Release the nodes of BDDs and variable sets that become unreachable
+     * without being freed.  The handles are tracked with phantom references
+     * instead of finalizers, so they are neither resurrected nor queued on the
+     * finalizer thread.  Code that frees all of its BDDs explicitly can leave
+     * this off and saves the reference per handle.
+     */
+    public static boolean AUTO_RECLAIM = Boolean.valueOf(getProperty("bdd.autoreclaim", "false")).booleanValue();
     
     protected abstract void addref_impl(/*bdd*/int v);
     protected abstract void delref_impl(/*bdd*/int v);
@@ -48,6 +58,13 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     
     protected abstract /*bdd*/int replace_impl(/*bdd*/int v, BDDPairing p);
     protected abstract /*bdd*/int veccompose_impl(/*bdd*/int v, BDDPairing p);
+    protected /*bdd*/int relnext_impl(/*bdd*/int v1, /*bdd*/int v2, /*bdd*/int v3, BDDPairing p) {
+        /*bdd*/int v4 = applyEx_impl(v1, v2, BDDFactory.and, v3);
+        addref_impl(v4);
+        /*bdd*/int v5 = replace_impl(v4, p);
+        delref_impl(v4);
+        return v5;
+    }
     
     protected abstract int nodeCount_impl(/*bdd*/int v);
     protected abstract double pathCount_impl(/*bdd*/int v);
@@ -60,9 +77,12 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     
     public class IntBDD extends BDD {
         protected /*bdd*/int v;
+        HandleRef ref;
         protected IntBDD(/*bdd*/int v) {
             this.v = v;
             addref_impl(v);
+            if (AUTO_RECLAIM)
+                ref = registerHandle(this, v);
         }
         public BDD apply(BDD that, BDDOp opr) {
             return makeBDD(apply_impl(v, unwrap(that), opr));
@@ -84,6 +104,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != that)
                 that.free();
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
         public BDD compose(BDD g, int var) {
@@ -104,6 +126,10 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         public void free() {
             delref_impl(v);
             v = invalid_bdd_impl();
+            if (ref != null) {
+                unregisterHandle(ref);
+                ref = null;
+            }
         }
         public BDD fullSatOne() {
             return makeBDD(fullSatOne_impl(v));
@@ -150,11 +176,16 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         public BDD replace(BDDPairing pair) {
             return makeBDD(replace_impl(v, pair));
         }
+        public BDD relnext(BDD that, BDDVarSet var, BDDPairing pair) {
+            return makeBDD(relnext_impl(v, unwrap(that), unwrap(var), pair));
+        }
         public BDD replaceWith(BDDPairing pair) {
             /*bdd*/int v3 = replace_impl(v, pair);
             addref_impl(v3);
             delref_impl(v);
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
         public BDD restrict(BDD var) {
@@ -168,6 +199,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != that)
                 that.free();
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
         public double satCount() {
@@ -202,26 +235,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
     
-    public class IntBDDWithFinalizer extends IntBDD {
-        protected IntBDDWithFinalizer(/*bdd*/int v) {
-            super(v);
-        }
-        
-        protected void finalize() throws Throwable {
-            super.finalize();
-            if (false && v != invalid_bdd_impl()) {
-                System.out.println("BDD not freed! "+System.identityHashCode(this));
-            }
-            deferredFree(v);
-        }
-        
-    }
-    
     protected IntBDD makeBDD(/*bdd*/int v) {
-        if (USE_FINALIZER)
-            return new IntBDDWithFinalizer(v);
-        else
-            return new IntBDD(v);
+        return new IntBDD(v);
     }
     
     protected static final /*bdd*/int unwrap(BDD b) {
@@ -239,9 +254,12 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     
     public class IntBDDVarSet extends BDDVarSet {
         /*bdd*/int v;
+        HandleRef ref;
         protected IntBDDVarSet(/*bdd*/int v) {
             this.v = v;
             addref_impl(v);
+            if (AUTO_RECLAIM)
+                ref = registerHandle(this, v);
         }
         public boolean equals(BDDVarSet that) {
             return v == unwrap(that);
@@ -249,6 +267,10 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         public void free() {
             delref_impl(v);
             v = invalid_bdd_impl();
+            if (ref != null) {
+                unregisterHandle(ref);
+                ref = null;
+            }
         }
         public BDDFactory getFactory() {
             return BDDFactoryIntImpl.this;
@@ -273,6 +295,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != b)
                 b.free();
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
         public boolean isEmpty() {
@@ -326,6 +350,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != b)
                 b.free();
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
         public BDDVarSet unionWith(int var) {
@@ -333,26 +359,12 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             addref_impl(v3);
             delref_impl(v);
             v = v3;
+            if (ref != null)
+                ref.v = v3;
             return this;
         }
     }
     
-    public class IntBDDVarSetWithFinalizer extends IntBDDVarSet {
-        
-        protected IntBDDVarSetWithFinalizer(int v) {
-            super(v);
-        }
-        
-        protected void finalize() throws Throwable {
-            super.finalize();
-            if (false && v != invalid_bdd_impl()) {
-                System.out.println("BDD not freed! "+System.identityHashCode(this));
-            }
-            deferredFree(v);
-        }
-        
-    }
-    
     public class IntZDDVarSet extends IntBDDVarSet {
         protected IntZDDVarSet(/*bdd*/int v) {
             super(v);
@@ -424,36 +436,11 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
     
-    public class IntZDDVarSetWithFinalizer extends IntZDDVarSet {
-        
-        protected IntZDDVarSetWithFinalizer(int v) {
-            super(v);
-        }
-        
-        protected void finalize() throws Throwable {
-            super.finalize();
-            if (USE_FINALIZER) {
-                if (false && v != invalid_bdd_impl()) {
-                    System.out.println("BDD not freed! "+System.identityHashCode(this));
-                }
-                deferredFree(v);
-            }
-        }
-        
-    }
-    
     protected IntBDDVarSet makeBDDVarSet(/*bdd*/int v) {
-        if (isZDD()) {
-            if (USE_FINALIZER)
-                return new IntZDDVarSetWithFinalizer(v);
-            else
-                return new IntZDDVarSet(v);
-        } else {
-            if (USE_FINALIZER)
-                return new IntBDDVarSetWithFinalizer(v);
-            else
-                return new IntBDDVarSet(v);
-        }
+        if (isZDD())
+            return new IntZDDVarSet(v);
+        else
+            return new IntBDDVarSet(v);
     }
     
     protected static final /*bdd*/int unwrap(BDDVarSet b) {
@@ -503,13 +490,120 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     public BDD zero() {
         return makeBDD(zero_impl());
     }
+
+    public long handle(BDD b) {
+        /*bdd*/int v = unwrap(b);
+        addref_impl(v);
+        return v;
+    }
+    
+    public BDD fromHandle(long h) {
+        return makeBDD((int) h);
+    }
+    
+    public void ref(long h) {
+        addref_impl((int) h);
+    }
+    
+    public void deref(long h) {
+        delref_impl((int) h);
+    }
+    
+    public long zeroRaw() {
+        return zero_impl();
+    }
+    
+    public long oneRaw() {
+        return one_impl();
+    }
+    
+    public long universeRaw() {
+        /*bdd*/int v = universe_impl();
+        addref_impl(v);
+        return v;
+    }
+    
+    public boolean isZeroRaw(long h) {
+        return (int) h == zero_impl();
+    }    
+    
+    public boolean isOneRaw(long h) {
+        return (int) h == one_impl();
+    }
+    
+    public int levelRaw(long h) {
+        return level_impl((int) h);
+    }
+    
+    public long lowRaw(long h) {
+        /*bdd*/int v = low_impl((int) h);
+        addref_impl(v);
+        return v;
+    }
+    
+    public long highRaw(long h) {
+        /*bdd*/int v = high_impl((int) h);
+        addref_impl(v);
+        return v;
+    }
+    
+        public long applyRaw(long a, long b, BDDOp opr) {
+        /*bdd*/int v = apply_impl((int) a, (int) b, opr);
+        addref_impl(v);
+        return v;
+    }
+    
+    public void applyWithRaw(BDD b, long h, BDDOp opr) {
+        IntBDD c = (IntBDD) b;
+        /*bdd*/int v = apply_impl(c.v, (int) h, opr);
+        addref_impl(v);
+        delref_impl(c.v);
+        c.v = v;
+        if (c.ref != null)
+            c.ref.v = v;
+    }
+    
+    public long notRaw(long a) {
+        /*bdd*/int v = not_impl((int) a);
+        addref_impl(v);
+        return v;
+    }
+    
+    public long existRaw(long a, BDDVarSet var) {
+        /*bdd*/int v = exist_impl((int) a, unwrap(var));
+        addref_impl(v);
+        return v;
+    }
+    
+    public long relprodRaw(long a, long b, BDDVarSet var) {
+        /*bdd*/int v = applyEx_impl((int) a, (int) b, and, unwrap(var));
+        addref_impl(v);
+        return v;
+    }
+    
+    public long relnextRaw(long a, long b, BDDVarSet var, BDDPairing pair) {
+        /*bdd*/int v = relnext_impl((int) a, (int) b, unwrap(var), pair);
+        addref_impl(v);
+        return v;
+    }
+    
+    public long replaceRaw(long a, BDDPairing pair) {
+        /*bdd*/int v = replace_impl((int) a, pair);
+        addref_impl(v);
+        return v;
+    }
     
     public void done() {
-        if (USE_FINALIZER) {
-            System.gc();
-            System.runFinalization();
-            handleDeferredFree();
-        }
+        // Forget the live handles; their nodes go away with the factory.
+        for (HandleRef r = liveHandles.next; r != liveHandles; ) {
+            HandleRef n = r.next;
+            r.clear();
+            r.prev = r.next = null;
+            r = n;
+        }
+        liveHandles.prev = liveHandles.next = liveHandles;
+        while (reclaimQueue.poll() != null) ;
+        deferred.set(null);
     }
     
     protected void finalize() throws Throwable {
@@ -517,25 +611,89 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         this.done();
     }
     
-    protected /*bdd*/int[] to_free = new /*bdd*/int[8];
-    protected /*bdd*/int to_free_length = 0;
+    /**
+     * Phantom reference to a BDD or variable set, holding the node it refers
+     * to.  Live references are kept in a doubly-linked list so that they stay
+     * reachable as long as their handle.
+     */
+    static final class HandleRef extends PhantomReference<Object> {
+        /*bdd*/int v;
+        HandleRef prev, next;
+        HandleRef(Object handle, ReferenceQueue<Object> q, /*bdd*/int v) {
+            super(handle, q);
+            this.v = v;
+        }
+    }
+    
+    private final ReferenceQueue<Object> reclaimQueue = new ReferenceQueue<Object>();
+    private final HandleRef liveHandles = new HandleRef(null, null, 0);
+    {
+        liveHandles.prev = liveHandles.next = liveHandles;
+    }
+    
+    /**
+     * Registers a new handle for automatic reclamation.  Handles that were
+     * collected in the meantime are released first; this happens here and
+     * not during the node garbage collection because no operation is in
+     * progress whose operands could belong to a collected handle.
+     */
+    HandleRef registerHandle(Object handle, /*bdd*/int v) {
+        reclaimHandles();
+        HandleRef r = new HandleRef(handle, reclaimQueue, v);
+        r.prev = liveHandles;
+        r.next = liveHandles.next;
+        liveHandles.next.prev = r;
+        liveHandles.next = r;
+        return r;
+    }
+    
+    void unregisterHandle(HandleRef r) {
+        r.clear();
+        if (r.next != null) {
+            r.prev.next = r.next;
+            r.next.prev = r.prev;
+            r.prev = r.next = null;
+        }
+    }
+    
+    /**
+     * Releases the nodes of all handles that were collected without being
+     * freed.
+     */
+    public void reclaimHandles() {
+        HandleRef r;
+        while ((r = (HandleRef) reclaimQueue.poll()) != null) {
+            /*bdd*/int v = r.v;
+            unregisterHandle(r);
+            if (v != invalid_bdd_impl())
+                delref_impl(v);
+        }
+    }
+    
+    /**
+     * Entry of the stack of deferred frees.
+     */
+    static final class DeferredFree {
+        final /*bdd*/int v;
+        DeferredFree next;
+        DeferredFree(/*bdd*/int v) {
+            this.v = v;
+        }
+    }
+    
+    // Lock-free stack, pushed by any thread and drained at garbage collection.
+    private final AtomicReference<DeferredFree> deferred = new AtomicReference<DeferredFree>();
+    
     public void deferredFree(int v) {
         if (v == invalid_bdd_impl())
             return;
-        synchronized(to_free) {
-            if (to_free_length == to_free.length) {
-                /*bdd*/int[] t = new /*bdd*/int[to_free.length * 2];
-                System.arraycopy(to_free, 0, t, 0, to_free.length);
-                to_free = t;
-            }
-            to_free[to_free_length++] = v;
-        }
+        DeferredFree d = new DeferredFree(v);
+        do {
+            d.next = deferred.get();
+        } while (!deferred.compareAndSet(d.next, d));
     }
     public void handleDeferredFree() {
-        synchronized(to_free) {
-            while (to_free_length > 0) {
-                delref_impl(to_free[--to_free_length]);
-            }
-        }
+        for (DeferredFree d = deferred.getAndSet(null); d != null; d = d.next)
+            delref_impl(d.v);
     }
 }
@@ -0,0 +1,28 @@
+// BDDLimitException.java, part of Gamer's extensions of JavaBDD
+// Copyright (C) 2007-2012 Peter Kissmann
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+/**
+ * An exception thrown when an operation exceeds the runtime limit or the new
+ * node limit of the factory.  The operation is abandoned; its intermediate
+ * results are released and the factory stays usable.
+ *
+ * @see BDDFactory#setRuntimeLimit(long)
+ * @see BDDFactory#setNewNodeLimit(long)
+ * @author Peter Kissmann
+ * @version $Id$
+ */
+public class BDDLimitException extends BDDException {
+    /**
+     * Version ID for serialization.
+     */
+    private static final long serialVersionUID = 5393418764530985712L;
+
+    public BDDLimitException() {
+        super();
+    }
+    public BDDLimitException(String s) {
+        super(s);
+    }
+}
@@ -336,11 +336,7 @@ public class BuDDyFactory extends BDDFactoryIntImpl {
      */
     public BDDPairing makePair() {
         long ptr = makePair0();
-        if (USE_FINALIZER) {
-            return new BuDDyPairingWithFinalizer(ptr);
-        } else {
-            return new BuDDyPairing(ptr);
-        }
+        return new BuDDyPairing(ptr);
     }
     private static native long makePair0();
     
@@ -446,22 +442,6 @@ public class BuDDyFactory extends BDDFactoryIntImpl {
         
     }
     
-    private static class BuDDyPairingWithFinalizer extends BuDDyPairing {
-        
-        private BuDDyPairingWithFinalizer(long ptr) {
-            super(ptr);
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Object#finalize()
-         */
-        protected void finalize() throws Throwable {
-            super.finalize();
-            free();
-        }
-
-    }
-    
     public static final String REVISION = "$Revision: 476 $";
     
     /* (non-Javadoc)
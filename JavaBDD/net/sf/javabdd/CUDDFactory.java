@@ -91,6 +91,40 @@ public class CUDDFactory extends BDDFactory {
     }
     private static native void initialize0(int nodenum, int cachesize);
 
+    /**
+     * <p>Called by the native library right before and right after every
+     * reordering, whether automatic or explicit.</p>
+     * 
+     * @param pre  true before the reordering, false after it
+     */
+    private static void reorderHook(boolean pre) {
+        if (INSTANCE != null)
+            INSTANCE.reorder_handler(pre, INSTANCE.reorderstats);
+    }
+
+    /**
+     * <p>Called by the native library right before and right after every
+     * garbage collection.</p>
+     * 
+     * @param pre  true before the garbage collection, false after it
+     * @param nodes  number of nodes in the unique table
+     * @param dead  number of dead nodes in the unique table
+     * @param sumtime  total time spent in garbage collections (ms)
+     * @param num  number of garbage collections done so far
+     */
+    private static void gcHook(boolean pre, int nodes, int dead, long sumtime,
+                               int num) {
+        if (INSTANCE == null)
+            return;
+        GCStats s = INSTANCE.gcstats;
+        s.nodes = nodes;
+        s.freenodes = dead;
+        s.time = pre ? 0 : sumtime - s.sumtime;
+        s.sumtime = sumtime;
+        s.num = num;
+        INSTANCE.gbc_handler(pre, s);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#isInitialized()
      */
@@ -354,6 +388,11 @@ public class CUDDFactory extends BDDFactory {
     }
     private static native void setReorderTimes0(int n);
 
+    public void setNextReorder(int nodes) {
+        setNextReorder0(nodes);
+    }
+    private static native void setNextReorder0(int nodes);
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#disableReorder()
      */
@@ -390,6 +429,148 @@ public class CUDDFactory extends BDDFactory {
 	}
 	private static native void unsetRuntimeLimit0();
 
+	public long getRuntimeLimit() {
+		return getRuntimeLimit0();
+	}
+	private static native long getRuntimeLimit0();
+
+	public boolean supportsRuntimeLimit() {
+		return true;
+	}
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#image(net.sf.javabdd.BDD[], net.sf.javabdd.BDD, net.sf.javabdd.BDD, net.sf.javabdd.BDDVarSet, net.sf.javabdd.BDDPairing, long)
+     */
+    public BDD image(BDD[] relations, BDD from, BDD conjunct, BDDVarSet var, BDDPairing pair, long deadline) {
+        long[] rels = new long[relations.length];
+        for (int i = 0; i < relations.length; i++)
+            rels[i] = ((CUDDBDD) relations[i])._ddnode_ptr;
+        CUDDBDD c = (CUDDBDD) from;
+        CUDDBDD d = (CUDDBDD) conjunct;
+        CUDDBDD e = (CUDDBDD) ((BDDVarSet.DefaultImpl) var).b;
+        long p = pair == null ? 0 : ((CUDDBDDPairing) pair)._ptr;
+        long remaining = -1;
+        if (deadline != Long.MAX_VALUE) {
+            remaining = deadline - System.currentTimeMillis();
+            if (remaining < 0)
+                return null;
+        }
+        long b = image0(rels, c._ddnode_ptr, d._ddnode_ptr, e._ddnode_ptr, p, remaining);
+        if (b == 0)
+            return null;
+        return new CUDDBDD(b);
+    }
+    private static native long image0(long[] rels, long from, long conjunct, long cube, long pair, long remaining);
+
+    /* The raw handles are the node pointers of CUDD.  A failed operation
+     * (e.g., after a timeout) results in the unreferenced handle 0. */
+    
+    private static long raw(long b) {
+        if (b != 0)
+            CUDDBDD.addRef(b);
+        return b;
+    }
+    
+    private static long cube(BDDVarSet var) {
+        return ((CUDDBDD) ((BDDVarSet.DefaultImpl) var).b)._ddnode_ptr;
+    }
+    
+    public long handle(BDD b) {
+        return raw(((CUDDBDD) b)._ddnode_ptr);
+    }
+    
+    public BDD fromHandle(long h) {
+        return new CUDDBDD(h);
+    }
+    
+    public void ref(long h) {
+        CUDDBDD.addRef(h);
+    }
+    
+    public void deref(long h) {
+        CUDDBDD.delRef(h);
+    }
+    
+    public long zeroRaw() {
+        return raw(zero);
+    }
+    
+    public long oneRaw() {
+        return raw(one);
+    }
+    
+    public long universeRaw() {
+        return raw(one);
+    }
+    
+    public boolean isZeroRaw(long h) {
+        return h == zero;
+    }    
+    
+    public boolean isOneRaw(long h) {
+        return h == one;
+    }
+    
+    public int levelRaw(long h) {
+        if (h == zero || h == one)
+            return varNum();
+        return var2Level(CUDDBDD.var0(h));
+    }
+    
+    public long lowRaw(long h) {
+        return raw(CUDDBDD.low0(h));
+    }
+    
+    public long highRaw(long h) {
+        return raw(CUDDBDD.high0(h));
+    }
+    
+        public long applyRaw(long a, long b, BDDOp opr) {
+        return raw(CUDDBDD.apply0(a, b, opr.id));
+    }
+    
+    public void applyWithRaw(BDD b, long h, BDDOp opr) {
+        CUDDBDD c = (CUDDBDD) b;
+        long r = CUDDBDD.apply0(c._ddnode_ptr, h, opr.id);
+        CUDDBDD.addRef(r);
+        CUDDBDD.delRef(c._ddnode_ptr);
+        c._ddnode_ptr = r;
+    }
+    
+    public long notRaw(long a) {
+        return raw(CUDDBDD.not0(a));
+    }
+    
+    public long existRaw(long a, BDDVarSet var) {
+        return raw(CUDDBDD.exist0(a, cube(var)));
+    }
+    
+    public long relprodRaw(long a, long b, BDDVarSet var) {
+        return raw(CUDDBDD.relprod0(a, b, cube(var)));
+    }
+    
+    public long relnextRaw(long a, long b, BDDVarSet var, BDDPairing pair) {
+        return raw(CUDDBDD.relnext0(a, b, cube(var), ((CUDDBDDPairing) pair)._ptr));
+    }
+    
+    public long replaceRaw(long a, BDDPairing pair) {
+        return raw(CUDDBDD.replace0(a, ((CUDDBDDPairing) pair)._ptr));
+    }
+    
+    public long imageRaw(long[] relations, long from, long conjunct, BDDVarSet var, BDDPairing pair, long deadline) {
+        long p = pair == null ? 0 : ((CUDDBDDPairing) pair)._ptr;
+        long remaining = -1;
+        if (deadline != Long.MAX_VALUE) {
+            remaining = deadline - System.currentTimeMillis();
+            if (remaining < 0)
+                return INVALID_RAW;
+        }
+        long b = image0(relations, from, conjunct, cube(var), p, remaining);
+        if (b == 0)
+            return INVALID_RAW;
+        return raw(b);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#reorderVerbose(int)
      */
@@ -612,6 +793,20 @@ public class CUDDFactory extends BDDFactory {
         }
         private static native long relprod0(long b, long c, long d);
         
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#relnext(net.sf.javabdd.BDD, net.sf.javabdd.BDDVarSet, net.sf.javabdd.BDDPairing)
+         */
+        public BDD relnext(BDD that, BDDVarSet var, BDDPairing pair) {
+            CUDDBDD c = (CUDDBDD) that;
+            CUDDBDD d = (CUDDBDD) ((BDDVarSet.DefaultImpl) var).b;
+            CUDDBDDPairing p = (CUDDBDDPairing) pair;
+            long b = relnext0(_ddnode_ptr, c._ddnode_ptr, d._ddnode_ptr, p._ptr);
+            if (b == 0)
+                return null;
+            return new CUDDBDD(b);
+        }
+        private static native long relnext0(long b, long c, long d, long p);
+        
         /* (non-Javadoc)
          * @see net.sf.javabdd.BDD#compose(net.sf.javabdd.BDD, int)
          */
@@ -0,0 +1,427 @@
+// EVBDD.java, part of Gamer's extensions of JavaBDD
+// Copyright (C) 2007-2012 Peter Kissmann
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * <p>An experimental store of edge-valued BDDs (EVBDDs), which represent
+ * functions from states to non-negative integers, e.g., the cost with which a
+ * state has been reached.  A single diagram can hold a whole open list of a
+ * cost-optimal search, sharing the substructure of all its buckets.</p>
+ *
+ * <p>The diagrams are kept in normal form: every edge carries a value that is
+ * added along a path, the value of the terminal is 0, and of the two outgoing
+ * edges of each node at least one carries the value 0.  Thus, the value on
+ * the edge into the root is the minimum of the function.  States that are
+ * not contained in the function are mapped to INFINITY.</p>
+ *
+ * <p>An edge is encoded as a long whose upper half is the value and whose
+ * lower half is the index of the node it points to.  The nodes are ordered by
+ * the levels of the variables of the BDD factory at the time the edges are
+ * created, so dynamic reordering must be disabled while a store is in use.</p>
+ *
+ * @author Peter Kissmann
+ * @version $Id$
+ */
+public class EVBDD {
+
+    /**
+     * The value of all states not contained in a function.
+     */
+    public static final int INFINITY = Integer.MAX_VALUE;
+
+    /**
+     * The edge representing the empty function (all states map to INFINITY).
+     */
+    public static final long EMPTY = edge(INFINITY, 0);
+
+    private static final int TERMINAL = 0;
+
+    private final BDDFactory factory;
+
+    private int[] level;
+    private int[] low;
+    private int[] lowValue;
+    private int[] high;
+    private int[] highValue;
+    private int[] next;
+    private int[] hashHead;
+    private int size;
+
+    /**
+     * <p>Creates a new, empty store for edge-valued BDDs over the variables of
+     * the given factory.</p>
+     *
+     * @param factory  the BDD factory
+     * @param initialSize  initial number of nodes
+     */
+    public EVBDD(BDDFactory factory, int initialSize) {
+        this.factory = factory;
+        allocate(Math.max(initialSize, 16));
+        // node 0 is the terminal
+        level[TERMINAL] = Integer.MAX_VALUE;
+        size = 1;
+    }
+
+    private void allocate(int capacity) {
+        level = new int[capacity];
+        low = new int[capacity];
+        lowValue = new int[capacity];
+        high = new int[capacity];
+        highValue = new int[capacity];
+        next = new int[capacity];
+        hashHead = new int[capacity];
+        java.util.Arrays.fill(hashHead, -1);
+    }
+
+    private static long edge(int value, int node) {
+        return ((long) value << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    /**
+     * <p>Returns the value on the given edge, i.e., the minimum of the
+     * function it represents.</p>
+     *
+     * @param e  an edge
+     * @return the minimal value, or INFINITY if the function is empty
+     */
+    public static int value(long e) {
+        return (int) (e >> 32);
+    }
+
+    private static int node(long e) {
+        return (int) e;
+    }
+
+    private static long add(long e, int value) {
+        if (value(e) == INFINITY)
+            return e;
+        return edge(value(e) + value, node(e));
+    }
+
+    /**
+     * <p>Checks whether the function maps all states to INFINITY.</p>
+     *
+     * @param e  an edge
+     * @return true if the function is empty
+     */
+    public static boolean isEmpty(long e) {
+        return value(e) == INFINITY;
+    }
+
+    /**
+     * <p>Returns the number of nodes allocated in this store.</p>
+     *
+     * @return number of nodes, including the terminal
+     */
+    public int nodeCount() {
+        return size;
+    }
+
+    private int hash(int lvl, int l, int lv, int h, int hv) {
+        int hash = lvl;
+        hash = 31 * hash + l;
+        hash = 31 * hash + lv;
+        hash = 31 * hash + h;
+        hash = 31 * hash + hv;
+        return (hash & 0x7FFFFFFF) % hashHead.length;
+    }
+
+    private void resize() {
+        int[] oldLevel = level, oldLow = low, oldLowValue = lowValue;
+        int[] oldHigh = high, oldHighValue = highValue;
+        allocate(level.length * 2);
+        System.arraycopy(oldLevel, 0, level, 0, size);
+        System.arraycopy(oldLow, 0, low, 0, size);
+        System.arraycopy(oldLowValue, 0, lowValue, 0, size);
+        System.arraycopy(oldHigh, 0, high, 0, size);
+        System.arraycopy(oldHighValue, 0, highValue, 0, size);
+        for (int n = 1; n < size; n++) {
+            int h = hash(level[n], low[n], lowValue[n], high[n], highValue[n]);
+            next[n] = hashHead[h];
+            hashHead[h] = n;
+        }
+    }
+
+    /**
+     * Finds or creates the node with the given children and returns the
+     * normalized edge pointing to it.
+     */
+    private long makeNode(int lvl, long lowEdge, long highEdge) {
+        if (lowEdge == highEdge)
+            return lowEdge;
+        int lv = value(lowEdge);
+        int hv = value(highEdge);
+        int min = Math.min(lv, hv);
+        if (lv != INFINITY) lv -= min;
+        if (hv != INFINITY) hv -= min;
+        int l = node(lowEdge);
+        int h = node(highEdge);
+        int hash = hash(lvl, l, lv, h, hv);
+        for (int n = hashHead[hash]; n >= 0; n = next[n]) {
+            if (level[n] == lvl && low[n] == l && lowValue[n] == lv
+                && high[n] == h && highValue[n] == hv)
+                return edge(min, n);
+        }
+        if (size == level.length) {
+            resize();
+            hash = hash(lvl, l, lv, h, hv);
+        }
+        int n = size++;
+        level[n] = lvl;
+        low[n] = l;
+        lowValue[n] = lv;
+        high[n] = h;
+        highValue[n] = hv;
+        next[n] = hashHead[hash];
+        hashHead[hash] = n;
+        return edge(min, n);
+    }
+
+    private long lowEdge(int n) {
+        if (n == TERMINAL) return edge(0, TERMINAL);
+        if (lowValue[n] == INFINITY) return EMPTY;
+        return edge(lowValue[n], low[n]);
+    }
+
+    private long highEdge(int n) {
+        if (n == TERMINAL) return edge(0, TERMINAL);
+        if (highValue[n] == INFINITY) return EMPTY;
+        return edge(highValue[n], high[n]);
+    }
+
+    /**
+     * <p>Returns the function that maps all states of the given BDD to the
+     * given value and all other states to INFINITY.</p>
+     *
+     * @param states  the states
+     * @param value  their value
+     * @return the edge representing the function
+     */
+    public long fromBDD(BDD states, int value) {
+        long root = factory.handle(states);
+        long result = add(fromBDD_rec(root, new HashMap<Long, Long>()), value);
+        factory.deref(root);
+        return result;
+    }
+
+    /* Walks the BDD on raw handles, so that no BDD object is created per
+     * node.  The children stay alive through the root, so each handle is
+     * released as soon as its subdiagram is converted. */
+    private long fromBDD_rec(long b, HashMap<Long, Long> cache) {
+        if (factory.isZeroRaw(b))
+            return EMPTY;
+        if (factory.isOneRaw(b))
+            return edge(0, TERMINAL);
+        Long key = new Long(b);
+        Long cached = cache.get(key);
+        if (cached != null)
+            return cached.longValue();
+        long l = factory.lowRaw(b);
+        long lowEdge = fromBDD_rec(l, cache);
+        factory.deref(l);
+        long h = factory.highRaw(b);
+        long highEdge = fromBDD_rec(h, cache);
+        factory.deref(h);
+        long result = makeNode(factory.levelRaw(b), lowEdge, highEdge);
+        cache.put(key, new Long(result));
+        return result;
+    }
+
+    /**
+     * <p>Returns the pointwise minimum of two functions.  This is the
+     * min-merge of a new bucket into an open list.</p>
+     *
+     * @param a  an edge
+     * @param b  an edge
+     * @return the edge representing min(a, b)
+     */
+    public long min(long a, long b) {
+        return min_rec(a, b, new HashMap<Key, Long>());
+    }
+
+    private long min_rec(long a, long b, HashMap<Key, Long> cache) {
+        int va = value(a);
+        int vb = value(b);
+        if (va == INFINITY)
+            return b;
+        if (vb == INFINITY)
+            return a;
+        int na = node(a);
+        int nb = node(b);
+        int m = Math.min(va, vb);
+        if (na == nb)
+            return edge(m, na);
+        Key key = new Key(na, va - m, nb, vb - m);
+        Long cached = cache.get(key);
+        if (cached != null)
+            return add(cached.longValue(), m);
+        int lvl = Math.min(level[na], level[nb]);
+        long aLow, aHigh, bLow, bHigh;
+        if (level[na] == lvl) {
+            aLow = add(lowEdge(na), va - m);
+            aHigh = add(highEdge(na), va - m);
+        } else {
+            aLow = aHigh = edge(va - m, na);
+        }
+        if (level[nb] == lvl) {
+            bLow = add(lowEdge(nb), vb - m);
+            bHigh = add(highEdge(nb), vb - m);
+        } else {
+            bLow = bHigh = edge(vb - m, nb);
+        }
+        long result = makeNode(lvl, min_rec(aLow, bLow, cache),
+                               min_rec(aHigh, bHigh, cache));
+        cache.put(key, new Long(result));
+        return add(result, m);
+    }
+
+    /**
+     * <p>Returns the BDD of all states that the function maps to exactly the
+     * given value.  Typically used with the minimum of the function to
+     * extract the bucket to be expanded next.</p>
+     *
+     * @param e  an edge
+     * @param value  the value of the slice
+     * @return the BDD of the states with the given value
+     */
+    public BDD slice(long e, int value) {
+        if (value(e) == INFINITY || value(e) > value)
+            return factory.zero();
+        HashMap<Key, BDD> cache = new HashMap<Key, BDD>();
+        BDD result = slice_rec(node(e), value - value(e), cache).id();
+        for (Iterator<BDD> i = cache.values().iterator(); i.hasNext(); ) {
+            i.next().free();
+        }
+        return result;
+    }
+
+    private BDD slice_rec(int n, int rest, HashMap<Key, BDD> cache) {
+        if (n == TERMINAL)
+            return rest == 0 ? factory.one() : factory.zero();
+        Key key = new Key(n, rest, 0, 0);
+        BDD cached = cache.get(key);
+        if (cached != null)
+            return cached.id();
+        BDD l, h;
+        if (lowValue[n] == INFINITY || lowValue[n] > rest)
+            l = factory.zero();
+        else
+            l = slice_rec(low[n], rest - lowValue[n], cache);
+        if (highValue[n] == INFINITY || highValue[n] > rest)
+            h = factory.zero();
+        else
+            h = slice_rec(high[n], rest - highValue[n], cache);
+        BDD var = factory.ithVar(factory.level2Var(level[n]));
+        BDD result = var.ite(h, l);
+        var.free();
+        l.free();
+        h.free();
+        cache.put(key, result.id());
+        return result;
+    }
+
+    /**
+     * <p>Removes all states with a value of at most the given one, i.e., maps
+     * them to INFINITY.  Together with slice() this extracts the minimum-cost
+     * bucket from an open list.</p>
+     *
+     * @param e  an edge
+     * @param value  the largest value to be removed
+     * @return the edge representing the remaining function
+     */
+    public long removeAtMost(long e, int value) {
+        if (value(e) == INFINITY || value(e) > value)
+            return e;
+        return add(remove_rec(node(e), value - value(e), new HashMap<Key, Long>()),
+                   value(e));
+    }
+
+    private long remove_rec(int n, int rest, HashMap<Key, Long> cache) {
+        if (n == TERMINAL)
+            return EMPTY;
+        Key key = new Key(n, rest, 0, 0);
+        Long cached = cache.get(key);
+        if (cached != null)
+            return cached.longValue();
+        long l, h;
+        if (lowValue[n] == INFINITY || lowValue[n] > rest)
+            l = lowEdge(n);
+        else
+            l = add(remove_rec(low[n], rest - lowValue[n], cache), lowValue[n]);
+        if (highValue[n] == INFINITY || highValue[n] > rest)
+            h = highEdge(n);
+        else
+            h = add(remove_rec(high[n], rest - highValue[n], cache), highValue[n]);
+        long result = makeNode(level[n], l, h);
+        cache.put(key, new Long(result));
+        return result;
+    }
+
+    /**
+     * <p>Frees all nodes that are not reachable from the given edges.  The
+     * node indices change, so the edges are replaced in the given array by
+     * their new versions.</p>
+     *
+     * @param roots  the edges still in use; updated in place
+     */
+    public void compact(long[] roots) {
+        int[] oldLevel = level, oldLow = low, oldLowValue = lowValue;
+        int[] oldHigh = high, oldHighValue = highValue;
+        int oldSize = size;
+        allocate(level.length);
+        level[TERMINAL] = Integer.MAX_VALUE;
+        size = 1;
+        int[] map = new int[oldSize];
+        java.util.Arrays.fill(map, -1);
+        map[TERMINAL] = TERMINAL;
+        for (int i = 0; i < roots.length; i++) {
+            if (isEmpty(roots[i]))
+                continue;
+            int n = copy_rec(node(roots[i]), map, oldLevel, oldLow,
+                             oldLowValue, oldHigh, oldHighValue);
+            roots[i] = edge(value(roots[i]), n);
+        }
+    }
+
+    private int copy_rec(int n, int[] map, int[] oldLevel, int[] oldLow,
+                         int[] oldLowValue, int[] oldHigh, int[] oldHighValue) {
+        if (map[n] >= 0)
+            return map[n];
+        long l = oldLowValue[n] == INFINITY ? EMPTY : edge(oldLowValue[n],
+            copy_rec(oldLow[n], map, oldLevel, oldLow, oldLowValue, oldHigh, oldHighValue));
+        long h = oldHighValue[n] == INFINITY ? EMPTY : edge(oldHighValue[n],
+            copy_rec(oldHigh[n], map, oldLevel, oldLow, oldLowValue, oldHigh, oldHighValue));
+        // the node is already normalized, so the value of the new edge is 0
+        map[n] = node(makeNode(oldLevel[n], l, h));
+        return map[n];
+    }
+
+    /**
+     * Key of the operation caches.
+     */
+    private static class Key {
+        final int a, b, c, d;
+
+        Key(int a, int b, int c, int d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+
+        public int hashCode() {
+            return ((a * 31 + b) * 31 + c) * 31 + d;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return a == k.a && b == k.b && c == k.c && d == k.d;
+        }
+    }
+}
@@ -33,10 +33,57 @@ public class JFactory extends BDDFactoryIntImpl {
     /**
      * Flush the operation cache on every garbage collection.  If this is false,
      * we only clean the collected entries on every GC, rather than emptying the
-     * whole cache.  For most problems, you should keep this set to true.
+     * whole cache: an entry survives if its operands, its result and the
+     * variable set or pairing it was computed for are all still alive.  The
+     * number of surviving and cleared entries is recorded in the cache
+     * statistics.
      */
-    public static boolean FLUSH_CACHE_ON_GC = true;
+    public static boolean FLUSH_CACHE_ON_GC = false;
     
+    /**
+     * Keep the unique table in a separate open-addressing index with linear
+     * probing, instead of hash chains threaded through the nodes.  A node then
+     * only consists of its level, reference count and successors, i.e. three
+     * ints instead of five.  Dynamic variable reordering works on the hash
+     * chains and is not available in this mode.  Set with the
+     * <tt>jfactory.openaddressing</tt> property.
+     */
+    public static final boolean OPEN_ADDRESSING =
+        Boolean.valueOf(getProperty("jfactory.openaddressing", "false")).booleanValue();
+
+    /**
+     * While a block is sifted, it is not moved any further in one direction
+     * once the number of nodes exceeds the best size found so far by this
+     * factor.
+     */
+    public static double SIFT_MAX_GROWTH = 1.2;
+
+    /**
+     * Time budget of one sifting pass in milliseconds, or 0 for no limit.  If
+     * it is exhausted, the block being sifted is moved to its best position
+     * and the remaining blocks keep their places.
+     */
+    public static long SIFT_MAX_TIME = 0;
+
+    /**
+     * Budget of one sifting pass in nodes moved, i.e. the sum of the sizes of
+     * the two blocks over all block swaps, or 0 for no limit.  Handled like
+     * SIFT_MAX_TIME.
+     */
+    public static long SIFT_MAX_NODES = 0;
+
+    /**
+     * Fraction of the maximum Java heap that is kept free when the node table
+     * grows, or 0 to grow regardless of the heap.  The table only grows into
+     * the remaining free heap, running the Java garbage collector once if
+     * that does not suffice.  If not even one more segment of nodes fits, the
+     * table keeps its size and the factory garbage collects its nodes each
+     * time they run out, failing only if none can be freed.  Set with the
+     * <tt>jfactory.heapreserve</tt> property.
+     */
+    public static double HEAP_RESERVE =
+        Double.parseDouble(getProperty("jfactory.heapreserve", "0.1"));
+
     static final boolean VERIFY_ASSERTIONS = false;
     static final boolean CACHESTATS = false;
     static final boolean SWAPCOUNT = false;
@@ -180,6 +227,7 @@ public class JFactory extends BDDFactoryIntImpl {
     protected int fullSatOne_impl(int v) { return bdd_fullsatone(v); }
     
     protected int replace_impl(int v, BDDPairing p) { return bdd_replace(v, (bddPair)p); }
+    protected int relnext_impl(int v1, int v2, int v3, BDDPairing p) { return bdd_relnext(v1, v2, v3, (bddPair)p); }
     protected int veccompose_impl(int v, BDDPairing p) { return bdd_veccompose(v, (bddPair)p); }
     
     protected int nodeCount_impl(int v) { return bdd_nodecount(v); }
@@ -211,6 +259,7 @@ public class JFactory extends BDDFactoryIntImpl {
     public int setMaxIncrease(int x) { return bdd_setmaxincrease(x); }
     public double setIncreaseFactor(double x) { return bdd_setincreasefactor(x); }
     public int getNodeNum() { return bdd_getnodenum(); }
+    public int getPeakNodeNum() { return Math.max(bddpeaknum, bdd_getnodenum()); }
     public int getCacheSize() { return cachesize; }
     public int reorderGain() { return bdd_reorder_gain(); }
     public void printStat() { bdd_fprintstat(System.out); }
@@ -224,6 +273,8 @@ public class JFactory extends BDDFactoryIntImpl {
     public int level2Var(int level) { return bddlevel2var[level]; }
     public int var2Level(int var) { return bddvar2level[var]; }
     public int getReorderTimes() { return bddreordertimes; }
+    public void setReorderTimes(int n) { bddreordertimes = n; }
+    public void setNextReorder(int nodes) { usednodes_nextreorder = nodes; }
     public void disableReorder() { bdd_disable_reorder(); }
     public void enableReorder() { bdd_enable_reorder(); }
     public int reorderVerbose(int v) { return bdd_reorder_verbose(v); }
@@ -231,6 +282,13 @@ public class JFactory extends BDDFactoryIntImpl {
     public void autoReorder(ReorderMethod method) { bdd_autoreorder(method.id); }
     public void autoReorder(ReorderMethod method, int max) { bdd_autoreorder_times(method.id, max); }
     public void swapVar(int v1, int v2) { bdd_swapvar(v1, v2); }
+    public long getRuntime() { return System.currentTimeMillis() - bddstarttime; }
+    public long getRuntimeLimit() { return runtimelimit; }
+    public void setRuntimeLimit(long limit) { runtimelimit = limit; }
+    public void unsetRuntimeLimit() { runtimelimit = Long.MAX_VALUE; }
+    public boolean supportsRuntimeLimit() { return true; }
+    public void setNewNodeLimit(long limit) { newnodelimit = limit; newnodebase = bddproduced; }
+    public void unsetNewNodeLimit() { newnodelimit = Long.MAX_VALUE; }
 
     public ReorderMethod getReorderMethod() {
         switch (bddreordermethod) {
@@ -275,6 +333,8 @@ public class JFactory extends BDDFactoryIntImpl {
             INSTANCE.misccache = this.misccache.copy();
         if (countcache != null)
             INSTANCE.countcache = this.countcache.copy();
+        if (relnextcache != null)
+            INSTANCE.relnextcache = this.relnextcache.copy();
         // TODO: potential difference here (!)
         INSTANCE.rng = new Random();
         INSTANCE.verbose = this.verbose;
@@ -291,15 +351,25 @@ public class JFactory extends BDDFactoryIntImpl {
         INSTANCE.bddvarnum = this.bddvarnum;
 
         INSTANCE.gbcollectnum = this.gbcollectnum;
+        INSTANCE.bddpeaknum = this.bddpeaknum;
         INSTANCE.cachesize = this.cachesize;
         INSTANCE.gbcclock = this.gbcclock;
         INSTANCE.usednodes_nextreorder = this.usednodes_nextreorder;
+        INSTANCE.bddstarttime = this.bddstarttime;
+        INSTANCE.runtimelimit = this.runtimelimit;
+        INSTANCE.newnodelimit = this.newnodelimit;
+        INSTANCE.newnodebase = this.newnodebase;
         
         INSTANCE.bddrefstacktop = this.bddrefstacktop;
         INSTANCE.bddresized = this.bddresized;
         INSTANCE.minfreenodes = this.minfreenodes;
-        INSTANCE.bddnodes = new int[this.bddnodes.length];
-        System.arraycopy(this.bddnodes, 0, INSTANCE.bddnodes, 0, this.bddnodes.length);
+        INSTANCE.bddnodes = new int[this.bddnodes.length][];
+        for (int i = 0; i < this.bddnodes.length; i++)
+            INSTANCE.bddnodes[i] = this.bddnodes[i].clone();
+        if (this.bddunique != null) {
+            INSTANCE.bddunique = new int[this.bddunique.length];
+            System.arraycopy(this.bddunique, 0, INSTANCE.bddunique, 0, this.bddunique.length);
+        }
         INSTANCE.bddrefstack = new int[this.bddrefstack.length];
         System.arraycopy(this.bddrefstack, 0, INSTANCE.bddrefstack, 0, this.bddrefstack.length);
         INSTANCE.bddvar2level = new int[this.bddvar2level.length];
@@ -521,99 +591,107 @@ public class JFactory extends BDDFactoryIntImpl {
     static final int offset__low = 1;
     static final int offset__high = 2;
     static final int offset__hash = 3;
-    static final int offset__next = 4;
-    static final int __node_size = 5;
+    static final int offset__next = OPEN_ADDRESSING ? offset__high : 4;
+    static final int __node_size = OPEN_ADDRESSING ? 3 : 5;
+    // With OPEN_ADDRESSING there are no hash chains; the free list is
+    // threaded through the high field of the free nodes instead.
+
+    // The node table is split into segments of SEG_NODES nodes, so that it
+    // can grow by allocating new segments without copying the old ones.
+    static final int SEG_BITS = 16;
+    static final int SEG_NODES = 1 << SEG_BITS;
+    static final int SEG_MASK = SEG_NODES - 1;
     
     private final boolean HASREF(int node) {
-        boolean r = (bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != 0;
+        boolean r = (bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] & REF_MASK) != 0;
         return r;
     }
 
     private final void SETMAXREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] |= REF_MASK;
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] |= REF_MASK;
     }
 
     private final void CLEARREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~REF_MASK;
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] &= ~REF_MASK;
     }
 
     private final void INCREF(int node) {
-        if ((bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != REF_MASK)
-            bddnodes[node*__node_size + offset__refcou_and_level] += REF_INC;
+        if ((bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] & REF_MASK) != REF_MASK)
+            bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] += REF_INC;
     }
 
     private final void DECREF(int node) {
-        int rc = bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK;
+        int rc = bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] & REF_MASK;
         if (rc != REF_MASK && rc != 0)
-            bddnodes[node*__node_size + offset__refcou_and_level] -= REF_INC;
+            bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] -= REF_INC;
     }
 
     private final int GETREF(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] >>> 22;
+        return bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] >>> 22;
     }
 
     private final int LEVEL(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & LEV_MASK;
+        return bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] & LEV_MASK;
     }
 
     private final int LEVELANDMARK(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & (LEV_MASK | MARK_MASK);
+        return bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] & (LEV_MASK | MARK_MASK);
     }
 
     private final void SETLEVEL(int node, int val) {
         if (VERIFY_ASSERTIONS) _assert(val == (val & LEV_MASK));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~LEV_MASK;
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] &= ~LEV_MASK;
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] |= val;
     }
 
     private final void SETLEVELANDMARK(int node, int val) {
         if (VERIFY_ASSERTIONS) _assert(val == (val & (LEV_MASK | MARK_MASK)));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~(LEV_MASK | MARK_MASK);
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] &= ~(LEV_MASK | MARK_MASK);
+        bddnodes[node >>> SEG_BITS][(node & SEG_MASK)*__node_size + offset__refcou_and_level] |= val;
     }
 
     private final void SETMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] |= MARK_MASK;
+        bddnodes[n >>> SEG_BITS][(n & SEG_MASK)*__node_size + offset__refcou_and_level] |= MARK_MASK;
     }
     
     private final void UNMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] &= ~MARK_MASK;
+        bddnodes[n >>> SEG_BITS][(n & SEG_MASK)*__node_size + offset__refcou_and_level] &= ~MARK_MASK;
     }
     
     private final boolean MARKED(int n) {
-        return (bddnodes[n*__node_size + offset__refcou_and_level] & MARK_MASK) != 0;
+        return (bddnodes[n >>> SEG_BITS][(n & SEG_MASK)*__node_size + offset__refcou_and_level] & MARK_MASK) != 0;
     }
 
     private final int LOW(int r) {
-        return bddnodes[r*__node_size + offset__low];
+        return bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__low];
     }
 
     private final void SETLOW(int r, int v) {
-        bddnodes[r*__node_size + offset__low] = v;
+        bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__low] = v;
     }
     
     private final int HIGH(int r) {
-        return bddnodes[r*__node_size + offset__high];
+        return bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__high];
     }
 
     private final void SETHIGH(int r, int v) {
-        bddnodes[r*__node_size + offset__high] = v;
+        bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__high] = v;
     }
     
     private final int HASH(int r) {
-        return bddnodes[r*__node_size + offset__hash];
+        return bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__hash];
     }
     
     private final void SETHASH(int r, int v) {
-        bddnodes[r*__node_size + offset__hash] = v;
+        bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__hash] = v;
     }
     
     private final int NEXT(int r) {
-        return bddnodes[r*__node_size + offset__next];
+        return bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__next];
     }
     
     private final void SETNEXT(int r, int v) {
-        bddnodes[r*__node_size + offset__next] = v;
+        bddnodes[r >>> SEG_BITS][(r & SEG_MASK)*__node_size + offset__next] = v;
     }
     
     private final int VARr(int n) {
@@ -636,12 +714,14 @@ public class JFactory extends BDDFactoryIntImpl {
 
     private static class BddCacheDataI extends BddCacheData {
         int res;
+        int d; /* Fourth key: the pairing id (relnext) or variable set (appex, quant) */
         BddCacheData copy() {
             BddCacheDataI that = new BddCacheDataI();
             that.a = this.a;
             that.b = this.b;
             that.c = this.c;
             that.res = this.res;
+            that.d = this.d;
             return that;
         }
     }
@@ -707,7 +787,8 @@ public class JFactory extends BDDFactoryIntImpl {
     int bddnodesize; /* Number of allocated nodes */
     int bddmaxnodesize; /* Maximum allowed number of nodes */
     int bddmaxnodeincrease; /* Max. # of nodes used to inc. table */
-    int[] bddnodes; /* All of the bdd nodes */
+    int[][] bddnodes; /* All of the bdd nodes, in segments */
+    int[] bddunique; /* Open-addressing unique table (OPEN_ADDRESSING only) */
     int bddfreepos; /* First free node */
     int bddfreenum; /* Number of free nodes */
     int bddproduced; /* Number of new nodes ever produced */
@@ -725,9 +806,20 @@ public class JFactory extends BDDFactoryIntImpl {
     int[] bddvarset; /* Set of defined BDD variables */
     int univ = 1; /* Universal set (used for ZDD) */
     int gbcollectnum; /* Number of garbage collections */
+    int bddpeaknum; /* Most nodes in use at the same time */
     int cachesize; /* Size of the operator caches */
     long gbcclock; /* Clock ticks used in GBC */
     int usednodes_nextreorder; /* When to do reorder next time */
+    int heapgcnext; /* Garbage collection after which the heap is checked again */
+    long bddstarttime; /* Time the factory was initialized (ms) */
+    long runtimelimit = Long.MAX_VALUE; /* Runtime at which operations are abandoned (ms) */
+    long newnodelimit = Long.MAX_VALUE; /* Number of new nodes allowed since newnodebase */
+    int newnodebase; /* Value of bddproduced when the node limit was set */
+    int limitcountdown = LIMITINTERVAL; /* Calls of makenode until the limits are checked */
+    int opreorderdisabled; /* Value of reorderdisabled when the operation started */
+
+    static final int HEAPGCINTERVAL = 8;
+    static final int LIMITINTERVAL = 1024;
 
     static final int BDD_MEMORY = (-1); /* Out of memory */
     static final int BDD_VAR = (-2); /* Unknown variable */
@@ -800,6 +892,12 @@ public class JFactory extends BDDFactoryIntImpl {
         return Math.abs(TRIPLE(lvl, l, h) % bddnodesize);
     }
 
+    final int UNIQUEHASH(int lvl, int l, int h) {
+        // Scatter neighbouring triples, which would otherwise form long
+        // runs under linear probing.
+        return Math.abs((TRIPLE(lvl, l, h) * 0x9E3779B1) % bddunique.length);
+    }
+
     int bdd_ithvar(int var) {
         if (var < 0 || var >= bddvarnum) {
             bdd_error(BDD_VAR);
@@ -917,6 +1015,9 @@ public class JFactory extends BDDFactoryIntImpl {
     static final int APPEXHASH(int l, int r, int op) {
         return PAIR(l, r);
     }
+    static final int RELNEXTHASH(int l, int r, int pairid) {
+        return TRIPLE(l, r, pairid);
+    }
 
     static final double M_LN2 = 0.69314718055994530942;
 
@@ -1113,20 +1214,16 @@ public class JFactory extends BDDFactoryIntImpl {
         BddCacheDataI entry;
         int res;
 
-        if (ISONE(f))
-            return g;
         if (ISZERO(f))
             return h;
         if (g == h)
             return g;
-        if (ISONE(g) && ISZERO(h))
-            return f;
-        if (ISZERO(g) && ISONE(h))
-            return zdiff_rec(univ, f);
-        
-        int v = Math.min(LEVEL(g), LEVEL(h));
-        if (LEVEL(f) < v)
-            return zite_rec(LOW(f), g, h);
+        if (ISZERO(g))
+            return zdiff_rec(h, f);
+        if (ISZERO(h))
+            return zand_rec(f, g);
+        if (ISCONST(f) && ISCONST(g) && ISCONST(h))
+            return g;
 
         entry = BddCache_lookupI(itecache, ITEHASH(f, g, h));
         if (entry.a == f && entry.b == g && entry.c == h) {
@@ -1137,50 +1234,16 @@ public class JFactory extends BDDFactoryIntImpl {
         if (CACHESTATS)
             cachestats.opMiss++;
 
-        if (LEVEL(f) == LEVEL(g)) {
-            if (LEVEL(f) == LEVEL(h)) {
-                PUSHREF(zite_rec(LOW(f), LOW(g), LOW(h)));
-                PUSHREF(zite_rec(HIGH(f), HIGH(g), HIGH(h)));
-                res = zdd_makenode(LEVEL(f), READREF(2), READREF(1));
-                POPREF(2);
-            } else if (LEVEL(f) < LEVEL(h)) {
-                PUSHREF(zite_rec(LOW(f), LOW(g), h));
-                PUSHREF(zite_rec(HIGH(f), HIGH(g), 0));
-                res = zdd_makenode(LEVEL(f), READREF(2), READREF(1));
-                POPREF(2);
-            } else /* f > h */ {
-                PUSHREF(zite_rec(f, g, LOW(h)));
-                res = zdd_makenode(LEVEL(h), HIGH(h), READREF(1));
-                POPREF(1);
-            }
-        } else if (LEVEL(f) < LEVEL(g)) {
-            if (LEVEL(f) == LEVEL(h)) {
-                PUSHREF(zite_rec(LOW(f), g, LOW(h)));
-                PUSHREF(zite_rec(HIGH(f), 0, HIGH(h)));
-                res = zdd_makenode(LEVEL(f), READREF(2), READREF(1));
-                POPREF(2);
-            } else if (LEVEL(f) < LEVEL(h)) {
-                res = zite_rec(LOW(f), g, h);
-            } else /* f > h */ {
-                PUSHREF(zite_rec(f, g, LOW(h)));
-                res = zdd_makenode(LEVEL(h), HIGH(h), READREF(1));
-                POPREF(1);
-            }
-        } else /* f > g */ {
-            if (LEVEL(g) == LEVEL(h)) {
-                PUSHREF(zite_rec(f, LOW(g), LOW(h)));
-                res = zdd_makenode(LEVEL(g), HIGH(h), READREF(1));
-                POPREF(1);
-            } else if (LEVEL(g) < LEVEL(h)) {
-                PUSHREF(zite_rec(f, LOW(g), h));
-                res = zdd_makenode(LEVEL(g), 0, READREF(1));
-                POPREF(1);
-            } else /* g > h */ {
-                PUSHREF(zite_rec(f, g, LOW(h)));
-                res = zdd_makenode(LEVEL(h), HIGH(h), READREF(1));
-                POPREF(1);
-            }
-        }
+        /* A variable skipped by an operand is 0 in all its sets */
+        int lev = Math.min(LEVEL(f), Math.min(LEVEL(g), LEVEL(h)));
+        PUSHREF(zite_rec(LEVEL(f) == lev ? LOW(f) : f,
+                         LEVEL(g) == lev ? LOW(g) : g,
+                         LEVEL(h) == lev ? LOW(h) : h));
+        PUSHREF(zite_rec(LEVEL(f) == lev ? HIGH(f) : 0,
+                         LEVEL(g) == lev ? HIGH(g) : 0,
+                         LEVEL(h) == lev ? HIGH(h) : 0));
+        res = zdd_makenode(lev, READREF(2), READREF(1));
+        POPREF(2);
 
         entry.a = f;
         entry.b = g;
@@ -1355,17 +1418,17 @@ public class JFactory extends BDDFactoryIntImpl {
                         case bddop_imp:
                         {
                             // TODO: A real ZDD implementation
-                            int a = bdd_addref(zdiff_rec(l, r));
+                            int a = PUSHREF(zdiff_rec(l, r));
                             res = zdiff_rec(univ, a);
-                            bdd_delref(a);
+                            POPREF(1);
                             break;
                         }
                         case bddop_invimp:
                         {
                             // TODO: A real ZDD implementation
-                            int a = bdd_addref(zdiff_rec(r, l));
+                            int a = PUSHREF(zdiff_rec(r, l));
                             res = zdiff_rec(univ, a);
-                            bdd_delref(a);
+                            POPREF(1);
                             break;
                         }
                         case bddop_less:
@@ -1377,37 +1440,38 @@ public class JFactory extends BDDFactoryIntImpl {
                         case bddop_nand:
                         {
                             // TODO: A real ZDD implementation
-                            int k = bdd_addref(zand_rec(l, r));
+                            int k = PUSHREF(zand_rec(l, r));
                             res = zdiff_rec(univ, k);
-                            bdd_delref(k);
+                            POPREF(1);
                             break;
                         }
                         case bddop_nor:
                         {
                             // TODO: A real ZDD implementation
-                            int k = bdd_addref(zor_rec(l, r));
+                            int k = PUSHREF(zor_rec(l, r));
                             res = zdiff_rec(univ, k);
-                            bdd_delref(k);
+                            POPREF(1);
                             break;
                         }
                         case bddop_xor:
                         {
                             // TODO: A real ZDD implementation
-                            int a = bdd_addref(zand_rec(l, r));
-                            int b = bdd_addref(zor_rec(l, r));
+                            int a = PUSHREF(zand_rec(l, r));
+                            int b = PUSHREF(zor_rec(l, r));
                             res = zdiff_rec(b, a);
-                            bdd_delref(a); bdd_delref(b);
+                            POPREF(2);
                             break;
                         }
                         case bddop_biimp:
                         {
                             // TODO: A real ZDD implementation
-                            int a = bdd_addref(zand_rec(l, r));
-                            int b = bdd_addref(zor_rec(l, r));
-                            int c = bdd_addref(zdiff_rec(b, a));
-                            bdd_delref(a); bdd_delref(b);
+                            int a = PUSHREF(zand_rec(l, r));
+                            int b = PUSHREF(zor_rec(l, r));
+                            int c = zdiff_rec(b, a);
+                            POPREF(2);
+                            PUSHREF(c);
                             res = zdiff_rec(univ, c);
-                            bdd_delref(c);
+                            POPREF(1);
                             break;
                         }
                         default:
@@ -1624,7 +1688,8 @@ public class JFactory extends BDDFactoryIntImpl {
         }
         
         entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
-        if (entry.a == l && entry.b == r && entry.c == appexid) {
+        if (entry.a == l && entry.b == r && entry.c == appexid &&
+            entry.d == quantvar) {
             if (CACHESTATS)
                 cachestats.opHit++;
             return entry.res;
@@ -1663,6 +1728,7 @@ public class JFactory extends BDDFactoryIntImpl {
         entry.a = l;
         entry.b = r;
         entry.c = appexid;
+        entry.d = quantvar;
         entry.res = res;
 
         return res;
@@ -1823,7 +1889,8 @@ public class JFactory extends BDDFactoryIntImpl {
             applyop = bddop_or;
         } else {
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
+            if (entry.a == l && entry.b == r && entry.c == appexid &&
+                entry.d == quantvar) {
                 if (CACHESTATS)
                     cachestats.opHit++;
                 return entry.res;
@@ -1859,6 +1926,7 @@ public class JFactory extends BDDFactoryIntImpl {
             entry.a = l;
             entry.b = r;
             entry.c = appexid;
+            entry.d = quantvar;
             entry.res = res;
         }
 
@@ -1899,6 +1967,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 appexop = opr;
                 appexid = (var << 5) | (appexop << 1); /* FIXME: range! */
                 quantid = (appexid << 3) | CACHEID_APPEX;
+                quantvar = var;
 
                 if (numReorder == 0)
                     bdd_disable_reorder();
@@ -1922,6 +1991,121 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
+    int bdd_relnext(int l, int r, int var, bddPair pair) {
+        int res;
+        int numReorder = 1;
+
+        CHECKa(l, bddfalse);
+        CHECKa(r, bddfalse);
+        CHECKa(var, bddfalse);
+
+        if (var < 2 || ZDD) { /* Empty set or no fused operation */
+            int tmp = var < 2 ? bdd_apply(l, r, bddop_and) : bdd_appex(l, r, bddop_and, var);
+            bdd_addref(tmp);
+            try {
+                res = bdd_replace(tmp, pair);
+            } finally {
+                bdd_delref(tmp);
+            }
+            return res;
+        }
+
+        if (applycache == null) applycache = BddCacheI_init(cachesize);
+        if (relnextcache == null) relnextcache = BddCacheI_init(cachesize);
+        
+        again : for (;;) {
+            if (varset2vartable(var) < 0)
+                return bddfalse;
+            try {
+                INITREF();
+
+                applyop = bddop_or;
+                appexid = var;
+                relnextpairid = pair.id;
+                replacepair = pair.result;
+                replacelast = pair.last;
+
+                if (numReorder == 0)
+                    bdd_disable_reorder();
+                res = relnext_rec(l, r);
+                if (numReorder == 0)
+                    bdd_enable_reorder();
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
+
+        checkresize();
+        return res;
+    }
+
+    int relnext_rec(int l, int r) {
+        BddCacheDataI entry;
+        int res;
+        int level;
+
+        if (l == 0 || r == 0)
+            return 0;
+        if (l == 1 && r == 1)
+            return 1;
+
+        int LEVEL_l = LEVEL(l);
+        int LEVEL_r = LEVEL(r);
+        if (LEVEL_l > quantlast && LEVEL_r > quantlast &&
+            LEVEL_l > replacelast && LEVEL_r > replacelast) {
+            /* Neither quantification nor renaming below this point. */
+            applyop = bddop_and;
+            res = and_rec(l, r);
+            applyop = bddop_or;
+            return res;
+        }
+
+        entry = BddCache_lookupI(relnextcache, RELNEXTHASH(l, r, relnextpairid));
+        if (entry.a == l && entry.b == r && entry.c == appexid &&
+            entry.d == relnextpairid) {
+            if (CACHESTATS)
+                cachestats.opHit++;
+            return entry.res;
+        }
+        if (CACHESTATS)
+            cachestats.opMiss++;
+
+        if (LEVEL_l == LEVEL_r) {
+            level = LEVEL_l;
+            PUSHREF(relnext_rec(LOW(l), LOW(r)));
+            PUSHREF(relnext_rec(HIGH(l), HIGH(r)));
+        } else if (LEVEL_l < LEVEL_r) {
+            level = LEVEL_l;
+            PUSHREF(relnext_rec(LOW(l), r));
+            PUSHREF(relnext_rec(HIGH(l), r));
+        } else {
+            level = LEVEL_r;
+            PUSHREF(relnext_rec(l, LOW(r)));
+            PUSHREF(relnext_rec(l, HIGH(r)));
+        }
+
+        if (INVARSET(level))
+            res = or_rec(READREF(2), READREF(1));
+        else if (READREF(2) == READREF(1))
+            res = READREF(1);
+        else
+            res = bdd_correctify(LEVEL(replacepair[level]), READREF(2), READREF(1));
+
+        POPREF(2);
+
+        entry.a = l;
+        entry.b = r;
+        entry.c = appexid;
+        entry.d = relnextpairid;
+        entry.res = res;
+
+        return res;
+    }
+
     int varset2vartable(int r) {
         int n;
 
@@ -2026,7 +2210,8 @@ public class JFactory extends BDDFactoryIntImpl {
             applyop = oldop;
         } else {
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
+            if (entry.a == l && entry.b == r && entry.c == appexid &&
+                entry.d == quantvar) {
                 if (CACHESTATS)
                     cachestats.opHit++;
                 return entry.res;
@@ -2064,6 +2249,7 @@ public class JFactory extends BDDFactoryIntImpl {
             entry.a = l;
             entry.b = r;
             entry.c = appexid;
+            entry.d = quantvar;
             entry.res = res;
         }
 
@@ -2097,7 +2283,8 @@ public class JFactory extends BDDFactoryIntImpl {
             applyop = oldop;
         } else {
             entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
+            if (entry.a == l && entry.b == r && entry.c == appexid &&
+                entry.d == quantvar) {
                 if (CACHESTATS)
                     cachestats.opHit++;
                 return entry.res;
@@ -2115,7 +2302,6 @@ public class JFactory extends BDDFactoryIntImpl {
                 }
                 PUSHREF(appuni_rec(LOW(l), LOW(r), var));
                 PUSHREF(appuni_rec(HIGH(l), HIGH(r), var));
-                lev = LEVEL_l;
             } else if (LEVEL_l < LEVEL_r) {
                 if (LEVEL_l == LEVEL_var) {
                     lev = -1;
@@ -2151,6 +2337,7 @@ public class JFactory extends BDDFactoryIntImpl {
             entry.a = l;
             entry.b = r;
             entry.c = appexid;
+            entry.d = quantvar;
             entry.res = res;
         }
 
@@ -2173,7 +2360,7 @@ public class JFactory extends BDDFactoryIntImpl {
             return r;
         
         entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
+        if (entry.a == r && entry.c == quantid && entry.d == quantvar) {
             if (CACHESTATS)
                 cachestats.opHit++;
             return entry.res;
@@ -2195,6 +2382,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
         entry.a = r;
         entry.c = quantid;
+        entry.d = quantvar;
         entry.res = res;
 
         return res;
@@ -2208,7 +2396,7 @@ public class JFactory extends BDDFactoryIntImpl {
             return r;
 
         entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
+        if (entry.a == r && entry.c == quantid && entry.d == quantvar) {
             if (CACHESTATS)
                 cachestats.opHit++;
             return entry.res;
@@ -2234,6 +2422,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
         entry.a = r;
         entry.c = quantid;
+        entry.d = quantvar;
         entry.res = res;
 
         return res;
@@ -2266,7 +2455,7 @@ public class JFactory extends BDDFactoryIntImpl {
             return r;
         
         entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
+        if (entry.a == r && entry.c == quantid && entry.d == quantvar) {
             if (CACHESTATS)
                 cachestats.opHit++;
             return entry.res;
@@ -2296,6 +2485,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
         entry.a = r;
         entry.c = quantid;
+        entry.d = quantvar;
         entry.res = res;
 
         return res;
@@ -2557,6 +2747,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 INITREF();
 
                 quantid = (var << 3) | CACHEID_EXIST; /* FIXME: range */
+                quantvar = var;
                 applyop = bddop_or;
 
                 if (numReorder == 0)
@@ -2597,6 +2788,7 @@ public class JFactory extends BDDFactoryIntImpl {
             try {
                 INITREF();
                 quantid = (var << 3) | CACHEID_FORALL;
+                quantvar = var;
                 applyop = bddop_and;
 
                 if (numReorder == 0)
@@ -2634,6 +2826,7 @@ public class JFactory extends BDDFactoryIntImpl {
             try {
                 INITREF();
                 quantid = (var << 3) | CACHEID_UNIQUE;
+                quantvar = var;
                 applyop = bddop_xor;
 
                 if (numReorder == 0)
@@ -2857,8 +3050,11 @@ public class JFactory extends BDDFactoryIntImpl {
             if (supportSet[n] == supportID) {
                 int tmp;
                 bdd_addref(res);
-                tmp = makenode_impl(n, 0, res);
-                bdd_delref(res);
+                try {
+                    tmp = makenode_impl(n, 0, res);
+                } finally {
+                    bdd_delref(res);
+                }
                 res = tmp;
             }
 
@@ -2952,6 +3148,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 appexop = opr;
                 appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
                 quantid = (appexid << 3) | CACHEID_APPAL;
+                quantvar = var;
 
                 if (numReorder == 0)
                     bdd_disable_reorder();
@@ -2998,6 +3195,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 appexop = opr;
                 appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
                 quantid = (appexid << 3) | CACHEID_APPUN;
+                quantvar = var;
 
                 if (numReorder == 0)
                     bdd_disable_reorder();
@@ -3171,11 +3369,17 @@ public class JFactory extends BDDFactoryIntImpl {
 
         bddfreepos = 0;
         bddfreenum = 0;
+        if (OPEN_ADDRESSING)
+            Arrays.fill(bddunique, 0);
 
         for (n = bddnodesize - 1; n >= 2; n--) {
             if (LOW(n) != INVALID_BDD) {
                 int hash2;
 
+                if (OPEN_ADDRESSING) {
+                    bdd_unique_insert(n);
+                    continue;
+                }
                 hash2 = NODEHASH(LEVEL(n), LOW(n), HIGH(n));
                 SETNEXT(n, HASH(hash2));
                 SETHASH(hash2, n);
@@ -3193,6 +3397,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
     void INITREF() {
         bddrefstacktop = 0;
+        opreorderdisabled = reorderdisabled;
     }
     int PUSHREF(int a) {
         bddrefstack[bddrefstacktop++] = a;
@@ -3352,6 +3557,8 @@ public class JFactory extends BDDFactoryIntImpl {
         int n;
         long c2, c1 = clock();
 
+        bddpeaknum = Math.max(bddpeaknum, bddnodesize - bddfreenum);
+
         //if (gbc_handler != NULL)
         {
             gcstats.nodes = bddnodesize;
@@ -3362,7 +3569,7 @@ public class JFactory extends BDDFactoryIntImpl {
             gbc_handler(true, gcstats);
         }
 
-        // Handle nodes that were marked as free by finalizer.
+        // Handle nodes that were passed to deferredFree().
         handleDeferredFree();
         
         for (r = 0; r < bddrefstacktop; r++)
@@ -3371,11 +3578,14 @@ public class JFactory extends BDDFactoryIntImpl {
         for (n = 0; n < bddnodesize; n++) {
             if (HASREF(n))
                 bdd_mark(n);
-            SETHASH(n, 0);
+            if (!OPEN_ADDRESSING)
+                SETHASH(n, 0);
         }
 
         bddfreepos = 0;
         bddfreenum = 0;
+        if (OPEN_ADDRESSING)
+            Arrays.fill(bddunique, 0);
 
         for (n = bddnodesize - 1; n >= 2; n--) {
 
@@ -3383,6 +3593,10 @@ public class JFactory extends BDDFactoryIntImpl {
                 int hash2;
 
                 UNMARK(n);
+                if (OPEN_ADDRESSING) {
+                    bdd_unique_insert(n);
+                    continue;
+                }
                 hash2 = NODEHASH(LEVEL(n), LOW(n), HIGH(n));
                 SETNEXT(n, HASH(hash2));
                 SETHASH(hash2, n);
@@ -3524,20 +3738,43 @@ public class JFactory extends BDDFactoryIntImpl {
         int hash2;
         int res;
 
+        /* Each recursion of an operation that is not answered by a cache
+         * ends here, so this is where the limits are checked */
+        if (--limitcountdown == 0)
+            bdd_checklimits();
+
         /* Try to find an existing node of this kind */
-        hash2 = NODEHASH(level, low, high);
-        res = HASH(hash2);
+        if (OPEN_ADDRESSING) {
+            /* The probe sequence ends at the first empty slot, which is
+             * where a new node goes */
+            hash2 = UNIQUEHASH(level, low, high);
+            while ((res = bddunique[hash2]) != 0) {
+                if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                    if (CACHESTATS)
+                        cachestats.uniqueHit++;
+                    return res;
+                }
 
-        while (res != 0) {
-            if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                if (++hash2 == bddunique.length)
+                    hash2 = 0;
                 if (CACHESTATS)
-                    cachestats.uniqueHit++;
-                return res;
+                    cachestats.uniqueChain++;
             }
+        } else {
+            hash2 = NODEHASH(level, low, high);
+            res = HASH(hash2);
 
-            res = NEXT(res);
-            if (CACHESTATS)
-                cachestats.uniqueChain++;
+            while (res != 0) {
+                if (LEVEL(res) == level && LOW(res) == low && HIGH(res) == high) {
+                    if (CACHESTATS)
+                        cachestats.uniqueHit++;
+                    return res;
+                }
+
+                res = NEXT(res);
+                if (CACHESTATS)
+                    cachestats.uniqueChain++;
+            }
         }
 
         /* No existing node => build one */
@@ -3563,6 +3800,10 @@ public class JFactory extends BDDFactoryIntImpl {
                 hash2 = NODEHASH(level, low, high);
             }
 
+            /* The open-addressing table has been rebuilt by now */
+            if (OPEN_ADDRESSING)
+                hash2 = bdd_unique_slot(level, low, high);
+
             /* Panic if that is not possible */
             if (bddfreepos == 0) {
                 bdd_error(BDD_NODENUM);
@@ -3582,12 +3823,51 @@ public class JFactory extends BDDFactoryIntImpl {
         SETHIGH(res, high);
 
         /* Insert node */
-        SETNEXT(res, HASH(hash2));
-        SETHASH(hash2, res);
+        if (OPEN_ADDRESSING) {
+            bddunique[hash2] = res;
+        } else {
+            SETNEXT(res, HASH(hash2));
+            SETHASH(hash2, res);
+        }
 
         return res;
     }
 
+    void bdd_checklimits() {
+        limitcountdown = LIMITINTERVAL;
+        if (bddproduced - newnodebase > newnodelimit)
+            bdd_limitexceeded("new node limit exceeded");
+        if (runtimelimit != Long.MAX_VALUE && getRuntime() > runtimelimit)
+            bdd_limitexceeded("runtime limit exceeded");
+    }
+
+    /* Abandons the current operation.  Its intermediate results are only
+     * held by the reference stack, so after clearing it the garbage
+     * collection reclaims them. */
+    void bdd_limitexceeded(String msg) {
+        bddrefstacktop = 0;
+        reorderdisabled = opreorderdisabled;
+        throw new BDDLimitException(msg);
+    }
+
+    int bdd_unique_size() {
+        // Keep the load factor of the open-addressing table below 0.8.
+        return bdd_prime_gte(bddnodesize + bddnodesize / 4);
+    }
+
+    int bdd_unique_slot(int level, int low, int high) {
+        int hash2 = UNIQUEHASH(level, low, high);
+        while (bddunique[hash2] != 0) {
+            if (++hash2 == bddunique.length)
+                hash2 = 0;
+        }
+        return hash2;
+    }
+
+    void bdd_unique_insert(int n) {
+        bddunique[bdd_unique_slot(LEVEL(n), LOW(n), HIGH(n))] = n;
+    }
+
     int bdd_noderesize(boolean doRehash) {
         int oldsize = bddnodesize;
         int newsize = bddnodesize;
@@ -3613,8 +3893,53 @@ public class JFactory extends BDDFactoryIntImpl {
                 newsize = bddmaxnodesize;
         }
 
+        newsize = bdd_heaplimit(oldsize, newsize);
+        if (newsize <= oldsize)
+            return -1;
+
         return doResize(doRehash, oldsize, newsize);
     }
+
+    /**
+     * Restricts the new size of the node table to what fits into the free
+     * heap, see HEAP_RESERVE.  Returns the old size if the table must not
+     * grow at all.
+     */
+    int bdd_heaplimit(int oldsize, int newsize) {
+        if (HEAP_RESERVE <= 0)
+            return newsize;
+
+        /* The open-addressing index is rebuilt, so old and new are alive */
+        long pernode = 4L * __node_size + (OPEN_ADDRESSING ? 10 : 0);
+        long avail = bdd_freeheap();
+        boolean check = gbcollectnum >= heapgcnext;
+        if (avail < (newsize - oldsize) * pernode && check) {
+            System.gc();
+            avail = bdd_freeheap();
+        }
+
+        long fit = avail / pernode;
+        if (fit >= newsize - oldsize)
+            return newsize;
+        /* Grow by what fits, but not by less than a segment */
+        newsize = (int) (oldsize + Math.max(fit, 0));
+        if (newsize - oldsize < SEG_NODES) {
+            if (check) {
+                /* Do not run the Java collector again for the next rounds */
+                heapgcnext = gbcollectnum + HEAPGCINTERVAL;
+                if (verbose > 0)
+                    System.err.println("Node table limited to " + oldsize + " nodes by the heap size");
+            }
+            return oldsize;
+        }
+        return newsize;
+    }
+
+    long bdd_freeheap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return (long) (rt.maxMemory() * (1 - HEAP_RESERVE)) - used;
+    }
     
     int doResize(boolean doRehash, int oldsize, int newsize) {
         
@@ -3624,14 +3949,15 @@ public class JFactory extends BDDFactoryIntImpl {
         
         resize_handler(oldsize, newsize);
         
-        int[] newnodes;
         int n;
-        newnodes = new int[newsize*__node_size];
-        System.arraycopy(bddnodes, 0, newnodes, 0, bddnodes.length);
-        bddnodes = newnodes;
+        bddnodes = bdd_allocsegments(bddnodes, newsize);
         bddnodesize = newsize;
 
-        if (doRehash)
+        if (OPEN_ADDRESSING) {
+            /* The index has to grow with the nodes in any case */
+            bddunique = new int[bdd_unique_size()];
+            doRehash = true;
+        } else if (doRehash)
             for (n = 0; n < oldsize; n++)
                 SETHASH(n, 0);
 
@@ -3654,6 +3980,22 @@ public class JFactory extends BDDFactoryIntImpl {
         return 0;
     }
 
+    /**
+     * Extends the given segments such that they hold at least the given
+     * number of nodes.  Existing segments are kept, only the array of
+     * segments is copied.
+     */
+    static int[][] bdd_allocsegments(int[][] segments, int size) {
+        int num = (size + SEG_MASK) >>> SEG_BITS;
+        if (num <= segments.length)
+            return segments;
+        int[][] result = new int[num][];
+        System.arraycopy(segments, 0, result, 0, segments.length);
+        for (int i = segments.length; i < num; i++)
+            result[i] = new int[SEG_NODES*__node_size];
+        return result;
+    }
+
     void bdd_init(int initnodesize, int cs) {
         int n;
 
@@ -3662,7 +4004,9 @@ public class JFactory extends BDDFactoryIntImpl {
 
         bddnodesize = bdd_prime_gte(initnodesize);
 
-        bddnodes = new int[bddnodesize*__node_size];
+        bddnodes = bdd_allocsegments(new int[0][], bddnodesize);
+        if (OPEN_ADDRESSING)
+            bddunique = new int[bdd_unique_size()];
 
         bddresized = false;
 
@@ -3688,6 +4032,7 @@ public class JFactory extends BDDFactoryIntImpl {
         bddvarnum = 0;
         gbcollectnum = 0;
         gbcclock = 0;
+        bddstarttime = System.currentTimeMillis();
         cachesize = cs;
         usednodes_nextreorder = bddnodesize;
         bddmaxnodeincrease = DEFAULTMAXNODEINC;
@@ -3749,6 +4094,7 @@ public class JFactory extends BDDFactoryIntImpl {
     int appexop; /* Current operator for appex */
     int appexid; /* Current cache id for appex */
     int quantid; /* Current cache id for quantifications */
+    int quantvar; /* Current variable set for quantifications */
     int[] quantvarset; /* Current variable set for quant. */
     int quantvarsetID; /* Current id used in quantvarset */
     int quantlast; /* Current last variable to be quant. */
@@ -3768,6 +4114,8 @@ public class JFactory extends BDDFactoryIntImpl {
     BddCache replacecache; /* Cache for replace results */
     BddCache misccache; /* Cache for other results */
     BddCache countcache; /* Cache for count results */
+    BddCache relnextcache; /* Cache for relnext results */
+    int relnextpairid; /* Current pairing id for relnext */
     int cacheratio;
     boolean satPolarity;
 
@@ -3802,6 +4150,7 @@ public class JFactory extends BDDFactoryIntImpl {
         BddCache_done(replacecache); replacecache = null;
         BddCache_done(misccache); misccache = null;
         BddCache_done(countcache); countcache = null;
+        BddCache_done(relnextcache); relnextcache = null;
 
         if (supportSet != null) {
             free(supportSet);
@@ -3818,16 +4167,18 @@ public class JFactory extends BDDFactoryIntImpl {
         BddCache_reset(replacecache);
         BddCache_reset(misccache);
         BddCache_reset(countcache);
+        BddCache_reset(relnextcache);
     }
 
     void bdd_operator_clean() {
         BddCache_clean_ab(applycache);
         BddCache_clean_abc(itecache);
         BddCache_clean_a(quantcache);
-        BddCache_clean_ab(appexcache);
+        BddCache_clean_appex(appexcache);
         BddCache_clean_ab(replacecache);
-        BddCache_clean_ab(misccache);
+        BddCache_clean_misc(misccache);
         BddCache_clean_d(countcache);
+        BddCache_clean_abc(relnextcache);
     }
     
     void bdd_operator_varresize() {
@@ -3851,6 +4202,7 @@ public class JFactory extends BDDFactoryIntImpl {
         BddCache_resize(replacecache, newcachesize);
         BddCache_resize(misccache, newcachesize);
         BddCache_resize(countcache, newcachesize);
+        BddCache_resize(relnextcache, newcachesize);
         return old;
     }
     
@@ -3865,6 +4217,7 @@ public class JFactory extends BDDFactoryIntImpl {
             BddCache_resize(replacecache, newcachesize);
             BddCache_resize(misccache, newcachesize);
             BddCache_resize(countcache, newcachesize);
+            BddCache_resize(relnextcache, newcachesize);
         }
     }
 
@@ -3953,27 +4306,47 @@ public class JFactory extends BDDFactoryIntImpl {
             cache.table[n].a = -1;
     }
 
+    /**
+     * Returns true if the given node has been reclaimed by the last garbage
+     * collection (or lies outside the node table).
+     */
+    boolean BddCache_dead(int n) {
+        return n >= 2 && (n >= bddnodesize || LOW(n) == INVALID_BDD);
+    }
+
+    /**
+     * Invalidates the given entry and keeps count of the entries that
+     * survive a garbage collection.
+     */
+    void BddCache_keep(BddCacheData entry, boolean dead) {
+        if (dead) {
+            entry.a = -1;
+            cachestats.cacheCleared++;
+        } else {
+            cachestats.cacheKept++;
+        }
+    }
+
     void BddCache_clean_d(BddCache cache) {
         if (cache == null) return;
         int n;
         for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a >= 0 && LOW(a) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+            BddCacheData entry = cache.table[n];
+            if (entry.a < 0) continue;
+            BddCache_keep(entry, BddCache_dead(entry.a));
         }
     }
     
+    /* The quantification cache: the variable set is stored in d. */
     void BddCache_clean_a(BddCache cache) {
         if (cache == null) return;
         int n;
         for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == INVALID_BDD ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+            BddCacheDataI entry = (BddCacheDataI) cache.table[n];
+            if (entry.a < 0) continue;
+            BddCache_keep(entry, BddCache_dead(entry.a) ||
+                BddCache_dead(entry.res) ||
+                BddCache_dead(entry.d));
         }
     }
     
@@ -3981,13 +4354,42 @@ public class JFactory extends BDDFactoryIntImpl {
         if (cache == null) return;
         int n;
         for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == INVALID_BDD ||
-                (cache.table[n].b != 0 && LOW(cache.table[n].b) == INVALID_BDD) ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+            BddCacheData entry = cache.table[n];
+            if (entry.a < 0) continue;
+            BddCache_keep(entry, BddCache_dead(entry.a) ||
+                BddCache_dead(entry.b) ||
+                BddCache_dead(((BddCacheDataI)entry).res));
+        }
+    }
+    
+    /* The appex cache: the variable set is stored in d. */
+    void BddCache_clean_appex(BddCache cache) {
+        if (cache == null) return;
+        int n;
+        for (n = 0; n < cache.tablesize; n++) {
+            BddCacheDataI entry = (BddCacheDataI) cache.table[n];
+            if (entry.a < 0) continue;
+            BddCache_keep(entry, BddCache_dead(entry.a) ||
+                BddCache_dead(entry.b) ||
+                BddCache_dead(entry.res) ||
+                BddCache_dead(entry.d));
+        }
+    }
+    
+    /* The misc cache: restrict encodes its variable set in the id. */
+    void BddCache_clean_misc(BddCache cache) {
+        if (cache == null) return;
+        int n;
+        for (n = 0; n < cache.tablesize; n++) {
+            BddCacheData entry = cache.table[n];
+            if (entry.a < 0) continue;
+            boolean dead = BddCache_dead(entry.a) ||
+                BddCache_dead(((BddCacheDataI)entry).res);
+            if ((entry.c & 7) == CACHEID_RESTRICT)
+                dead |= BddCache_dead(entry.c >>> 3);
+            else
+                dead |= BddCache_dead(entry.b);
+            BddCache_keep(entry, dead);
         }
     }
     
@@ -3995,14 +4397,12 @@ public class JFactory extends BDDFactoryIntImpl {
         if (cache == null) return;
         int n;
         for (n = 0; n < cache.tablesize; n++) {
-            int a = cache.table[n].a;
-            if (a < 0) continue;
-            if (LOW(a) == -1 ||
-                LOW(cache.table[n].b) == INVALID_BDD ||
-                LOW(cache.table[n].c) == INVALID_BDD ||
-                LOW(((BddCacheDataI)cache.table[n]).res) == INVALID_BDD) {
-                cache.table[n].a = -1;
-            }
+            BddCacheData entry = cache.table[n];
+            if (entry.a < 0) continue;
+            BddCache_keep(entry, BddCache_dead(entry.a) ||
+                BddCache_dead(entry.b) ||
+                BddCache_dead(entry.c) ||
+                BddCache_dead(((BddCacheDataI)entry).res));
         }
     }
     
@@ -4122,6 +4522,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 p.id = pairsid++;
             //bdd_operator_reset();
             BddCache_reset(replacecache);
+            BddCache_reset(relnextcache);
         }
 
         return pairsid;
@@ -4187,7 +4588,8 @@ public class JFactory extends BDDFactoryIntImpl {
     }
 
     boolean bdd_reorder_ready() {
-        if ((bddreordermethod == BDD_REORDER_NONE)
+        if (OPEN_ADDRESSING || ZDD
+            || (bddreordermethod == BDD_REORDER_NONE)
             || (vartree == null)
             || (bddreordertimes == 0)
             || (reorderdisabled != 0))
@@ -4573,6 +4975,13 @@ public class JFactory extends BDDFactoryIntImpl {
         for (n = 0; n < num; n++) {
             long c2, c1 = clock();
 
+            if (reorder_siftexhausted())
+                break;
+
+            /* A block without nodes stays without nodes wherever it is */
+            if (reorder_blocknodes(seq[n]) == 0)
+                continue;
+
             if (verbose > 1) {
                 System.out.print("Sift ");
                 //if (reorder_filehandler)
@@ -4583,6 +4992,7 @@ public class JFactory extends BDDFactoryIntImpl {
             }
 
             reorder_sift_bestpos(seq[n], num / 2);
+            reorderstats.sifted++;
 
             if (verbose > 1) {
                 System.out.println();
@@ -4609,11 +5019,7 @@ public class JFactory extends BDDFactoryIntImpl {
         boolean dirIsUp = true;
         int n;
 
-        if (bddmaxnodesize > 0)
-            maxAllowed =
-                MIN(best / 5 + best, bddmaxnodesize - bddmaxnodeincrease - 2);
-        else
-            maxAllowed = best / 5 + best;
+        maxAllowed = reorder_maxallowed(best);
 
         /* Determine initial direction */
         if (blk.pos > middlePos)
@@ -4622,56 +5028,53 @@ public class JFactory extends BDDFactoryIntImpl {
         /* Move block back and forth */
         for (n = 0; n < 2; n++) {
             int first = 1;
-
-            if (dirIsUp) {
-                while (blk.prev != null
-                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
-                    first = 0;
-                    blockdown(blk.prev);
-                    bestpos--;
-
+            /* Nodes of the blocks ahead that interact with this one */
+            int ahead = reorder_interactnodes(blk, dirIsUp);
+
+            while ((dirIsUp ? blk.prev : blk.next) != null
+                && (reorder_nodenum() <= maxAllowed || first != 0)) {
+                BddTree other = dirIsUp ? blk.prev : blk.next;
+                int othernodes;
+
+                /* Swaps are local, so at best the nodes of this block and
+                 * of the interacting blocks ahead vanish.  If even that is
+                 * no improvement, stop moving in this direction. */
+                if (reorder_nodenum() - reorder_blocknodes(blk) - ahead
+                    >= best) {
+                    reorderstats.pruned++;
                     if (verbose > 1) {
-                        System.out.print("-");
+                        System.out.print("|");
                         System.out.flush();
                     }
-
-                    if (reorder_nodenum() < best) {
-                        best = reorder_nodenum();
-                        bestpos = 0;
-
-                        if (bddmaxnodesize > 0)
-                            maxAllowed =
-                                MIN(
-                                    best / 5 + best,
-                                    bddmaxnodesize - bddmaxnodeincrease - 2);
-                        else
-                            maxAllowed = best / 5 + best;
-                    }
+                    break;
                 }
-            } else {
-                while (blk.next != null
-                    && (reorder_nodenum() <= maxAllowed || first != 0)) {
-                    first = 0;
+                if (reorder_siftexhausted())
+                    break;
+
+                first = 0;
+                othernodes = reorder_blocknodes(other);
+                if (reorder_blocksinteract(blk, other))
+                    ahead -= othernodes;
+                sift_nodesmoved += reorder_blocknodes(blk) + othernodes;
+                reorderstats.moves++;
+
+                if (dirIsUp) {
+                    blockdown(other);
+                    bestpos--;
+                } else {
                     blockdown(blk);
                     bestpos++;
+                }
 
-                    if (verbose > 1) {
-                        System.out.print("+");
-                        System.out.flush();
-                    }
+                if (verbose > 1) {
+                    System.out.print(dirIsUp ? "-" : "+");
+                    System.out.flush();
+                }
 
-                    if (reorder_nodenum() < best) {
-                        best = reorder_nodenum();
-                        bestpos = 0;
-
-                        if (bddmaxnodesize > 0)
-                            maxAllowed =
-                                MIN(
-                                    best / 5 + best,
-                                    bddmaxnodesize - bddmaxnodeincrease - 2);
-                        else
-                            maxAllowed = best / 5 + best;
-                    }
+                if (reorder_nodenum() < best) {
+                    best = reorder_nodenum();
+                    bestpos = 0;
+                    maxAllowed = reorder_maxallowed(best);
                 }
             }
 
@@ -4694,6 +5097,57 @@ public class JFactory extends BDDFactoryIntImpl {
         }
     }
 
+    int reorder_maxallowed(int best) {
+        int maxAllowed = (int) (best * SIFT_MAX_GROWTH);
+
+        if (bddmaxnodesize > 0)
+            maxAllowed =
+                MIN(maxAllowed, bddmaxnodesize - bddmaxnodeincrease - 2);
+        return maxAllowed;
+    }
+
+    /* Returns true (and records it) if the budget of this pass is used up */
+    boolean reorder_siftexhausted() {
+        if ((SIFT_MAX_TIME > 0 && clock() - sift_starttime > SIFT_MAX_TIME)
+            || (SIFT_MAX_NODES > 0 && sift_nodesmoved > SIFT_MAX_NODES)) {
+            reorderstats.budgetExceeded = true;
+            return true;
+        }
+        return false;
+    }
+
+    int reorder_blocknodes(BddTree blk) {
+        int v, num = 0;
+
+        for (v = blk.firstVar; v <= blk.lastVar; v++)
+            num += levels[v].nodenum;
+        return num;
+    }
+
+    boolean reorder_blocksinteract(BddTree a, BddTree b) {
+        int va, vb;
+
+        for (va = a.firstVar; va <= a.lastVar; va++)
+            for (vb = b.firstVar; vb <= b.lastVar; vb++)
+                if (imatrixDepends(iactmtx, va, vb))
+                    return true;
+        return false;
+    }
+
+    /* Sums up the nodes of the blocks above (or below) blk that interact
+     * with it */
+    int reorder_interactnodes(BddTree blk, boolean up) {
+        BddTree dis;
+        int num = 0;
+
+        for (dis = up ? blk.prev : blk.next;
+            dis != null;
+            dis = up ? dis.prev : dis.next)
+            if (reorder_blocksinteract(blk, dis))
+                num += reorder_blocknodes(dis);
+        return num;
+    }
+
     BddTree reorder_random(BddTree t) {
         BddTree dis;
         BddTree[] seq;
@@ -4753,14 +5207,9 @@ public class JFactory extends BDDFactoryIntImpl {
         seq = new BddTree[num];
 
         for (dis = t, n = 0; dis != null; dis = dis.next, n++) {
-            int v;
-
             /* Accumulate number of nodes for each block */
             p[n] = new sizePair();
-            p[n].val = 0;
-            for (v = dis.firstVar; v <= dis.lastVar; v++)
-                p[n].val -= levels[v].nodenum;
-
+            p[n].val = -reorder_blocknodes(dis);
             p[n].block = dis;
         }
 
@@ -4972,6 +5421,7 @@ public class JFactory extends BDDFactoryIntImpl {
         free(bddlevel2var);
 
         bddnodes = null;
+        bddunique = null;
         bddrefstack = null;
         bddvarset = null;
         bddvar2level = null;
@@ -5089,7 +5539,9 @@ public class JFactory extends BDDFactoryIntImpl {
 
         if (bddrefstack != null)
             free(bddrefstack);
-        bddrefstack = new int[num * 2 + 1];
+        /* Two more for the intermediate results of the composite ZDD
+         * operators in bdd_apply */
+        bddrefstack = new int[num * 2 + 3];
         bddrefstacktop = 0;
 
         if (ZDD)
@@ -5210,6 +5662,10 @@ public class JFactory extends BDDFactoryIntImpl {
     int usednum_before;
     int usednum_after;
 
+    /* Start time and nodes moved of the current sifting pass */
+    long sift_starttime;
+    long sift_nodesmoved;
+
     void bdd_reorder_init() {
         reorderdisabled = 0;
         vartree = null;
@@ -5755,6 +6211,11 @@ public class JFactory extends BDDFactoryIntImpl {
         
         int n;
 
+        if (OPEN_ADDRESSING)
+            throw new BDDException("Variable reordering is not supported with the open-addressing unique table");
+        if (ZDD)
+            throw new BDDException("Variable reordering is not supported with ZDDs");
+
         reorder_handler(true, reorderstats);
         
         // Split the hash table into a separate region for each variable.
@@ -5777,6 +6238,9 @@ public class JFactory extends BDDFactoryIntImpl {
         // Garbage collect and rehash to new scheme
         reorder_gbc();
 
+        sift_starttime = clock();
+        sift_nodesmoved = 0;
+
         return 0;
     }
 
@@ -210,6 +210,8 @@ public class MicroFactory extends BDDFactoryIntImpl {
     public int level2Var(int level) { return bddlevel2var[level]; }
     public int var2Level(int var) { return bddvar2level[var]; }
     public int getReorderTimes() { return bddreordertimes; }
+    public void setReorderTimes(int n) { bddreordertimes = n; }
+    public void setNextReorder(int nodes) { usednodes_nextreorder = nodes; }
     public void disableReorder() { bdd_disable_reorder(); }
     public void enableReorder() { bdd_enable_reorder(); }
     public int reorderVerbose(int v) { return bdd_reorder_verbose(v); }
@@ -217,6 +219,13 @@ public class MicroFactory extends BDDFactoryIntImpl {
     public void autoReorder(ReorderMethod method) { bdd_autoreorder(method.id); }
     public void autoReorder(ReorderMethod method, int max) { bdd_autoreorder_times(method.id, max); }
     public void swapVar(int v1, int v2) { bdd_swapvar(v1, v2); }
+    public long getRuntime() { return System.currentTimeMillis() - bddstarttime; }
+    public long getRuntimeLimit() { return runtimelimit; }
+    public void setRuntimeLimit(long limit) { runtimelimit = limit; }
+    public void unsetRuntimeLimit() { runtimelimit = Long.MAX_VALUE; }
+    public boolean supportsRuntimeLimit() { return true; }
+    public void setNewNodeLimit(long limit) { newnodelimit = limit; newnodebase = bddproduced; }
+    public void unsetNewNodeLimit() { newnodelimit = Long.MAX_VALUE; }
     
     public ReorderMethod getReorderMethod() {
         switch (bddreordermethod) {
@@ -283,6 +292,10 @@ public class MicroFactory extends BDDFactoryIntImpl {
         INSTANCE.cachesize = this.cachesize;
         INSTANCE.gbcclock = this.gbcclock;
         INSTANCE.usednodes_nextreorder = this.usednodes_nextreorder;
+        INSTANCE.bddstarttime = this.bddstarttime;
+        INSTANCE.runtimelimit = this.runtimelimit;
+        INSTANCE.newnodelimit = this.newnodelimit;
+        INSTANCE.newnodebase = this.newnodebase;
         
         INSTANCE.bddrefstacktop = this.bddrefstacktop;
         INSTANCE.bddresized = this.bddresized;
@@ -1129,6 +1142,12 @@ public class MicroFactory extends BDDFactoryIntImpl {
     int cachesize; /* Size of the operator caches */
     long gbcclock; /* Clock ticks used in GBC */
     int usednodes_nextreorder; /* When to do reorder next time */
+    long bddstarttime; /* Time the factory was initialized (ms) */
+    long runtimelimit = Long.MAX_VALUE; /* Runtime at which operations are abandoned (ms) */
+    long newnodelimit = Long.MAX_VALUE; /* Number of new nodes allowed since newnodebase */
+    int newnodebase; /* Value of bddproduced when the node limit was set */
+    int limitcountdown = LIMITINTERVAL; /* Calls of bdd_makenode until the limits are checked */
+    int opreorderdisabled; /* Value of reorderdisabled when the operation started */
 
     static final int BDD_MEMORY = (-1); /* Out of memory */
     static final int BDD_VAR = (-2); /* Unknown variable */
@@ -1185,6 +1204,7 @@ public class MicroFactory extends BDDFactoryIntImpl {
             "Division by zero" };
 
     static final int DEFAULTMAXNODEINC = 10000000;
+    static final int LIMITINTERVAL = 1024;
 
     /*=== OTHER INTERNAL DEFINITIONS =======================================*/
 
@@ -2874,8 +2894,11 @@ public class MicroFactory extends BDDFactoryIntImpl {
             if (supportSet[n] == supportID) {
                 int tmp;
                 bdd_addref(res);
-                tmp = bdd_makenode(n, 0, res);
-                bdd_delref(res);
+                try {
+                    tmp = bdd_makenode(n, 0, res);
+                } finally {
+                    bdd_delref(res);
+                }
                 res = tmp;
             }
 
@@ -3064,6 +3087,7 @@ public class MicroFactory extends BDDFactoryIntImpl {
 
     final void INITREF() {
         bddrefstacktop = 0;
+        opreorderdisabled = reorderdisabled;
     }
     final int PUSHREF(int a) {
         bddrefstack[bddrefstacktop++] = a;
@@ -3218,7 +3242,7 @@ public class MicroFactory extends BDDFactoryIntImpl {
         gcstats.num = gbcollectnum;
         gbc_handler(true, gcstats);
 
-        // Handle nodes that were marked as free by finalizer.
+        // Handle nodes that were passed to deferredFree().
         handleDeferredFree();
         
         for (r = 0; r < bddrefstacktop; r++)
@@ -3337,10 +3361,32 @@ public class MicroFactory extends BDDFactoryIntImpl {
         bdd_unmark(HIGH(i));
     }
 
+    void bdd_checklimits() {
+        limitcountdown = LIMITINTERVAL;
+        if (bddproduced - newnodebase > newnodelimit)
+            bdd_limitexceeded("new node limit exceeded");
+        if (runtimelimit != Long.MAX_VALUE && getRuntime() > runtimelimit)
+            bdd_limitexceeded("runtime limit exceeded");
+    }
+
+    /* Abandons the current operation.  Its intermediate results are only
+     * held by the reference stack, so after clearing it the garbage
+     * collection reclaims them. */
+    void bdd_limitexceeded(String msg) {
+        bddrefstacktop = 0;
+        reorderdisabled = opreorderdisabled;
+        throw new BDDLimitException(msg);
+    }
+
     int bdd_makenode(int level, int low, int high) {
         int hash2;
         int res;
 
+        /* Each recursion of an operation that is not answered by a cache
+         * ends here, so this is where the limits are checked */
+        if (--limitcountdown == 0)
+            bdd_checklimits();
+
         if (CACHESTATS > 0) cachestats.uniqueAccess++;
 
         /* check whether childs are equal */
@@ -3506,6 +3552,7 @@ public class MicroFactory extends BDDFactoryIntImpl {
         bddvarnum = 0;
         gbcollectnum = 0;
         gbcclock = 0;
+        bddstarttime = System.currentTimeMillis();
         usednodes_nextreorder = bddnodesize;
         bddmaxnodeincrease = DEFAULTMAXNODEINC;
 
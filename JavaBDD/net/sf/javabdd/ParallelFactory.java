@@ -0,0 +1,1292 @@
+// ParallelFactory.java, part of Gamer's extensions of JavaBDD
+// Copyright (C) 2007-2012 Peter Kissmann
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package net.sf.javabdd;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A multi-core, 100% Java implementation of the BDD factory, in the style
+ * of Sylvan.  The nodes are stored in a unique table with open addressing
+ * whose buckets are claimed by compare-and-swap, and the operation cache is
+ * lock-free and lossy.  The recursive operations (apply, ite, quantification,
+ * relational product, replace) fork their subproblems into a ForkJoinPool
+ * as long as the recursion is less deep than a cutoff.</p>
+ *
+ * <p>Only the operations themselves run in parallel; the factory must still
+ * be called from a single thread.  Garbage collection and resizing happen
+ * between operations.  If the node table fills up during an operation, the
+ * operation is aborted, the garbage is collected (and the table grown if
+ * necessary), and the operation is restarted.</p>
+ *
+ * <p>The number of threads and the cutoff can be set using the system
+ * properties "parallelbdd.threads" and "parallelbdd.cutoff".  Dynamic
+ * reordering is not supported; the variable order is fixed, so that
+ * reordering does nothing and only the identity can be set as order.</p>
+ *
+ * @author Peter Kissmann
+ * @version $Id$
+ */
+public class ParallelFactory extends BDDFactoryIntImpl {
+
+    public static final String REVISION = "$Revision: 1 $";
+
+    public String getVersion() {
+        return "ParallelFactory "+REVISION.substring(11, REVISION.length()-2);
+    }
+
+    static final int INVALID_BDD = -1;
+    static final int MAXREF = Integer.MAX_VALUE;
+
+    /* Operation codes of the cache; 0 to 9 are the ids of the BDDOps. */
+    static final int OP_NOT = 10;
+    static final int OP_ITE = 11;
+    static final int OP_RELPROD = 12;
+    static final int OP_REPLACE = 13;
+    static final int OP_SUPPORT = 14;
+    static final int OP_SATONE = 15;
+    static final int OP_FULLSATONE = 16;
+    static final int OP_MAKENODE = 17;
+    static final int OP_QUANT = 20; /* plus the id of the combining BDDOp */
+    static final int OP_CONSTRAIN = 30;
+    static final int OP_RESTRICT = 31;
+    static final int OP_SIMPLIFY = 32;
+    static final int OP_VECCOMPOSE = 33;
+    static final int OP_SATONESET = 34;
+
+    /**
+     * Thrown when the node table is full.  Aborts the current operation.
+     */
+    static class TableFullException extends RuntimeException {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = 4265194301816207419L;
+
+        TableFullException() {
+            super("node table full", null, false, false);
+        }
+    }
+
+    private static final TableFullException TABLE_FULL = new TableFullException();
+
+    /**
+     * An entry of the operation cache.  Entries are immutable, so they can be
+     * replaced without locking.
+     */
+    private static final class CacheEntry {
+        final int op, a, b, c, res;
+
+        CacheEntry(int op, int a, int b, int c, int res) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.res = res;
+        }
+    }
+
+    /**
+     * A subproblem that can be forked.
+     */
+    private final class Task extends RecursiveTask<Integer> {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = -6182245137290514566L;
+
+        private final int op, a, b, c, depth;
+        private final bddPairing pair;
+
+        Task(int op, int a, int b, int c, bddPairing pair, int depth) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.pair = pair;
+            this.depth = depth;
+        }
+
+        protected Integer compute() {
+            return Integer.valueOf(execute(op, a, b, c, pair, depth));
+        }
+    }
+
+    /* The node table; terminals are 0 and 1, their level is MAX_VALUE. */
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private int[] refcou;
+    private int capacity;
+    private final AtomicInteger top = new AtomicInteger();
+    private int[] freeList;
+    private int freeCount;
+    private final AtomicInteger freeCursor = new AtomicInteger();
+    private AtomicIntegerArray unique; /* node index + 1, 0 if empty */
+    private int uniqueMask;
+    private volatile boolean aborted;
+
+    private AtomicReferenceArray<CacheEntry> cache;
+    private int cacheMask;
+
+    private int varnum;
+    private int[] vars;
+    private int[] nvars;
+    private int pairingCounter;
+    private int gbcCount;
+    private long gbcClock;
+    private int maxNodeNum;
+    private double minFreeNodes = 0.5;
+    private int maxIncrease;
+    private double increaseFactor;
+    private int cacheRatio;
+    private int errorCond;
+
+    private ForkJoinPool pool;
+    private int cutoff;
+
+    private ParallelFactory(int nodenum, int cachesize) {
+        initialize(nodenum, cachesize);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#init(int, int)
+     */
+    public static BDDFactory init(int nodenum, int cachesize) {
+        BDDFactory f = new ParallelFactory(nodenum, cachesize);
+        return f;
+    }
+
+    protected void initialize(int initnodesize, int cs) {
+        int threads = Integer.parseInt(getProperty("parallelbdd.threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        cutoff = Integer.parseInt(getProperty("parallelbdd.cutoff", "10"));
+        pool = new ForkJoinPool(Math.max(threads, 1));
+        capacity = powerOfTwo(Math.min(Math.max(initnodesize, 1024), 1 << 20));
+        level = new int[capacity];
+        low = new int[capacity];
+        high = new int[capacity];
+        refcou = new int[capacity];
+        level[0] = level[1] = Integer.MAX_VALUE;
+        refcou[0] = refcou[1] = MAXREF;
+        low[1] = high[1] = 1;
+        top.set(2);
+        freeList = new int[0];
+        freeCount = 0;
+        freeCursor.set(0);
+        unique = new AtomicIntegerArray(2 * capacity);
+        uniqueMask = unique.length() - 1;
+        setCacheSize(Math.min(Math.max(cs, 1024), 1 << 22));
+        varnum = 0;
+        vars = new int[0];
+        nvars = new int[0];
+    }
+
+    private static int powerOfTwo(int n) {
+        int p = 1;
+        while (p < n)
+            p <<= 1;
+        return p;
+    }
+
+    /**** Node table ****/
+
+    private static int hash(int lev, int lo, int hi) {
+        int h = lev * 12582917 + lo * 4256249 + hi * 741457;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private int allocNode() {
+        int i = freeCursor.getAndIncrement();
+        if (i < freeCount)
+            return freeList[i];
+        int n = top.getAndIncrement();
+        if (n >= capacity) {
+            aborted = true;
+            throw TABLE_FULL;
+        }
+        return n;
+    }
+
+    private int mk(int lev, int lo, int hi) {
+        if (lo == hi)
+            return lo;
+        if (aborted)
+            throw TABLE_FULL;
+        int h = hash(lev, lo, hi) & uniqueMask;
+        int fresh = -1;
+        for (int probes = 0; probes <= uniqueMask; probes++) {
+            int e = unique.get(h);
+            if (e == 0) {
+                if (fresh < 0) {
+                    fresh = allocNode();
+                    level[fresh] = lev;
+                    low[fresh] = lo;
+                    high[fresh] = hi;
+                }
+                if (unique.compareAndSet(h, 0, fresh + 1))
+                    return fresh;
+                e = unique.get(h);
+            }
+            int n = e - 1;
+            if (level[n] == lev && low[n] == lo && high[n] == hi) {
+                // a node claimed in vain is reclaimed by the next gbc()
+                return n;
+            }
+            h = (h + 1) & uniqueMask;
+        }
+        aborted = true;
+        throw TABLE_FULL;
+    }
+
+    private int freeNodes() {
+        int unused = Math.max(capacity - top.get(), 0);
+        return unused + Math.max(freeCount - freeCursor.get(), 0);
+    }
+
+    /**
+     * Collects all nodes that are not reachable from a referenced node, and
+     * grows the node table if less than the minimum of free nodes is left
+     * (or if requested).  Must only be called while no operation is
+     * running.
+     */
+    private void gbc(boolean forceGrow) {
+        long c1 = System.currentTimeMillis();
+        gcstats.nodes = capacity;
+        gcstats.freenodes = freeNodes();
+        gcstats.time = 0;
+        gcstats.sumtime = gbcClock;
+        gcstats.num = gbcCount;
+        gbc_handler(true, gcstats);
+
+        // Handle nodes that were passed to deferredFree().
+        handleDeferredFree();
+
+        int used = Math.min(top.get(), capacity);
+        boolean[] mark = new boolean[used];
+        mark[0] = mark[1] = true;
+        int[] stack = new int[64];
+        int live = 2;
+        for (int i = 2; i < used; i++) {
+            if (refcou[i] == 0 || mark[i])
+                continue;
+            int sp = 0;
+            stack[sp++] = i;
+            mark[i] = true;
+            while (sp > 0) {
+                int n = stack[--sp];
+                live++;
+                if (sp + 2 > stack.length) {
+                    int[] s2 = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, s2, 0, sp);
+                    stack = s2;
+                }
+                if (!mark[low[n]]) {
+                    mark[low[n]] = true;
+                    stack[sp++] = low[n];
+                }
+                if (!mark[high[n]]) {
+                    mark[high[n]] = true;
+                    stack[sp++] = high[n];
+                }
+            }
+        }
+        gbcCount++;
+
+        int newCapacity = capacity;
+        if (forceGrow || capacity - live < minFreeNodes * capacity)
+            newCapacity = grownCapacity();
+        if (newCapacity > capacity)
+            resize(newCapacity);
+        else
+            for (int i = 0; i < unique.length(); i++)
+                unique.set(i, 0);
+
+        int[] free = new int[used - live];
+        int k = 0;
+        for (int i = 2; i < used; i++) {
+            if (mark[i]) {
+                int h = hash(level[i], low[i], high[i]) & uniqueMask;
+                while (unique.get(h) != 0)
+                    h = (h + 1) & uniqueMask;
+                unique.set(h, i + 1);
+            } else {
+                refcou[i] = 0;
+                free[k++] = i;
+            }
+        }
+        freeList = free;
+        freeCount = k;
+        freeCursor.set(0);
+        top.set(used);
+        aborted = false;
+        for (int i = 0; i < cache.length(); i++)
+            cache.set(i, null);
+
+        long c2 = System.currentTimeMillis();
+        gbcClock += c2 - c1;
+        gcstats.nodes = capacity;
+        gcstats.freenodes = freeNodes();
+        gcstats.time = c2 - c1;
+        gcstats.sumtime = gbcClock;
+        gcstats.num = gbcCount;
+        gbc_handler(false, gcstats);
+    }
+
+    /* The size of the node table after the next increase. */
+    private int grownCapacity() {
+        long newCapacity = increaseFactor > 0
+            ? capacity + (long) (capacity * increaseFactor) : 2L * capacity;
+        if (maxIncrease > 0)
+            newCapacity = Math.min(newCapacity, (long) capacity + maxIncrease);
+        if (maxNodeNum > 0)
+            newCapacity = Math.min(newCapacity, maxNodeNum);
+        return (int) Math.min(newCapacity, 1 << 30);
+    }
+
+    /* Grows the node table; the unique table is left empty. */
+    private void resize(int newCapacity) {
+        int oldCapacity = capacity;
+        level = grow(level, newCapacity);
+        low = grow(low, newCapacity);
+        high = grow(high, newCapacity);
+        refcou = grow(refcou, newCapacity);
+        capacity = newCapacity;
+        unique = new AtomicIntegerArray(powerOfTwo(2 * capacity));
+        uniqueMask = unique.length() - 1;
+        if (cacheRatio > 0)
+            setCacheSize(capacity / cacheRatio);
+        resize_handler(oldCapacity, newCapacity);
+    }
+
+    private static int[] grow(int[] a, int size) {
+        int[] b = new int[size];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    /**** Operation cache ****/
+
+    private int cacheLookup(int op, int a, int b, int c) {
+        CacheEntry e = cache.get(hash(op ^ (c * 31), a, b) & cacheMask);
+        if (e != null && e.op == op && e.a == a && e.b == b && e.c == c)
+            return e.res;
+        return -1;
+    }
+
+    private void cacheInsert(int op, int a, int b, int c, int res) {
+        cache.lazySet(hash(op ^ (c * 31), a, b) & cacheMask,
+                      new CacheEntry(op, a, b, c, res));
+    }
+
+    /**** Running operations ****/
+
+    private int run(int op, int a, int b, int c, bddPairing pair) {
+        for (int attempt = 0; ; attempt++) {
+            if (freeNodes() < capacity / 16)
+                gbc(false);
+            try {
+                return pool.invoke(new Task(op, a, b, c, pair, 0)).intValue();
+            } catch (RuntimeException e) {
+                // let the remaining subtasks finish (or run into the abort flag)
+                while (!pool.awaitQuiescence(1, TimeUnit.SECONDS))
+                    ;
+                if (!(e instanceof TableFullException)) {
+                    aborted = false;
+                    throw e;
+                }
+                if (errorCond != 0) {
+                    // as in JFactory, the table is not grown after an error;
+                    // the next operation collects the garbage
+                    aborted = false;
+                    throw new BDDException("node table full, error condition " + errorCond);
+                }
+                int oldCapacity = capacity;
+                gbc(attempt > 0);
+                if (attempt > 0 && capacity == oldCapacity)
+                    throw new BDDException("node table full, maximum number of nodes reached");
+            }
+        }
+    }
+
+    private int execute(int op, int a, int b, int c, bddPairing pair, int depth) {
+        switch (op) {
+            case OP_NOT: return not_rec(a, depth);
+            case OP_ITE: return ite_rec(a, b, c, depth);
+            case OP_RELPROD: return relprod_rec(a, b, c, depth);
+            case OP_REPLACE: return replace_rec(a, pair, depth);
+            case OP_SUPPORT: return support_rec(a);
+            case OP_SATONE: return satone_rec(a);
+            case OP_FULLSATONE: return fullsatone(a);
+            case OP_MAKENODE: return mk(c, a, b);
+            case OP_CONSTRAIN: return constrain_rec(a, b, depth);
+            case OP_RESTRICT: return restrict_rec(a, b, depth);
+            case OP_SIMPLIFY: return simplify_rec(a, b, depth);
+            case OP_VECCOMPOSE: return veccompose_rec(a, pair, depth);
+            case OP_SATONESET: return satoneset_rec(a, b, c != 0);
+            default:
+                if (op >= OP_QUANT)
+                    return quant_rec(a, b, op - OP_QUANT, depth);
+                return apply_rec(a, b, op, depth);
+        }
+    }
+
+    /**** Recursive operations ****/
+
+    private static boolean commutative(int op) {
+        return op == 0 || op == 1 || op == 2 || op == 3 || op == 4 || op == 6;
+    }
+
+    private int apply_rec(int a, int b, int op, int depth) {
+        if (a < 2 && b < 2)
+            return JFactory.oprres[op][a << 1 | b];
+        switch (op) {
+            case 0: /* and */
+                if (a == b || b == 1) return a;
+                if (a == 0 || b == 0) return 0;
+                if (a == 1) return b;
+                break;
+            case 1: /* xor */
+                if (a == b) return 0;
+                if (a == 0) return b;
+                if (b == 0) return a;
+                break;
+            case 2: /* or */
+                if (a == b || b == 0) return a;
+                if (a == 1 || b == 1) return 1;
+                if (a == 0) return b;
+                break;
+            case 5: /* imp */
+                if (a == 0 || b == 1 || a == b) return 1;
+                if (a == 1) return b;
+                break;
+            case 6: /* biimp */
+                if (a == b) return 1;
+                if (a == 1) return b;
+                if (b == 1) return a;
+                break;
+            case 7: /* diff */
+                if (a == b || a == 0 || b == 1) return 0;
+                if (b == 0) return a;
+                break;
+        }
+        if (commutative(op) && a > b) {
+            int t = a; a = b; b = t;
+        }
+        int res = cacheLookup(op, a, b, 0);
+        if (res >= 0)
+            return res;
+        int la = level[a], lb = level[b];
+        int lev = Math.min(la, lb);
+        int a0 = la == lev ? low[a] : a, a1 = la == lev ? high[a] : a;
+        int b0 = lb == lev ? low[b] : b, b1 = lb == lev ? high[b] : b;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(op, a1, b1, 0, null, depth + 1);
+            t.fork();
+            lo = apply_rec(a0, b0, op, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = apply_rec(a0, b0, op, depth + 1);
+            hi = apply_rec(a1, b1, op, depth + 1);
+        }
+        res = mk(lev, lo, hi);
+        cacheInsert(op, a, b, 0, res);
+        return res;
+    }
+
+    private int not_rec(int a, int depth) {
+        if (a < 2)
+            return 1 - a;
+        int res = cacheLookup(OP_NOT, a, 0, 0);
+        if (res >= 0)
+            return res;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_NOT, high[a], 0, 0, null, depth + 1);
+            t.fork();
+            lo = not_rec(low[a], depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = not_rec(low[a], depth + 1);
+            hi = not_rec(high[a], depth + 1);
+        }
+        res = mk(level[a], lo, hi);
+        cacheInsert(OP_NOT, a, 0, 0, res);
+        return res;
+    }
+
+    private int ite_rec(int f, int g, int h, int depth) {
+        if (f == 1) return g;
+        if (f == 0) return h;
+        if (g == h) return g;
+        if (g == 1 && h == 0) return f;
+        if (g == 0 && h == 1) return not_rec(f, depth);
+        int res = cacheLookup(OP_ITE, f, g, h);
+        if (res >= 0)
+            return res;
+        int lf = level[f], lg = level[g], lh = level[h];
+        int lev = Math.min(lf, Math.min(lg, lh));
+        int f0 = lf == lev ? low[f] : f, f1 = lf == lev ? high[f] : f;
+        int g0 = lg == lev ? low[g] : g, g1 = lg == lev ? high[g] : g;
+        int h0 = lh == lev ? low[h] : h, h1 = lh == lev ? high[h] : h;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_ITE, f1, g1, h1, null, depth + 1);
+            t.fork();
+            lo = ite_rec(f0, g0, h0, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = ite_rec(f0, g0, h0, depth + 1);
+            hi = ite_rec(f1, g1, h1, depth + 1);
+        }
+        res = mk(lev, lo, hi);
+        cacheInsert(OP_ITE, f, g, h, res);
+        return res;
+    }
+
+    /* Quantifies the variables of the cube, combining the cofactors with op. */
+    private int quant_rec(int a, int cube, int op, int depth) {
+        int la = level[a];
+        if (op == xor.id) {
+            // the cofactors of a skipped variable cancel out
+            if (cube == 1)
+                return a;
+            if (la > level[cube])
+                return 0;
+        } else {
+            // and and or are idempotent, so skipped variables do not matter
+            if (a < 2)
+                return a;
+            while (level[cube] < la)
+                cube = high[cube];
+            if (cube == 1)
+                return a;
+        }
+        int res = cacheLookup(OP_QUANT + op, a, cube, 0);
+        if (res >= 0)
+            return res;
+        int next = level[cube] == la ? high[cube] : cube;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_QUANT + op, high[a], next, 0, null, depth + 1);
+            t.fork();
+            lo = quant_rec(low[a], next, op, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = quant_rec(low[a], next, op, depth + 1);
+            hi = quant_rec(high[a], next, op, depth + 1);
+        }
+        if (level[cube] == la)
+            res = apply_rec(lo, hi, op, depth + 1);
+        else
+            res = mk(la, lo, hi);
+        cacheInsert(OP_QUANT + op, a, cube, 0, res);
+        return res;
+    }
+
+    private int relprod_rec(int a, int b, int cube, int depth) {
+        if (a == 0 || b == 0)
+            return 0;
+        if (a == 1 && b == 1)
+            return 1;
+        if (a == 1 || a == b)
+            return quant_rec(b, cube, 2, depth);
+        if (b == 1)
+            return quant_rec(a, cube, 2, depth);
+        int la = level[a], lb = level[b];
+        int lev = Math.min(la, lb);
+        while (level[cube] < lev)
+            cube = high[cube];
+        if (cube == 1)
+            return apply_rec(a, b, 0, depth);
+        if (a > b) {
+            int t = a; a = b; b = t;
+            t = la; la = lb; lb = t;
+        }
+        int res = cacheLookup(OP_RELPROD, a, b, cube);
+        if (res >= 0)
+            return res;
+        int a0 = la == lev ? low[a] : a, a1 = la == lev ? high[a] : a;
+        int b0 = lb == lev ? low[b] : b, b1 = lb == lev ? high[b] : b;
+        boolean quantified = level[cube] == lev;
+        int next = quantified ? high[cube] : cube;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_RELPROD, a1, b1, next, null, depth + 1);
+            t.fork();
+            lo = relprod_rec(a0, b0, next, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = relprod_rec(a0, b0, next, depth + 1);
+            if (quantified && lo == 1)
+                hi = 1;
+            else
+                hi = relprod_rec(a1, b1, next, depth + 1);
+        }
+        if (quantified)
+            res = apply_rec(lo, hi, 2, depth + 1);
+        else
+            res = mk(lev, lo, hi);
+        cacheInsert(OP_RELPROD, a, b, cube, res);
+        return res;
+    }
+
+    private int replace_rec(int a, bddPairing pair, int depth) {
+        if (a < 2)
+            return a;
+        int res = cacheLookup(OP_REPLACE, a, pair.id, 0);
+        if (res >= 0)
+            return res;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_REPLACE, high[a], 0, 0, pair, depth + 1);
+            t.fork();
+            lo = replace_rec(low[a], pair, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = replace_rec(low[a], pair, depth + 1);
+            hi = replace_rec(high[a], pair, depth + 1);
+        }
+        res = correctify(pair.level(level[a]), lo, hi);
+        cacheInsert(OP_REPLACE, a, pair.id, 0, res);
+        return res;
+    }
+
+    /* Creates the node (lev, l, h), even if l or h contain variables above lev. */
+    private int correctify(int lev, int l, int h) {
+        int ll = level[l], lh = level[h];
+        if (lev < ll && lev < lh)
+            return mk(lev, l, h);
+        if (lev == ll || lev == lh)
+            throw new BDDException("replace: variables of the pairing overlap");
+        if (ll == lh)
+            return mk(ll, correctify(lev, low[l], low[h]),
+                      correctify(lev, high[l], high[h]));
+        if (ll < lh)
+            return mk(ll, correctify(lev, low[l], h), correctify(lev, high[l], h));
+        return mk(lh, correctify(lev, l, low[h]), correctify(lev, l, high[h]));
+    }
+
+    private int support_rec(int a) {
+        boolean[] levels = new boolean[varnum];
+        HashSet<Integer> visited = new HashSet<Integer>();
+        collectLevels(a, levels, visited);
+        int res = 1;
+        for (int l = varnum - 1; l >= 0; l--) {
+            if (levels[l])
+                res = mk(l, 0, res);
+        }
+        return res;
+    }
+
+    private void collectLevels(int a, boolean[] levels, HashSet<Integer> visited) {
+        if (a < 2 || !visited.add(a))
+            return;
+        levels[level[a]] = true;
+        collectLevels(low[a], levels, visited);
+        collectLevels(high[a], levels, visited);
+    }
+
+    private int satone_rec(int a) {
+        if (a < 2)
+            return a;
+        if (low[a] == 0)
+            return mk(level[a], 0, satone_rec(high[a]));
+        return mk(level[a], satone_rec(low[a]), 0);
+    }
+
+    private int lev(int a) {
+        return a < 2 ? varnum : level[a];
+    }
+
+    private int fullsatone(int a) {
+        if (a == 0)
+            return 0;
+        int res = fullsatone_rec(a);
+        for (int v = lev(a) - 1; v >= 0; v--)
+            res = mk(v, res, 0);
+        return res;
+    }
+
+    private int fullsatone_rec(int a) {
+        if (a < 2)
+            return a;
+        if (low[a] != 0) {
+            int res = fullsatone_rec(low[a]);
+            for (int v = lev(low[a]) - 1; v > level[a]; v--)
+                res = mk(v, res, 0);
+            return mk(level[a], res, 0);
+        } else {
+            int res = fullsatone_rec(high[a]);
+            for (int v = lev(high[a]) - 1; v > level[a]; v--)
+                res = mk(v, res, 0);
+            return mk(level[a], 0, res);
+        }
+    }
+
+    /* Computes the cofactors under op, in parallel above the cutoff, and
+     * combines them into a node of level lev. */
+    private int mkBranches(int op, int lev, int a0, int b0, int a1, int b1, int depth) {
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(op, a1, b1, 0, null, depth + 1);
+            t.fork();
+            lo = execute(op, a0, b0, 0, null, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = execute(op, a0, b0, 0, null, depth + 1);
+            hi = execute(op, a1, b1, 0, null, depth + 1);
+        }
+        return mk(lev, lo, hi);
+    }
+
+    private int constrain_rec(int f, int c, int depth) {
+        if (c == 1 || f < 2)
+            return f;
+        if (c == f)
+            return 1;
+        if (c == 0)
+            return 0;
+        int res = cacheLookup(OP_CONSTRAIN, f, c, 0);
+        if (res >= 0)
+            return res;
+        int lf = level[f], lc = level[c];
+        if (lf == lc) {
+            if (low[c] == 0)
+                res = constrain_rec(high[f], high[c], depth + 1);
+            else if (high[c] == 0)
+                res = constrain_rec(low[f], low[c], depth + 1);
+            else
+                res = mkBranches(OP_CONSTRAIN, lf, low[f], low[c], high[f], high[c], depth);
+        } else if (lf < lc) {
+            res = mkBranches(OP_CONSTRAIN, lf, low[f], c, high[f], c, depth);
+        } else {
+            if (low[c] == 0)
+                res = constrain_rec(f, high[c], depth + 1);
+            else if (high[c] == 0)
+                res = constrain_rec(f, low[c], depth + 1);
+            else
+                res = mkBranches(OP_CONSTRAIN, lc, f, low[c], f, high[c], depth);
+        }
+        cacheInsert(OP_CONSTRAIN, f, c, 0, res);
+        return res;
+    }
+
+    /* Restricts a to the literals of the cube (positive or negative). */
+    private int restrict_rec(int a, int cube, int depth) {
+        if (a < 2)
+            return a;
+        int la = level[a];
+        while (cube > 1 && level[cube] < la)
+            cube = low[cube] == 0 ? high[cube] : low[cube];
+        if (cube < 2)
+            return a;
+        int res = cacheLookup(OP_RESTRICT, a, cube, 0);
+        if (res >= 0)
+            return res;
+        if (level[cube] == la) {
+            if (low[cube] == 0)
+                res = restrict_rec(high[a], high[cube], depth + 1);
+            else
+                res = restrict_rec(low[a], low[cube], depth + 1);
+        } else {
+            res = mkBranches(OP_RESTRICT, la, low[a], cube, high[a], cube, depth);
+        }
+        cacheInsert(OP_RESTRICT, a, cube, 0, res);
+        return res;
+    }
+
+    private int simplify_rec(int f, int d, int depth) {
+        if (d == 1 || f < 2)
+            return f;
+        if (d == f)
+            return 1;
+        if (d == 0)
+            return 0;
+        int res = cacheLookup(OP_SIMPLIFY, f, d, 0);
+        if (res >= 0)
+            return res;
+        int lf = level[f], ld = level[d];
+        if (lf == ld) {
+            if (low[d] == 0)
+                res = simplify_rec(high[f], high[d], depth + 1);
+            else if (high[d] == 0)
+                res = simplify_rec(low[f], low[d], depth + 1);
+            else
+                res = mkBranches(OP_SIMPLIFY, lf, low[f], low[d], high[f], high[d], depth);
+        } else if (lf < ld) {
+            res = mkBranches(OP_SIMPLIFY, lf, low[f], d, high[f], d, depth);
+        } else {
+            // the node of d is quantified existentially
+            res = simplify_rec(f, apply_rec(low[d], high[d], or.id, depth + 1), depth + 1);
+        }
+        cacheInsert(OP_SIMPLIFY, f, d, 0, res);
+        return res;
+    }
+
+    private int veccompose_rec(int a, bddPairing pair, int depth) {
+        if (a < 2 || level[a] > pair.last)
+            return a;
+        int res = cacheLookup(OP_VECCOMPOSE, a, pair.id, 0);
+        if (res >= 0)
+            return res;
+        int lo, hi;
+        if (depth < cutoff) {
+            Task t = new Task(OP_VECCOMPOSE, high[a], 0, 0, pair, depth + 1);
+            t.fork();
+            lo = veccompose_rec(low[a], pair, depth + 1);
+            hi = t.join().intValue();
+        } else {
+            lo = veccompose_rec(low[a], pair, depth + 1);
+            hi = veccompose_rec(high[a], pair, depth + 1);
+        }
+        res = ite_rec(pair.function(level[a]), hi, lo, depth + 1);
+        cacheInsert(OP_VECCOMPOSE, a, pair.id, 0, res);
+        return res;
+    }
+
+    /* One satisfying assignment of a that also fixes all variables of the
+     * set var, to true if pol is set. */
+    private int satoneset_rec(int a, int var, boolean pol) {
+        if (a < 2 && var < 2)
+            return a;
+        int la = lev(a), lv = lev(var);
+        if (la < lv) {
+            if (low[a] == 0)
+                return mk(la, 0, satoneset_rec(high[a], var, pol));
+            return mk(la, satoneset_rec(low[a], var, pol), 0);
+        } else if (lv < la) {
+            int res = satoneset_rec(a, high[var], pol);
+            return pol ? mk(lv, 0, res) : mk(lv, res, 0);
+        } else {
+            if (low[a] == 0)
+                return mk(la, 0, satoneset_rec(high[a], high[var], pol));
+            return mk(la, satoneset_rec(low[a], high[var], pol), 0);
+        }
+    }
+
+    // Redirection functions.
+
+    protected void addref_impl(int v) {
+        if (v >= 0 && refcou[v] != MAXREF)
+            refcou[v]++;
+    }
+    protected void delref_impl(int v) {
+        if (v >= 0 && refcou[v] != MAXREF && refcou[v] > 0)
+            refcou[v]--;
+    }
+    protected int zero_impl() { return 0; }
+    protected int one_impl() { return 1; }
+    protected int invalid_bdd_impl() { return INVALID_BDD; }
+    protected int var_impl(int v) { return level_impl(v); }
+    protected int level_impl(int v) { return lev(v); }
+    protected int low_impl(int v) {
+        if (v < 2)
+            throw new BDDException();
+        return low[v];
+    }
+    protected int high_impl(int v) {
+        if (v < 2)
+            throw new BDDException();
+        return high[v];
+    }
+    protected int ithVar_impl(int var) {
+        if (var >= varnum)
+            throw new BDDException();
+        return vars[var];
+    }
+    protected int nithVar_impl(int var) {
+        if (var >= varnum)
+            throw new BDDException();
+        return nvars[var];
+    }
+    protected int makenode_impl(int lev, int lo, int hi) { return run(OP_MAKENODE, lo, hi, lev, null); }
+    protected int ite_impl(int v1, int v2, int v3) { return run(OP_ITE, v1, v2, v3, null); }
+    protected int apply_impl(int v1, int v2, BDDOp opr) { return run(opr.id, v1, v2, 0, null); }
+    protected int not_impl(int v1) { return run(OP_NOT, v1, 0, 0, null); }
+    protected int applyAll_impl(int v1, int v2, BDDOp opr, int v3) {
+        int r = apply_impl(v1, v2, opr);
+        addref_impl(r);
+        int r2 = forAll_impl(r, v3);
+        delref_impl(r);
+        return r2;
+    }
+    protected int applyEx_impl(int v1, int v2, BDDOp opr, int v3) {
+        if (opr == and)
+            return run(OP_RELPROD, v1, v2, v3, null);
+        int r = apply_impl(v1, v2, opr);
+        addref_impl(r);
+        int r2 = exist_impl(r, v3);
+        delref_impl(r);
+        return r2;
+    }
+    protected int applyUni_impl(int v1, int v2, BDDOp opr, int v3) {
+        int r = apply_impl(v1, v2, opr);
+        addref_impl(r);
+        int r2 = unique_impl(r, v3);
+        delref_impl(r);
+        return r2;
+    }
+    protected int compose_impl(int v1, int v2, int var) {
+        // v2 may depend on var itself, so select between the cofactors
+        int hi = run(OP_RESTRICT, v1, vars[var], 0, null);
+        addref_impl(hi);
+        int lo = run(OP_RESTRICT, v1, nvars[var], 0, null);
+        addref_impl(lo);
+        int r = run(OP_ITE, v2, hi, lo, null);
+        delref_impl(hi);
+        delref_impl(lo);
+        return r;
+    }
+    protected int constrain_impl(int v1, int v2) { return run(OP_CONSTRAIN, v1, v2, 0, null); }
+    protected int restrict_impl(int v1, int v2) { return run(OP_RESTRICT, v1, v2, 0, null); }
+    protected int simplify_impl(int v1, int v2) { return run(OP_SIMPLIFY, v1, v2, 0, null); }
+    protected int support_impl(int v) { return run(OP_SUPPORT, v, 0, 0, null); }
+    protected int exist_impl(int v1, int v2) { return run(OP_QUANT + or.id, v1, v2, 0, null); }
+    protected int forAll_impl(int v1, int v2) { return run(OP_QUANT + and.id, v1, v2, 0, null); }
+    protected int unique_impl(int v1, int v2) { return run(OP_QUANT + xor.id, v1, v2, 0, null); }
+    protected int fullSatOne_impl(int v) { return run(OP_FULLSATONE, v, 0, 0, null); }
+
+    protected int replace_impl(int v, BDDPairing p) { return run(OP_REPLACE, v, 0, 0, (bddPairing) p); }
+    protected int veccompose_impl(int v, BDDPairing p) { return run(OP_VECCOMPOSE, v, 0, 0, (bddPairing) p); }
+
+    protected int nodeCount_impl(int v) {
+        return nodeCount_impl2(new int[] { v });
+    }
+    protected double pathCount_impl(int v) {
+        return pathCount_rec(v, new HashMap<Integer, Double>());
+    }
+    private double pathCount_rec(int v, HashMap<Integer, Double> memo) {
+        if (v < 2)
+            return v;
+        Double d = memo.get(v);
+        if (d != null)
+            return d;
+        double res = pathCount_rec(low[v], memo) + pathCount_rec(high[v], memo);
+        memo.put(v, res);
+        return res;
+    }
+    protected double satCount_impl(int v) {
+        return Math.pow(2.0, lev(v)) * satCount_rec(v, new HashMap<Integer, Double>());
+    }
+    private double satCount_rec(int v, HashMap<Integer, Double> memo) {
+        if (v < 2)
+            return v;
+        Double d = memo.get(v);
+        if (d != null)
+            return d;
+        double res = Math.pow(2.0, lev(low[v]) - level[v] - 1) * satCount_rec(low[v], memo)
+            + Math.pow(2.0, lev(high[v]) - level[v] - 1) * satCount_rec(high[v], memo);
+        memo.put(v, res);
+        return res;
+    }
+    protected int satOne_impl(int v) { return run(OP_SATONE, v, 0, 0, null); }
+    protected int satOne_impl2(int v1, int v2, boolean pol) {
+        if (v1 == 0)
+            return 0;
+        return run(OP_SATONESET, v1, v2, pol ? 1 : 0, null);
+    }
+    protected int nodeCount_impl2(int[] v) {
+        HashSet<Integer> visited = new HashSet<Integer>();
+        for (int i = 0; i < v.length; i++)
+            countNodes(v[i], visited);
+        return visited.size();
+    }
+    private void countNodes(int v, HashSet<Integer> visited) {
+        if (v < 2 || !visited.add(v))
+            return;
+        countNodes(low[v], visited);
+        countNodes(high[v], visited);
+    }
+    protected int[] varProfile_impl(int v) {
+        int[] profile = new int[varnum];
+        HashSet<Integer> visited = new HashSet<Integer>();
+        countNodes(v, visited);
+        for (Iterator<Integer> i = visited.iterator(); i.hasNext(); )
+            profile[level[i.next()]]++;
+        return profile;
+    }
+    protected void printTable_impl(int v) {
+        HashSet<Integer> visited = new HashSet<Integer>();
+        countNodes(v, visited);
+        System.out.println("ROOT: " + v);
+        for (Iterator<Integer> i = visited.iterator(); i.hasNext(); ) {
+            int n = i.next();
+            System.out.println("[" + n + "] " + level[n] + ": " + low[n] + " " + high[n]);
+        }
+    }
+
+    // More redirection functions.
+
+    public void addVarBlock(int first, int last, boolean fixed) {
+        // variable blocks only matter for reordering
+    }
+    public void varBlockAll() {
+    }
+    public void clearVarBlocks() {
+    }
+    public void printOrder() {
+        System.out.print("Order:");
+        for (int i = 0; i < varnum; i++)
+            System.out.print(" " + i);
+        System.out.println();
+    }
+    public int getNodeTableSize() {
+        return capacity;
+    }
+    public int setNodeTableSize(int x) {
+        int old = capacity;
+        if (x > capacity) {
+            resize(powerOfTwo(x));
+            gbc(false);
+        }
+        return old;
+    }
+    public int setCacheSize(int x) {
+        int old = cache == null ? 0 : cache.length();
+        int size = powerOfTwo(Math.max(x, 2));
+        cache = new AtomicReferenceArray<CacheEntry>(size);
+        cacheMask = size - 1;
+        return old;
+    }
+    public boolean isInitialized() { return pool != null; }
+    public void done() {
+        super.done();
+        if (pool != null)
+            pool.shutdown();
+        pool = null;
+    }
+    public void setError(int code) {
+        errorCond = code;
+    }
+    public void clearError() {
+        errorCond = 0;
+    }
+    public int setMaxNodeNum(int size) {
+        int old = maxNodeNum;
+        maxNodeNum = size;
+        return old;
+    }
+    public double setMinFreeNodes(double x) {
+        if (x < 0 || x > 1)
+            throw new BDDException("minimum of free nodes out of range: " + x);
+        double old = minFreeNodes;
+        minFreeNodes = x;
+        return old;
+    }
+    public int setMaxIncrease(int x) {
+        if (x < 0)
+            throw new BDDException("negative maximum increase: " + x);
+        int old = maxIncrease;
+        maxIncrease = x;
+        return old;
+    }
+    public double setIncreaseFactor(double x) {
+        if (x < 0)
+            throw new BDDException("negative increase factor: " + x);
+        double old = increaseFactor;
+        increaseFactor = x;
+        return old;
+    }
+    public int getNodeNum() {
+        return capacity - freeNodes();
+    }
+    public int getCacheSize() {
+        return cache.length();
+    }
+    public int reorderGain() {
+        return 0;
+    }
+    public void printStat() {
+        System.out.println("Parallel BDD factory statistics");
+        System.out.println("-------------------------------");
+        System.out.println("Threads:            " + pool.getParallelism());
+        System.out.println("Fork cutoff:        " + cutoff);
+        System.out.println("Node table size:    " + capacity);
+        System.out.println("Nodes in use:       " + getNodeNum());
+        System.out.println("Cache size:         " + cache.length());
+        System.out.println("Garbage collections: " + gbcCount);
+    }
+    public double setCacheRatio(double x) {
+        if (x <= 0)
+            throw new BDDException("cache ratio must be positive: " + x);
+        double old = cacheRatio;
+        cacheRatio = (int) x;
+        if (cacheRatio > 0)
+            setCacheSize(capacity / cacheRatio);
+        return old;
+    }
+    public int varNum() {
+        return varnum;
+    }
+    public int setVarNum(int num) {
+        if (num < varnum || num > Integer.MAX_VALUE / 2)
+            throw new BDDException();
+        int old = varnum;
+        int[] newVars = new int[num];
+        int[] newNVars = new int[num];
+        System.arraycopy(vars, 0, newVars, 0, old);
+        System.arraycopy(nvars, 0, newNVars, 0, old);
+        vars = newVars;
+        nvars = newNVars;
+        varnum = num;
+        for (int k = old; k < num; k++) {
+            vars[k] = run(OP_MAKENODE, 0, 1, k, null);
+            refcou[vars[k]] = MAXREF;
+            nvars[k] = run(OP_MAKENODE, 1, 0, k, null);
+            refcou[nvars[k]] = MAXREF;
+        }
+        return old;
+    }
+    public void printAll() {
+        boolean[] inTable = new boolean[capacity];
+        for (int i = 0; i < unique.length(); i++) {
+            int e = unique.get(i);
+            if (e != 0)
+                inTable[e - 1] = true;
+        }
+        for (int n = 2; n < capacity; n++) {
+            if (inTable[n])
+                System.out.println("[" + n + " - " + refcou[n] + "] " + level[n]
+                                   + ": " + low[n] + " " + high[n]);
+        }
+    }
+    public void setVarOrder(int[] neworder) {
+        // the variable order is fixed
+        for (int i = 0; i < neworder.length; i++) {
+            if (neworder[i] != i)
+                throw new BDDException("the variable order of the parallel factory is fixed");
+        }
+    }
+    public int level2Var(int level) { return level; }
+    public int var2Level(int var) { return var; }
+    public ReorderMethod getReorderMethod() {
+        return REORDER_NONE;
+    }
+    public int getReorderTimes() {
+        return 0;
+    }
+    public void disableReorder() {
+    }
+    public void enableReorder() {
+    }
+    public int reorderVerbose(int v) {
+        return 0;
+    }
+    public void reorder(ReorderMethod m) {
+        // the variable order is fixed
+    }
+    public void autoReorder(ReorderMethod method) {
+        // the variable order is fixed
+    }
+    public void autoReorder(ReorderMethod method, int max) {
+        // the variable order is fixed
+    }
+    public void swapVar(int v1, int v2) {
+        if (v1 != v2)
+            throw new BDDException("the variable order of the parallel factory is fixed");
+    }
+
+    private class bddPairing extends BDDPairing {
+
+        private int[] result; /* new level of each level */
+        private int[] function; /* composed node of each level, -1 if none */
+        private int last; /* the last level with a composed node */
+        private int id;
+
+        private bddPairing() {
+            reset();
+        }
+
+        int level(int l) {
+            return l < result.length ? result[l] : l;
+        }
+
+        int function(int l) {
+            return l < function.length && function[l] >= 0 ? function[l] : vars[l];
+        }
+
+        private void ensureSize(int var) {
+            if (var < result.length)
+                return;
+            int size = Math.max(var + 1, varnum);
+            int[] r2 = new int[size];
+            int[] f2 = new int[size];
+            System.arraycopy(result, 0, r2, 0, result.length);
+            System.arraycopy(function, 0, f2, 0, function.length);
+            for (int i = result.length; i < size; i++) {
+                r2[i] = i;
+                f2[i] = -1;
+            }
+            result = r2;
+            function = f2;
+        }
+
+        private void setFunction(int oldvar, int f) {
+            if (function[oldvar] >= 0)
+                delref_impl(function[oldvar]);
+            addref_impl(f);
+            function[oldvar] = f;
+            last = Math.max(last, oldvar);
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#set(int, int)
+         */
+        public void set(int oldvar, int newvar) {
+            ensureSize(oldvar);
+            result[oldvar] = newvar;
+            setFunction(oldvar, vars[newvar]);
+            id = ++pairingCounter;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#set(int, net.sf.javabdd.BDD)
+         */
+        public void set(int oldvar, BDD newvar) {
+            int f = unwrap(newvar);
+            ensureSize(oldvar);
+            // as in JFactory, a replace uses the top variable of the function
+            result[oldvar] = lev(f);
+            setFunction(oldvar, f);
+            id = ++pairingCounter;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDPairing#reset()
+         */
+        public void reset() {
+            if (function != null) {
+                for (int i = 0; i < function.length; i++) {
+                    if (function[i] >= 0)
+                        delref_impl(function[i]);
+                }
+            }
+            result = new int[varnum];
+            function = new int[varnum];
+            for (int i = 0; i < varnum; i++) {
+                result[i] = i;
+                function[i] = -1;
+            }
+            last = -1;
+            id = ++pairingCounter;
+        }
+
+    }
+
+    public BDDPairing makePair() {
+        return new bddPairing();
+    }
+}
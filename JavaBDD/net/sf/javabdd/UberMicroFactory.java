@@ -114,10 +114,6 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
         }
     }
     
-    public void handleDeferredFree() {
-        to_free_length = 0;
-    }
-    
     /**
      * Implementation of BDDPairing used by JFactory.
      */
@@ -265,6 +261,13 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
     public void autoReorder(ReorderMethod method) { bdd_autoreorder(method.id); }
     public void autoReorder(ReorderMethod method, int max) { bdd_autoreorder_times(method.id, max); }
     public void swapVar(int v1, int v2) { bdd_swapvar(v1, v2); }
+    public long getRuntime() { return System.currentTimeMillis() - bddstarttime; }
+    public long getRuntimeLimit() { return runtimelimit; }
+    public void setRuntimeLimit(long limit) { runtimelimit = limit; }
+    public void unsetRuntimeLimit() { runtimelimit = Long.MAX_VALUE; }
+    public boolean supportsRuntimeLimit() { return true; }
+    public void setNewNodeLimit(long limit) { newnodelimit = limit; newnodebase = bddproduced; }
+    public void unsetNewNodeLimit() { newnodelimit = Long.MAX_VALUE; }
     
     public ReorderMethod getReorderMethod() {
         switch (bddreordermethod) {
@@ -1648,6 +1651,12 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
     int cachesize; /* Size of the operator caches */
     long gbcclock; /* Clock ticks used in GBC */
     int usednodes_nextreorder; /* When to do reorder next time */
+    long bddstarttime; /* Time the factory was initialized (ms) */
+    long runtimelimit = Long.MAX_VALUE; /* Runtime at which operations are abandoned (ms) */
+    long newnodelimit = Long.MAX_VALUE; /* Number of new nodes allowed since newnodebase */
+    int newnodebase; /* Value of bddproduced when the node limit was set */
+    int limitcountdown = LIMITINTERVAL; /* Calls of bdd_makenode until the limits are checked */
+    int opreorderdisabled; /* Value of reorderdisabled when the operation started */
 
     static final int BDD_MEMORY = (-1); /* Out of memory */
     static final int BDD_VAR = (-2); /* Unknown variable */
@@ -1704,6 +1713,7 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
             "Division by zero" };
 
     static final int DEFAULTMAXNODEINC = 10000000;
+    static final int LIMITINTERVAL = 1024;
 
     /*=== OTHER INTERNAL DEFINITIONS =======================================*/
 
@@ -3695,6 +3705,7 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
 
     final void INITREF() {
         bddrefstacktop = 0;
+        opreorderdisabled = reorderdisabled;
     }
     final int PUSHREF(int a) {
         bddrefstack[bddrefstacktop++] = a;
@@ -3936,7 +3947,7 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
         gcstats.num = gbcollectnum;
         gbc_handler(true, gcstats);
 
-        // Handle nodes that were marked as free by finalizer.
+        // Handle nodes that were passed to deferredFree().
         handleDeferredFree();
         
         for (r = 0; r < bddrefstacktop; r++)
@@ -4019,7 +4030,29 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
         bdd_unmark(HIGH(i));
     }
 
+    void bdd_checklimits() {
+        limitcountdown = LIMITINTERVAL;
+        if (bddproduced - newnodebase > newnodelimit)
+            bdd_limitexceeded("new node limit exceeded");
+        if (runtimelimit != Long.MAX_VALUE && getRuntime() > runtimelimit)
+            bdd_limitexceeded("runtime limit exceeded");
+    }
+
+    /* Abandons the current operation.  Its intermediate results are only
+     * held by the reference stack, so after clearing it the garbage
+     * collection reclaims them. */
+    void bdd_limitexceeded(String msg) {
+        bddrefstacktop = 0;
+        reorderdisabled = opreorderdisabled;
+        throw new BDDLimitException(msg);
+    }
+
     int bdd_makenode(int level, int low, int high) {
+        /* Each recursion of an operation that is not answered by a cache
+         * ends here, so this is where the limits are checked */
+        if (--limitcountdown == 0)
+            bdd_checklimits();
+
         /* check whether childs are equal */
         if (low == high) return low;
         
@@ -4187,6 +4220,7 @@ public class UberMicroFactory extends BDDFactoryIntImpl {
         bddvarnum = 0;
         gbcollectnum = 0;
         gbcclock = 0;
+        bddstarttime = System.currentTimeMillis();
         usednodes_nextreorder = bddnodesize;
         bddmaxnodeincrease = DEFAULTMAXNODEINC;
 
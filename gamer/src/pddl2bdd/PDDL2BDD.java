@@ -32,10 +32,14 @@ import pddl2bdd.pddl2bdd.MakeFDD;
 import pddl2bdd.pddl2bdd.MakeFDDAStar;
 import pddl2bdd.pddl2bdd.MakeAbstractFDD;
 import pddl2bdd.pddl2bdd.MakeFDDDijkstra;
+import pddl2bdd.pddl2bdd.ActionProfile;
+import pddl2bdd.pddl2bdd.Budget;
+import pddl2bdd.pddl2bdd.Telemetry;
 import pddl2bdd.util.Maths;
 import pddl2bdd.util.Time;
 import pddl2bdd.variableOrdering.CausalGraph;
 import pddl2bdd.variableOrdering.CausalGraphNode;
+import pddl2bdd.variableOrdering.OrderingCache;
 import pddl2bdd.variableOrdering.heuristic.*;
 
 /**
@@ -55,9 +59,15 @@ public class PDDL2BDD {
 	public static boolean USEBETTERVARIABLEORDERING = true;
 	public static boolean USEABSTRACTION = true;
 	public static boolean AUTOMATEDBIDIR = true;
+	public static boolean USEEVBDD = false;
+	public static boolean USECOSTCOUNTER = false;
 	public static orderings ORDERING = orderings.gamer00;
     public static double REORDERING_TIME = 0.0;
     public static int REORDERING_STEPS = 0;
+    public static String TELEMETRY_FILE = null;
+    public static boolean TELEMETRY_STATES = false;
+    public static double TIME_LIMIT = 0.0;
+    public static int NODE_LIMIT = 0;
 
 	public enum orderings {
 		butler,
@@ -80,10 +90,40 @@ public class PDDL2BDD {
 		weightedgamer11
 	}
 
+	/**
+	 * Restores the default values of all options, so that the next call of
+	 * main in the same JVM is not influenced by the previous one.
+	 */
+	public static void resetOptions() {
+		COSTS = false;
+		BIDIRECTIONAL = true;
+		BFS = false;
+		ASTAR = true;
+		DIJKSTRA = false;
+		ABSTRACT = false;
+		USENOMOREABSTRACTION = true;
+		USEBETTERVARIABLEORDERING = true;
+		USEABSTRACTION = true;
+		AUTOMATEDBIDIR = true;
+		USEEVBDD = false;
+		USECOSTCOUNTER = false;
+		ORDERING = orderings.gamer00;
+		REORDERING_TIME = 0.0;
+		REORDERING_STEPS = 0;
+		TELEMETRY_FILE = null;
+		TELEMETRY_STATES = false;
+		TIME_LIMIT = 0.0;
+		NODE_LIMIT = 0;
+	}
+
 	public static void printCall() {
 		System.err.println("Error in program call!");
 		System.err
 		.println("call: java -classpath <path to gamer.jar>:<path to JavaBDD jar> -Dbdd=<BDD package> <name of problem file> <BDD package> [options]");
+		System.err
+		.println("\tproblem file: the partition file (e.g., orig-1nPar.gdl), or problem.psas as written by the grounder, or - to read the latter from stdin; then the grounded domain.pddl and problem.pddl are read from the same directory");
+		System.err
+		.println("\tBDD package zdd: stores the state sets as zero-suppressed decision diagrams, which are smaller for sparse state spaces (not with -b or -e)");
 		System.err.println("possible options:");
 		System.err
 		.println("\t-a (--astar): use of A* search, if only uniform costs present (default: uses BFS)");
@@ -92,6 +132,10 @@ public class PDDL2BDD {
 		System.err
 		.println("\t-u (--unidir): use unidirectional search in case of BFS or Dijkstra search (default: uses bidirectional search)");
 		System.err
+		.println("\t-b (--bitvector): use unidirectional Dijkstra search with the g-values stored in a binary cost counter (disables reordering)");
+		System.err
+		.println("\t-e (--evbdd): use unidirectional Dijkstra search with the open list stored in an edge-valued BDD (experimental; disables reordering)");
+		System.err
 		.println("\t-p (--partial-pdb): use no heuristic in case of A* search (default: builds a pattern database)");
 		System.err
 		.println("\t-s (--smaller-pdb): use smaller patterns for pattern database (default: no abstraction)");
@@ -123,6 +167,12 @@ public class PDDL2BDD {
         System.err
         .println("\t-r <time (double)> (--reordering-time=<time (double)>): use automatical reordering for up to <time> seconds");
         System.err.println("\t-n <num> (--num-reorderings=<num>): use up to <num> reorderings; if <num>=-1, no limit is set (i.e., infinity)");
+        System.err.println("\t-t <file> (--telemetry=<file>): write one JSON record per expansion to <file>");
+        System.err.println("\t--telemetry-states: also count the states of frontier and closed set in the telemetry records");
+        System.err.println("\t--profile=<file>: profile the images per action; prints a ranked report at the end and writes the profile to <file>");
+        System.err.println("\t--use-profile=<file>: order the actions by decreasing time according to the profile <file> of a previous run");
+        System.err.println("\t-l <time (double)> (--time-limit=<time (double)>): stop after <time> seconds; the time is distributed over ordering, creation of the transition relation, PDB, search and reconstruction (default: no limit)");
+        System.err.println("\t--node-limit=<num>: stop if the node table grows beyond <num> nodes (default: no limit)");
         /*System.err.println("\t-i <type> (--criterion=<type>): stop automatic reordering based on criterion <type>");
         System.err.println("\t\tallowed types:");
         System.err.println("\t\t\tpercentage");
@@ -138,6 +188,15 @@ public class PDDL2BDD {
 	 *            Contains all the parameters of the program call.
 	 */
 	public static void main(String[] args) {
+		try {
+			convert(args);
+		} catch (Budget.ExceededException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void convert(String[] args) {
 		MakeFDD maker = null;
 		MakeFDDAStar makerA = null;
 		MakeAbstractFDD absMaker = null;
@@ -181,6 +240,10 @@ public class PDDL2BDD {
 				BIDIRECTIONAL = false;
 			else if (args[i].equals("-d") || args[i].equals("--dijkstra"))
 				useDijkstra = true;
+			else if (args[i].equals("-b") || args[i].equals("--bitvector"))
+				USECOSTCOUNTER = true;
+			else if (args[i].equals("-e") || args[i].equals("--evbdd"))
+				USEEVBDD = true;
 			else if (args[i].equals("-p") || args[i].equals("--partial-pdb"))
 				USEABSTRACTION = false;
 			else if (args[i].equals("-s") || args[i].equals("--smaller-pdb"))
@@ -249,6 +312,26 @@ public class PDDL2BDD {
                 if (REORDERING_STEPS < 0) {
                     REORDERING_STEPS = Integer.MAX_VALUE;
                 }
+            } else if (args[i].equals("-t") || args[i].startsWith("--telemetry=")) {
+                if (args[i].equals("-t"))
+                    i++;
+                else
+                    args[i] = args[i].substring(12);
+                TELEMETRY_FILE = args[i];
+            } else if (args[i].equals("--telemetry-states")) {
+                TELEMETRY_STATES = true;
+            } else if (args[i].startsWith("--profile=")) {
+                ActionProfile.record(args[i].substring(10));
+            } else if (args[i].startsWith("--use-profile=")) {
+                ActionProfile.use(args[i].substring(14));
+            } else if (args[i].equals("-l") || args[i].startsWith("--time-limit=")) {
+                if (args[i].equals("-l"))
+                    i++;
+                else
+                    args[i] = args[i].substring(13);
+                TIME_LIMIT = Double.parseDouble(args[i]);
+            } else if (args[i].startsWith("--node-limit=")) {
+                NODE_LIMIT = Integer.parseInt(args[i].substring(13));
             /*} else if (args[i].equals("-i") || args[i].startsWith("--criterion=")) {
                 if (args[i].equals("-i"))
                     i++;
@@ -270,11 +353,32 @@ public class PDDL2BDD {
 				printCall();
 			}
 		}
+		if (bddLibrary.equals("zdd") && (USECOSTCOUNTER || USEEVBDD)) {
+			System.err.println("Error: cost counter and edge-valued BDD not available with ZDDs!");
+			printCall();
+		}
+		if (TELEMETRY_FILE != null)
+			Telemetry.open(TELEMETRY_FILE, TELEMETRY_STATES);
+		if (TIME_LIMIT > 0 || NODE_LIMIT > 0)
+			Budget.start((long) (TIME_LIMIT * 1000), NODE_LIMIT);
 
 		startingTime = System.currentTimeMillis();
 
 		// delete derived predicates
-		GroundedPDDLParser.parse(partFileName);
+		String domainFileName;
+		if (partFileName.equals("-") || partFileName.endsWith(".psas")) {
+			// the unchanged output of the grounder
+			String directory = partFileName.substring(0,
+					partFileName.lastIndexOf('/') + 1);
+			domainFileName = directory + "domain.pddl";
+			GroundedPDDLParser.parseGrounderOutput(domainFileName, directory
+					+ "problem.pddl", partFileName);
+			partFileName = "orig-1nPar.gdl";
+		} else {
+			domainFileName = partFileName.substring(0,
+					partFileName.length() - 8) + "Dom.gdl";
+			GroundedPDDLParser.parse(partFileName);
+		}
 		COSTS = !GroundedPDDLParser.isUniformCost();
 		if (useAstarAnyway)
 			COSTS = true;
@@ -318,17 +422,23 @@ public class PDDL2BDD {
 			numberOfVariables += Maths.log2(group.size());
 		}
 		numberOfVariables = numberOfVariables * 2;
-		boolean[][] influences = new boolean[GroundedPDDLParser.partitioning
-		                                     .size()][GroundedPDDLParser.partitioning.size()];
-		CausalGraph cg = new CausalGraph(partitions, false, true);
-		for (int i = 0; i < influences.length; i++) {
-			CausalGraphNode node = cg.getVariable(i);
-			CausalGraphNode succ;
-			for (int j = 0; j < node.getNumberOfSuccessors(); j++) {
-				succ = node.getSuccessor(j);
-				influences[i][succ.getVariable()] = true;
-				influences[succ.getVariable()][i] = true;
+		Budget.startPhase(Budget.Phase.ordering);
+		String cacheKey = OrderingCache.key(domainFileName, partitions);
+		boolean[][] influences = OrderingCache.getInfluences(cacheKey);
+		if (influences == null) {
+			influences = new boolean[GroundedPDDLParser.partitioning
+			                         .size()][GroundedPDDLParser.partitioning.size()];
+			CausalGraph cg = new CausalGraph(partitions, false, true);
+			for (int i = 0; i < influences.length; i++) {
+				CausalGraphNode node = cg.getVariable(i);
+				CausalGraphNode succ;
+				for (int j = 0; j < node.getNumberOfSuccessors(); j++) {
+					succ = node.getSuccessor(j);
+					influences[i][succ.getVariable()] = true;
+					influences[succ.getVariable()][i] = true;
+				}
 			}
+			OrderingCache.putInfluences(cacheKey, influences);
 		}
 		int[] variableOrdering;
 		if (USEBETTERVARIABLEORDERING) {
@@ -367,68 +477,72 @@ public class PDDL2BDD {
 					}
 				}
 			} else {
-				VariableOrderingHeuristic vo;
-				switch (ORDERING) {
-				case butler:
-					vo = new Butler();
-					break;
-				case cg:
-					vo = new CG();
-					break;
-				case cgbfs:
-					vo = new CG(true);
-					break;
-				case cgbfs_single:
-					vo = new CG(true, true);
-					break;
-				case chung1:
-					vo = new Chung1();
-					break;
-				case chung2:
-					vo = new Chung2();
-					break;
-				case gamer00:
-					vo = new Gamer(false, false);
-					break;
-				case gamer01:
-					vo = new Gamer(false, true);
-					break;
-				case gamer10:
-					vo = new Gamer(true, false);
-					break;
-				case gamer11:
-					vo = new Gamer(true, true);
-					break;
-				case greedy:
-					vo = new Greedy();
-					break;
-				case malik:
-					vo = new Malik();
-					break;
-				case minato:
-					vo = new Minato();
-					break;
-				case random:
-					vo = new Rand();
-					break;
-				case weightedgamer00:
-					vo = new WeightedGamer(false, false);
-					break;
-				case weightedgamer01:
-					vo = new WeightedGamer(false, true);
-					break;
-				case weightedgamer10:
-					vo = new WeightedGamer(true, false);
-					break;
-				case weightedgamer11:
-					vo = new WeightedGamer(true, true);
-					break;
-				default:
-					vo = new Gamer();
-					break;
+				variableOrdering = OrderingCache.getOrdering(cacheKey, ORDERING.name());
+				if (variableOrdering == null) {
+					VariableOrderingHeuristic vo;
+					switch (ORDERING) {
+					case butler:
+						vo = new Butler();
+						break;
+					case cg:
+						vo = new CG();
+						break;
+					case cgbfs:
+						vo = new CG(true);
+						break;
+					case cgbfs_single:
+						vo = new CG(true, true);
+						break;
+					case chung1:
+						vo = new Chung1();
+						break;
+					case chung2:
+						vo = new Chung2();
+						break;
+					case gamer00:
+						vo = new Gamer(false, false);
+						break;
+					case gamer01:
+						vo = new Gamer(false, true);
+						break;
+					case gamer10:
+						vo = new Gamer(true, false);
+						break;
+					case gamer11:
+						vo = new Gamer(true, true);
+						break;
+					case greedy:
+						vo = new Greedy();
+						break;
+					case malik:
+						vo = new Malik();
+						break;
+					case minato:
+						vo = new Minato();
+						break;
+					case random:
+						vo = new Rand();
+						break;
+					case weightedgamer00:
+						vo = new WeightedGamer(false, false);
+						break;
+					case weightedgamer01:
+						vo = new WeightedGamer(false, true);
+						break;
+					case weightedgamer10:
+						vo = new WeightedGamer(true, false);
+						break;
+					case weightedgamer11:
+						vo = new WeightedGamer(true, true);
+						break;
+					default:
+						vo = new Gamer();
+						break;
+					}
+					variableOrdering = vo.findVariableOrdering(partitions);
+					vo = null;
+					OrderingCache.putOrdering(cacheKey, ORDERING.name(), variableOrdering);
 				}
-				variableOrdering = vo.findVariableOrdering(partitions);
-				vo = null;
 				try {
 					FileWriter ordering = new FileWriter(
 							"variableOrdering_tmp.txt");
@@ -462,6 +576,7 @@ public class PDDL2BDD {
 					|| (BFS && BIDIRECTIONAL)) {
 				if (COSTS) {
 					endingTime = System.currentTimeMillis();
+					Budget.startPhase(Budget.Phase.transitionRelation);
 					System.out.println("Initializing planner after "
 							+ Time.printTime(endingTime - startingTime));
 					makerD = new MakeFDDDijkstra(partitions, numberOfVariables, bddLibrary);
@@ -491,6 +606,7 @@ public class PDDL2BDD {
 									- endingTime));
 				} else {
 					endingTime = System.currentTimeMillis();
+					Budget.startPhase(Budget.Phase.transitionRelation);
 					System.out.println("Initializing planner after "
 							+ Time.printTime(endingTime - startingTime));
 					maker = new MakeFDD(partitions, numberOfVariables, bddLibrary);
@@ -518,6 +634,7 @@ public class PDDL2BDD {
 		System.out.println("Total time so far: "
 				+ Time.printTime(endingTime - startingTime));
 		System.out.println("creating BDD ...");
+		Budget.startPhase(Budget.Phase.transitionRelation);
 		if (ABSTRACT) {
 			if (USEABSTRACTION) {
 				if (USENOMOREABSTRACTION) {
@@ -566,6 +683,7 @@ public class PDDL2BDD {
 					absMaker = new MakeAbstractFDD(partitions, emptyPartitions,
 							numberOfVariables, bddLibrary, partFileName);
 					System.out.println("building PDB ...");
+					Budget.startPhase(Budget.Phase.pdb);
 					long time1 = System.currentTimeMillis();
 					if (partFileName.startsWith("super-abstract"))
 						absMaker.buildSuperPDB();
@@ -641,6 +759,7 @@ public class PDDL2BDD {
 							+ Time.printTime(System.currentTimeMillis()
 									- endingTime));
 					System.out.println("building PDB ...");
+					Budget.startPhase(Budget.Phase.pdb);
 					long time1 = System.currentTimeMillis();
 					if (partFileName.startsWith("super-abstract"))
 						absMaker.buildSuperPDB();
@@ -683,6 +802,7 @@ public class PDDL2BDD {
 									+ Time.printTime(System.currentTimeMillis()
 											- endingTime));
 							System.out.println("building PDB ...");
+							Budget.startPhase(Budget.Phase.pdb);
 							time1 = System.currentTimeMillis();
 							if (partFileName.startsWith("super-abstract"))
 								absMaker.buildSuperPDB();
@@ -739,6 +859,7 @@ public class PDDL2BDD {
 										emptyPartitions, numberOfVariables,
 										bddLibrary, partitionFileName);
 								System.out.println("building new PDB ...");
+								Budget.startPhase(Budget.Phase.pdb);
 								time1 = System.currentTimeMillis();
 								if (partFileName.startsWith("super-abstract"))
 									absMaker.buildSuperPDB();
@@ -790,6 +911,7 @@ public class PDDL2BDD {
 			}
 			GroundedPDDLParser.cleanup();
 			System.out.println("finding shortest plan ...");
+			Budget.startPhase(Budget.Phase.search);
 			endingTime = System.currentTimeMillis();
 			maker.findPlanBFS(BIDIRECTIONAL);
 			System.out.println("done.");
@@ -797,7 +919,7 @@ public class PDDL2BDD {
 					+ Time.printTime(System.currentTimeMillis() - endingTime));
 			//System.out.println("cleaning up ...");
 			//maker.cleanup();
-            System.out.println("peak nodecount: " + maker.factory.getNodeTableSize());
+            System.out.println("peak nodecount: " + maker.factory.getPeakNodeNum());
             maker.factory.done();
 			//System.out.println("done.");
 		} else if (ASTAR) {
@@ -808,6 +930,7 @@ public class PDDL2BDD {
 			System.out.println("done.");
 			GroundedPDDLParser.cleanup();
 			System.out.println("finding cheapest plan ...");
+			Budget.startPhase(Budget.Phase.search);
 			long time1 = System.currentTimeMillis();
 			// makerA.findPlanAStar();
 			makerA.findPlanAStarNew();
@@ -817,7 +940,7 @@ public class PDDL2BDD {
 					+ Time.printTime(time2 - time1));
 			//System.out.println("cleaning up ...");
 			//makerA.cleanup();
-            System.out.println("peak nodecount: " + makerA.factory.getNodeTableSize());
+            System.out.println("peak nodecount: " + makerA.factory.getPeakNodeNum());
             makerA.factory.done();
 			//System.out.println("done.");
 		} else if (DIJKSTRA) {
@@ -829,15 +952,21 @@ public class PDDL2BDD {
 			}
 			GroundedPDDLParser.cleanup();
 			System.out.println("finding cheapest plan ...");
+			Budget.startPhase(Budget.Phase.search);
 			long time1 = System.currentTimeMillis();
-			makerD.findPlanDijkstra(BIDIRECTIONAL);
+			if (USEEVBDD)
+				makerD.findPlanDijkstraEV();
+			else if (USECOSTCOUNTER)
+				makerD.findPlanDijkstraCostCounter();
+			else
+				makerD.findPlanDijkstra(BIDIRECTIONAL);
 			long time2 = System.currentTimeMillis();
 			System.out.println("done.");
 			System.out.println("Dijkstra search time: "
 					+ Time.printTime(time2 - time1));
 			//System.out.println("cleaning up ...");
 			//makerD.cleanup();
-            System.out.println("peak nodecount: " + makerD.factory.getNodeTableSize());
+            System.out.println("peak nodecount: " + makerD.factory.getPeakNodeNum());
             makerD.factory.done();
 			//System.out.println("done.");
 		}
@@ -0,0 +1,326 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.Permission;
+import java.util.*;
+import pddl2bdd.parser.GroundedPDDLParser;
+import pddl2bdd.pddl2bdd.ActionProfile;
+import pddl2bdd.pddl2bdd.Budget;
+import pddl2bdd.pddl2bdd.Telemetry;
+import pddl2bdd.util.Time;
+import pddl2bdd.variableOrdering.OrderingCache;
+
+/**
+ * Solves a queue of grounded problems one after the other in the same JVM,
+ * so that the start of the JVM, the loading of the BDD library and the
+ * warm-up of the JIT compiler are paid only once.
+ *
+ * A problem is submitted by moving a directory with the output of the grounder
+ * (domain.pddl, problem.pddl and problem.psas), or with the files
+ * orig-1Dom.gdl, orig-1Prob.gdl and orig-1nPar.gdl created from it by former
+ * versions of the plan script, into the directory queue of the spool
+ * directory; a file options in it may hold additional options for the
+ * planner. The problems are solved in the order of their arrival. The
+ * directory is then moved to the directory done, containing the plan in
+ * plan_output, the output of the planner in output and a one line status in
+ * status ("solved", "unsolved", "time budget exceeded", "memory budget
+ * exceeded: ...", "exit <code>" or "error: ..."). The daemon stops once a
+ * file stop is created in the spool directory.
+ *
+ * The planner works in the current directory, so the daemon must be started
+ * in a directory of its own. Everything created there after the start is
+ * deleted before each problem. Between the problems the options are reset,
+ * exits of the planner are trapped and the BDD factory is released; a new
+ * factory is created for each problem, as the number of variables differs.
+ * The influences of the causal graph and the variable orderings are cached
+ * (see {@link OrderingCache}).
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class PlannerDaemon {
+	/** The names of the files the planner may be called on. */
+	private static final String GROUNDER_OUTPUT = "problem.psas";
+	private static final String PROBLEM_FILE = "orig-1nPar.gdl";
+	/** The files of a request that are not handed to the planner. */
+	private static final List<String> RESULT_FILES = Arrays.asList("options",
+			"output", "status", "plan_output");
+	/** The time between two looks into the queue (ms). */
+	private static final long POLL_INTERVAL = 500;
+
+	private static File spool;
+	private static String bddLibrary;
+	private static LinkedList<String> plannerOptions = new LinkedList<String>();
+	private static long timeBudget = 0;
+	private static int nodeBudget = 0;
+	private static HashSet<String> initialFiles;
+	private static ExitTrap exitTrap;
+
+	/**
+	 * Thrown instead of exiting the JVM if the planner calls System.exit.
+	 */
+	private static class ExitException extends SecurityException {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		ExitException(int status) {
+			super("exit " + status);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * A security manager that allows everything but exiting while a problem
+	 * is solved.
+	 */
+	private static class ExitTrap extends SecurityManager {
+		volatile boolean active = false;
+		volatile int status = -1;
+
+		@Override
+		public void checkPermission(Permission perm) {
+		}
+
+		@Override
+		public void checkPermission(Permission perm, Object context) {
+		}
+
+		@Override
+		public void checkExit(int status) {
+			if (active) {
+				// remembered, in case the planner catches the exception
+				this.status = status;
+				throw new ExitException(status);
+			}
+		}
+	}
+
+	public static void printCall() {
+		System.err.println("Error in program call!");
+		System.err
+		.println("call: java -classpath <path to gamer.jar>:<path to JavaBDD jar> -Dbdd=<BDD package> pddl2bdd.PlannerDaemon <spool directory> <BDD package> [options]");
+		System.err.println("possible options:");
+		System.err
+		.println("\t--time=<time (double)>: stop the planner for a problem after <time> seconds (default: no limit)");
+		System.err
+		.println("\t--nodes=<num>: stop the planner for a problem if the node table grows beyond <num> nodes (default: no limit)");
+		System.err
+		.println("\tall other options are handed to the planner for every problem (see pddl2bdd.PDDL2BDD)");
+		System.exit(1);
+	}
+
+	/**
+	 * The main method that waits for problems and solves them.
+	 *
+	 * @param args
+	 *            Contains all the parameters of the program call.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Error: not enough arguments in program call!");
+			printCall();
+		}
+		spool = new File(args[0]);
+		bddLibrary = args[1];
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].startsWith("--time="))
+				timeBudget = (long) (Double.parseDouble(args[i].substring(7)) * 1000);
+			else if (args[i].startsWith("--nodes="))
+				nodeBudget = Integer.parseInt(args[i].substring(8));
+			else
+				plannerOptions.add(args[i]);
+		}
+		File queue = new File(spool, "queue");
+		File done = new File(spool, "done");
+		queue.mkdirs();
+		done.mkdirs();
+		if (!queue.isDirectory() || !done.isDirectory()) {
+			System.err.println("Error: cannot create the directories in " + spool);
+			System.exit(1);
+		}
+		initialFiles = new HashSet<String>(Arrays.asList(new File(".").list()));
+		OrderingCache.enable();
+		exitTrap = new ExitTrap();
+		try {
+			System.setSecurityManager(exitTrap);
+		} catch (UnsupportedOperationException e) {
+			System.err.println("Error: cannot trap the exits of the planner; start java with -Djava.security.manager=allow");
+			System.exit(1);
+		}
+
+		System.out.println("waiting for problems in " + queue);
+		while (!new File(spool, "stop").exists()) {
+			File request = nextRequest(queue);
+			if (request == null) {
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					break;
+				}
+				continue;
+			}
+			long startingTime = System.currentTimeMillis();
+			String status = solve(request);
+			File result = new File(done, request.getName());
+			for (int i = 1; result.exists(); i++)
+				result = new File(done, request.getName() + "." + i);
+			if (!request.renameTo(result))
+				System.err.println("Warning: cannot move " + request + " to " + result);
+			System.out.println(request.getName() + ": " + status + " (took "
+					+ Time.printTime(System.currentTimeMillis() - startingTime) + ")");
+		}
+		System.out.println("stopped.");
+		exitTrap.active = false;
+		System.exit(0);
+	}
+
+	/**
+	 * @return The directory in the queue that arrived first, or null if the
+	 *         queue is empty.
+	 */
+	private static File nextRequest(File queue) {
+		File[] requests = queue.listFiles();
+		if (requests == null)
+			return null;
+		File next = null;
+		for (File request : requests) {
+			if (!request.isDirectory())
+				continue;
+			if (next == null
+					|| request.lastModified() < next.lastModified()
+					|| (request.lastModified() == next.lastModified() && request
+							.getName().compareTo(next.getName()) < 0))
+				next = request;
+		}
+		return next;
+	}
+
+	/**
+	 * Solves the problem of a request and stores the results in its directory.
+	 *
+	 * @return The status.
+	 */
+	private static String solve(File request) {
+		String status = null;
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		PrintStream output = null;
+		try {
+			cleanWorkingDirectory();
+			File[] files = request.listFiles();
+			for (File file : files) {
+				if (file.isFile() && !RESULT_FILES.contains(file.getName()))
+					Files.copy(file.toPath(), Paths.get(file.getName()),
+							StandardCopyOption.REPLACE_EXISTING);
+			}
+			LinkedList<String> args = new LinkedList<String>();
+			args.add(new File(GROUNDER_OUTPUT).exists() ? GROUNDER_OUTPUT : PROBLEM_FILE);
+			args.add(bddLibrary);
+			args.addAll(plannerOptions);
+			File options = new File(request, "options");
+			if (options.exists()) {
+				BufferedReader bufferedReader = new BufferedReader(new FileReader(options));
+				String line;
+				while ((line = bufferedReader.readLine()) != null) {
+					for (String option : line.trim().split("\\s+")) {
+						if (option.length() > 0)
+							args.add(option);
+					}
+				}
+				bufferedReader.close();
+			}
+
+			output = new PrintStream(new FileOutputStream(new File(request, "output")), true);
+			System.setOut(output);
+			System.setErr(output);
+			PDDL2BDD.resetOptions();
+			Budget.start(timeBudget, nodeBudget);
+			exitTrap.status = -1;
+			exitTrap.active = true;
+			try {
+				PDDL2BDD.main(args.toArray(new String[args.size()]));
+			} catch (ExitException e) {
+				// status is taken from the trap below
+			} catch (Budget.ExceededException e) {
+				System.out.println(e.getMessage());
+			} finally {
+				exitTrap.active = false;
+			}
+			// the planner may have turned the exception into an exit
+			status = Budget.exceeded();
+			if (status == null && exitTrap.status > 0)
+				status = "exit " + exitTrap.status;
+		} catch (Throwable t) {
+			t.printStackTrace();
+			status = "error: " + t;
+		} finally {
+			Telemetry.close();
+			ActionProfile.finish();
+			Budget.finish();
+			if (GroundedPDDLParser.actions != null)
+				GroundedPDDLParser.cleanup();
+			System.setOut(out);
+			System.setErr(err);
+			if (output != null)
+				output.close();
+		}
+
+		File plan = new File("plan_output");
+		if (status == null)
+			status = plan.exists() ? "solved" : "unsolved";
+		try {
+			if (plan.exists())
+				Files.move(plan.toPath(), new File(request, "plan_output").toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			FileWriter writer = new FileWriter(new File(request, "status"));
+			writer.write(status + "\n");
+			writer.close();
+			cleanWorkingDirectory();
+		} catch (Exception e) {
+			System.err.println("Error: " + e.getMessage());
+			e.printStackTrace();
+		}
+		return status;
+	}
+
+	/**
+	 * Deletes everything that was created in the working directory since the
+	 * start of the daemon.
+	 */
+	private static void cleanWorkingDirectory() {
+		for (File file : new File(".").listFiles()) {
+			if (!initialFiles.contains(file.getName()))
+				delete(file);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				delete(child);
+		}
+		if (!file.delete())
+			System.err.println("Warning: cannot delete " + file);
+	}
+}
@@ -14,6 +14,26 @@ public class GroundedPDDLParser implements GroundedPDDLParserConstants {
             String [] partitionFileNameParts = partitionFileName.split("-", 2);
             partitionFileName = "orig-" + partitionFileNameParts [1];
         }
+        parse(domainFileName, problemFileName, partitionFileName, false);
+    }
+
+    /**
+     * Parses the files written by the grounder as they are, without the
+     * rewriting done by the plan script: the problem may still contain the
+     * total-cost function and the partition is the raw problem.psas, which
+     * may also be read from stdin. Both are rewritten while they are read
+     * (see {@link GrounderOutputReader}).
+     *
+     * @param psasFileName
+     *            The partition written by the grounder, or "-" for stdin.
+     */
+    public static void parseGrounderOutput(String domainFileName, String problemFileName, String psasFileName)
+    {
+        parse(domainFileName, problemFileName, psasFileName, true);
+    }
+
+    private static void parse(String domainFileName, String problemFileName, String partitionFileName, boolean grounderOutput)
+    {
         System.out.println("prob: " + problemFileName);
         System.out.println("dom: " + domainFileName);
         System.out.println("part: " + partitionFileName);
@@ -29,18 +49,16 @@ public class GroundedPDDLParser implements GroundedPDDLParserConstants {
             {
                 System.out.println("Parsing domain file...");
                 fis = new FileInputStream(domainFileName);
-                parser = new GroundedPDDLParser(fis);
+                parser = open(fis);
                 lastCost = 0;
                 parser.domain();
                 System.out.println("done.");
                 System.out.println("Parsing problem file...");
-                fis = new FileInputStream(problemFileName);
-                parser.ReInit(fis);
+                parser.ReInit(problemReader(problemFileName, grounderOutput));
                 parser.problem();
                 System.out.println("done.");
                 System.out.println("Parsing partition file...");
-                fis = new FileInputStream(partitionFileName);
-                parser.ReInit(fis);
+                parser.ReInit(partitionReader(partitionFileName, grounderOutput));
                     parser.partition();
                     System.out.println("done.");
                     System.out.println("Checking for only del-effects from groups with no \'none-of-these\'-variables...");
@@ -75,13 +93,15 @@ public class GroundedPDDLParser implements GroundedPDDLParserConstants {
                         }
                             FileWriter writer;
                             try {
-                                writer = new FileWriter(partitionFileName);
-                                writer.write(output.toString());
-                                writer.close();
+                                if (!grounderOutput)
+                                {
+                                    writer = new FileWriter(partitionFileName);
+                                    writer.write(output.toString());
+                                    writer.close();
+                                }
                                 System.out.println("Parsing partition file again...");
                                 partitioning.clear();
-                                fis = new FileInputStream(partitionFileName);
-                                parser.ReInit(fis);
+                                parser.ReInit(new StringReader(output.toString()));
                                     parser.partition();
                                     System.out.println("done.");
                             } catch (Exception e) {
@@ -94,8 +114,7 @@ public class GroundedPDDLParser implements GroundedPDDLParserConstants {
             else
             {
                 System.out.println("Parsing partition file...");
-                fis = new FileInputStream(partitionFileName);
-                parser = new GroundedPDDLParser(fis);
+                parser = open(partitionReader(partitionFileName, grounderOutput));
                     parser.partition();
                     System.out.println("done.");
             }
@@ -150,6 +169,46 @@ public class GroundedPDDLParser implements GroundedPDDLParserConstants {
         partitioning = null;
     }
 
+    private static Reader problemReader(String fileName, boolean grounderOutput) throws IOException
+    {
+        Reader reader = new InputStreamReader(new FileInputStream(fileName));
+        return grounderOutput ? GrounderOutputReader.problem(reader) : reader;
+    }
+
+    private static Reader partitionReader(String fileName, boolean grounderOutput) throws IOException
+    {
+        if (!grounderOutput)
+            return new InputStreamReader(new FileInputStream(fileName));
+        if (fileName.equals("-"))
+            return GrounderOutputReader.partition(new InputStreamReader(System.in));
+        return GrounderOutputReader.partition(new InputStreamReader(new FileInputStream(fileName)));
+    }
+
+    /**
+     * Returns the parser reading from the stream. As the parser is static it
+     * is created only once and reinitialized for every further file, so that
+     * several problems can be parsed in the same JVM.
+     */
+    private static GroundedPDDLParser open(InputStream stream)
+    {
+        if (instance == null)
+            instance = new GroundedPDDLParser(stream);
+        else
+            ReInit(stream);
+        return instance;
+    }
+
+    private static GroundedPDDLParser open(Reader stream)
+    {
+        if (instance == null)
+            instance = new GroundedPDDLParser(stream);
+        else
+            ReInit(stream);
+        return instance;
+    }
+
+    private static GroundedPDDLParser instance;
+
     public static Vector < Action > actions;
 
     public static Vector < Predicate > initialState;
@@ -0,0 +1,107 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.parser;
+
+import java.io.*;
+
+/**
+ * Rewrites the files of the grounder line by line while the parser reads
+ * them, in the same way as the sed calls of the plan script did before:
+ *
+ * In the partition (problem.psas), each line l becomes "(l)", where "()" is
+ * replaced by "[]", so that the empty lines separating the groups become
+ * "[]", and the last line is dropped. In the problem, each line containing
+ * total-cost becomes empty.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class GrounderOutputReader extends Reader {
+    private final BufferedReader in;
+    private final boolean partition;
+    /** The next line of the input, read ahead to recognize the last line. */
+    private String next;
+    /** The rewritten line that is currently returned. */
+    private String current = "";
+    private int position = 0;
+
+    private GrounderOutputReader(Reader in, boolean partition)
+            throws IOException {
+        this.in = new BufferedReader(in);
+        this.partition = partition;
+        next = this.in.readLine();
+    }
+
+    /**
+     * @param in
+     *            The partition as written by the grounder.
+     * @return The partition as expected by the parser.
+     */
+    public static Reader partition(Reader in) throws IOException {
+        return new GrounderOutputReader(in, true);
+    }
+
+    /**
+     * @param in
+     *            The problem as written by the grounder.
+     * @return The problem as expected by the parser.
+     */
+    public static Reader problem(Reader in) throws IOException {
+        return new GrounderOutputReader(in, false);
+    }
+
+    /**
+     * Rewrites the next line, if the current one is returned completely.
+     *
+     * @return false if the end of the input is reached.
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length()) {
+            if (next == null)
+                return false;
+            String line = next;
+            next = in.readLine();
+            if (partition) {
+                if (next == null)
+                    continue;
+                current = ("(" + line + ")").replace("()", "[]") + "\n";
+            } else {
+                current = line.contains("total-cost") ? "\n" : line + "\n";
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, current.length() - position);
+        current.getChars(position, position + n, cbuf, off);
+        position += n;
+        return n;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
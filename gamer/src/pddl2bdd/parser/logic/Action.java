@@ -76,7 +76,7 @@ public class Action {
 		BDD preBDD = precondition.createBDD(factory, nAryVariables,
                                             nAryVariablesPreBDDs, nAryVariablesEffBDDs, true, unusedVarIndices);
 		if (preBDD == null)
-			preBDD = factory.one();
+			preBDD = factory.universe();
         
 	// 	tmp2 = effect.createBDD(factory, nAryVariables, nAryVariablesPreBDDs, nAryVariablesEffBDDs, false, unusedVarIndices);
 	// 	if (tmp2 == null) {
@@ -276,7 +276,7 @@ public class Action {
 	 	BDD effBDD = effect.createBDD(factory, nAryVariables, nAryVariablesPreBDDs, nAryVariablesEffBDDs, false, unusedVarIndices);
         if (effBDD == null) {
             // no normal effects (with the set of unabstracted variables)
-            effBDD = factory.one();
+            effBDD = factory.universe();
         }
 
 		HashSet<String> addEffects = new HashSet<String>();
@@ -335,7 +335,7 @@ public class Action {
                 System.out.println();*/
                 for (int i = 0; i < condIDs.size(); i++) {
                     /*
-                    BDD condBDD = factory.one();
+                    BDD condBDD = factory.universe();
                     for (int j = 0; j < condIDs.size(); j++) {
                         Condition cond = condEffects.get(condIDs.get(j));
                         tmp1 = cond.createPreBDD(factory, nAryVariables, nAryVariablesPreBDDs, unusedVarIndices);
@@ -371,7 +371,7 @@ public class Action {
                 }
 
                 // if no condition fires: retain old value
-                BDD negCondBDD = factory.one();
+                BDD negCondBDD = factory.universe();
                 for (int i = 0; i < condIDs.size(); i++) {
                     Condition cond = condEffects.get(condIDs.get(i));
                     tmp1 = cond.createPreBDD(factory, nAryVariables, nAryVariablesPreBDDs, unusedVarIndices);
@@ -39,7 +39,7 @@ public class AndOrTerm extends Expression {
                          LinkedList<BDD> nAryVariablesPreBDDs, LinkedList<BDD> nAryVariablesEffBDDs, boolean usePreVars, boolean[] unusedVarIndices) {
         if (terms.size() == 0) {
             if (isAndTerm)
-                return factory.one();
+                return factory.universe();
             else
                 return factory.zero();
         }
@@ -65,7 +65,7 @@ public class Condition extends Expression {
         BDD ret;
         ret = pre.createBDD(factory, nAryVariables, nAryVariablesPreBDDs, null, true, unusedVarIndices);
         if (ret == null)
-            return factory.one();
+            return factory.universe();
         return ret;
     }
 
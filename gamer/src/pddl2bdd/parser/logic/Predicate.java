@@ -35,7 +35,7 @@ public class Predicate extends Expression {
     public BDD createBDD(BDDFactory factory, LinkedList<String> nAryVariables,
                          LinkedList<BDD> nAryVariablesPreBDDs, LinkedList<BDD> nAryVariablesEffBDDs, boolean usePreVars, boolean[] unusedVarIndices) {
         if (name.equalsIgnoreCase("foo"))
-            return factory.one();
+            return factory.universe();
         if (index == -1)
             index = nAryVariables.indexOf(name);
         if (unusedVarIndices[index])
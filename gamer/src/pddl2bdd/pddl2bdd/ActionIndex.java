@@ -0,0 +1,186 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.util.Collection;
+import net.sf.javabdd.*;
+
+/**
+ * Narrows the actions that have to be tried in one step of the plan
+ * reconstruction.
+ *
+ * For each action it stores which boolean variables of one state its
+ * preconditions (or effects) fix to which value, i.e., which values of which
+ * groups the action requires (or produces). The reconstruction continues
+ * from a single state of the current layer; every state of a layer has a
+ * predecessor (or successor) in the neighbouring layer, so the reconstructed
+ * plan is still optimal, but it may differ from the one found when continuing
+ * from the whole layer. An action can only be applied to (or lead to) that
+ * state if the state agrees with all fixed variables, which is checked on
+ * bit vectors without any BDD operation. The remaining candidates are
+ * returned in their original order.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class ActionIndex {
+    private final BDD[] actions;
+    private final BDD[] variables;
+    /** Per action, the variables fixed by its summary. */
+    private final long[][] masks;
+    /** Per action, the values of the fixed variables. */
+    private final long[][] values;
+
+    /**
+     * Creates the summaries of the actions.
+     *
+     * @param actions
+     *            The transition relations of the actions.
+     * @param variables
+     *            The variables of the state the actions are checked against:
+     *            S for preconditions, S' for effects.
+     * @param otherCube
+     *            The cube of the other variables, which are abstracted.
+     */
+    public ActionIndex(Collection<BDD> actions, BDD[] variables, BDDVarSet otherCube) {
+        this.actions = actions.toArray(new BDD[actions.size()]);
+        this.variables = variables;
+        int words = (variables.length + 63) / 64;
+        masks = new long[this.actions.length][words];
+        values = new long[this.actions.length][words];
+        for (int a = 0; a < this.actions.length; a++) {
+            BDD summary = this.actions[a].exist(otherCube);
+            for (int i = 0; i < variables.length; i++) {
+                BDD tmp = summary.and(variables[i]);
+                if (tmp.isZero()) {
+                    masks[a][i >> 6] |= 1L << i;
+                } else if (tmp.equals(summary)) {
+                    masks[a][i >> 6] |= 1L << i;
+                    values[a][i >> 6] |= 1L << i;
+                }
+                tmp.free();
+            }
+            summary.free();
+        }
+    }
+
+    /**
+     * @return The transition relation of the action with the given index.
+     */
+    public BDD action(int index) {
+        return actions[index];
+    }
+
+    /**
+     * Chooses one state of a set of states.
+     *
+     * @param states
+     *            The (non-empty) set of states; it must not be used
+     *            afterwards.
+     * @param variables
+     *            The variables of the states.
+     * @return A single state of the set.
+     */
+    public static BDD pickState(BDD states, BDD[] variables) {
+        BDDFactory factory = states.getFactory();
+        long state = pickState(factory, factory.handle(states), variables);
+        states.free();
+        BDD ret = factory.fromHandle(state);
+        factory.deref(state);
+        return ret;
+    }
+
+    /**
+     * Chooses one state of a set of states, on raw handles.
+     *
+     * @param factory
+     *            The BDD factory.
+     * @param states
+     *            The handle of the (non-empty) set of states; it is released.
+     * @param variables
+     *            The variables of the states.
+     * @return A referenced handle of a single state of the set.
+     */
+    public static long pickState(BDDFactory factory, long states, BDD[] variables) {
+        long state = states;
+        for (int i = 0; i < variables.length; i++) {
+            long var = factory.handle(variables[i]);
+            long tmp = factory.andRaw(state, var);
+            factory.deref(var);
+            if (factory.isZeroRaw(tmp)) {
+                // all states have the variable false already
+                factory.deref(tmp);
+            } else {
+                factory.deref(state);
+                state = tmp;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @param state
+     *            A single state as returned by
+     *            {@link #pickState(BDD, BDD[])}.
+     * @return The indices of the actions that agree with the state, in
+     *         increasing order.
+     */
+    public int[] candidates(BDD state) {
+        BDDFactory factory = state.getFactory();
+        long h = factory.handle(state);
+        int[] ret = candidates(factory, h);
+        factory.deref(h);
+        return ret;
+    }
+
+    /**
+     * @param factory
+     *            The BDD factory.
+     * @param state
+     *            The handle of a single state as returned by
+     *            {@link #pickState(BDDFactory, long, BDD[])}; it is left
+     *            untouched.
+     * @return The indices of the actions that agree with the state, in
+     *         increasing order.
+     */
+    public int[] candidates(BDDFactory factory, long state) {
+        long[] bits = new long[(variables.length + 63) / 64];
+        for (int i = 0; i < variables.length; i++) {
+            long var = factory.handle(variables[i]);
+            long tmp = factory.andRaw(state, var);
+            factory.deref(var);
+            if (!factory.isZeroRaw(tmp))
+                bits[i >> 6] |= 1L << i;
+            factory.deref(tmp);
+        }
+        int[] ret = new int[actions.length];
+        int size = 0;
+        for (int a = 0; a < actions.length; a++) {
+            boolean agrees = true;
+            for (int w = 0; agrees && w < bits.length; w++)
+                agrees = ((bits[w] ^ values[a][w]) & masks[a][w]) == 0;
+            if (agrees)
+                ret[size++] = a;
+        }
+        int[] candidates = new int[size];
+        System.arraycopy(ret, 0, candidates, 0, size);
+        return candidates;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.io.*;
+import java.util.*;
+import net.sf.javabdd.*;
+
+/**
+ * Profiles the images per action: for each action BDD of the transition
+ * relation it records the number of relational products, their total time,
+ * the total size of the results and how often the result was empty.
+ *
+ * When the planner exits, a ranked report is printed and the profile is
+ * written to a file, one tab separated line per action in the order of
+ * decreasing time. Such a file can be handed to the next run, which then
+ * orders the actions of each cost by decreasing time, so that the expensive
+ * actions are computed first and a step that exceeds its time limit is
+ * stopped as early as possible.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class ActionProfile {
+    /** The number of actions shown in the report. */
+    private static final int REPORT_SIZE = 20;
+
+    /** The profile being recorded, or null if profiling is disabled. */
+    private static ActionProfile recording;
+    /** The time per action of the profile of a previous run, or null. */
+    private static HashMap<String, Double> previousTimes;
+    private static boolean shutdownHookAdded = false;
+
+    private final String fileName;
+    private final HashMap<String, Entry> byName = new HashMap<String, Entry>();
+    private final IdentityHashMap<BDD, Entry> byBDD = new IdentityHashMap<BDD, Entry>();
+
+    /**
+     * The statistics of one action.
+     */
+    private static class Entry {
+        final String name;
+        final int cost;
+        long calls = 0;
+        long time = 0; // ns
+        long nodes = 0;
+        long empty = 0;
+
+        Entry(String name, int cost) {
+            this.name = name;
+            this.cost = cost;
+        }
+    }
+
+    private ActionProfile(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Starts profiling. The report is printed and the profile written by
+     * {@link #finish()}, at the latest when the planner exits.
+     *
+     * @param fileName
+     *            The file the profile is written to.
+     */
+    public static void record(String fileName) {
+        recording = new ActionProfile(fileName);
+        if (!shutdownHookAdded) {
+            shutdownHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    finish();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return True if the actions are being profiled.
+     */
+    public static boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Ends profiling and ordering for the current problem, printing the
+     * report and writing the profile if one was recorded.
+     */
+    public static void finish() {
+        ActionProfile profile = recording;
+        recording = null;
+        previousTimes = null;
+        if (profile != null)
+            profile.report();
+    }
+
+    /**
+     * Reads the profile of a previous run, by which the actions are ordered
+     * from now on.
+     *
+     * @param fileName
+     *            The profile file.
+     */
+    public static void use(String fileName) {
+        previousTimes = new HashMap<String, Double>();
+        try {
+            BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.startsWith("#") || line.length() == 0)
+                    continue;
+                String[] lineParts = line.split("\t");
+                previousTimes.put(lineParts[1], Double.parseDouble(lineParts[4]));
+            }
+            bufferedReader.close();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prepares a transition relation that is stored as one list of action
+     * BDDs per cost: orders the actions by the profile of a previous run and
+     * registers them for profiling, if these are enabled.
+     *
+     * @param t
+     *            The transition relation.
+     * @param actionNames
+     *            The action names, in the same order.
+     */
+    public static void prepare(HashMap<Integer, LinkedList<BDD>> t,
+            HashMap<Integer, LinkedList<String>> actionNames) {
+        for (int cost : t.keySet()) {
+            LinkedList<BDD> bdds = t.get(cost);
+            LinkedList<String> names = actionNames.get(cost);
+            order(bdds, names);
+            if (recording != null) {
+                for (int i = 0; i < bdds.size(); i++)
+                    recording.register(bdds.get(i), names.get(i), cost);
+            }
+        }
+    }
+
+    /**
+     * Prepares a transition relation of actions with uniform costs; see
+     * {@link #prepare(HashMap, HashMap)}.
+     *
+     * @param t
+     *            The transition relation.
+     * @param actionNames
+     *            The action names, in the same order.
+     */
+    public static void prepare(BDD[] t, LinkedList<String> actionNames) {
+        order(Arrays.asList(t), actionNames);
+        if (recording != null) {
+            for (int i = 0; i < t.length; i++)
+                recording.register(t[i], actionNames.get(i), 1);
+        }
+    }
+
+    private static void order(List<BDD> bdds, List<String> names) {
+        if (previousTimes == null)
+            return;
+        Integer[] indices = new Integer[bdds.size()];
+        final double[] times = new double[bdds.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+            Double time = previousTimes.get(names.get(i));
+            times[i] = time == null ? -1 : time;
+        }
+        // stable, so that actions without a profile keep their order
+        Arrays.sort(indices, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(times[i2], times[i1]);
+            }
+        });
+        BDD[] oldBDDs = bdds.toArray(new BDD[indices.length]);
+        String[] oldNames = names.toArray(new String[indices.length]);
+        for (int i = 0; i < indices.length; i++) {
+            bdds.set(i, oldBDDs[indices[i]]);
+            names.set(i, oldNames[indices[i]]);
+        }
+    }
+
+    private void register(BDD action, String name, int cost) {
+        Entry entry = byName.get(name);
+        if (entry == null) {
+            entry = new Entry(name, cost);
+            byName.put(name, entry);
+        }
+        byBDD.put(action, entry);
+    }
+
+    /**
+     * Calculates the relational product of an action and a state set on raw
+     * handles (see {@link BDDFactory#relnextRaw(long, long, BDDVarSet, BDDPairing)}),
+     * recording it if profiling is enabled. The {@link Budget} is checked
+     * before.
+     *
+     * @return A referenced handle of the successors (or predecessors) of the
+     *         states.
+     */
+    public static long relnextRaw(BDDFactory factory, BDD action, long from,
+            BDDVarSet varSet, BDDPairing pairing) {
+        Budget.check();
+        ActionProfile profile = recording;
+        long relation = factory.handle(action);
+        long result;
+        if (profile == null) {
+            result = factory.relnextRaw(relation, from, varSet, pairing);
+        } else {
+            long startTime = System.nanoTime();
+            result = factory.relnextRaw(relation, from, varSet, pairing);
+            profile.add(factory, action, System.nanoTime() - startTime, result);
+        }
+        factory.deref(relation);
+        return result;
+    }
+
+    /**
+     * Calculates the image of a set of actions on raw handles like
+     * {@link BDDFactory#imageRaw(long[], long, long, BDDVarSet, BDDPairing, long)},
+     * recording each action if profiling is enabled. The {@link Budget} is
+     * checked before.
+     *
+     * @return A referenced handle of the image, or
+     *         {@link BDDFactory#INVALID_RAW} if the deadline passed.
+     */
+    public static long imageRaw(BDDFactory factory, BDD[] actions, long from,
+            long conjunct, BDDVarSet varSet, BDDPairing pairing, long deadline) {
+        Budget.check();
+        ActionProfile profile = recording;
+        long[] relations = new long[actions.length];
+        for (int i = 0; i < actions.length; i++)
+            relations[i] = factory.handle(actions[i]);
+        try {
+            if (profile == null)
+                return factory.imageRaw(relations, from, conjunct, varSet, pairing, deadline);
+            long[] parts = new long[actions.length];
+            long[] relation = new long[1];
+            for (int i = 0; i < actions.length; i++) {
+                relation[0] = relations[i];
+                long startTime = System.nanoTime();
+                parts[i] = factory.imageRaw(relation, from, conjunct, varSet,
+                        pairing, deadline);
+                if (parts[i] == BDDFactory.INVALID_RAW) {
+                    for (int j = 0; j < i; j++)
+                        factory.deref(parts[j]);
+                    return BDDFactory.INVALID_RAW;
+                }
+                profile.add(factory, actions[i], System.nanoTime() - startTime, parts[i]);
+            }
+            if (parts.length == 0)
+                return factory.zeroRaw();
+            for (int step = 1; step < parts.length; step *= 2) {
+                for (int i = 0; i + step < parts.length; i += 2 * step) {
+                    long tmp = parts[i];
+                    parts[i] = factory.orRaw(tmp, parts[i + step]);
+                    factory.deref(tmp);
+                    factory.deref(parts[i + step]);
+                }
+            }
+            return parts[0];
+        } finally {
+            for (int i = 0; i < relations.length; i++)
+                factory.deref(relations[i]);
+        }
+    }
+
+    private void add(BDDFactory factory, BDD action, long time, long result) {
+        Entry entry = byBDD.get(action);
+        if (entry == null)
+            return;
+        entry.calls++;
+        entry.time += time;
+        if (factory.isZeroRaw(result)) {
+            entry.empty++;
+        } else {
+            // only when profiling, so the BDD object does not matter
+            BDD bdd = factory.fromHandle(result);
+            entry.nodes += bdd.nodeCount();
+            bdd.free();
+        }
+    }
+
+    private void report() {
+        Entry[] entries = byName.values().toArray(new Entry[byName.size()]);
+        Arrays.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return e1.time > e2.time ? -1 : (e1.time < e2.time ? 1 : 0);
+            }
+        });
+        long totalTime = 0;
+        for (int i = 0; i < entries.length; i++)
+            totalTime += entries[i].time;
+        System.out.println("Action profile: " + entries.length + " actions, "
+                + (totalTime / 1000000) + " ms in relational products");
+        for (int i = 0; i < entries.length && i < REPORT_SIZE; i++) {
+            Entry entry = entries[i];
+            System.out.println("   " + (i + 1) + ". " + entry.name + " (cost "
+                    + entry.cost + "): " + (entry.time / 1000000) + " ms ("
+                    + (totalTime == 0 ? 0 : 100 * entry.time / totalTime)
+                    + "%), " + entry.calls + " calls, "
+                    + averageNodes(entry) + " nodes per non-empty result, "
+                    + entry.empty + " empty");
+        }
+        try {
+            FileWriter writer = new FileWriter(fileName);
+            writer.write("# rank\taction\tcost\tcalls\ttime (ms)\tnodes per non-empty result\tempty results\n");
+            for (int i = 0; i < entries.length; i++) {
+                Entry entry = entries[i];
+                writer.write((i + 1) + "\t" + entry.name + "\t" + entry.cost
+                        + "\t" + entry.calls + "\t" + (entry.time / 1000000.0)
+                        + "\t" + averageNodes(entry) + "\t" + entry.empty + "\n");
+            }
+            writer.flush();
+            writer.close();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static long averageNodes(Entry entry) {
+        long nonEmpty = entry.calls - entry.empty;
+        return nonEmpty == 0 ? 0 : entry.nodes / nonEmpty;
+    }
+}
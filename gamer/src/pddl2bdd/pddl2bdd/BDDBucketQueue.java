@@ -0,0 +1,93 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+import pddl2bdd.util.BucketQueue;
+
+/**
+ * The open list of the symbolic searches: a bucket queue whose buckets are
+ * BDDs, where inserting states into an existing bucket results in the
+ * disjunction of both.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class BDDBucketQueue extends BucketQueue<BDD> {
+    /**
+     * Creates a new open list.
+     *
+     * @param maxCost
+     *            The highest action cost.
+     */
+    public BDDBucketQueue(int maxCost) {
+        super(maxCost);
+    }
+
+    /**
+     * Inserts the given states into the bucket with the given key. The queue
+     * takes ownership of the BDD, i.e., it must not be used or freed by the
+     * caller afterwards.
+     *
+     * @param key
+     *            The key of the bucket.
+     * @param states
+     *            The states to be inserted.
+     */
+    public void merge(int key, BDD states) {
+        BDD old = get(key);
+        if (old == null) {
+            put(key, states);
+        } else {
+            old.orWith(states);
+        }
+    }
+
+    /**
+     * Inserts the given states into the bucket with the given key, like
+     * {@link #merge(int, BDD)}, but for a raw handle, which is left untouched
+     * and still has to be released by the caller. A BDD object is created
+     * only for a new bucket.
+     *
+     * @param key
+     *            The key of the bucket.
+     * @param states
+     *            The handle of the states to be inserted.
+     * @param factory
+     *            The BDD factory.
+     */
+    public void mergeRaw(int key, long states, BDDFactory factory) {
+        BDD old = get(key);
+        if (old == null) {
+            put(key, factory.fromHandle(states));
+        } else {
+            factory.applyWithRaw(old, states, BDDFactory.or);
+        }
+    }
+
+    /**
+     * Frees all BDDs still stored in the queue and removes them.
+     */
+    public void free() {
+        for (BDD bucket : values())
+            bucket.free();
+        clear();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+import pddl2bdd.util.Time;
+
+/**
+ * The time and memory budget of the problem being solved, set by the options
+ * of the planner or by the {@link pddl2bdd.PlannerDaemon} to solve several
+ * problems in one JVM.
+ *
+ * The budget is checked by the planner thread at the start of each search
+ * step and before each image, so that the BDD package is never interrupted
+ * in the middle of an operation; a step may thus overrun the budget by the
+ * time of one image. The memory is measured by the size of the node table
+ * of the current BDD factory. It also remembers the current factory, so that
+ * the daemon can release it if the planner stopped without doing so.
+ *
+ * The time is scheduled over the phases of the planner: at its start each
+ * phase gets a share of the remaining time (see {@link Phase}). The phase
+ * deadline is not enforced, but work that can be cut short asks for it: the
+ * construction of a pattern database stops with a partial database, and
+ * steps that can be cancelled, such as the backward steps of the
+ * bidirectional Dijkstra search, get no more time than the phase has left.
+ * Without a time limit each phase may take as long as it needs.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class Budget {
+    /**
+     * The phases of the planner, with the share of the remaining time each
+     * one may take; the search leaves some time for the reconstruction.
+     */
+    public enum Phase {
+        ordering(0.05), transitionRelation(0.2), pdb(0.5), search(0.9), reconstruction(1.0);
+
+        private final double share;
+
+        private Phase(double share) {
+            this.share = share;
+        }
+    }
+
+    /** The time a step that can be cancelled may take at least (ms). */
+    private static final long INITIAL_STEP_TIME = 30 * 1000;
+    /**
+     * A step that can be cancelled may take this many times as long as the
+     * longest step that cannot.
+     */
+    private static final double STEP_TIME_FACTOR = 2.5;
+
+    private static long deadline = Long.MAX_VALUE;
+    private static long phaseDeadline = Long.MAX_VALUE;
+    private static int maxNodes = Integer.MAX_VALUE;
+    private static BDDFactory factory;
+    private static String exceeded;
+
+    /**
+     * Thrown by {@link Budget#check()} if the budget is exceeded.
+     */
+    public static class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Sets the budget for the next problem.
+     *
+     * @param time
+     *            The allowed time (ms), or a value <= 0 for no limit.
+     * @param nodes
+     *            The allowed size of the node table, or a value <= 0 for no
+     *            limit.
+     */
+    public static void start(long time, int nodes) {
+        deadline = time > 0 ? System.currentTimeMillis() + time : Long.MAX_VALUE;
+        maxNodes = nodes > 0 ? nodes : Integer.MAX_VALUE;
+        phaseDeadline = Long.MAX_VALUE;
+        factory = null;
+        exceeded = null;
+    }
+
+    /**
+     * Informs the budget about a new BDD factory.
+     *
+     * @param factory
+     *            The BDD factory used by the planner from now on.
+     */
+    public static void attach(BDDFactory factory) {
+        Budget.factory = factory;
+    }
+
+    /**
+     * Starts a phase of the planner and assigns it its share of the remaining
+     * time.
+     *
+     * @param phase
+     *            The phase.
+     */
+    public static void startPhase(Phase phase) {
+        if (deadline == Long.MAX_VALUE)
+            return;
+        long now = System.currentTimeMillis();
+        long time = (long) (Math.max(0, deadline - now) * phase.share);
+        phaseDeadline = now + time;
+        System.out.print("time for phase " + phase + ": " + Time.printTime(time));
+        if (maxNodes != Integer.MAX_VALUE && factory != null && factory.isInitialized())
+            System.out.print("; nodes left: " + (maxNodes - factory.getNodeTableSize()));
+        System.out.println();
+    }
+
+    /**
+     * @return true if the current phase has used up its time.
+     */
+    public static boolean phaseExpired() {
+        return System.currentTimeMillis() > phaseDeadline;
+    }
+
+    /**
+     * @return The time a step that can be cancelled may take (ms) before
+     *         anything is known about the step times.
+     */
+    public static long stepTime() {
+        return stepTime(-1, 0);
+    }
+
+    /**
+     * Calculates the time a step that can be cancelled may take: a multiple
+     * of the longest step that cannot be cancelled, but no more than the
+     * current phase has left.
+     *
+     * @param longestStepTime
+     *            The time of the longest step that cannot be cancelled (ms),
+     *            -1 if there was none, or Long.MAX_VALUE if there are no more
+     *            such steps.
+     * @param reorderTime
+     *            The time of the last reordering (ms).
+     * @return The time (ms), or Long.MAX_VALUE if there is no limit.
+     */
+    public static long stepTime(long longestStepTime, long reorderTime) {
+        long time = Math.max(INITIAL_STEP_TIME,
+                (long) (((double) longestStepTime + reorderTime) * STEP_TIME_FACTOR));
+        if (phaseDeadline != Long.MAX_VALUE)
+            time = Math.min(time, Math.max(0, phaseDeadline - System.currentTimeMillis()));
+        return time;
+    }
+
+    /**
+     * @param time
+     *            A time as returned by {@link #stepTime(long, long)} (ms).
+     * @return The deadline of a step that starts now and may take the time.
+     */
+    public static long stepDeadline(long time) {
+        long now = System.currentTimeMillis();
+        return time >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + time;
+    }
+
+    /**
+     * Checks the budget.
+     *
+     * @throws ExceededException
+     *             If the time is up or the node table grew too large.
+     */
+    public static void check() {
+        if (System.currentTimeMillis() > deadline)
+            exceeded = "time budget exceeded";
+        BDDFactory f = factory;
+        if (maxNodes != Integer.MAX_VALUE && f != null
+                && f.getNodeTableSize() > maxNodes)
+            exceeded = "memory budget exceeded: " + f.getNodeTableSize()
+                    + " nodes";
+        if (exceeded != null)
+            throw new ExceededException(exceeded);
+    }
+
+    /**
+     * @return The reason why the budget was exceeded, or null if it was not.
+     */
+    public static String exceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Removes the budget and releases the current BDD factory, if it was not
+     * yet released.
+     */
+    public static void finish() {
+        deadline = Long.MAX_VALUE;
+        maxNodes = Integer.MAX_VALUE;
+        phaseDeadline = Long.MAX_VALUE;
+        BDDFactory f = factory;
+        factory = null;
+        if (f != null && f.isInitialized())
+            f.done();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+
+/**
+ * A binary counter for the g-value of the states, represented by additional
+ * BDD variables that are appended below the state variables. For each bit
+ * there is a variable for the current and one for the next state, which are
+ * interleaved; the least significant bit is the topmost one.
+ *
+ * With this, the cost of an action can be encoded as an addition within its
+ * transition relation, so that an image of a set of states annotated with
+ * their g-values results in the successors annotated with theirs.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class CostCounter {
+    private BDDFactory factory;
+    private int[] gVars; // counter variables (current state)
+    private int[] gpVars; // counter variables (next state)
+    private BDDVarSet gSet;
+    private BDDVarSet gpSet;
+
+    /**
+     * Creates a new counter by allocating new BDD variables.
+     *
+     * @param factory
+     *            The BDD factory.
+     * @param bits
+     *            The number of bits of the counter.
+     */
+    public CostCounter(BDDFactory factory, int bits) {
+        this.factory = factory;
+        int first = factory.extVarNum(2 * bits);
+        gVars = new int[bits];
+        gpVars = new int[bits];
+        for (int i = 0; i < bits; i++) {
+            gVars[i] = first + 2 * i;
+            gpVars[i] = first + 2 * i + 1;
+        }
+        gSet = factory.makeSet(gVars);
+        gpSet = factory.makeSet(gpVars);
+    }
+
+    /**
+     * @return The largest value the counter can hold.
+     */
+    public int maxValue() {
+        return (int) ((1L << gVars.length) - 1);
+    }
+
+    /**
+     * @return The set of counter variables of the current state.
+     */
+    public BDDVarSet set() {
+        return gSet;
+    }
+
+    /**
+     * @return The set of counter variables of the next state.
+     */
+    public BDDVarSet primedSet() {
+        return gpSet;
+    }
+
+    /**
+     * Adds the renaming of the next state's counter to the current state's
+     * counter to the given pairing.
+     *
+     * @param pairing
+     *            The pairing to be extended.
+     */
+    public void addPrimedToUnprimed(BDDPairing pairing) {
+        pairing.set(gpVars, gVars);
+    }
+
+    /**
+     * Returns the BDD representing the counter (of the current state) having
+     * the given value.
+     *
+     * @param g
+     *            The value.
+     * @return The BDD.
+     */
+    public BDD value(int g) {
+        BDD result = factory.universe();
+        for (int i = 0; i < gVars.length; i++) {
+            if (((g >> i) & 1) == 1)
+                result.andWith(factory.ithVar(gVars[i]));
+            else
+                result.andWith(factory.nithVar(gVars[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the relation of the counter of the next state being the counter
+     * of the current state plus the given cost. Transitions that would
+     * overflow the counter are excluded.
+     *
+     * @param cost
+     *            The cost to be added.
+     * @return The BDD representing the relation.
+     */
+    public BDD addition(int cost) {
+        int bits = gVars.length;
+        BDDBitVector g = factory.buildVector(gVars);
+        BDDBitVector gWide = g.coerce(bits + 1);
+        BDDBitVector c = factory.constantVector(bits + 1, cost);
+        BDDBitVector sum = gWide.add(c);
+        g.free();
+        gWide.free();
+        c.free();
+        BDD result = sum.getBit(bits).not();
+        for (int i = 0; i < bits; i++) {
+            BDD var = factory.ithVar(gpVars[i]);
+            result.andWith(var.biimp(sum.getBit(i)));
+            var.free();
+        }
+        sum.free();
+        return result;
+    }
+
+    /**
+     * Returns the smallest g-value any of the given states is annotated
+     * with.
+     *
+     * @param states
+     *            The non-empty set of states, annotated with their g-values.
+     * @param stateSet
+     *            The state variables to be abstracted.
+     * @return The smallest g-value.
+     */
+    public int min(BDD states, BDDVarSet stateSet) {
+        BDD tmp1;
+        BDD tmp2;
+        BDD values = states.exist(stateSet);
+        int g = 0;
+        for (int i = gVars.length - 1; i >= 0; i--) {
+            tmp1 = factory.nithVar(gVars[i]);
+            tmp2 = values.and(tmp1);
+            tmp1.free();
+            if (tmp2.isZero()) {
+                tmp2.free();
+                g |= 1 << i;
+            } else {
+                values.free();
+                values = tmp2;
+            }
+        }
+        values.free();
+        return g;
+    }
+
+    /**
+     * Frees the variable sets.
+     */
+    public void free() {
+        gSet.free();
+        gpSet.free();
+    }
+}
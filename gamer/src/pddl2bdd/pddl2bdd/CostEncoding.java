@@ -0,0 +1,290 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.util.*;
+import net.sf.javabdd.*;
+import pddl2bdd.util.Maths;
+
+/**
+ * Brings the action costs into a compact form before the search starts.
+ *
+ * All costs are divided by their greatest common divisor, so that the
+ * searches work on buckets 0, 1, 2, ... instead of 0, d, 2d, ..., which
+ * keeps the open lists dense and the bucket queues small. Costs found by a
+ * search must be multiplied by the returned factor before being reported.
+ *
+ * An instance computes the images of a state set under the actions of each
+ * cost. If there are many different costs, neighboring costs are grouped:
+ * each action is conjoined with a cube over a few additional tag variables
+ * that encodes the position of its cost within the group, and the tagged
+ * actions of a group are merged into shared partitions. A single image per
+ * group then yields the successors of all its costs, which are told apart
+ * by restricting the tag variables.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class CostEncoding {
+    /** The number of tag variables; at most 2^TAG_BITS costs form a group. */
+    private static final int TAG_BITS = 4;
+    /** With fewer different costs, one image is computed per cost. */
+    private static final int MIN_GROUPED_COSTS = 8;
+    /** The maximal number of nodes of a merged partition of tagged actions. */
+    private static final int PARTITION_NODES = 10000;
+
+    private final BDDFactory factory;
+    private final HashMap<Integer, LinkedList<BDD>> t;
+    private final int[] costs;
+    private int groupSize = 1;
+    private BDD[] tags;
+    private BDD[][] partitions;
+
+    /**
+     * Prepares the images for the given costs, grouping them if there are
+     * enough of them. The costs are not grouped for ZDDs, where additional
+     * variables change the meaning of the existing BDDs, and while the
+     * actions are profiled, as merged partitions cannot be attributed to
+     * single actions.
+     *
+     * @param factory
+     *            The BDD factory.
+     * @param t
+     *            The transition relation, one list of BDDs per cost.
+     * @param actionCosts
+     *            The sorted non-zero action costs.
+     */
+    public CostEncoding(BDDFactory factory, HashMap<Integer, LinkedList<BDD>> t,
+            LinkedList<Integer> actionCosts) {
+        this.factory = factory;
+        this.t = t;
+        costs = new int[actionCosts.size()];
+        int next = 0;
+        for (int cost : actionCosts)
+            costs[next++] = cost;
+        if (factory.isZDD() || ActionProfile.isRecording()
+                || costs.length < MIN_GROUPED_COSTS)
+            return;
+
+        groupSize = Math.min(costs.length, 1 << TAG_BITS);
+        int bits = Maths.log2(groupSize);
+        int firstTag = factory.extVarNum(bits);
+        tags = new BDD[groupSize];
+        for (int i = 0; i < groupSize; i++) {
+            tags[i] = factory.one();
+            for (int j = 0; j < bits; j++) {
+                if ((i & (1 << j)) != 0)
+                    tags[i].andWith(factory.ithVar(firstTag + j));
+                else
+                    tags[i].andWith(factory.nithVar(firstTag + j));
+            }
+        }
+
+        partitions = new BDD[groups()][];
+        int numberOfPartitions = 0;
+        for (int group = 0; group < partitions.length; group++) {
+            LinkedList<BDD> merged = new LinkedList<BDD>();
+            BDD current = null;
+            for (int i = 0; i < costsOf(group); i++) {
+                for (BDD action : t.get(cost(group, i))) {
+                    BDD tagged = action.and(tags[i]);
+                    if (current == null) {
+                        current = tagged;
+                        continue;
+                    }
+                    BDD union = current.or(tagged);
+                    if (union.nodeCount() <= PARTITION_NODES) {
+                        current.free();
+                        tagged.free();
+                        current = union;
+                    } else {
+                        union.free();
+                        merged.addLast(current);
+                        current = tagged;
+                    }
+                }
+            }
+            if (current != null)
+                merged.addLast(current);
+            partitions[group] = merged.toArray(new BDD[merged.size()]);
+            numberOfPartitions += partitions[group].length;
+        }
+        System.out.println("   " + costs.length + " action costs grouped into "
+                + partitions.length + " images per step (" + bits
+                + " tag variables, " + numberOfPartitions + " partitions)");
+    }
+
+    /**
+     * @return The number of images computed per step.
+     */
+    public int groups() {
+        return (costs.length + groupSize - 1) / groupSize;
+    }
+
+    /**
+     * @param group
+     *            The group.
+     * @return The number of costs of the group.
+     */
+    public int costsOf(int group) {
+        return Math.min(groupSize, costs.length - group * groupSize);
+    }
+
+    /**
+     * @param group
+     *            The group.
+     * @param index
+     *            The position of the cost within the group.
+     * @return The cost.
+     */
+    public int cost(int group, int index) {
+        return costs[group * groupSize + index];
+    }
+
+    /**
+     * Calculates the images of a state set under the actions of the costs of
+     * one group on raw handles, by one image if the costs are grouped.
+     *
+     * @param group
+     *            The group.
+     * @param from
+     *            The state set.
+     * @param conjunct
+     *            The set each image is conjoined with.
+     * @param varSet
+     *            The variables to quantify.
+     * @param pairing
+     *            The renaming of the result.
+     * @param deadline
+     *            The time (ms) after which no further action is applied.
+     * @return One referenced handle per cost of the group, or null if the
+     *         deadline passed.
+     */
+    public long[] imagesRaw(int group, long from, long conjunct,
+            BDDVarSet varSet, BDDPairing pairing, long deadline) {
+        if (partitions == null) {
+            LinkedList<BDD> actions = t.get(costs[group]);
+            long image = ActionProfile.imageRaw(factory,
+                    actions.toArray(new BDD[actions.size()]), from, conjunct,
+                    varSet, pairing, deadline);
+            if (image == BDDFactory.INVALID_RAW)
+                return null;
+            return new long[] { image };
+        }
+        long image = ActionProfile.imageRaw(factory, partitions[group], from,
+                conjunct, varSet, pairing, deadline);
+        if (image == BDDFactory.INVALID_RAW)
+            return null;
+        BDD tagged = factory.fromHandle(image);
+        factory.deref(image);
+        long[] ret = new long[costsOf(group)];
+        for (int i = 0; i < ret.length; i++) {
+            BDD part = tagged.restrict(tags[i]);
+            ret[i] = factory.handle(part);
+            part.free();
+        }
+        tagged.free();
+        return ret;
+    }
+
+    /**
+     * Frees the tagged partitions.
+     */
+    public void free() {
+        if (partitions == null)
+            return;
+        for (int group = 0; group < partitions.length; group++)
+            for (int i = 0; i < partitions[group].length; i++)
+                partitions[group][i].free();
+        for (int i = 0; i < tags.length; i++)
+            tags[i].free();
+        partitions = null;
+    }
+
+    /**
+     * Calculates the greatest common divisor of the given costs.
+     *
+     * @param costs
+     *            The (non-zero) action costs.
+     * @return The greatest common divisor, or 1 if there are no costs.
+     */
+    public static int commonDivisor(Collection<Integer> costs) {
+        int divisor = 0;
+        for (int cost : costs)
+            divisor = Maths.gcd(cost, divisor);
+        return divisor > 0 ? divisor : 1;
+    }
+
+    /**
+     * Divides all action costs by their greatest common divisor. The keys of
+     * the transition relation and the action names are replaced accordingly.
+     *
+     * @param t
+     *            The transition relation, one list of BDDs per cost.
+     * @param actionNames
+     *            The action names, one list per cost.
+     * @param actionCosts
+     *            The sorted non-zero action costs.
+     * @return The factor by which the costs have been divided.
+     */
+    public static int scale(HashMap<Integer, LinkedList<BDD>> t,
+            HashMap<Integer, LinkedList<String>> actionNames,
+            LinkedList<Integer> actionCosts) {
+        return scale(t, actionNames, actionCosts, commonDivisor(actionCosts));
+    }
+
+    /**
+     * Divides all action costs by the given divisor, which must divide each
+     * of them. This is needed if some actions have been removed (e.g., in an
+     * abstraction), as all searches must work with the same scale.
+     *
+     * @param t
+     *            The transition relation, one list of BDDs per cost.
+     * @param actionNames
+     *            The action names, one list per cost.
+     * @param actionCosts
+     *            The sorted non-zero action costs.
+     * @param divisor
+     *            The common divisor.
+     * @return The factor by which the costs have been divided.
+     */
+    public static int scale(HashMap<Integer, LinkedList<BDD>> t,
+            HashMap<Integer, LinkedList<String>> actionNames,
+            LinkedList<Integer> actionCosts, int divisor) {
+        if (divisor == 1)
+            return 1;
+        HashMap<Integer, LinkedList<BDD>> oldT = new HashMap<Integer, LinkedList<BDD>>(
+                t);
+        HashMap<Integer, LinkedList<String>> oldNames = new HashMap<Integer, LinkedList<String>>(
+                actionNames);
+        t.clear();
+        actionNames.clear();
+        for (int cost : oldT.keySet()) {
+            t.put(cost / divisor, oldT.get(cost));
+            actionNames.put(cost / divisor, oldNames.get(cost));
+        }
+        ListIterator<Integer> costIt = actionCosts.listIterator();
+        while (costIt.hasNext())
+            costIt.set(costIt.next() / divisor);
+        System.out.println("   action costs divided by common divisor "
+                + divisor);
+        return divisor;
+    }
+}
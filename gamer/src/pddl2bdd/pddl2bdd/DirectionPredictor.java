@@ -0,0 +1,153 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+import pddl2bdd.util.Time;
+
+/**
+ * Chooses the direction of the next step of a bidirectional search by
+ * predicting the time of the next step in both directions, instead of
+ * comparing the times of the last steps.
+ *
+ * The time of a step is assumed to be proportional to the number of nodes of
+ * the frontier that is expanded. For each direction the time per node of the
+ * finished steps is smoothed exponentially, as is the factor by which it
+ * grew from one step to the next, so that the prediction follows an image
+ * that gets more expensive per node from step to step. A direction that was
+ * not yet expanded is chosen first, forward before backward. The predicted
+ * and the actual time of each step are printed, so that the prediction can be
+ * checked.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class DirectionPredictor {
+    public static final int FORWARD = 0;
+    public static final int BACKWARD = 1;
+    /** The weight of the old value when smoothing. */
+    private static final double SMOOTHING = 0.5;
+    /** The bound of the growth of the time per node in one step. */
+    private static final double MAX_GROWTH = 4;
+
+    /** The smoothed time per node (ms), or -1 if not yet known. */
+    private double[] timePerNode = { -1, -1 };
+    /** The smoothed growth of the time per node from one step to the next. */
+    private double[] growth = { 1, 1 };
+    private boolean[] stopped = { false, false };
+    private int chosen = -1;
+    private long chosenNodes;
+    private long prediction = -1;
+
+    /**
+     * Chooses the direction of the next step.
+     *
+     * @param forward
+     *            The frontier to be expanded in forward direction.
+     * @param backward
+     *            The frontier to be expanded in backward direction.
+     * @param maxBackwardTime
+     *            The time a backward step may take (ms). A backward step that
+     *            is predicted to take longer is not started, as it would be
+     *            cancelled; a forward step is taken instead.
+     * @return The direction.
+     */
+    public int choose(BDD forward, BDD backward, long maxBackwardTime) {
+        boolean forwardOpen = !stopped[FORWARD] && forward != null;
+        boolean backwardOpen = !stopped[BACKWARD] && backward != null;
+        if (!backwardOpen)
+            return select(FORWARD, forwardOpen ? forward.nodeCount() : 0);
+        long backwardNodes = backward.nodeCount();
+        if (!forwardOpen)
+            return select(BACKWARD, backwardNodes);
+        long forwardNodes = forward.nodeCount();
+        long forwardTime = predict(FORWARD, forwardNodes);
+        long backwardTime = predict(BACKWARD, backwardNodes);
+        if (forwardTime < 0)
+            return select(FORWARD, forwardNodes);
+        if (backwardTime < 0)
+            return select(BACKWARD, backwardNodes);
+        if (backwardTime < forwardTime) {
+            if (backwardTime <= maxBackwardTime)
+                return select(BACKWARD, backwardNodes);
+            System.out.println("   backward step predicted to take " + Time.printTime(backwardTime)
+                    + "; expanding in forward direction instead");
+        }
+        return select(FORWARD, forwardNodes);
+    }
+
+    private int select(int direction, long nodes) {
+        chosen = direction;
+        chosenNodes = nodes;
+        prediction = predict(direction, nodes);
+        return direction;
+    }
+
+    private long predict(int direction, long nodes) {
+        if (timePerNode[direction] < 0)
+            return -1;
+        return Math.max(0, (long) (timePerNode[direction] * growth[direction] * (nodes + 1)) - 1);
+    }
+
+    /**
+     * @return The predicted time of the chosen step (ms), or -1 if there is
+     *         none.
+     */
+    public long getPrediction() {
+        return prediction;
+    }
+
+    /**
+     * Updates the prediction with the time of a finished step.
+     *
+     * @param direction
+     *            The direction of the step.
+     * @param time
+     *            The time of the step without reordering (ms).
+     */
+    public void stepFinished(int direction, long time) {
+        if (direction != chosen)
+            return;
+        if (prediction >= 0)
+            System.out.println("   predicted: " + Time.printTime(prediction) + "; actual: " + Time.printTime(time));
+        // add 1 to count steps faster than the timer resolution
+        double current = (time + 1.0) / (chosenNodes + 1);
+        if (timePerNode[direction] < 0) {
+            timePerNode[direction] = current;
+        } else {
+            double stepGrowth = Math.min(MAX_GROWTH, Math.max(1 / MAX_GROWTH, current / timePerNode[direction]));
+            growth[direction] = SMOOTHING * growth[direction] + (1 - SMOOTHING) * stepGrowth;
+            timePerNode[direction] = SMOOTHING * timePerNode[direction] + (1 - SMOOTHING) * current;
+        }
+        chosen = -1;
+        prediction = -1;
+    }
+
+    /**
+     * Stops the search in a direction, because it is finished or took too
+     * long.
+     *
+     * @param direction
+     *            The direction.
+     */
+    public void stop(int direction) {
+        stopped[direction] = true;
+    }
+}
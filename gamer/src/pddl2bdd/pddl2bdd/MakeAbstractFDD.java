@@ -145,7 +145,9 @@ public class MakeAbstractFDD {
 
         // allocate BDD vars
         System.out.println("   creating variables ...");
-        factory = BDDFactory.init(library, 16000000, 16000000);
+        factory = TableSizes.init(library, numberOfVariables,
+                GroundedPDDLParser.actions.size());
+        PlannerMonitor.attach(factory);
         factory.setVarNum(numberOfVariables);
         variables = new BDD[numberOfVariables];
         not_variables = new BDD[numberOfVariables];
@@ -227,6 +229,8 @@ public class MakeAbstractFDD {
         Collections.sort(actionCosts);
         if (actionCosts.getFirst() == 0)
             actionCosts.removeFirst();
+        // scale by the divisor of all costs, as used in the concrete search
+        int costDivisor = CostEncoding.commonDivisor(actionCosts);
         boolean[] usedActions = new boolean[GroundedPDDLParser.actions.size()];
         int usedActionIndex = 0;
         actionIt = GroundedPDDLParser.actions.listIterator();
@@ -256,6 +260,8 @@ public class MakeAbstractFDD {
                 allActionsIt.remove();
             }
         }
+        maxCost /= CostEncoding.scale(t, actionNames, actionCosts, costDivisor);
+        ActionProfile.prepare(t, actionNames);
 
         FileWriter usedActionsWriter = null;
         try {
@@ -415,16 +421,16 @@ public class MakeAbstractFDD {
                 nAryVariables.add(partitionedVariables.get(i).get(j));
                 partVariables = getVariables(currentVariable, numberOfVars, j);
                 if (numberOfVars > 1) {
-                    BDD variablePreBDD = factory.one();
-                    BDD variableEffBDD = factory.one();
+                    BDD variablePreBDD = factory.universe();
+                    BDD variableEffBDD = factory.universe();
                     for (int k = 0; k < numberOfVars; k++) {
                         tmp = variablePreBDD;
                         variablePreBDD = tmp.and(partVariables[0][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                         tmp = variableEffBDD;
                         variableEffBDD = tmp.and(partVariables[1][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                     }
                     nAryVariablesPreBDDs.add(variablePreBDD);
@@ -465,7 +471,7 @@ public class MakeAbstractFDD {
         LinkedList<String> initialVariables;
         BDD tmp;
 
-        init = factory.one();
+        init = factory.universe();
         initialVariables = new LinkedList<String>();
         ListIterator<Predicate> initIt = GroundedPDDLParser.initialState
                 .listIterator();
@@ -553,21 +559,28 @@ public class MakeAbstractFDD {
         factory.done();
     }
 
-    private BDD image(int index, BDD from, BDDVarSet varSet) {
-        return image(index, from, factory.one(), varSet);
+    private BDD image(int index, BDD from, BDDVarSet varSet, BDDPairing pairing) {
+        return image(index, from, factory.universe(), varSet, pairing);
     }
 
-    private BDD image(int index, BDD from, BDD conjunct, BDDVarSet varSet) {
-        BDD tmp1;
-        BDD tmp2;
+    private BDD image(int index, BDD from, BDD conjunct, BDDVarSet varSet, BDDPairing pairing) {
+        // the products are calculated on raw handles; only the result
+        // becomes a BDD object
+        long tmp1;
+        long tmp2;
+        long fromHandle = factory.handle(from);
+        long conjunctHandle = factory.handle(conjunct);
         LinkedList<BDD> t_i = t.get(index);
         int size = t_i.size();
-        BDD[] array = new BDD[size];
-        for (int i = 0; i < size; i++) {
-            tmp1 = t_i.get(i).relprod(from, varSet);
-            array[i] = tmp1.and(conjunct);
-            tmp1.free();
+        long[] array = new long[size];
+        int next = 0;
+        for (BDD action : t_i) {
+            tmp1 = ActionProfile.relnextRaw(factory, action, fromHandle, varSet, pairing);
+            array[next++] = factory.andRaw(tmp1, conjunctHandle);
+            factory.deref(tmp1);
         }
+        factory.deref(fromHandle);
+        factory.deref(conjunctHandle);
 
         int prevRemainingElems;
         int remainingElems = size;
@@ -579,22 +592,24 @@ public class MakeAbstractFDD {
                 if (i < remainingElems - 1 || (2 * i) + 1 < prevRemainingElems) {
                     tmp1 = array[i];
                     tmp2 = array[(2 * i) + 1];
-                    array[i] = tmp1.or(tmp2);
-                    tmp1.free();
-                    tmp2.free();
+                    array[i] = factory.orRaw(tmp1, tmp2);
+                    factory.deref(tmp1);
+                    factory.deref(tmp2);
                 }
             }
         }
-        return array[0];
+        BDD ret = factory.fromHandle(array[0]);
+        factory.deref(array[0]);
+        return ret;
     }
 
     private class DijkstraData {
         public BDD backwardReached;
-        public HashMap<Integer, BDD> backwardBDDs;
+        public BDDBucketQueue backwardBDDs;
     }
 
     private void searchStep(int index, BDDVarSet varSet, BDDPairing pairing,
-            DijkstraData data) {
+            DijkstraData data, Telemetry.Step telemetry) {
         BDD tmp1;
         BDD tmp2;
         BDD negatedReached;
@@ -608,21 +623,15 @@ public class MakeAbstractFDD {
         data.backwardBDDs.put(index, tmp1.and(negatedReached));
         tmp1.free();
         if (t.containsKey(0)) {
-            frontier = data.backwardBDDs.get(index);
-            while (!frontier.equals(factory.zero())) {
-                tmp1 = image(0, frontier, varSet);
-                to = tmp1.replace(pairing);
-                tmp1.free();
-                // oldFrontier = data.backwardBDDs.get(index);
-                oldFrontier = data.backwardBDDs.remove(index);
-                tmp2 = oldFrontier.not();
-                frontier = to.and(tmp2);
-                to.free();
-                tmp2.free();
-                // data.backwardBDDs.set(index, oldFrontier.or(frontier));
-                data.backwardBDDs.put(index, oldFrontier.or(frontier));
-                oldFrontier.free();
-            }
+            Vector<BDD> layers = new Vector<BDD>();
+            layers.add(data.backwardBDDs.get(index).id());
+            Vector<BDD> total = new Vector<BDD>(1);
+            total.add(data.backwardBDDs.remove(index));
+            new ZeroCostClosure(t.get(0)).saturate(layers, total, null, null,
+                    varSet, pairing, Long.MAX_VALUE);
+            for (int i = 0; i < layers.size(); i++)
+                layers.get(i).free();
+            data.backwardBDDs.put(index, total.firstElement());
         }
         tmp1 = data.backwardBDDs.remove(index);
         data.backwardBDDs.put(index, tmp1.and(negatedReached));
@@ -641,9 +650,9 @@ public class MakeAbstractFDD {
         int d;
         while (costIt.hasNext()) {
             d = costIt.next();
-            tmp1 = image(d, frontier, varSet);
-            to = tmp1.replace(pairing);
-            tmp1.free();
+            long imageStartTime = System.currentTimeMillis();
+            to = image(d, frontier, varSet, pairing);
+            telemetry.imageTime(d, System.currentTimeMillis() - imageStartTime);
             tmp1 = to.and(negatedReached);
             to.free();
             to = tmp1;
@@ -653,15 +662,10 @@ public class MakeAbstractFDD {
             // for (int i = currentSize; i < index + maxCost + 1; i++)
             // data.backwardBDDs.set(i, factory.zero());
             // }
-            if (!tmp1.equals(factory.zero())) {
-                if (data.backwardBDDs.containsKey(index + d)) {
-                    tmp1 = data.backwardBDDs.remove(index + d);
-                    data.backwardBDDs.put(index + d, tmp1.or(to));
-                    tmp1.free();
-                    to.free();
-                } else
-                    data.backwardBDDs.put(index + d, to);
-            }
+            if (!tmp1.equals(factory.zero()))
+                data.backwardBDDs.merge(index + d, to);
+            else
+                to.free();
             // tmp1 = data.backwardBDDs.get(index + d);
             // data.backwardBDDs.set(index + d, tmp1.or(to));
             // tmp1.free();
@@ -671,7 +675,6 @@ public class MakeAbstractFDD {
     }
 
     public double buildPDB(boolean calculateAverage) {
-        long startingTime = System.currentTimeMillis();
         double averageHeuristic = 0.0;
         double heuristicSize = 0;
         double currentSize;
@@ -680,7 +683,7 @@ public class MakeAbstractFDD {
         int index;
         BDD tmp1;
         DijkstraData data = new DijkstraData();
-        data.backwardBDDs = new HashMap<Integer, BDD>();
+        data.backwardBDDs = new BDDBucketQueue(maxCost);
         boolean useSuperPDB = true;
         FileWriter existingPDBs = null;
         FileWriter maxPDB = null;
@@ -706,7 +709,7 @@ public class MakeAbstractFDD {
         data.backwardReached = factory.zero();
         // while (index < data.backwardBDDs.size()) {
         while (!data.backwardBDDs.isEmpty()) {
-            index = Collections.min(data.backwardBDDs.keySet());
+            index = data.backwardBDDs.minKey();
             System.out.println("   step: " + index);
             // if (data.backwardBDDs.get(index).equals(factory.zero())) {
             // String pdbFileName = partitionFileName.substring(0,
@@ -728,7 +731,8 @@ public class MakeAbstractFDD {
             // index++;
             // continue;
             // }
-            if (System.currentTimeMillis() - startingTime > Long.MAX_VALUE) {
+            if (Budget.phaseExpired()) {
+                System.out.println("   time for the PDB used up; using the partial PDB");
                 // int oldsize = data.backwardBDDs.size();
                 // if (data.backwardBDDs.size() < index + 1) {
                 // System.out.println("Error in ending of buildPDB!");
@@ -746,7 +750,12 @@ public class MakeAbstractFDD {
                 }
                 break;
             }
-            searchStep(index, cubep, s2sp, data);
+            Budget.check();
+            Telemetry.Step telemetry = Telemetry.startStep(factory, "pdb", "backward", index);
+            telemetry.frontier(data.backwardBDDs.get(index), cubep);
+            searchStep(index, cubep, s2sp, data, telemetry);
+            telemetry.closed(data.backwardReached, cubep);
+            telemetry.finish(-1);
             String pdbFileName = partitionFileName.substring(0,
                     partitionFileName.lastIndexOf(".") - 4)
                     + "PDB_";
@@ -809,7 +818,7 @@ public class MakeAbstractFDD {
 
     public void buildSuperPDB() {
         long startingTime = System.currentTimeMillis();
-        HashMap<Integer, BDD> backwardBDDs = new HashMap<Integer, BDD>();
+        BDDBucketQueue backwardBDDs = new BDDBucketQueue(maxCost);
         int index;
         BDD tmp1;
         DijkstraData data = new DijkstraData();
@@ -823,14 +832,14 @@ public class MakeAbstractFDD {
         data.backwardBDDs = backwardBDDs;
         while (!data.backwardBDDs.isEmpty()) {
             // while (index < data.backwardBDDs.size()) {
-            index = Collections.min(data.backwardBDDs.keySet());
+            index = data.backwardBDDs.minKey();
             System.out.println("   step: " + index);
             // if (data.backwardBDDs.get(index).equals(factory.zero())) {
             // index++;
             // continue;
             // }
             if (System.currentTimeMillis() - startingTime > 100 * 1000
-                    || index == 4) {
+                    || index == 4 || Budget.phaseExpired()) {
                 // int oldsize = data.backwardBDDs.size();
                 // if (data.backwardBDDs.size() < index + 1) {
                 // System.out.println("Error in ending of buildSuperPDB!");
@@ -841,7 +850,12 @@ public class MakeAbstractFDD {
                 // }
                 break;
             }
-            searchStep(index, cubep, s2sp, data);
+            Budget.check();
+            Telemetry.Step telemetry = Telemetry.startStep(factory, "superpdb", "backward", index);
+            telemetry.frontier(data.backwardBDDs.get(index), cubep);
+            searchStep(index, cubep, s2sp, data, telemetry);
+            telemetry.closed(data.backwardReached, cubep);
+            telemetry.finish(-1);
             String pdbFileName = partitionFileName.substring(0,
                     partitionFileName.lastIndexOf(".") - 4)
                     + "PDB_";
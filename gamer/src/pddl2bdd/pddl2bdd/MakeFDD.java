@@ -19,6 +19,7 @@
 
 package pddl2bdd.pddl2bdd;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Vector;
@@ -67,10 +68,11 @@ public class MakeFDD {
     private LinkedList<BDD> nAryVariablesPreBDDs; // bdds representing the n-ary variables for the current state
     private LinkedList<BDD> nAryVariablesEffBDDs; // bdds representing the n-ary variables for the next state
     private LinkedList<String> actionNames; // list of all possible actions (resp. their names)
+    private ActionIndex effectIndex; // effects of the actions, for the plan reconstruction
+    private ActionIndex preconditionIndex; // preconditions of the actions, for the plan reconstruction
     private long forwardTime = 0;
-    private long lastForwardTime = 0;
     private long backwardTime = 0;
-    private long lastBackwardTime = 0;
+    private DirectionPredictor predictor = new DirectionPredictor(); // chooses the direction in bidirectional search
     private BDD forwardReach;
     private BDD backwardReach;
     
@@ -112,7 +114,9 @@ public class MakeFDD {
         
         // allocate BDD vars
         System.out.println("   creating variables ...");
-        factory = BDDFactory.init(library, 16000000, 16000000);
+        factory = TableSizes.init(library, numberOfVariables,
+                GroundedPDDLParser.actions.size());
+        PlannerMonitor.attach(factory);
         factory.setVarNum(numberOfVariables);
         variables = new BDD[numberOfVariables];
         not_variables = new BDD[numberOfVariables];
@@ -169,6 +173,7 @@ public class MakeFDD {
             actionNames.add(action.getName());
             actionCounter++;
         }
+        ActionProfile.prepare(t, actionNames);
         System.out.println("   done.");
 
         // build initial state
@@ -196,16 +201,16 @@ public class MakeFDD {
                 nAryVariables.add(partitionedVariables.get(i).get(j));
                 partVariables = getVariables(currentVariable, numberOfVars, j);
                 if (numberOfVars > 1) {
-                    BDD variablePreBDD = factory.one();
-                    BDD variableEffBDD = factory.one();
+                    BDD variablePreBDD = factory.universe();
+                    BDD variableEffBDD = factory.universe();
                     for (int k = 0; k < numberOfVars; k++) {
                         tmp = variablePreBDD;
                         variablePreBDD = tmp.and(partVariables[0][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                         tmp = variableEffBDD;
                         variableEffBDD = tmp.and(partVariables[1][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                     }
                     nAryVariablesPreBDDs.add(variablePreBDD);
@@ -242,7 +247,7 @@ public class MakeFDD {
         LinkedList<String> initialVariables;
         BDD tmp;
         
-        init = factory.one();
+        init = factory.universe();
         initialVariables = new LinkedList<String>();
         ListIterator<Predicate> initIt = GroundedPDDLParser.initialState.listIterator();
         while (initIt.hasNext()) {
@@ -309,19 +314,25 @@ public class MakeFDD {
         factory.done();
     }
 
-    private BDD image(BDD from, BDDVarSet varSet) {
-        return image(from, factory.one(), varSet);
+    private BDD image(BDD from, BDDVarSet varSet, BDDPairing pairing) {
+        return image(from, factory.universe(), varSet, pairing);
     }
 
-    private BDD image(BDD from, BDD conjunct, BDDVarSet varSet) {
-        BDD tmp1;
-        BDD tmp2;
-        BDD[] array = new BDD[t.length];
+    private BDD image(BDD from, BDD conjunct, BDDVarSet varSet, BDDPairing pairing) {
+        // the products are calculated on raw handles; only the result
+        // becomes a BDD object
+        long tmp1;
+        long tmp2;
+        long fromHandle = factory.handle(from);
+        long conjunctHandle = factory.handle(conjunct);
+        long[] array = new long[t.length];
         for (int i = 0; i < t.length; i++) {
-            tmp1 = t[i].relprod(from, varSet);
-            array[i] = tmp1.and(conjunct);
-            tmp1.free();
+            tmp1 = ActionProfile.relnextRaw(factory, t[i], fromHandle, varSet, pairing);
+            array[i] = factory.andRaw(tmp1, conjunctHandle);
+            factory.deref(tmp1);
         }
+        factory.deref(fromHandle);
+        factory.deref(conjunctHandle);
 
         int prevRemainingElems;
         int remainingElems = t.length;
@@ -333,13 +344,15 @@ public class MakeFDD {
                 if (i < remainingElems - 1 || (2 * i) + 1 < prevRemainingElems) {
                     tmp1 = array[i];
                     tmp2 = array[(2 * i) + 1];
-                    array[i] = tmp1.or(tmp2);
-                    tmp1.free();
-                    tmp2.free();
+                    array[i] = factory.orRaw(tmp1, tmp2);
+                    factory.deref(tmp1);
+                    factory.deref(tmp2);
                 }
             }
         }
-        return array[0];
+        BDD ret = factory.fromHandle(array[0]);
+        factory.deref(array[0]);
+        return ret;
     }
 
     public void findPlanBFS(boolean bidirectional)
@@ -349,10 +362,9 @@ public class MakeFDD {
         BDD tmp2;
         boolean stop = false;
 
-        forwardReach = init.replace(s2sp);
+        forwardReach = init.id();
         backwardReach = trueGoal.id();
         forwardSolutionPath.addLast(init.id());
-        lastForwardTime = Integer.MAX_VALUE;
         if (bidirectional) {
             LinkedList<BDD> backwardSolutionPath = new LinkedList<BDD>();
             int forwardStep = 0;
@@ -364,7 +376,8 @@ public class MakeFDD {
             System.out.println("   backward: #nodes: " + backwardReach.nodeCount() +
                     "; #sat: " + (long) backwardReach.satCount(cube));
             while(!stop)  {
-                if (lastForwardTime <= lastBackwardTime) {
+                if (predictor.choose(forwardSolutionPath.getLast(), backwardSolutionPath.getFirst(),
+                        Long.MAX_VALUE) == DirectionPredictor.FORWARD) {
                     System.out.print("   forward:  step " + forwardStep++);
                     stop = forward(forwardSolutionPath, bidirectional);
                 } else {
@@ -405,6 +418,7 @@ public class MakeFDD {
                 System.out.print("   step " + step++);
                 stop = forward(forwardSolutionPath, bidirectional);
             }
+            Budget.startPhase(Budget.Phase.reconstruction);
             System.out.println("      calculating optimal solution of length " + (forwardSolutionPath.size() - 1) + " ...");
             tmp1 = forwardSolutionPath.removeLast();
             tmp2 = trueGoal.replace(sp2s);
@@ -434,8 +448,14 @@ public class MakeFDD {
         BDD tmp1;
         BDD tmp2;
         boolean stop;
+        Budget.check();
+        Telemetry.Step telemetry = Telemetry.startStep(factory, "bfs", "forward", solutionPath.size() - 1);
+        telemetry.frontier(solutionPath.getLast(), cube);
+        telemetry.predictedTime(predictor.getPrediction());
 
-        to = image(solutionPath.getLast(), cube);
+        long imageStartTime = System.currentTimeMillis();
+        to = image(solutionPath.getLast(), cube, sp2s);
+        telemetry.imageTime(1, System.currentTimeMillis() - imageStartTime);
         tmp1 = forwardReach.not();
         tmp2 = to;
         to = tmp1.and(tmp2);
@@ -448,7 +468,7 @@ public class MakeFDD {
         if (!to.equals(factory.zero())) {
         	//to.printDot();
         	stop = false;
-        	solutionPath.addLast(to.replace(sp2s));
+        	solutionPath.addLast(to.id());
         }
         //tmp1 = to.and(backwardReach);
         //stop = !tmp1.equals(factory.zero());
@@ -464,13 +484,15 @@ public class MakeFDD {
         forwardReach = tmp1.or(to);
         tmp1.free();
         to.free();
+        telemetry.closed(forwardReach, cube);
+        telemetry.finish(-1);
 
         //if (bidirectional) {
             long diffTime = System.currentTimeMillis() - startingTime;
             forwardTime += diffTime;
-            lastForwardTime = diffTime;
             System.out.println("; forward time: " + Time.printTime(forwardTime) +
                     "; last step: " + Time.printTime(diffTime));
+            predictor.stepFinished(DirectionPredictor.FORWARD, diffTime);
         //}
         return stop;
     }
@@ -483,12 +505,16 @@ public class MakeFDD {
         BDD tmp2;
         boolean stop;
 
+        Budget.check();
+        Telemetry.Step telemetry = Telemetry.startStep(factory, "bfs", "backward", solutionPath.size() - 1);
+        telemetry.frontier(solutionPath.getFirst(), cube);
+        telemetry.predictedTime(predictor.getPrediction());
+
         from = solutionPath.getFirst().replace(s2sp);
-        to = image(from, cubep);
+        long imageStartTime = System.currentTimeMillis();
+        to = image(from, cubep, s2sp);
+        telemetry.imageTime(1, System.currentTimeMillis() - imageStartTime);
         from.free();
-        tmp1 = to;
-        to = tmp1.replace(s2sp);
-        tmp1.free();
         tmp1 = backwardReach.not();
         tmp2 = to;
         to = tmp1.and(tmp2);
@@ -512,12 +538,14 @@ public class MakeFDD {
         backwardReach = tmp1.or(to);
         tmp1.free();
         to.free();
+        telemetry.closed(backwardReach, cubep);
+        telemetry.finish(-1);
 
         long diffTime = System.currentTimeMillis() - startingTime;
         backwardTime += diffTime;
-        lastBackwardTime = diffTime;
         System.out.println("; backward time: " + Time.printTime(backwardTime) +
                 "; last step: " + Time.printTime(diffTime));
+        predictor.stepFinished(DirectionPredictor.BACKWARD, diffTime);
         return stop;
     }
 
@@ -529,10 +557,15 @@ public class MakeFDD {
                 solution.add(new LinkedList<String>());
             }
 
-            if (forward)
+            if (forward) {
+                preconditionIndex = new ActionIndex(Arrays.asList(t), S, cubep);
                 reconstructPlanForward(0, solutionPath, solution);
-            else
+                preconditionIndex = null;
+            } else {
+                effectIndex = new ActionIndex(Arrays.asList(t), Sp, cube);
                 reconstructPlanBackward(solutionPath.size() - 2, solutionPath, solution);
+                effectIndex = null;
+            }
             try {
                 int initialOutputCapacity = 10000;
                 StringBuilder output = new StringBuilder(initialOutputCapacity);
@@ -548,10 +581,9 @@ public class MakeFDD {
                     String nextAction = solution.get(i).removeFirst();
                     if (!forward) {
                         int actionIndex = actionNames.indexOf(nextAction);
-                        BDD tmp = t[actionIndex].relprod(ret, cube);
+                        BDD tmp = t[actionIndex].relnext(ret, cube, sp2s);
                         ret.free();
-                        ret = tmp.replace(sp2s);
-                        tmp.free();
+                        ret = tmp;
                     }
                     String nextActionParts[] = nextAction.split("[.]");
                     output.append(counter++ + ": (").append(nextActionParts[0]);
@@ -584,13 +616,13 @@ public class MakeFDD {
         BDD tmp1;
         BDD intermediate;
 
-        start = solutionPath.removeFirst();
+        start = ActionIndex.pickState(solutionPath.removeFirst(), S);
         successors = solutionPath.removeFirst();
         tmp = factory.zero();
-        for (int i = 0; i < t.length; i++) {
-            tmp1 = t[i].relprod(start, cube);
-            intermediate = tmp1.replace(sp2s);
-            tmp1.free();
+        int[] candidates = preconditionIndex.candidates(start);
+        for (int c = 0; c < candidates.length; c++) {
+            int i = candidates[c];
+            intermediate = t[i].relnext(start, cube, sp2s);
             tmp1 = tmp;
             tmp = intermediate.or(tmp1);
             tmp1.free();
@@ -623,11 +655,13 @@ public class MakeFDD {
         BDD tmp1;
 
         tmp = solutionPath.removeLast();
-        start = tmp.replace(s2sp);
+        start = ActionIndex.pickState(tmp.replace(s2sp), Sp);
         tmp.free();
         predecessors = solutionPath.removeLast();
         tmp = factory.zero();
-        for (int i = 0; i < t.length; i++) {
+        int[] candidates = effectIndex.candidates(start);
+        for (int c = 0; c < candidates.length; c++) {
+            int i = candidates[c];
             intermediate = t[i].relprod(start, cubep);
             tmp1 = tmp;
             tmp = intermediate.or(tmp1);
@@ -663,7 +697,7 @@ public class MakeFDD {
         System.out.println("backward step took " + Time.printTime(backwardTime));
 
         startTime = System.currentTimeMillis();
-        BDD forwardStop = image(init, cube);
+        BDD forwardStop = image(init, cube, sp2s);
         forwardStop.free();
         long forwardTime = System.currentTimeMillis() - startTime;
         System.out.println("forward step took " + Time.printTime(forwardTime));
@@ -676,6 +710,7 @@ public class MakeFDD {
         BDD tmp1;
         BDD tmp2;
         long startTime = System.currentTimeMillis();
+        long maxTime = Budget.stepTime();
         Vector<BDD> array = new Vector<BDD>(t.length);
         for (int i = 0; i < t.length; i++) {
             array.add(t[i].relprod(from, varSet));
@@ -689,7 +724,7 @@ public class MakeFDD {
                 array.add(tmp1.or(tmp2));
                 tmp1.free();
                 tmp2.free();
-                if (System.currentTimeMillis() - startTime > 30 * 1000) { // total time for image more than 30 seconds
+                if (System.currentTimeMillis() - startTime > maxTime) {
                     for (int j = i + 1; j < array.size(); j++) {
                         array.get(j).free();
                     }
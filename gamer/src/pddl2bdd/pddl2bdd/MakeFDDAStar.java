@@ -23,6 +23,7 @@ import java.util.*;
 
 import pddl2bdd.parser.GroundedPDDLParser;
 import pddl2bdd.parser.logic.*;
+import pddl2bdd.util.BucketQueue;
 import pddl2bdd.util.Maths;
 import net.sf.javabdd.*;
 
@@ -80,8 +81,11 @@ public class MakeFDDAStar {
     // actions (resp.
     // their names)
     private LinkedList<Integer> actionCosts;
+    private CostEncoding costEncoding; // the images per cost, grouped if there are many costs
+    private HashMap<Integer, ActionIndex> effectIndices; // effects of the actions of each cost, for the plan reconstruction
 
     private int maxCost; // maximal action-cost
+    private int costFactor; // common divisor all action-costs were divided by
     private LinkedList<HashMap<Integer, BDD>> pdbs;
     private HashMap<Integer, LinkedList<BDD>> heuristicToPDBs;
     private int maxH;
@@ -133,7 +137,9 @@ public class MakeFDDAStar {
 
         // allocate BDD vars
         System.out.println("   creating variables ...");
-        factory = BDDFactory.init(library, 16000000, 16000000);
+        factory = TableSizes.init(library, numberOfVariables,
+                GroundedPDDLParser.actions.size());
+        PlannerMonitor.attach(factory);
         factory.setVarNum(numberOfVariables);
         variables = new BDD[numberOfVariables];
         not_variables = new BDD[numberOfVariables];
@@ -307,6 +313,9 @@ public class MakeFDDAStar {
                 actionNames.get(action.getCost()).addLast(action.getName());
             }
         }
+        costFactor = CostEncoding.scale(t, actionNames, actionCosts);
+        maxCost /= costFactor;
+        ActionProfile.prepare(t, actionNames);
         System.out.println("   done.");
 
         // build initial state
@@ -367,7 +376,7 @@ public class MakeFDDAStar {
                             partitionFileName.lastIndexOf(".") - 4));
             file = new File(filename);
             try {
-                BDD statesNotInPDB = factory.one();
+                BDD statesNotInPDB = factory.universe();
                 String filename2 = "abstract"
                         + nextPDB
                         + partitionFileName.substring(partitionFileName
@@ -420,7 +429,7 @@ public class MakeFDDAStar {
             System.err.println("Warning: no PDB-files found!");
             System.err.println("Using empty PDB!");
             LinkedList<BDD> tmpList = new LinkedList<BDD>();
-            tmpList.add(factory.one());
+            tmpList.add(factory.universe());
             heuristicToPDBs.put(0, tmpList);
         } else {
             int indices[] = new int[pdbValues.length];
@@ -444,6 +453,8 @@ public class MakeFDDAStar {
             maxH += Collections.max(pdbs.get(i).keySet());
         }
         System.out.println("   done.");
+
+        costEncoding = new CostEncoding(factory, t, actionCosts);
     }
 
     private void createNAryVariables() {
@@ -460,16 +471,16 @@ public class MakeFDDAStar {
                 nAryVariables.add(partitionedVariables.get(i).get(j));
                 partVariables = getVariables(currentVariable, numberOfVars, j);
                 if (numberOfVars > 1) {
-                    BDD variablePreBDD = factory.one();
-                    BDD variableEffBDD = factory.one();
+                    BDD variablePreBDD = factory.universe();
+                    BDD variableEffBDD = factory.universe();
                     for (int k = 0; k < numberOfVars; k++) {
                         tmp = variablePreBDD;
                         variablePreBDD = tmp.and(partVariables[0][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                         tmp = variableEffBDD;
                         variableEffBDD = tmp.and(partVariables[1][k]);
-                        if (!tmp.equals(factory.one()))
+                        if (!tmp.equals(factory.universe()))
                             tmp.free();
                     }
                     nAryVariablesPreBDDs.add(variablePreBDD);
@@ -510,7 +521,7 @@ public class MakeFDDAStar {
         LinkedList<String> initialVariables;
         BDD tmp;
 
-        init = factory.one();
+        init = factory.universe();
         initialVariables = new LinkedList<String>();
         ListIterator<Predicate> initIt = GroundedPDDLParser.initialState
                 .listIterator();
@@ -556,6 +567,7 @@ public class MakeFDDAStar {
      * Cleans up in that it de-references all BDDs.
      */
     public void cleanup() {
+        costEncoding.free();
         Collection<Integer> hValues = heuristicToPDBs.keySet();
         Iterator<Integer> hValueIt = hValues.iterator();
         while (hValueIt.hasNext()) {
@@ -604,41 +616,6 @@ public class MakeFDDAStar {
         factory.done();
     }
 
-    private BDD image(int index, BDD from, BDDVarSet varSet) {
-        return image(index, from, factory.one(), varSet);
-    }
-
-    private BDD image(int index, BDD from, BDD conjunct, BDDVarSet varSet) {
-        BDD tmp1;
-        BDD tmp2;
-        LinkedList<BDD> t_i = t.get(index);
-        int size = t_i.size();
-        BDD[] array = new BDD[size];
-        for (int i = 0; i < size; i++) {
-            tmp1 = t_i.get(i).relprod(from, varSet);
-            array[i] = tmp1.and(conjunct);
-            tmp1.free();
-        }
-
-        int prevRemainingElems;
-        int remainingElems = size;
-        while (remainingElems > 1) {
-            prevRemainingElems = remainingElems;
-            remainingElems = Maths.div2(prevRemainingElems);
-            for (int i = 0; i < remainingElems; i++) {
-                array[i] = array[2 * i];
-                if (i < remainingElems - 1 || (2 * i) + 1 < prevRemainingElems) {
-                    tmp1 = array[i];
-                    tmp2 = array[(2 * i) + 1];
-                    array[i] = tmp1.or(tmp2);
-                    tmp1.free();
-                    tmp2.free();
-                }
-            }
-        }
-        return array[0];
-    }
-
     private class AStarData {
         public BDD forwardReached;
         public Vector<BDD> forwardBDDs;
@@ -656,27 +633,11 @@ public class MakeFDDAStar {
 
         negatedReached = data.forwardReached.not();
         if (t.containsKey(0)) {
-            while (true) {
-                tmp1 = image(0, frontier.lastElement(), varSet);
-                to = tmp1.replace(pairing);
-                tmp1.free();
-                tmp1 = to.and(negatedReached);
-                to.free();
-                oldFrontier = totalFrontier;
-                tmp2 = oldFrontier.not();
-                BDD tmp3 = tmp1.and(tmp2);
-                if (tmp3.equals(factory.zero())) {
-                    tmp1.free();
-                    tmp2.free();
-                    break;
-                }
-                frontier.add(tmp1.and(tmp2));
-                tmp1.free();
-                tmp2.free();
-                tmp3.free();
-                totalFrontier = oldFrontier.or(frontier.lastElement());
-                oldFrontier.free();
-            }
+            Vector<BDD> total = new Vector<BDD>(1);
+            total.add(totalFrontier);
+            new ZeroCostClosure(t.get(0)).saturate(frontier, total,
+                    negatedReached, null, varSet, pairing, Long.MAX_VALUE);
+            totalFrontier = total.firstElement();
         } else {
             tmp1 = totalFrontier;
             totalFrontier = tmp1.and(negatedReached);
@@ -693,23 +654,34 @@ public class MakeFDDAStar {
         }
 
         int d;
-        ListIterator<Integer> costIt = actionCosts.listIterator();
-        while (costIt.hasNext()) {
-            d = costIt.next();
-            tmp1 = image(d, totalFrontier, varSet);
-            to = tmp1.replace(pairing);
-            tmp1.free();
-            currentSize = data.forwardBDDs.size();
-            if (currentSize <= index + d) {
-                data.forwardBDDs.setSize(index + d + 1);
-                for (int i = currentSize; i < index + d + 1; i++)
-                    data.forwardBDDs.set(i, factory.zero());
+        long from = factory.handle(totalFrontier);
+        long universe = factory.universeRaw();
+        for (int group = 0; group < costEncoding.groups(); group++) {
+            // one image for all costs of the group; its time is reported for
+            // the smallest of them
+            long imageStartTime = System.currentTimeMillis();
+            long[] images = costEncoding.imagesRaw(group, from, universe,
+                    varSet, pairing, Long.MAX_VALUE);
+            PlannerMonitor.imageFinished(costEncoding.cost(group, 0),
+                    System.currentTimeMillis() - imageStartTime);
+            for (int i = 0; i < images.length; i++) {
+                d = costEncoding.cost(group, i);
+                to = factory.fromHandle(images[i]);
+                factory.deref(images[i]);
+                currentSize = data.forwardBDDs.size();
+                if (currentSize <= index + d) {
+                    data.forwardBDDs.setSize(index + d + 1);
+                    for (int j = currentSize; j < index + d + 1; j++)
+                        data.forwardBDDs.set(j, factory.zero());
+                }
+                tmp1 = data.forwardBDDs.get(index + d);
+                data.forwardBDDs.set(index + d, tmp1.or(to));
+                tmp1.free();
+                to.free();
             }
-            tmp1 = data.forwardBDDs.get(index + d);
-            data.forwardBDDs.set(index + d, tmp1.or(to));
-            tmp1.free();
-            to.free();
         }
+        factory.deref(universe);
+        factory.deref(from);
         totalFrontier.free();
         return frontier;
     }
@@ -779,6 +751,7 @@ public class MakeFDDAStar {
                     temp = new Vector<BDD>();
                     temp.add(factory.zero());
                     data.forwardBDDs = temp;
+                    PlannerMonitor.stepStarted("astar", "forward", gmin);
                     searchStep(0, forwardBDD.get(gmin).get(hmax), cube, sp2s,
                             data);
 
@@ -809,7 +782,7 @@ public class MakeFDDAStar {
                         data.forwardReached.free();
                         replacedGoal.free();
                         System.out.println("   cheapest plan has cost of "
-                                + gmin);
+                                + gmin * costFactor);
                         reconstructPlanAStar(solutionBDD, gmin, intersection
                                 .replace(s2sp));
                         intersection.free();
@@ -873,8 +846,8 @@ public class MakeFDDAStar {
     }
 
     public void findPlanAStarNew() {
-        HashMap<Integer, HashMap<Integer, BDD>> searchSpace;
-        HashMap<Integer, BDD> fDiagonal;
+        BucketQueue<BDDBucketQueue> searchSpace;
+        BDDBucketQueue fDiagonal;
         int fmin = -1;
         BDD foundBDD = factory.zero();
         BDD tmp1;
@@ -905,9 +878,9 @@ public class MakeFDDAStar {
         }
         foundBDD.free();
         System.out.println("starting f-value: " + fmin);
-        fDiagonal = new HashMap<Integer, BDD>();
+        fDiagonal = new BDDBucketQueue(maxCost);
         fDiagonal.put(0, init.id());
-        searchSpace = new HashMap<Integer, HashMap<Integer, BDD>>();
+        searchSpace = new BucketQueue<BDDBucketQueue>(maxCost);
         searchSpace.put(fmin, fDiagonal);
         solutionBDD.setSize(maxH + 1);
         for (int i = 0; i < maxH + 1; i++) {
@@ -915,7 +888,7 @@ public class MakeFDDAStar {
         }
         intersection = init.and(replacedGoal);
         while (intersection.equals(factory.zero())) {
-            fmin = Collections.min(searchSpace.keySet());
+            fmin = searchSpace.minKey();
             fDiagonal = searchSpace.get(fmin);
             // if (searchSpace.containsKey(fmin))
             // fDiagonal = searchSpace.get(fmin);
@@ -926,7 +899,7 @@ public class MakeFDDAStar {
             // int gmin = 0;
             int gmin;
             while (!fDiagonal.isEmpty()) {
-                gmin = Collections.min(fDiagonal.keySet());
+                gmin = fDiagonal.minKey();
                 // if (fDiagonal.containsKey(gmin)) {
                 // System.out.println("     gmin: " + gmin);
                 while (gmin >= solutionBDD.size()) {
@@ -942,6 +915,7 @@ public class MakeFDDAStar {
                 data.forwardBDDs = temp;
                 Vector<BDD> fgVector = new Vector<BDD>();
                 fgVector.add(fDiagonal.remove(gmin));
+                PlannerMonitor.stepStarted("astar", "forward", gmin);
                 searchStep(0, fgVector, cube, sp2s, data);
 
                 tmp1 = factory.zero();
@@ -971,18 +945,10 @@ public class MakeFDDAStar {
                     for (int i = 0; i < data.forwardBDDs.size(); i++) {
                         data.forwardBDDs.elementAt(i).free();
                     }
-                    Iterator<Integer> searchSpaceIt = searchSpace.keySet()
-                            .iterator();
-                    while (searchSpaceIt.hasNext()) {
-                        HashMap<Integer, BDD> searchLayer = searchSpace
-                                .get(searchSpaceIt.next());
-                        Iterator<Integer> layerIt = searchLayer.keySet()
-                                .iterator();
-                        while (layerIt.hasNext()) {
-                            searchLayer.get(layerIt.next()).free();
-                        }
-                    }
-                    System.out.println("   cheapest plan has cost of " + gmin);
+                    for (BDDBucketQueue searchLayer : searchSpace.values())
+                        searchLayer.free();
+                    System.out.println("   cheapest plan has cost of "
+                            + gmin * costFactor);
                     reconstructPlanAStar(solutionBDD, gmin, intersection
                             .replace(s2sp));
                     intersection.free();
@@ -1008,22 +974,13 @@ public class MakeFDDAStar {
                                     + ") => heuristic not consistent!");
                             System.exit(1);
                         }
-                        HashMap<Integer, BDD> succDiagonal;
-                        if (searchSpace.containsKey(gmin + d + newDist)) {
-                            succDiagonal = searchSpace.get(gmin + d + newDist);
-                            if (succDiagonal.containsKey(gmin + d)) {
-                                tmp1 = succDiagonal.remove(gmin + d);
-                                succDiagonal.put(gmin + d, tmp1.or(lookup));
-                                tmp1.free();
-                                lookup.free();
-                            } else {
-                                succDiagonal.put(gmin + d, lookup);
-                            }
-                        } else {
-                            succDiagonal = new HashMap<Integer, BDD>();
-                            succDiagonal.put(gmin + d, lookup);
+                        BDDBucketQueue succDiagonal = searchSpace.get(gmin + d
+                                + newDist);
+                        if (succDiagonal == null) {
+                            succDiagonal = new BDDBucketQueue(maxCost);
                             searchSpace.put(gmin + d + newDist, succDiagonal);
                         }
+                        succDiagonal.merge(gmin + d, lookup);
                     }
                     temp.get(d).free();
                     temp.set(d, factory.zero());
@@ -1044,6 +1001,7 @@ public class MakeFDDAStar {
             int index, BDD start) {
         LinkedList<String> solution = new LinkedList<String>();
 
+        Budget.startPhase(Budget.Phase.reconstruction);
         System.out.println("   reconstructing cheapest plan ...");
         for (int i = forwardBDDs.size() - 1; i > index; i--) {
             Vector<BDD> forwardLayer = forwardBDDs.elementAt(i);
@@ -1056,7 +1014,9 @@ public class MakeFDDAStar {
         if (t.containsKey(0))
             actionCosts.addFirst(0);
         Collections.reverse(actionCosts);
+        effectIndices = new HashMap<Integer, ActionIndex>();
         reconstructPlanBackwardAStar(index, forwardBDDs, start, solution);
+        effectIndices = null;
         for (int i = forwardBDDs.size() - 1; i >= 0; i--) {
             Vector<BDD> forwardLayer = forwardBDDs.elementAt(i);
             for (int j = forwardLayer.size() - 1; j >= 0; j--)
@@ -1103,11 +1063,15 @@ public class MakeFDDAStar {
         BDD intermediate;
         BDD newStart = factory.zero();
         int newIndex = -1;
-        LinkedList<BDD> t_i;
         int size;
         boolean stop = false;
         boolean totalStop = false;
 
+        ActionIndex actionIndex;
+        int[] candidates;
+        // continue with a single state; each state of the layer has a
+        // predecessor, so the plan is found from any of them
+        start = ActionIndex.pickState(start, Sp);
         tmp2 = start.replace(sp2s);
         for (int i = 0; i < solutionPath.get(index).size(); i++) {
             tmp1 = solutionPath.get(index).get(i).and(tmp2);
@@ -1129,10 +1093,15 @@ public class MakeFDDAStar {
             if (d > index)
                 continue;
             newIndex = index - d;
-            t_i = t.get(d);
-            size = t_i.size();
-            for (int i = 0; i < size; i++) {
-                intermediate = t_i.get(i).relprod(start, cubep);
+            actionIndex = effectIndices.get(d);
+            if (actionIndex == null) {
+                actionIndex = new ActionIndex(t.get(d), Sp, cube);
+                effectIndices.put(d, actionIndex);
+            }
+            candidates = actionIndex.candidates(start);
+            for (int c = 0; c < candidates.length; c++) {
+                int i = candidates[c];
+                intermediate = actionIndex.action(i).relprod(start, cubep);
                 for (int j = 0; j < solutionPath.get(newIndex).size(); j++) {
                     tmp1 = intermediate.and(solutionPath.get(newIndex).get(j));
                     if (!tmp1.equals(factory.zero())) {
@@ -1216,7 +1185,7 @@ public class MakeFDDAStar {
             // check, if conjunction of PDBs is not \bot
             combIt = heuristicCombination.listIterator();
             pdbIt = pdbs.listIterator();
-            check = factory.one();
+            check = factory.universe();
             while (combIt.hasNext()) {
                 tmp1 = check;
                 int index = combIt.next();
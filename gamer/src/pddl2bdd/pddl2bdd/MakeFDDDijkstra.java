@@ -68,12 +68,14 @@ public class MakeFDDDijkstra {
 	private LinkedList<BDD> nAryVariablesPreBDDs; // bdds representing the n-ary variables for the current state
 	private LinkedList<BDD> nAryVariablesEffBDDs; // bdds representing the n-ary variables for the next state
 	private HashMap<Integer, LinkedList<String>> actionNames; // list of all possible actions (resp. their names)
+	private HashMap<Integer, ActionIndex> effectIndices = new HashMap<Integer, ActionIndex>(); // for the plan reconstruction
+	private HashMap<Integer, ActionIndex> preconditionIndices = new HashMap<Integer, ActionIndex>(); // for the plan reconstruction
 	private LinkedList<Integer> actionCosts;
+	private CostEncoding costEncoding; // the images per cost, grouped if there are many costs
 
 	private int maxCost; // maximal action-cost
-    private boolean autoReorder = false;
-    private int nextReorderingLimit;
-    private boolean allowReordering;
+	private int costFactor; // common divisor all action-costs were divided by
+    private ReorderingController reordering;
 
 	/**
 	 * Creates new BDDs for the given domain and problem. <br>
@@ -122,7 +124,9 @@ public class MakeFDDDijkstra {
 
 		// allocate BDD vars
 		System.out.println("   creating variables ...");
-		factory = BDDFactory.init(library, 16000000, 16000000);
+		factory = TableSizes.init(library, numberOfVariables,
+				GroundedPDDLParser.actions.size());
+		PlannerMonitor.attach(factory);
 		factory.setVarNum(numberOfVariables);
 		variables = new BDD[numberOfVariables];
 		not_variables = new BDD[numberOfVariables];
@@ -135,92 +139,13 @@ public class MakeFDDDijkstra {
         // preparing reordering - assigning groups to be kept together
         ListIterator<LinkedList<String>> partItBlock = partitions.listIterator();
         int blockCounter = 0;
-        while (partItBlock.hasNext()) {
+        while (!factory.isZDD() && partItBlock.hasNext()) {
             int size = 2 * Maths.log2(partItBlock.next().size());
-            factory.addVarBlock(blockCounter, blockCounter + size, true);
+            if (size > 0)
+                factory.addVarBlock(blockCounter, blockCounter + size - 1, true);
             blockCounter += size;
         }
-        /*if (PDDL2BDD.REORDERING_TIME > 0.0 || PDDL2BDD.REORDERING_STEPS >= 0) {
-            System.out.println("Starting dynamic reordering");
-            factory.autoReorder(BDDFactory.REORDER_SIFT);
-            autoReorder = true;
-            }*/
-        nextReorderingLimit = -1;
-        try {
-            File nextLimitFile = new File("nextReorderingLimit");
-            if (nextLimitFile.exists()) {
-                String line;
-                BufferedReader bufferedReader = new BufferedReader(new FileReader("variableOrdering"));
-                String lastLine = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    lastLine = line;
-                }
-                String[] lineParts = lastLine.split(" ");
-                int[] order = new int[numberOfVariables];
-                for (int i = 0; i < numberOfVariables; i++) {
-                    order[i] = Integer.parseInt(lineParts[i]);
-                }
-                factory.setVarOrder(order);
-                System.out.print("Setting ordering");
-                for (int i = 0; i < numberOfVariables; i++) {
-                    System.out.print(" " + order[i]);
-                }
-                System.out.println();
-                bufferedReader = new BufferedReader(new FileReader("reorderingsRemaining"));
-                int reordersLeft = -1;
-                while ((line = bufferedReader.readLine()) != null) {
-                    reordersLeft = Integer.parseInt(line);
-                }
-                if (reordersLeft <= 0) {
-                    System.out.println("Not starting dynamic reordering, as all steps already done in bidirectional search");
-                    allowReordering = false;
-                } else {
-                    bufferedReader = new BufferedReader(new FileReader("nextReorderingLimit"));
-                    while ((line = bufferedReader.readLine()) != null) {
-                        nextReorderingLimit = Integer.parseInt(line);
-                    }
-                    // start dynamic reordering delayed only (to after the transition relation and stuff was read)
-                    //System.out.println("Starting dynamic reordering, first one when " + nextLimit + " nodes allocated");
-                    //factory.autoReorder(BDDFactory.REORDER_SIFT, nextLimit);
-                    factory.setReorderTimes(reordersLeft);
-                    allowReordering = true;
-                }
-            } else {
-                factory.setReorderTimes(PDDL2BDD.REORDERING_STEPS);
-				FileWriter writer = new FileWriter("nextReorderingLimit");
-                writer.write(factory.reorderVerbose(0) + "\n");
-				writer.flush();
-				writer.close();
-                writer = new FileWriter("reorderingsRemaining");
-                writer.write(PDDL2BDD.REORDERING_STEPS + "\n");
-                writer.flush();
-                writer.close();
-                writer = new FileWriter("variableOrdering");
-                for (int i = 0; i < numberOfVariables; i++) {
-                    Integer iint = new Integer(i);
-                    writer.write(iint.toString());
-                    if (i < numberOfVariables - 1)
-                        writer.write(" ");
-                }
-                writer.write("\n");
-                writer.flush();
-                writer.close();
-                // starting dynamic reordering immediately - maybe better delay it?
-                if (PDDL2BDD.REORDERING_STEPS > 0) {
-                    //System.out.println("Starting dynamic reordering with default settings");
-                    //factory.autoReorder(BDDFactory.REORDER_SIFT);
-                    //autoReorder = true;
-                    allowReordering = true;
-                } else {
-                    allowReordering = false;
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
-        }
-
+        reordering = new ReorderingController(factory, PDDL2BDD.REORDERING_STEPS, PDDL2BDD.REORDERING_TIME);
 
 		// get current / next state variables
 		S = new BDD[numberOfVariables / 2];
@@ -326,6 +251,9 @@ public class MakeFDDDijkstra {
 				actionNames.get(action.getCost()).addLast(action.getName());
 			}
 		}
+		costFactor = CostEncoding.scale(t, actionNames, actionCosts);
+		maxCost /= costFactor;
+		ActionProfile.prepare(t, actionNames);
 		System.out.println("   done.");
 
 		// build initial state
@@ -408,6 +336,8 @@ public class MakeFDDDijkstra {
 				System.exit(1);
 			}
 		}
+
+		costEncoding = new CostEncoding(factory, t, actionCosts);
 	}
 
 	private void createNAryVariables() {
@@ -424,16 +354,16 @@ public class MakeFDDDijkstra {
 				nAryVariables.add(partitionedVariables.get(i).get(j));
 				partVariables = getVariables(currentVariable, numberOfVars, j);
 				if (numberOfVars > 1) {
-					BDD variablePreBDD = factory.one();
-					BDD variableEffBDD = factory.one();
+					BDD variablePreBDD = factory.universe();
+					BDD variableEffBDD = factory.universe();
 					for (int k = 0; k < numberOfVars; k++) {
 						tmp = variablePreBDD;
 						variablePreBDD = tmp.and(partVariables[0][k]);
-						if (!tmp.equals(factory.one()))
+						if (!tmp.equals(factory.universe()))
 							tmp.free();
 						tmp = variableEffBDD;
 						variableEffBDD = tmp.and(partVariables[1][k]);
-						if (!tmp.equals(factory.one()))
+						if (!tmp.equals(factory.universe()))
 							tmp.free();
 					}
 					nAryVariablesPreBDDs.add(variablePreBDD);
@@ -474,7 +404,7 @@ public class MakeFDDDijkstra {
 		LinkedList<String> initialVariables;
 		BDD tmp;
 
-		init = factory.one();
+		init = factory.universe();
 		initialVariables = new LinkedList<String>();
 		ListIterator<Predicate> initIt = GroundedPDDLParser.initialState
 				.listIterator();
@@ -526,6 +456,7 @@ public class MakeFDDDijkstra {
 		cubep.free();
 		s2sp = null;
 		sp2s = null;
+		costEncoding.free();
 		Collection<LinkedList<BDD>> t_collection = t.values();
 		Iterator<LinkedList<BDD>> t_coll_it = t_collection.iterator();
 		while (t_coll_it.hasNext()) {
@@ -556,207 +487,160 @@ public class MakeFDDDijkstra {
 			variables[i].free();
 			not_variables[i].free();
 		}
-        System.out.println("peak nodecount: " + factory.getNodeTableSize());
+        System.out.println("peak nodecount: " + factory.getPeakNodeNum());
 		factory.done();
 	}
 
-	private BDD image(int cost, BDD from, BDDVarSet varSet) {
-		return image(cost, from, factory.one(), varSet);
+	/*
+	 * The image under all actions of the given cost, calculated in one call to
+	 * the factory (a single native call for CUDD). Returns null if the
+	 * deadline has passed.
+	 */
+	private BDD image(int cost, BDD from, BDD conjunct, BDDVarSet varSet, BDDPairing pairing, long deadline) {
+		long fromHandle = factory.handle(from);
+		long conjunctHandle = factory.handle(conjunct);
+		long result = imageRaw(cost, fromHandle, conjunctHandle, varSet, pairing, deadline);
+		factory.deref(fromHandle);
+		factory.deref(conjunctHandle);
+		if (result == BDDFactory.INVALID_RAW)
+			return null;
+		BDD ret = factory.fromHandle(result);
+		factory.deref(result);
+		return ret;
 	}
 
-	private BDD image(int cost, BDD from, BDD conjunct, BDDVarSet varSet) {
-		BDD tmp1;
-		BDD tmp2;
+	/*
+	 * The same image on raw handles. Returns BDDFactory.INVALID_RAW if the
+	 * deadline has passed.
+	 */
+	private long imageRaw(int cost, long from, long conjunct, BDDVarSet varSet, BDDPairing pairing, long deadline) {
 		LinkedList<BDD> t_cost = t.get(cost);
-		Vector<BDD> array = new Vector<BDD>(t_cost.size());
-		for (int i = 0; i < t_cost.size(); i++) {
-			tmp1 = t_cost.get(i).relprod(from, varSet);
-			array.add(tmp1.and(conjunct));
-			tmp1.free();
-		}
-
-		for (int i = 0; i < array.size(); i++) {
-			tmp1 = array.get(i);
-			i++;
-			if (i < array.size()) {
-				tmp2 = array.get(i);
-				array.add(tmp1.or(tmp2));
-				tmp1.free();
-				tmp2.free();
-			}
-		}
-		return array.lastElement();
+		BDD[] actions = t_cost.toArray(new BDD[t_cost.size()]);
+		return ActionProfile.imageRaw(factory, actions, from, conjunct, varSet, pairing, deadline);
 	}
 
-	private Vector<Integer> searchStep(int index, HashMap<Integer, BDD> open, HashMap<Integer, Vector<BDD>> closed, Vector<BDD> closedTotal, BDD otherFrontier, BDDVarSet varSet, BDDPairing pairing) {
-		BDD tmp1;
-		BDD tmp2;
-		BDD negatedReached;
-		BDD to;
-		BDD frontierTotal;
+	private Vector<Integer> searchStep(int index, BDDBucketQueue open, HashMap<Integer, Vector<BDD>> closed, Vector<BDD> closedTotal, BDD otherFrontier, BDDVarSet varSet, BDDPairing pairing, long deadline, Telemetry.Step telemetry) {
+		// the step works on raw handles; BDD objects are only created for the
+		// layers stored in closed and for new buckets of open
+		long tmp1;
+		long negatedReached;
+		long to;
+		long frontierTotal;
 		Vector<Integer> ret = null;
 
-		negatedReached = closedTotal.firstElement().not();
-		tmp1 = open.remove(index);
-		frontierTotal = tmp1.and(negatedReached);
-		tmp1.free();
-		if (frontierTotal.equals(factory.zero())) {
-			negatedReached.free();
+		tmp1 = factory.handle(closedTotal.firstElement());
+		negatedReached = factory.notRaw(tmp1);
+		factory.deref(tmp1);
+		BDD bucket = open.remove(index);
+		tmp1 = factory.handle(bucket);
+		bucket.free();
+		frontierTotal = factory.andRaw(tmp1, negatedReached);
+		factory.deref(tmp1);
+		if (factory.isZeroRaw(frontierTotal)) {
+			factory.deref(negatedReached);
+			factory.deref(frontierTotal);
 			return ret;
 		}
+		long other = factory.handle(otherFrontier);
 		Vector<BDD> frontier = new Vector<BDD>();
-		frontier.add(frontierTotal.id());
 
 		// compare against other frontier
-		tmp1 = frontierTotal.and(otherFrontier);
-		if (!tmp1.equals(factory.zero())) {
-			negatedReached.free();
-			frontierTotal.free();
-			frontier.firstElement().free();
-			frontier.set(0, tmp1);
+		tmp1 = factory.andRaw(frontierTotal, other);
+		if (!factory.isZeroRaw(tmp1)) {
+			factory.deref(negatedReached);
+			factory.deref(frontierTotal);
+			factory.deref(other);
+			frontier.add(factory.fromHandle(tmp1));
+			factory.deref(tmp1);
 			closed.put(index, frontier);
 			ret = new Vector<Integer>();
 			ret.add(index);
 			return ret;
 		}
+		factory.deref(tmp1);
+		frontier.add(factory.fromHandle(frontierTotal));
 
 		if (t.containsKey(0)) {
-			BDD tmp3;
-			while (true) {
-				tmp1 = image(0, frontier.lastElement(), varSet);
-				to = tmp1.replace(pairing);
-				tmp1.free();
-				tmp1 = to.and(negatedReached);
-				to.free();
-				tmp2 = frontierTotal.not();
-				tmp3 = tmp1.and(tmp2);
-				tmp1.free();
-				tmp2.free();
-				if (tmp3.equals(factory.zero())) {
-					break;
-				}
-				frontier.add(tmp3);
-
-				// compare against other frontier
-				tmp1 = tmp3.and(otherFrontier);
-				if (!tmp1.equals(factory.zero())) {
-					tmp1.free();
-					negatedReached.free();
-					closed.put(index, frontier);
-					frontierTotal.free();
-					ret = new Vector<Integer>();
-					ret.add(index);
-					return ret;
-				}
-
-				tmp1 = frontierTotal;
-				frontierTotal = tmp1.or(frontier.lastElement());
-				tmp1.free();
+			// the closure takes BDD objects, so its arguments are wrapped once
+			Vector<BDD> total = new Vector<BDD>(1);
+			total.add(factory.fromHandle(frontierTotal));
+			factory.deref(frontierTotal);
+			BDD negated = factory.fromHandle(negatedReached);
+			int result = new ZeroCostClosure(t.get(0)).saturate(frontier, total, negated, otherFrontier, varSet, pairing, deadline);
+			negated.free();
+			frontierTotal = factory.handle(total.firstElement());
+			total.firstElement().free();
+			if (result == ZeroCostClosure.TIMEOUT) {
+				factory.deref(negatedReached);
+				factory.deref(frontierTotal);
+				factory.deref(other);
+				for (int i = 0; i < frontier.size(); i++)
+					frontier.get(i).free();
+				throw new BDDLimitException("step time exceeded");
+			}
+			if (result == ZeroCostClosure.STOPPED) {
+				// the last layer intersects the other frontier
+				factory.deref(negatedReached);
+				factory.deref(frontierTotal);
+				factory.deref(other);
+				closed.put(index, frontier);
+				ret = new Vector<Integer>();
+				ret.add(index);
+				return ret;
 			}
 		}
 
-		negatedReached.free();
-		tmp1 = closedTotal.firstElement();
-        tmp2 = tmp1.or(frontierTotal);
-		closedTotal.set(0, tmp2);
-		tmp1.free();
+		factory.deref(negatedReached);
+		factory.applyWithRaw(closedTotal.firstElement(), frontierTotal, BDDFactory.or);
 		closed.put(index, frontier);
 
 		int c;
-		ListIterator<Integer> costIt = actionCosts.listIterator();
-		while (costIt.hasNext()) {
-			c = costIt.next();
-			tmp1 = image(c, frontierTotal, varSet);
-			to = tmp1.replace(pairing);
-			tmp1.free();
-			tmp1 = open.get(index + c);
-			if (tmp1 == null) {
-				open.put(index + c, to);
-			} else {
-				open.put(index + c, tmp1.or(to));
-				tmp1.free();
-				to.free();
+		long universe = factory.universeRaw();
+		long cut;
+		for (int group = 0; group < costEncoding.groups(); group++) {
+			// one image for all costs of the group; its time is reported
+			// for the smallest of them
+			long imageStartTime = System.currentTimeMillis();
+			long[] images = costEncoding.imagesRaw(group, frontierTotal, universe, varSet, pairing, deadline);
+			telemetry.imageTime(costEncoding.cost(group, 0), System.currentTimeMillis() - imageStartTime);
+			if (images == null) {
+				factory.deref(universe);
+				factory.deref(other);
+				factory.deref(frontierTotal);
+				throw new BDDLimitException("step time exceeded");
 			}
+			for (int i = 0; i < images.length; i++) {
+				c = costEncoding.cost(group, i);
+				to = images[i];
+				open.mergeRaw(index + c, to, factory);
+				factory.deref(to);
 
-			// compare against other frontier
-			tmp1 = open.get(index + c).and(otherFrontier);
-			if (!tmp1.equals(factory.zero())) {
-				tmp1.free();
-				if (ret == null)
-					ret = new Vector<Integer>();
-				ret.add(index + c);
+				// compare against other frontier
+				tmp1 = factory.handle(open.get(index + c));
+				cut = factory.andRaw(tmp1, other);
+				factory.deref(tmp1);
+				if (!factory.isZeroRaw(cut)) {
+					if (ret == null)
+						ret = new Vector<Integer>();
+					ret.add(index + c);
+				}
+				factory.deref(cut);
 			}
 		}
-		frontierTotal.free();
+		factory.deref(universe);
+		factory.deref(other);
+		factory.deref(frontierTotal);
 		return ret;
 	}
 
-	private long MAX_STEP_TIME = 30 * 1000;
-    private long INITIAL_MAX_STEP_TIME = 30 * 1000;
-	private double TIME_INCREMENT = 2.5;
-
     private boolean WRITING_NECESSARY = false;
 
-    private long getLastTotalReorderTime() {
-        long lastTotalReorderTime = 0;
-        File file = new File("totalReordTime");
-        if (file.exists()) {
-            try {
-                BufferedReader bufferedReader = new BufferedReader(new FileReader("totalReordTime"));
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    lastTotalReorderTime = Long.parseLong(line);
-                }
-                bufferedReader.close();
-            } catch (Exception e) {
-                System.err.println("Error: " + e.getMessage());
-                e.printStackTrace();
-                System.exit(1);
-            }
-        }
-        return lastTotalReorderTime;
-    }
-
-    private long getLastReorderTime() {
-        long lastReorderTime = 0;
-        File file = new File("lastReorderingTime");
-        if (file.exists()) {
-            try {
-                int reordersRemaining = 0;
-                file = new File("reorderingsRemaining");
-                BufferedReader bufferedReader = new BufferedReader(new FileReader("reorderingsRemaining"));
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    reordersRemaining = Integer.parseInt(line);
-                }
-                bufferedReader.close();
-                if (reordersRemaining > 0) {
-                    bufferedReader = new BufferedReader(new FileReader("lastReorderingTime"));
-                    while ((line = bufferedReader.readLine()) != null) {
-                        lastReorderTime = Long.parseLong(line);
-                    }
-                    bufferedReader.close();
-                }
-            } catch (Exception e) {
-                System.err.println("Error: " + e.getMessage());
-                e.printStackTrace();
-                System.exit(1);
-            }
-        }
-        return lastReorderTime;
-    }
-
 	public void findPlanDijkstra(boolean bidir) {
-        /*if (autoReorder && PDDL2BDD.REORDERING_STEPS == 0) {
-            System.out.println("Stopping dynamic reordering");
-            factory.disableReorder();
-            autoReorder = false;
-            }*/
 		long dijkstraStartTime = System.currentTimeMillis();
 		BDD tmp1;
 		BDD intersection;
-		HashMap<Integer, BDD> openForw = new HashMap<Integer, BDD>();
-		HashMap<Integer, BDD> openBackw = new HashMap<Integer, BDD>();
+		BDDBucketQueue openForw = new BDDBucketQueue(maxCost);
+		BDDBucketQueue openBackw = new BDDBucketQueue(maxCost);
 		HashMap<Integer, Vector<BDD>> closedForw = new HashMap<Integer, Vector<BDD>>();
 		HashMap<Integer, Vector<BDD>> closedBackw = new HashMap<Integer, Vector<BDD>>();
 		Vector<BDD> closedForwTotal = new Vector<BDD>(); // Vector, so that it can be changed within searchStep
@@ -766,6 +650,7 @@ public class MakeFDDDijkstra {
 		int oldG;
 		long lastForwTime = -1;
 		long lastBackwTime = -1;
+		DirectionPredictor predictor = new DirectionPredictor();
         long maxForwTime = -1;
 		boolean stop = false;
 		int optGForw = Integer.MAX_VALUE;
@@ -1032,15 +917,15 @@ public class MakeFDDDijkstra {
 					writer.flush();
 					writer.close();
 				}
-				Iterator<Map.Entry<Integer, BDD>> openIt = openBackw.entrySet().iterator();
+				Iterator<Integer> openIt = openBackw.keys().iterator();
 				writer = new FileWriter(dijkstraDir + "openBackw.txt");
 				while (openIt.hasNext()) {
-					Map.Entry<Integer, BDD> entry = openIt.next();
-					if (!storedOpenBackwSteps.contains(entry.getKey())) {
-						writer.write(entry.getKey() + "\n");
-						storedOpenBackwSteps.add(entry.getKey());
+					int openKey = openIt.next();
+					if (!storedOpenBackwSteps.contains(openKey)) {
+						writer.write(openKey + "\n");
+						storedOpenBackwSteps.add(openKey);
 					}
-					factory.save(dijkstraDir + "openBackw_" + entry.getKey(), entry.getValue());
+					factory.save(dijkstraDir + "openBackw_" + openKey, openBackw.get(openKey));
 				}
 				writer.flush();
 				writer.close();
@@ -1063,15 +948,15 @@ public class MakeFDDDijkstra {
 					writer.flush();
 					writer.close();
 				}
-				openIt = openForw.entrySet().iterator();
+				openIt = openForw.keys().iterator();
 				writer = new FileWriter(dijkstraDir + "openForw.txt");
 				while (openIt.hasNext()) {
-					Map.Entry<Integer, BDD> entry = openIt.next();
-					if (!storedOpenForwSteps.contains(entry.getKey())) {
-						writer.write(entry.getKey() + "\n");
-						storedOpenForwSteps.add(entry.getKey());
+					int openKey = openIt.next();
+					if (!storedOpenForwSteps.contains(openKey)) {
+						writer.write(openKey + "\n");
+						storedOpenForwSteps.add(openKey);
 					}
-					factory.save(dijkstraDir + "openForw_" + entry.getKey(), entry.getValue());
+					factory.save(dijkstraDir + "openForw_" + openKey, openForw.get(openKey));
 				}
 				writer.flush();
 				writer.close();
@@ -1102,66 +987,38 @@ public class MakeFDDDijkstra {
 			openBackw.put(gBackw, trueGoal.id());
         }
 
-        if (allowReordering && !autoReorder) {
-            if (nextReorderingLimit < 0) {
-                System.out.println("Starting dynamic reordering with default settings");
-                factory.autoReorder(BDDFactory.REORDER_SIFT);
-            } else {
-                System.out.println("Starting dynamic reordering, first one when " + nextReorderingLimit + " nodes allocated");
-                factory.autoReorder(BDDFactory.REORDER_SIFT, nextReorderingLimit);
-                nextReorderingLimit = -1;
-            }
-            autoReorder = true;
-        }
+        // start dynamic reordering only now, after the transition relation was created
+        reordering.start();
 
         int step = 0;
 		while (!stop && gForw + gBackw < optCost) {
 			if (optCost == Integer.MAX_VALUE)
 				System.out.println("so far, no plan found");
 			else
-				System.out.println("best plan so far has cost: " + optCost);
-
-            /*
-            if (allowReordering) {
-                if (nextReorderingLimit < 0) {
-                    System.out.println("Starting dynamic reordering with default settings");
-                    factory.autoReorder(BDDFactory.REORDER_SIFT);
-                } else {
-                    System.out.println("Starting dynamic reordering, first one when " + nextReorderingLimit + " nodes allocated");
-                    factory.autoReorder(BDDFactory.REORDER_SIFT, nextReorderingLimit);
-                    nextReorderingLimit = -1;
-                }
-                autoReorder = true;
-            }
-            */
+				System.out.println("best plan so far has cost: " + optCost * costFactor);
+
 
-			if (bidir && lastBackwTime < lastForwTime) {
+			// the time a backward step may take before it is cancelled
+			long maxStepTime = Budget.stepTime(maxForwTime, reordering.getLastReorderTime());
+			int direction = DirectionPredictor.FORWARD;
+			if (bidir)
+				direction = predictor.choose(openForw.get(gForw), openBackw.get(gBackw), maxStepTime);
+			if (direction == DirectionPredictor.BACKWARD) {
                 long startTime = System.currentTimeMillis();
-                long lastTotalReorderTime = getLastTotalReorderTime();
+                long lastTotalReorderTime = reordering.getTotalReorderTime();
 				oldG = gBackw;
 				System.out.println("Expanding bucket " + gBackw + " in backward direction");
+				Budget.check();
+				Telemetry.Step telemetry = Telemetry.startStep(factory, "dijkstra", "backward", gBackw);
+				telemetry.frontier(openBackw.get(gBackw), cubep);
+				telemetry.predictedTime(predictor.getPrediction());
                 //System.out.println("size: " + (long) openBackw.get(gBackw).satCount(cubep));
 				tmp1 = closedForwTotal.get(0).replace(s2sp);
 				BDD openTmp = openBackw.get(gBackw).id();
-                /*
-                if (autoReorder)
-                    factory.disableReorder();
-                */
-				//KillThread killThread = new KillThread(MAX_STEP_TIME, factory);
-				//killThread.start();
-                factory.setRuntimeLimit(factory.getRuntime() + MAX_STEP_TIME);
                 BDD closedTmp = closedBackwTotal.get(0).id();
                 try {
-                    nonEmptyCut = searchStep(gBackw, openBackw, closedBackw, closedBackwTotal, tmp1, cubep, s2sp);
-                } catch (Exception e) {
-                    if (WRITING_NECESSARY) {
-                        System.out.println("   Last backward step took longer than allowed!");
-                        System.out.println("   Restarting planner with only forward search.");
-                        System.out.println("   peak nodecount: " + factory.getNodeTableSize());
-                        factory.printStat();
-                        System.exit(1);
-                    }
-                    factory.unsetRuntimeLimit();
+                    nonEmptyCut = searchStep(gBackw, openBackw, closedBackw, closedBackwTotal, tmp1, cubep, s2sp, Budget.stepDeadline(maxStepTime), telemetry);
+                } catch (BDDLimitException e) {
                     openBackw.put(gBackw, openTmp);
                     tmp1.free();
                     if (gBackw == 0) {
@@ -1185,26 +1042,16 @@ public class MakeFDDDijkstra {
                     //e.printStackTrace();
                     System.out.println("   Last backward step took longer than allowed!");
                     System.out.println("   Stopping backward search");
-                    lastBackwTime = Long.MAX_VALUE;
+                    predictor.stop(DirectionPredictor.BACKWARD);
                     continue;
                 }
                 System.out.println("   Last backward step successfully finished in time.");
-                factory.unsetRuntimeLimit();
-				//killThread.interrupt();
                 closedTmp.free();
                 step++;
-                /*if (autoReorder && PDDL2BDD.REORDERING_STEPS == step) {
-                //if (autoReorder && factory.getReorderRuntime() > PDDL2BDD.REORDERING_TIME) {
-                //if (autoReorder && factory.getReorderTimes() > 0) {
-                    System.out.println("Stopping dynamic reordering");
-                    factory.disableReorder();
-                    autoReorder = false;
-                    }*/
 				tmp1.free();
 				if (nonEmptyCut == null) {
 					openTmp.free();
-					Set<Integer> keySet = openBackw.keySet();
-					if (keySet.size() == 0) {
+					if (openBackw.isEmpty()) {
 						if (optCost == Integer.MAX_VALUE) {
 							System.out.println("no plan!");
 							long dijkstraEndTime = System.currentTimeMillis();
@@ -1212,25 +1059,25 @@ public class MakeFDDDijkstra {
 							return;
 						} else {
 							System.out.println("done in backward direction!");
-							lastBackwTime = Long.MAX_VALUE;
+							predictor.stop(DirectionPredictor.BACKWARD);
 							System.out.println("   took: " + Time.printTime(System.currentTimeMillis() - startTime));
 						}
 					} else {
-						gBackw = Collections.min(keySet);
+						gBackw = openBackw.minKey();
 					}
 					System.out.println("   next g value in backward direction: " + gBackw);
-                    long currentTotalReorderTime = getLastTotalReorderTime();
+                    long currentTotalReorderTime = reordering.getTotalReorderTime();
 					lastBackwTime = System.currentTimeMillis() - startTime;
                     lastBackwTime -= (currentTotalReorderTime - lastTotalReorderTime);
+                    reordering.stepFinished(lastBackwTime, currentTotalReorderTime - lastTotalReorderTime);
 					System.out.println("   took: " + Time.printTime(lastBackwTime));
-                    MAX_STEP_TIME = Math.max(INITIAL_MAX_STEP_TIME, (long) ((maxForwTime + getLastReorderTime()) * TIME_INCREMENT));
+					predictor.stepFinished(DirectionPredictor.BACKWARD, lastBackwTime);
 				} else if (nonEmptyCut.firstElement() == -1) { // last step took too long
 					System.out.println("   last backward step took too long to finish; stopping backward search.");
-					lastBackwTime = Long.MAX_VALUE;
+					predictor.stop(DirectionPredictor.BACKWARD);
 					System.out.println(openBackw.size());
-					Set<Integer> keySet = openBackw.keySet();
-					if (keySet.size() != 0) {
-						gBackw = Collections.min(keySet);
+					if (!openBackw.isEmpty()) {
+						gBackw = openBackw.minKey();
 					}
 					if (closedBackwTotal.firstElement().equals(factory.zero())) {
 						closedBackwTotal.set(0, openTmp.id());
@@ -1289,12 +1136,11 @@ public class MakeFDDDijkstra {
 							optIntersection = optTmp.replace(s2sp);
 							optTmp.free();
 							optCost = optGForw + optGBackw;
-							System.out.println("   plan of cost " + optCost + " found");
+							System.out.println("   plan of cost " + optCost * costFactor + " found");
 						}
 						intersection.free();
 					}
-					Set<Integer> keySet = openBackw.keySet();
-					if (keySet.size() == 0) {
+					if (openBackw.isEmpty()) {
 						if (optCost == Integer.MAX_VALUE) {
 							System.out.println("no plan!");
 							long dijkstraEndTime = System.currentTimeMillis();
@@ -1302,19 +1148,24 @@ public class MakeFDDDijkstra {
 							return;
 						} else {
 							System.out.println("done in backward direction!");
-							lastBackwTime = Long.MAX_VALUE;
+							predictor.stop(DirectionPredictor.BACKWARD);
 							System.out.println("   took: " + Time.printTime(System.currentTimeMillis() - startTime));
 						}
 					} else {
-						gBackw = Collections.min(keySet);
+						gBackw = openBackw.minKey();
 					}
 					System.out.println("   next g value in backward direction: " + gBackw);
-                    long currentTotalReorderTime = getLastTotalReorderTime();
+                    long currentTotalReorderTime = reordering.getTotalReorderTime();
 					lastBackwTime = System.currentTimeMillis() - startTime;
 					lastBackwTime -= (currentTotalReorderTime - lastTotalReorderTime);
+					reordering.stepFinished(lastBackwTime, currentTotalReorderTime - lastTotalReorderTime);
 					System.out.println("   took: " + Time.printTime(lastBackwTime));
-                    MAX_STEP_TIME = Math.max(INITIAL_MAX_STEP_TIME, (long) ((maxForwTime + getLastReorderTime()) * TIME_INCREMENT));
+					predictor.stepFinished(DirectionPredictor.BACKWARD, lastBackwTime);
 				}
+				telemetry.reorderTime(reordering.getTotalReorderTime() - lastTotalReorderTime);
+				telemetry.closed(closedBackwTotal.get(0), cubep);
+				telemetry.finish(oldG + gForw);
+				PlannerMonitor.searchState(openForw.size(), openBackw.size(), optCost == Integer.MAX_VALUE ? -1 : optCost * costFactor);
                 if (WRITING_NECESSARY) {
 				try {
 					FileWriter writer = new FileWriter(dijkstraDir + "gBackw.txt");
@@ -1362,15 +1213,15 @@ public class MakeFDDDijkstra {
 						writer.flush();
 						writer.close();
 					}
-					Iterator<Map.Entry<Integer, BDD>> openIt = openBackw.entrySet().iterator();
+					Iterator<Integer> openIt = openBackw.keys().iterator();
 					writer = new FileWriter(dijkstraDir + "openBackw.txt", true);
 					while (openIt.hasNext()) {
-						Map.Entry<Integer, BDD> entry = openIt.next();
-						if (!storedOpenBackwSteps.contains(entry.getKey())) {
-							writer.write(entry.getKey() + "\n");
-							storedOpenBackwSteps.add(entry.getKey());
+						int openKey = openIt.next();
+						if (!storedOpenBackwSteps.contains(openKey)) {
+							writer.write(openKey + "\n");
+							storedOpenBackwSteps.add(openKey);
 						}
-						factory.save(dijkstraDir + "openBackw_" + entry.getKey(), entry.getValue());
+						factory.save(dijkstraDir + "openBackw_" + openKey, openBackw.get(openKey));
 					}
 					writer.flush();
 					writer.close();
@@ -1382,29 +1233,21 @@ public class MakeFDDDijkstra {
                 }
 			} else {
                 long startTime = System.currentTimeMillis();
-                long lastTotalReorderTime = getLastTotalReorderTime();
+                long lastTotalReorderTime = reordering.getTotalReorderTime();
 				oldG = gForw;
 				System.out.println("Expanding bucket " + gForw + " in forward direction");
+				Budget.check();
+				Telemetry.Step telemetry = Telemetry.startStep(factory, "dijkstra", "forward", gForw);
+				telemetry.frontier(openForw.get(gForw), cube);
+				telemetry.predictedTime(predictor.getPrediction());
                 //System.out.println("size: " + (long) openForw.get(gForw).satCount(cubep));
                 //openForw.get(oldG).printSet();
 				tmp1 = closedBackwTotal.get(0).replace(sp2s);
-                /*
-                if (autoReorder)
-                    factory.disableReorder();
-                */
-				nonEmptyCut = searchStep(gForw, openForw, closedForw, closedForwTotal, tmp1, cube, sp2s);
+				nonEmptyCut = searchStep(gForw, openForw, closedForw, closedForwTotal, tmp1, cube, sp2s, Long.MAX_VALUE, telemetry);
                 step++;
-                /*if (autoReorder && PDDL2BDD.REORDERING_STEPS == step) {
-                //if (autoReorder && factory.getReorderRuntime() > PDDL2BDD.REORDERING_TIME) {
-                //if (autoReorder && factory.getReorderTimes() > 0) {
-                    System.out.println("stopping dynamic reordering");
-                    factory.disableReorder();
-                    autoReorder = false;
-                    }*/
 				tmp1.free();
 				if (nonEmptyCut == null) {
-					Set<Integer> keySet = openForw.keySet();
-					if (keySet.size() == 0) {
+					if (openForw.isEmpty()) {
 						if (optCost == Integer.MAX_VALUE) {
 							System.out.println("no plan!");
 							long dijkstraEndTime = System.currentTimeMillis();
@@ -1412,23 +1255,21 @@ public class MakeFDDDijkstra {
 							return;
 						} else {
 							System.out.println("done in forward direction!");
-							lastForwTime = Long.MAX_VALUE;
+							predictor.stop(DirectionPredictor.FORWARD);
                             maxForwTime = Long.MAX_VALUE;
 							System.out.println("   took: " + Time.printTime(System.currentTimeMillis() - startTime));
 						}
 					} else {
-						gForw = Collections.min(keySet);
+						gForw = openForw.minKey();
 					}
 					System.out.println("   next g value in forward direction: " + gForw);
-                    long currentTotalReorderTime = getLastTotalReorderTime();
+                    long currentTotalReorderTime = reordering.getTotalReorderTime();
 					lastForwTime = System.currentTimeMillis() - startTime;
 					lastForwTime -= (currentTotalReorderTime - lastTotalReorderTime);
+					reordering.stepFinished(lastForwTime, currentTotalReorderTime - lastTotalReorderTime);
                     maxForwTime = Math.max(maxForwTime, lastForwTime);
 					System.out.println("   took: " + Time.printTime(lastForwTime));
-                    MAX_STEP_TIME = Math.max(INITIAL_MAX_STEP_TIME, (long) ((maxForwTime + getLastReorderTime()) * TIME_INCREMENT));
-                    /*long lastReorderTime = getLastReorderTime();
-                      if (lastForwTime + lastReorderTime > MAX_STEP_TIME / TIME_INCREMENT)
-                      MAX_STEP_TIME = (long) ((lastForwTime + lastReorderTime) * TIME_INCREMENT);*/
+					predictor.stepFinished(DirectionPredictor.FORWARD, lastForwTime);
 				} else {
 					System.out.println("   non-empty cut in buckets " + nonEmptyCut);
 					for (int nonEmptyIndex = 0; nonEmptyIndex < nonEmptyCut.size(); nonEmptyIndex++) {
@@ -1476,12 +1317,11 @@ public class MakeFDDDijkstra {
 								optIntersection.free();
 							optIntersection = optTmp;
 							optCost = optGBackw + optGForw;
-							System.out.println("   plan of cost " + optCost + " found");
+							System.out.println("   plan of cost " + optCost * costFactor + " found");
 						}
 						intersection.free();
 					}
-					Set<Integer> keySet = openForw.keySet();
-					if (keySet.size() == 0) {
+					if (openForw.isEmpty()) {
 						if (optCost == Integer.MAX_VALUE) {
 							System.out.println("no plan!");
 							long dijkstraEndTime = System.currentTimeMillis();
@@ -1489,21 +1329,26 @@ public class MakeFDDDijkstra {
 							return;
 						} else {
 							System.out.println("done in forward direction!");
-							lastForwTime = Long.MAX_VALUE;
+							predictor.stop(DirectionPredictor.FORWARD);
                             maxForwTime = Long.MAX_VALUE;
 							System.out.println("   took: " + Time.printTime(System.currentTimeMillis() - startTime));
 						}
 					} else {
-						gForw = Collections.min(keySet);
+						gForw = openForw.minKey();
 					}
 					System.out.println("   next g value in forward direction: " + gForw);
-                    long currentTotalReorderTime = getLastTotalReorderTime();
+                    long currentTotalReorderTime = reordering.getTotalReorderTime();
 					lastForwTime = System.currentTimeMillis() - startTime;
 					lastForwTime -= (currentTotalReorderTime - lastTotalReorderTime);
+					reordering.stepFinished(lastForwTime, currentTotalReorderTime - lastTotalReorderTime);
                     maxForwTime = Math.max(maxForwTime, lastForwTime);
 					System.out.println("   took: " + Time.printTime(lastForwTime));
-                    MAX_STEP_TIME = Math.max(INITIAL_MAX_STEP_TIME, (long) ((maxForwTime + getLastReorderTime()) * TIME_INCREMENT));
+					predictor.stepFinished(DirectionPredictor.FORWARD, lastForwTime);
 				}
+				telemetry.reorderTime(reordering.getTotalReorderTime() - lastTotalReorderTime);
+				telemetry.closed(closedForwTotal.get(0), cube);
+				telemetry.finish(oldG + gBackw);
+				PlannerMonitor.searchState(openForw.size(), openBackw.size(), optCost == Integer.MAX_VALUE ? -1 : optCost * costFactor);
                 if (WRITING_NECESSARY) {
 				try {
 					FileWriter writer = new FileWriter(dijkstraDir + "gForw.txt");
@@ -1548,15 +1393,15 @@ public class MakeFDDDijkstra {
 					writer.write("\n");
 					writer.flush();
 					writer.close();
-					Iterator<Map.Entry<Integer, BDD>> openIt = openForw.entrySet().iterator();
+					Iterator<Integer> openIt = openForw.keys().iterator();
 					writer = new FileWriter(dijkstraDir + "openForw.txt", true);
 					while (openIt.hasNext()) {
-						Map.Entry<Integer, BDD> entry = openIt.next();
-						if (!storedOpenForwSteps.contains(entry.getKey())) {
-							writer.write(entry.getKey() + "\n");
-							storedOpenForwSteps.add(entry.getKey());
+						int openKey = openIt.next();
+						if (!storedOpenForwSteps.contains(openKey)) {
+							writer.write(openKey + "\n");
+							storedOpenForwSteps.add(openKey);
 						}
-						factory.save(dijkstraDir + "openForw_" + entry.getKey(), entry.getValue());
+						factory.save(dijkstraDir + "openForw_" + openKey, openForw.get(openKey));
 					}
 					writer.flush();
 					writer.close();
@@ -1568,16 +1413,15 @@ public class MakeFDDDijkstra {
                 }
 			}
 		}
-		System.out.println("Solution found; optimal cost: " + optCost);
+		System.out.println("Solution found; optimal cost: " + optCost * costFactor);
 		Vector<BDD> vec;
 		Set<Integer> keySet;
 		int key;
 		while (true) {
-			keySet = openForw.keySet();
-			if (keySet.size() == 0) {
+			if (openForw.isEmpty()) {
 				break;
 			}
-			key = Collections.min(keySet);
+			key = openForw.minKey();
 			if (key <= optGForw) {
 				vec = new Vector<BDD>();
 				vec.add(openForw.remove(key));
@@ -1587,11 +1431,10 @@ public class MakeFDDDijkstra {
 			}
 		}
 		while (true) {
-			keySet = openBackw.keySet();
-			if (keySet.size() == 0) {
+			if (openBackw.isEmpty()) {
 				break;
 			}
-			key = Collections.min(keySet);
+			key = openBackw.minKey();
 			if (key <= optGBackw) {
 				vec = new Vector<BDD>();
 				vec.add(openBackw.remove(key));
@@ -1646,7 +1489,9 @@ public class MakeFDDDijkstra {
 				}
 				vec.setSize(optVecIndexForw + 1);
 				vec.lastElement().free();
-				vec.set(optVecIndexForw, optIntersection);
+				// the intersection is stored over the successor variables
+				vec.set(optVecIndexForw, optIntersection.replace(sp2s));
+				optIntersection.free();
 				break;
 			}
 		}
@@ -1672,11 +1517,11 @@ public class MakeFDDDijkstra {
 		// only for debugging (finding memory leaks)...
 		/*if (true) {
 	    Iterator<Integer> keyIt;
-	    keyIt = openForw.keySet().iterator();
+	    keyIt = openForw.keys().iterator();
 	    while (keyIt.hasNext()) {
 		openForw.get(keyIt.next()).free();
 	    }
-	    keyIt = openBackw.keySet().iterator();
+	    keyIt = openBackw.keys().iterator();
 	    while (keyIt.hasNext()) {
 		openBackw.get(keyIt.next()).free();
 	    }
@@ -1703,77 +1548,355 @@ public class MakeFDDDijkstra {
 	}*/
 	}
 
+	/**
+	 * Experimental variant of the (unidirectional, forward) Dijkstra search
+	 * that keeps the whole open list in one edge-valued BDD, mapping every
+	 * state to the smallest cost with which it has been reached so far. Thus,
+	 * states reached on several paths are stored only once and the buckets
+	 * share their substructure. Dynamic reordering is not supported, as the
+	 * EVBDD store is bound to the variable ordering.
+	 */
+	public void findPlanDijkstraEV() {
+		long dijkstraStartTime = System.currentTimeMillis();
+		BDD tmp1;
+		BDD tmp2;
+		BDD to;
+		BDD frontierTotal;
+		BDD negatedReached;
+		reordering.stop();
+		EVBDD store = new EVBDD(factory, 1 << 16);
+		long[] open = new long[1];
+		open[0] = store.fromBDD(init, 0);
+		int liveNodes = store.nodeCount();
+		HashMap<Integer, Vector<BDD>> closed = new HashMap<Integer, Vector<BDD>>();
+		BDD closedTotal = factory.zero();
+		BDD goal = trueGoal.replace(sp2s);
+		int g;
+
+		while (true) {
+			if (EVBDD.isEmpty(open[0])) {
+				System.out.println("no plan!");
+				closedTotal.free();
+				goal.free();
+				long dijkstraEndTime = System.currentTimeMillis();
+				System.out.println("Total time (Dijkstra): " + Time.printTime(dijkstraEndTime - dijkstraStartTime));
+				return;
+			}
+			g = EVBDD.value(open[0]);
+			System.out.println("   g = " + g * costFactor);
+			tmp1 = store.slice(open[0], g);
+			open[0] = store.removeAtMost(open[0], g);
+			negatedReached = closedTotal.not();
+			frontierTotal = tmp1.and(negatedReached);
+			tmp1.free();
+			if (frontierTotal.isZero()) {
+				negatedReached.free();
+				frontierTotal.free();
+				continue;
+			}
+			Vector<BDD> frontier = new Vector<BDD>();
+			frontier.add(frontierTotal.id());
+			closed.put(g, frontier);
+
+			tmp1 = frontierTotal.and(goal);
+			boolean found = !tmp1.isZero();
+			tmp1.free();
+			if (!found && t.containsKey(0)) {
+				Vector<BDD> total = new Vector<BDD>(1);
+				total.add(frontierTotal);
+				int result = new ZeroCostClosure(t.get(0)).saturate(frontier, total, negatedReached, goal, cube, sp2s, Long.MAX_VALUE);
+				frontierTotal = total.firstElement();
+				found = result == ZeroCostClosure.STOPPED;
+			}
+			negatedReached.free();
+			if (found) {
+				tmp1 = frontier.lastElement();
+				frontier.set(frontier.size() - 1, tmp1.and(goal));
+				tmp1.free();
+				frontierTotal.free();
+				break;
+			}
+			tmp1 = closedTotal;
+			closedTotal = tmp1.or(frontierTotal);
+			tmp1.free();
+
+			int c;
+			long from = factory.handle(frontierTotal);
+			long universe = factory.universeRaw();
+			for (int group = 0; group < costEncoding.groups(); group++) {
+				long[] images = costEncoding.imagesRaw(group, from, universe, cube, sp2s, Long.MAX_VALUE);
+				for (int i = 0; i < images.length; i++) {
+					c = costEncoding.cost(group, i);
+					tmp2 = factory.fromHandle(images[i]);
+					factory.deref(images[i]);
+					tmp1 = closedTotal.not();
+					to = tmp2.and(tmp1);
+					tmp1.free();
+					tmp2.free();
+					open[0] = store.min(open[0], store.fromBDD(to, g + c));
+					to.free();
+				}
+			}
+			factory.deref(universe);
+			factory.deref(from);
+			frontierTotal.free();
+			if (store.nodeCount() > 2 * liveNodes) {
+				store.compact(open);
+				liveNodes = Math.max(store.nodeCount(), 1 << 16);
+			}
+		}
+		closedTotal.free();
+		goal.free();
+		System.out.println("Solution found; optimal cost: " + g * costFactor);
+
+		reconstructPlanDijkstra(closed, g, new HashMap<Integer, Vector<BDD>>(), 0);
+
+		Iterator<Vector<BDD>> closedIt = closed.values().iterator();
+		while (closedIt.hasNext()) {
+			Vector<BDD> vec = closedIt.next();
+			for (int i = 0; i < vec.size(); i++) {
+				vec.get(i).free();
+			}
+		}
+		long dijkstraEndTime = System.currentTimeMillis();
+		System.out.println("Total time (Dijkstra): " + Time.printTime(dijkstraEndTime - dijkstraStartTime));
+	}
+
+	/**
+	 * Variant of the (unidirectional, forward) Dijkstra search that appends a
+	 * binary counter for the g-value to the state variables. The cost of each
+	 * action is encoded as an addition to this counter within the transition
+	 * relation, so that one relational product over the disjunction of all
+	 * actions results in the successors annotated with their g-values, and
+	 * the whole open list is a single BDD. Dynamic reordering is not
+	 * supported.
+	 */
+	public void findPlanDijkstraCostCounter() {
+		long dijkstraStartTime = System.currentTimeMillis();
+		BDD tmp1;
+		BDD tmp2;
+		BDD gValue;
+		BDD frontier;
+		reordering.stop();
+		// the cost of an optimal plan is at most maxCost times the number of states
+		int bits = Math.min(numberOfVariables / 2 + Maths.log2(maxCost + 1), 30);
+		System.out.println("   creating cost counter with " + bits + " bits ...");
+		CostCounter counter = new CostCounter(factory, bits);
+		BDDVarSet stateAndCounter = cube.union(counter.set());
+		BDDPairing pairing = factory.makePair();
+		for (int i = 0; i < numberOfVariables / 2; i++)
+			pairing.set(i * 2 + 1, i * 2);
+		counter.addPrimedToUnprimed(pairing);
+
+		BDD transition = factory.zero();
+		Iterator<Integer> costIt = t.keySet().iterator();
+		while (costIt.hasNext()) {
+			int c = costIt.next();
+			BDD costTransition = factory.zero();
+			ListIterator<BDD> actionIt = t.get(c).listIterator();
+			while (actionIt.hasNext()) {
+				tmp1 = costTransition;
+				costTransition = tmp1.or(actionIt.next());
+				tmp1.free();
+			}
+			tmp1 = counter.addition(c);
+			tmp2 = costTransition.and(tmp1);
+			tmp1.free();
+			costTransition.free();
+			tmp1 = transition;
+			transition = tmp1.or(tmp2);
+			tmp1.free();
+			tmp2.free();
+		}
+		System.out.println("   done.");
+
+		BDD open = counter.value(0);
+		open.andWith(init.id());
+		HashMap<Integer, Vector<BDD>> closed = new HashMap<Integer, Vector<BDD>>();
+		BDD closedTotal = factory.zero();
+		BDD goal = trueGoal.replace(sp2s);
+		int g;
+
+		while (true) {
+			if (open.isZero()) {
+				System.out.println("no plan!");
+				open.free();
+				closedTotal.free();
+				goal.free();
+				transition.free();
+				counter.free();
+				long dijkstraEndTime = System.currentTimeMillis();
+				System.out.println("Total time (Dijkstra): " + Time.printTime(dijkstraEndTime - dijkstraStartTime));
+				return;
+			}
+			g = counter.min(open, cube);
+			if (g + maxCost > counter.maxValue()) {
+				System.err.println("Error: cost counter overflow at g = " + g * costFactor);
+				System.exit(1);
+			}
+			gValue = counter.value(g);
+			tmp1 = open.and(gValue);
+			frontier = tmp1.exist(counter.set());
+			tmp1.free();
+			tmp1 = gValue.not();
+			open.andWith(tmp1);
+			tmp1 = closedTotal.not();
+			frontier.andWith(tmp1);
+			if (frontier.isZero()) {
+				frontier.free();
+				gValue.free();
+				continue;
+			}
+			if (!closed.containsKey(g)) {
+				System.out.println("   g = " + g * costFactor);
+				closed.put(g, new Vector<BDD>());
+			}
+			tmp1 = frontier.and(goal);
+			if (!tmp1.isZero()) {
+				closed.get(g).add(tmp1);
+				frontier.free();
+				gValue.free();
+				break;
+			}
+			tmp1.free();
+			closed.get(g).add(frontier.id());
+			tmp1 = closedTotal;
+			closedTotal = tmp1.or(frontier);
+			tmp1.free();
+
+			frontier.andWith(gValue);
+			tmp2 = transition.relnext(frontier, stateAndCounter, pairing);
+			frontier.free();
+			tmp1 = closedTotal.not();
+			tmp2.andWith(tmp1);
+			tmp1 = closedTotal.not();
+			open.andWith(tmp1);
+			open.orWith(tmp2);
+		}
+		open.free();
+		closedTotal.free();
+		goal.free();
+		transition.free();
+		counter.free();
+		System.out.println("Solution found; optimal cost: " + g * costFactor);
+
+		reconstructPlanDijkstra(closed, g, new HashMap<Integer, Vector<BDD>>(), 0);
+
+		Iterator<Vector<BDD>> closedIt = closed.values().iterator();
+		while (closedIt.hasNext()) {
+			Vector<BDD> vec = closedIt.next();
+			for (int i = 0; i < vec.size(); i++) {
+				vec.get(i).free();
+			}
+		}
+		long dijkstraEndTime = System.currentTimeMillis();
+		System.out.println("Total time (Dijkstra): " + Time.printTime(dijkstraEndTime - dijkstraStartTime));
+	}
+
 	private void reconstructPlanDijkstra(HashMap<Integer, Vector<BDD>> forwBDDs, int forwIndex, HashMap<Integer, Vector<BDD>> backwBDDs, int backwIndex) {
 		LinkedList<String> solution = new LinkedList<String>();
 		Vector<BDD> vec;
 		int bfsIndex;
-		BDD currentStates = null;
+		long tmp;
+		long currentStates = BDDFactory.INVALID_RAW;
 		int index = 0;
 
+		Budget.startPhase(Budget.Phase.reconstruction);
 		System.out.println("   reconstructing cheapest plan ...");
 		if (forwBDDs.size() > 0) {
 			vec = forwBDDs.get(forwIndex);
 			bfsIndex = vec.size() - 1;
-			currentStates = vec.get(bfsIndex).replace(s2sp);
+			tmp = factory.handle(vec.get(bfsIndex));
+			currentStates = factory.replaceRaw(tmp, s2sp);
+			factory.deref(tmp);
 			reconstructPlanDijkstraOneDir(forwBDDs, forwIndex, bfsIndex, currentStates, solution, cubep, s2sp);
-			currentStates = applyPlan(solution);
+			BDD reached = applyPlan(solution);
+			currentStates = factory.handle(reached);
+			reached.free();
 			index = printPlan(solution, index, true);
 			solution.clear();
 		}
 		if (backwBDDs.size() > 0) {
 			vec = backwBDDs.get(backwIndex);
 			bfsIndex = vec.size() - 1;
-			if (currentStates == null)
-				currentStates = vec.get(bfsIndex).replace(sp2s);
+			if (currentStates == BDDFactory.INVALID_RAW) {
+				tmp = factory.handle(vec.get(bfsIndex));
+				currentStates = factory.replaceRaw(tmp, sp2s);
+				factory.deref(tmp);
+			}
 			reconstructPlanDijkstraOneDir(backwBDDs, backwIndex, bfsIndex, currentStates, solution, cube, sp2s);
 			printPlan(solution, index, false);
+		} else if (currentStates != BDDFactory.INVALID_RAW) {
+			factory.deref(currentStates);
 		}
+		effectIndices.clear();
+		preconditionIndices.clear();
 		System.out.println("   done.");
 	}
 
-	private void reconstructPlanDijkstraOneDir(HashMap<Integer, Vector<BDD>> closedBDDs, int g, int bfsIndex, BDD currentStates, LinkedList<String> solution, BDDVarSet varSet, BDDPairing pairing) {
-		BDD tmp1;
-		BDD tmp2;
-		BDD tmpStates;
+	/*
+	 * Works on raw handles; currentStates is released.
+	 */
+	private void reconstructPlanDijkstraOneDir(HashMap<Integer, Vector<BDD>> closedBDDs, int g, int bfsIndex, long currentStates, LinkedList<String> solution, BDDVarSet varSet, BDDPairing pairing) {
+		long tmp1;
+		long tmp2;
+		long layer;
+		long tmpStates;
 		Vector<BDD> vec;
-		LinkedList<BDD> actions;
-		ListIterator<BDD> actionsIt;
+		ActionIndex index;
 		LinkedList<String> names;
-		ListIterator<String> namesIt;
 
-		// apply zero-cost actions
+		// apply zero-cost actions; the states of each zero-cost layer have a
+		// predecessor in some earlier layer of the same bucket
 		if (bfsIndex > 0) {
 			vec = closedBDDs.get(g);
-			actions = t.get(0);
+			index = actionIndex(0, varSet);
 			names = actionNames.get(0);
 			while (bfsIndex > 0) {
-				bfsIndex--;
-				actionsIt = actions.listIterator();
-				namesIt = names.listIterator();
-				while (actionsIt.hasNext()) {
-					tmp1 = actionsIt.next().relprod(currentStates, varSet);
-					tmp2 = tmp1.and(vec.get(bfsIndex));
-					tmp1.free();
-					if (!tmp2.equals(factory.zero())) {
-						currentStates.free();
-						currentStates = tmp2.replace(pairing);
-						tmp2.free();
-						solution.addFirst(namesIt.next());
-						break;
+				int predIndex = -1;
+				currentStates = ActionIndex.pickState(factory, currentStates, varSet == cubep ? Sp : S);
+				int[] candidates = index.candidates(factory, currentStates);
+				for (int c = 0; predIndex < 0 && c < candidates.length; c++) {
+					tmp1 = factory.handle(index.action(candidates[c]));
+					tmpStates = factory.relprodRaw(tmp1, currentStates, varSet);
+					factory.deref(tmp1);
+					for (int i = bfsIndex - 1; i >= 0; i--) {
+						layer = factory.handle(vec.get(i));
+						tmp2 = factory.andRaw(tmpStates, layer);
+						factory.deref(layer);
+						if (!factory.isZeroRaw(tmp2)) {
+							factory.deref(currentStates);
+							currentStates = factory.replaceRaw(tmp2, pairing);
+							factory.deref(tmp2);
+							solution.addFirst(names.get(candidates[c]));
+							predIndex = i;
+							break;
+						}
+						factory.deref(tmp2);
 					}
-					namesIt.next();
+					factory.deref(tmpStates);
 				}
+				if (predIndex < 0) {
+					System.err.println("Something went wrong in the solution reconstruction.");
+					System.exit(1);
+				}
+				bfsIndex = predIndex;
 			}
 		}
 
 		if (g == 0) {
-			currentStates.free();
+			factory.deref(currentStates);
 			return;
 		}
 
+		// continue with a single state; each state of the layer has a
+		// predecessor, so the plan is found from any of them
+		currentStates = ActionIndex.pickState(factory, currentStates, varSet == cubep ? Sp : S);
+
 		// find states in some predecessor bucket
 		Iterator<Integer> costsIt = actionCosts.descendingIterator();
 		int cost;
+		int[] candidates;
 		while (costsIt.hasNext()) {
 			cost = costsIt.next();
 			if (g - cost < 0)
@@ -1781,32 +1904,53 @@ public class MakeFDDDijkstra {
 			vec = closedBDDs.get(g - cost);
 			if (vec == null)
 				continue;
-			actions = t.get(cost);
+			index = actionIndex(cost, varSet);
+			candidates = index.candidates(factory, currentStates);
 			names = actionNames.get(cost);
-			actionsIt = actions.listIterator();
-			namesIt = names.listIterator();
-			while (actionsIt.hasNext()) {
-				tmpStates = actionsIt.next().relprod(currentStates, varSet);
+			for (int c = 0; c < candidates.length; c++) {
+				tmp1 = factory.handle(index.action(candidates[c]));
+				tmpStates = factory.relprodRaw(tmp1, currentStates, varSet);
+				factory.deref(tmp1);
 				for (int vecIndex = 0; vecIndex < vec.size(); vecIndex++) {
-					tmp1 = vec.get(vecIndex).and(tmpStates);
-					if (!tmp1.equals(factory.zero())) {
-						currentStates.free();
-						currentStates = tmp1.replace(pairing);
-						tmp1.free();
-						tmpStates.free();
-						solution.addFirst(namesIt.next());
+					layer = factory.handle(vec.get(vecIndex));
+					tmp1 = factory.andRaw(layer, tmpStates);
+					factory.deref(layer);
+					if (!factory.isZeroRaw(tmp1)) {
+						factory.deref(currentStates);
+						currentStates = factory.replaceRaw(tmp1, pairing);
+						factory.deref(tmp1);
+						factory.deref(tmpStates);
+						solution.addFirst(names.get(candidates[c]));
 						reconstructPlanDijkstraOneDir(closedBDDs, g - cost, vecIndex, currentStates, solution, varSet, pairing);
 						return;
 					}
+					factory.deref(tmp1);
 				}
-				tmpStates.free();
-				namesIt.next();
+				factory.deref(tmpStates);
 			}
 		}
 		System.err.println("Something went wrong in the solution reconstruction.");
 		System.exit(1);
 	}
 
+	/*
+	 * The index of the actions of the given cost, created when it is first
+	 * needed: with the effects if the predecessors are searched (varSet is
+	 * the cube of S'), otherwise with the preconditions.
+	 */
+	private ActionIndex actionIndex(int cost, BDDVarSet varSet) {
+		HashMap<Integer, ActionIndex> indices = varSet == cubep ? effectIndices : preconditionIndices;
+		ActionIndex index = indices.get(cost);
+		if (index == null) {
+			if (varSet == cubep)
+				index = new ActionIndex(t.get(cost), Sp, cube);
+			else
+				index = new ActionIndex(t.get(cost), S, cubep);
+			indices.put(cost, index);
+		}
+		return index;
+	}
+
 	private BDD applyPlan(LinkedList<String> plan) {
 		BDD tmp1;
 		BDD tmp2;
@@ -1830,10 +1974,8 @@ public class MakeFDDDijkstra {
 				index = names.indexOf(str);
 			}
 			tmp1 = ret;
-			tmp2 = t.get(cost).get(index).relprod(tmp1, cube);
+			ret = t.get(cost).get(index).relnext(tmp1, cube, sp2s);
 			tmp1.free();
-			ret = tmp2.replace(sp2s);
-			tmp2.free();
 		}
 		if (t.containsKey(0))
 			actionCosts.removeFirst();
@@ -1902,74 +2044,38 @@ public class MakeFDDDijkstra {
 		return (double) backwardTime / (double) forwardTime;
 	}
 
-	private BDD costTestImage(int cost, BDD from, BDDVarSet varSet, long remainingTime) {
-		return costTestImage(cost, from, factory.one(), varSet, remainingTime);
+	private BDD costTestImage(int cost, BDD from, BDDVarSet varSet, BDDPairing pairing, long remainingTime) {
+		return costTestImage(cost, from, factory.universe(), varSet, pairing, remainingTime);
 	}
 
-	private BDD costTestImage(int cost, BDD from, BDD conjunct, BDDVarSet varSet, long remainingTime) {
-		BDD tmp1;
-		BDD tmp2;
-		long startTime = System.currentTimeMillis();
-		LinkedList<BDD> t_cost = t.get(cost);
-		Vector<BDD> array = new Vector<BDD>(t_cost.size());
-		for (int i = 0; i < t_cost.size(); i++) {
-			tmp1 = t_cost.get(i).relprod(from, varSet);
-			array.add(tmp1.and(conjunct));
-			tmp1.free();
-		}
-
-		for (int i = 0; i < array.size(); i++) {
-			tmp1 = array.get(i);
-			i++;
-			if (i < array.size()) {
-				tmp2 = array.get(i);
-				array.add(tmp1.or(tmp2));
-				tmp1.free();
-				tmp2.free();
-				if (System.currentTimeMillis() - startTime > remainingTime) {
-					for (int j = i + 1; j < array.size(); j++) {
-						array.get(j).free();
-					}
-					return null;
-				}
-			}
-		}
-		return array.lastElement();
+	private BDD costTestImage(int cost, BDD from, BDD conjunct, BDDVarSet varSet, BDDPairing pairing, long remainingTime) {
+		return image(cost, from, conjunct, varSet, pairing, System.currentTimeMillis() + remainingTime);
 	}
 
-	private final long MAX_TIME = 30 * 1000;
-
 	private boolean testImage(BDD from, BDDVarSet varSet, BDDPairing pairing) {
 		BDD tmp1;
-		BDD tmp2;
 		long startTime = System.currentTimeMillis();
+		long maxTime = Budget.stepTime();
 		BDD reached = factory.zero();
 
 		if (t.containsKey(0)) {
-			while (true) {
-				tmp1 = costTestImage(0, from, varSet, MAX_TIME - (System.currentTimeMillis() - startTime));
-				from.free();
-				if (tmp1 == null) {
-					reached.free();
-					return false;
-				}
-				tmp2 = tmp1.replace(pairing);
-				tmp1.free();
-				tmp1 = reached.not();
-				from = tmp1.and(tmp2);
-				tmp1.free();
-				tmp2.free();
-				tmp1 = reached;
-				reached = tmp1.or(from);
-				tmp1.free();
-				if (from.equals(factory.zero()) || System.currentTimeMillis() - startTime > MAX_TIME) {
-					break;
-				}
+			Vector<BDD> layers = new Vector<BDD>();
+			layers.add(from);
+			Vector<BDD> total = new Vector<BDD>(1);
+			total.add(from.id());
+			int result = new ZeroCostClosure(t.get(0)).saturate(layers, total, null, null, varSet, pairing, startTime + maxTime);
+			for (int i = 0; i < layers.size(); i++)
+				layers.get(i).free();
+			reached.free();
+			reached = total.firstElement();
+			if (result == ZeroCostClosure.TIMEOUT) {
+				reached.free();
+				return false;
 			}
 		} else {
 			reached = from;
 		}
-		if (System.currentTimeMillis() - startTime > MAX_TIME) {
+		if (System.currentTimeMillis() - startTime > maxTime) {
 			reached.free();
 			return false;
 		}
@@ -1978,15 +2084,13 @@ public class MakeFDDDijkstra {
 		ListIterator<Integer> costIt = actionCosts.listIterator();
 		while (costIt.hasNext()) {
 			c = costIt.next();
-			tmp1 = costTestImage(c, reached, varSet, MAX_TIME - (System.currentTimeMillis() - startTime));
+			tmp1 = costTestImage(c, reached, varSet, pairing, maxTime - (System.currentTimeMillis() - startTime));
 			if (tmp1 == null) {
 				reached.free();
 				return false;
 			}
-			tmp2 = tmp1.replace(pairing);
 			tmp1.free();
-			tmp2.free();
-			if (System.currentTimeMillis() - startTime > MAX_TIME) {
+			if (System.currentTimeMillis() - startTime > maxTime) {
 				reached.free();
 				return false;
 			}
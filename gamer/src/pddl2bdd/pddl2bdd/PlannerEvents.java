@@ -0,0 +1,105 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import jdk.jfr.*;
+
+/**
+ * The JDK Flight Recorder events of the planner. They are committed by the
+ * {@link PlannerMonitor} and can be recorded with, e.g.,
+ * -XX:StartFlightRecording or jcmd JFR.start.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class PlannerEvents {
+    private PlannerEvents() {
+    }
+
+    /**
+     * An image or pre-image of the search.
+     */
+    @Name("pddl2bdd.Image")
+    @Label("Image")
+    @Category({ "Gamer", "Search" })
+    @StackTrace(false)
+    public static class Image extends Event {
+        @Label("Direction")
+        public String direction;
+        @Label("Action Cost")
+        public int cost;
+        @Label("Image Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long time;
+        @Label("Nodes")
+        public int nodeNum;
+    }
+
+    /**
+     * A garbage collection of the BDD package. The event spans the garbage
+     * collection.
+     */
+    @Name("pddl2bdd.GarbageCollection")
+    @Label("BDD Garbage Collection")
+    @Category({ "Gamer", "BDD" })
+    @StackTrace(false)
+    public static class GarbageCollection extends Event {
+        @Label("Garbage Collection Number")
+        public int num;
+        @Label("Nodes")
+        public int nodes;
+        @Label("Free Nodes")
+        public int freeNodes;
+        @Label("Total Garbage Collection Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long sumTime;
+    }
+
+    /**
+     * A variable reordering of the BDD package. The event spans the
+     * reordering.
+     */
+    @Name("pddl2bdd.Reordering")
+    @Label("BDD Reordering")
+    @Category({ "Gamer", "BDD" })
+    @StackTrace(false)
+    public static class Reordering extends Event {
+        @Label("Nodes Before")
+        public int nodesBefore;
+        @Label("Nodes After")
+        public int nodesAfter;
+        @Label("Budget Exceeded")
+        public boolean budgetExceeded;
+    }
+
+    /**
+     * A resize of the node table of the BDD package.
+     */
+    @Name("pddl2bdd.Resize")
+    @Label("BDD Node Table Resize")
+    @Category({ "Gamer", "BDD" })
+    @StackTrace(false)
+    public static class Resize extends Event {
+        @Label("Old Size")
+        public int oldSize;
+        @Label("New Size")
+        public int newSize;
+    }
+}
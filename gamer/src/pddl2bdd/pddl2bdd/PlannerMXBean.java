@@ -0,0 +1,111 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+/**
+ * The management interface of the planner, registered as
+ * "pddl2bdd:type=Planner" in the platform MBean server.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public interface PlannerMXBean {
+    /**
+     * @return The search and direction of the current step, e.g.,
+     *         "dijkstra backward".
+     */
+    public String getPhase();
+
+    /**
+     * @return The g-value of the last forward expansion.
+     */
+    public int getForwardG();
+
+    /**
+     * @return The g-value of the last backward expansion.
+     */
+    public int getBackwardG();
+
+    /**
+     * @return The number of buckets in the forward open list.
+     */
+    public int getForwardOpenBuckets();
+
+    /**
+     * @return The number of buckets in the backward open list.
+     */
+    public int getBackwardOpenBuckets();
+
+    /**
+     * @return The cost of the best plan found so far, or -1 if none was
+     *         found.
+     */
+    public int getBestCost();
+
+    /**
+     * @return The number of nodes in use in the node table.
+     */
+    public int getNodeNum();
+
+    /**
+     * @return The size of the node table.
+     */
+    public int getNodeTableSize();
+
+    /**
+     * @return The number of images computed.
+     */
+    public long getImages();
+
+    /**
+     * @return The total time of the images (ms).
+     */
+    public long getImageTime();
+
+    /**
+     * @return The number of BDD garbage collections.
+     */
+    public int getGarbageCollections();
+
+    /**
+     * @return The total time of the BDD garbage collections (ms).
+     */
+    public long getGarbageCollectionTime();
+
+    /**
+     * @return The number of reorderings.
+     */
+    public int getReorderings();
+
+    /**
+     * @return The total time of the reorderings (ms).
+     */
+    public long getReorderTime();
+
+    /**
+     * @return The number of node table resizes.
+     */
+    public int getResizes();
+
+    /**
+     * @return The time since the planner started (ms).
+     */
+    public long getRuntime();
+}
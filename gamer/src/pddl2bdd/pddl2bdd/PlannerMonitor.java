@@ -0,0 +1,326 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.*;
+import net.sf.javabdd.*;
+
+/**
+ * Publishes the state of the planner and of the BDD package through JMX and
+ * the JDK Flight Recorder, so that a running planner can be watched with the
+ * standard JVM tools, e.g., jconsole or jcmd JFR.start.
+ *
+ * The attributes are those of {@link PlannerMXBean}. In addition the monitor
+ * sends a notification and commits one of the {@link PlannerEvents} for each
+ * image, BDD garbage collection, reordering and node table resize; for the
+ * last three it is registered as callback of the BDD factory, printing the
+ * same messages as the default handlers.
+ * The node counts are taken by the planner thread at these events and at
+ * the start of each step, so that the JMX threads never call into the BDD
+ * package.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class PlannerMonitor extends NotificationBroadcasterSupport implements
+        PlannerMXBean {
+    /** The name the monitor is registered under. */
+    public static final String NAME = "pddl2bdd:type=Planner";
+    /** Notification types. */
+    public static final String IMAGE = "pddl2bdd.image";
+    public static final String GC = "pddl2bdd.gc";
+    public static final String REORDER = "pddl2bdd.reorder";
+    public static final String RESIZE = "pddl2bdd.resize";
+
+    private static PlannerMonitor instance;
+
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong sequenceNumber = new AtomicLong();
+    private BDDFactory factory;
+    private volatile String phase = "initialization";
+    private volatile String direction = "forward";
+    private volatile int forwardG = 0;
+    private volatile int backwardG = 0;
+    private volatile int forwardOpenBuckets = 0;
+    private volatile int backwardOpenBuckets = 0;
+    private volatile int bestCost = -1;
+    private volatile int nodeNum = 0;
+    private volatile int nodeTableSize = 0;
+    private volatile long images = 0;
+    private volatile long imageTime = 0;
+    private volatile int gcs = 0;
+    private volatile long gcTime = 0;
+    private volatile int reorderings = 0;
+    private volatile long reorderTime = 0;
+    private volatile int resizes = 0;
+    private PlannerEvents.GarbageCollection gcEvent;
+    private PlannerEvents.Reordering reorderEvent;
+
+    private PlannerMonitor() {
+        super(new MBeanNotificationInfo[] { new MBeanNotificationInfo(
+                new String[] { IMAGE, GC, REORDER, RESIZE },
+                Notification.class.getName(),
+                "image, BDD garbage collection, reordering and node table resize") });
+    }
+
+    /**
+     * Registers the monitor, if not yet done, and the callbacks with a new
+     * BDD factory.
+     *
+     * @param factory
+     *            The BDD factory used by the planner from now on.
+     */
+    public static synchronized void attach(BDDFactory factory) {
+        if (instance == null) {
+            instance = new PlannerMonitor();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        instance, new ObjectName(NAME));
+            } catch (Exception e) {
+                System.err.println("Warning: could not register " + NAME
+                        + ": " + e.getMessage());
+            }
+        }
+        instance.factory = factory;
+        instance.refresh();
+        try {
+            factory.registerGCCallback(instance, PlannerMonitor.class.getMethod(
+                    "garbageCollected", int.class, BDDFactory.GCStats.class));
+            factory.registerReorderCallback(instance, PlannerMonitor.class.getMethod(
+                    "reordered", boolean.class, BDDFactory.ReorderStats.class));
+            factory.registerResizeCallback(instance, PlannerMonitor.class.getMethod(
+                    "resized", int.class, int.class));
+        } catch (NoSuchMethodException e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Informs the monitor that a search step starts.
+     *
+     * @param search
+     *            The search algorithm.
+     * @param direction
+     *            The search direction, "forward" or "backward".
+     * @param g
+     *            The g-value of the expanded bucket or layer.
+     */
+    public static void stepStarted(String search, String direction, int g) {
+        PlannerMonitor monitor = instance;
+        if (monitor == null)
+            return;
+        monitor.refresh();
+        monitor.phase = search + " " + direction;
+        monitor.direction = direction;
+        if (direction.equals("forward"))
+            monitor.forwardG = g;
+        else
+            monitor.backwardG = g;
+    }
+
+    /**
+     * Informs the monitor about a finished image.
+     *
+     * @param cost
+     *            The action cost of the image.
+     * @param time
+     *            The time of the image (ms).
+     */
+    public static void imageFinished(int cost, long time) {
+        PlannerMonitor monitor = instance;
+        if (monitor == null)
+            return;
+        monitor.refresh();
+        monitor.images++;
+        monitor.imageTime += time;
+        monitor.notify(IMAGE, monitor.direction + " image for cost " + cost
+                + " took " + time + " ms", new Long(time));
+        PlannerEvents.Image event = new PlannerEvents.Image();
+        if (event.shouldCommit()) {
+            event.direction = monitor.direction;
+            event.cost = cost;
+            event.time = time;
+            event.nodeNum = monitor.nodeNum;
+            event.commit();
+        }
+    }
+
+    /**
+     * Informs the monitor about the state of a bidirectional search.
+     *
+     * @param forwardOpenBuckets
+     *            The number of buckets in the forward open list.
+     * @param backwardOpenBuckets
+     *            The number of buckets in the backward open list.
+     * @param bestCost
+     *            The cost of the best plan found so far, or -1.
+     */
+    public static void searchState(int forwardOpenBuckets,
+            int backwardOpenBuckets, int bestCost) {
+        PlannerMonitor monitor = instance;
+        if (monitor == null)
+            return;
+        monitor.forwardOpenBuckets = forwardOpenBuckets;
+        monitor.backwardOpenBuckets = backwardOpenBuckets;
+        monitor.bestCost = bestCost;
+    }
+
+    /**
+     * The garbage collection callback of the BDD factory.
+     */
+    public void garbageCollected(int pre, BDDFactory.GCStats stats) {
+        BDDFactory.bdd_default_gbchandler(pre == 1, stats);
+        if (pre == 1) {
+            gcEvent = new PlannerEvents.GarbageCollection();
+            gcEvent.begin();
+            return;
+        }
+        refresh();
+        gcs++;
+        gcTime += stats.time;
+        notify(GC, stats.toString(), new Long(stats.time));
+        if (gcEvent != null) {
+            gcEvent.num = stats.num;
+            gcEvent.nodes = stats.nodes;
+            gcEvent.freeNodes = stats.freenodes;
+            gcEvent.sumTime = stats.sumtime;
+            gcEvent.commit();
+            gcEvent = null;
+        }
+    }
+
+    /**
+     * The reorder callback of the BDD factory.
+     */
+    public void reordered(boolean pre, BDDFactory.ReorderStats stats) {
+        if (pre) {
+            reorderEvent = new PlannerEvents.Reordering();
+            reorderEvent.begin();
+            return;
+        }
+        reorderings++;
+        reorderTime += stats.time;
+        notify(REORDER, stats.toString(), new Long(stats.time));
+        if (reorderEvent != null) {
+            reorderEvent.nodesBefore = stats.usednum_before;
+            reorderEvent.nodesAfter = stats.usednum_after;
+            reorderEvent.budgetExceeded = stats.budgetExceeded;
+            reorderEvent.commit();
+            reorderEvent = null;
+        }
+    }
+
+    /**
+     * The resize callback of the BDD factory.
+     */
+    public void resized(int oldSize, int newSize) {
+        BDDFactory.bdd_default_reshandler(oldSize, newSize);
+        refresh();
+        resizes++;
+        notify(RESIZE, "node table resized from " + oldSize + " to "
+                + newSize, new Integer(newSize));
+        PlannerEvents.Resize event = new PlannerEvents.Resize();
+        if (event.shouldCommit()) {
+            event.oldSize = oldSize;
+            event.newSize = newSize;
+            event.commit();
+        }
+    }
+
+    private void refresh() {
+        nodeNum = factory.getNodeNum();
+        nodeTableSize = factory.getNodeTableSize();
+    }
+
+    private void notify(String type, String message, Object userData) {
+        Notification notification = new Notification(type, this,
+                sequenceNumber.incrementAndGet(), message);
+        notification.setUserData(userData);
+        sendNotification(notification);
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public int getForwardG() {
+        return forwardG;
+    }
+
+    public int getBackwardG() {
+        return backwardG;
+    }
+
+    public int getForwardOpenBuckets() {
+        return forwardOpenBuckets;
+    }
+
+    public int getBackwardOpenBuckets() {
+        return backwardOpenBuckets;
+    }
+
+    public int getBestCost() {
+        return bestCost;
+    }
+
+    public int getNodeNum() {
+        return nodeNum;
+    }
+
+    public int getNodeTableSize() {
+        return nodeTableSize;
+    }
+
+    public long getImages() {
+        return images;
+    }
+
+    public long getImageTime() {
+        return imageTime;
+    }
+
+    public int getGarbageCollections() {
+        return gcs;
+    }
+
+    public long getGarbageCollectionTime() {
+        return gcTime;
+    }
+
+    public int getReorderings() {
+        return reorderings;
+    }
+
+    public long getReorderTime() {
+        return reorderTime;
+    }
+
+    public int getResizes() {
+        return resizes;
+    }
+
+    public long getRuntime() {
+        return System.currentTimeMillis() - startTime;
+    }
+}
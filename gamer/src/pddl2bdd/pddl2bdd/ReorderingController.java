@@ -0,0 +1,193 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+
+/**
+ * Controls the dynamic reordering of the variables during the search.
+ *
+ * The controller is registered as reorder callback of the BDD factory, so that
+ * it is informed about each reordering and keeps the statistics in memory.
+ * Based on these it decides when to stop the reordering: if the number of
+ * allowed reorderings or the allowed reordering time is exhausted, if one
+ * reordering takes considerably longer than the previous one, or if the
+ * fraction of the runtime spent in a reordering grows. If a search step
+ * spends more time reordering than computing images the next reordering is
+ * delayed until twice as many nodes are allocated, if the BDD package supports
+ * this.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class ReorderingController {
+    /**
+     * Reordering stops if one reordering takes this many times as long as the
+     * previous one.
+     */
+    private static final double REORDER_INCREASE_FACTOR = 1.52;
+
+    private BDDFactory factory;
+    private int remaining; // reorderings still allowed
+    private long maxReorderTime; // allowed total reordering time (ms), 0 for no limit
+    private boolean enabled = false;
+    private boolean throttling = true; // false if the package cannot delay a reordering
+    private int reorderings = 0;
+    private long lastReorderTime = 0;
+    private long lastReorderRuntime = 0; // runtime at the end of the last reordering (ms)
+    private long totalReorderTime = 0;
+    private long startTime = System.currentTimeMillis();
+
+    /**
+     * Creates a new controller and registers it as reorder callback.
+     *
+     * @param factory
+     *            The BDD factory.
+     * @param maxReorderings
+     *            The number of allowed reorderings.
+     * @param maxReorderTime
+     *            The allowed total reordering time in seconds, or 0 if it is
+     *            not restricted.
+     */
+    public ReorderingController(BDDFactory factory, int maxReorderings,
+            double maxReorderTime) {
+        this.factory = factory;
+        this.remaining = maxReorderings;
+        this.maxReorderTime = (long) (maxReorderTime * 1000);
+        try {
+            factory.registerReorderCallback(this, getClass().getMethod(
+                    "reordered", boolean.class, BDDFactory.ReorderStats.class));
+        } catch (NoSuchMethodException e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return true if further reorderings are allowed.
+     */
+    public boolean isAllowed() {
+        return remaining > 0
+                && (maxReorderTime == 0 || totalReorderTime < maxReorderTime);
+    }
+
+    /**
+     * Starts the dynamic reordering, if it is allowed and not yet running.
+     */
+    public void start() {
+        if (enabled || !isAllowed())
+            return;
+        System.out.println("Starting dynamic reordering with default settings");
+        factory.autoReorder(BDDFactory.REORDER_SIFT);
+        // after autoReorder, which resets the count in the Java factories
+        factory.setReorderTimes(remaining);
+        enabled = true;
+    }
+
+    /**
+     * Stops the dynamic reordering, if it is running.
+     */
+    public void stop() {
+        if (!enabled)
+            return;
+        System.out.println("Stopping dynamic reordering");
+        factory.disableReorder();
+        enabled = false;
+    }
+
+    /**
+     * The reorder callback; called by the BDD factory before and after each
+     * reordering.
+     *
+     * @param pre
+     *            true before, false after the reordering.
+     * @param stats
+     *            The statistics of the reordering.
+     */
+    public void reordered(boolean pre, BDDFactory.ReorderStats stats) {
+        if (pre)
+            return;
+        reorderings++;
+        remaining--;
+        totalReorderTime += stats.time;
+        System.out.println("   reordering " + reorderings + ": " + stats);
+        boolean stopReordering = !isAllowed();
+        long runtime = runtime();
+        if (lastReorderTime > 0 && lastReorderRuntime > 0) {
+            if ((double) stats.time / lastReorderTime > REORDER_INCREASE_FACTOR) {
+                System.out.println("   reordering time increased by more than a factor of " + REORDER_INCREASE_FACTOR);
+                stopReordering = true;
+            }
+            if ((double) stats.time / runtime > (double) lastReorderTime / lastReorderRuntime) {
+                System.out.println("   fraction of runtime spent in reordering increased");
+                stopReordering = true;
+            }
+        }
+        lastReorderTime = stats.time;
+        lastReorderRuntime = runtime;
+        if (stopReordering) {
+            remaining = 0;
+            stop();
+        }
+    }
+
+    /**
+     * Informs the controller about a finished search step. If the reordering
+     * took longer than the rest of the step the next reordering is delayed.
+     *
+     * @param imageTime
+     *            The time of the step without the reordering (ms).
+     * @param reorderTime
+     *            The time spent in reordering during the step (ms).
+     */
+    public void stepFinished(long imageTime, long reorderTime) {
+        if (enabled && throttling && reorderTime > imageTime) {
+            int limit = 2 * factory.getNodeNum();
+            try {
+                factory.setNextReorder(limit);
+                System.out.println("   throttling dynamic reordering, next one when " + limit + " nodes allocated");
+            } catch (UnsupportedOperationException e) {
+                throttling = false;
+            }
+        }
+    }
+
+    /**
+     * @return The time of the last reordering (ms), or 0 if no further
+     *         reorderings are allowed.
+     */
+    public long getLastReorderTime() {
+        if (remaining > 0)
+            return lastReorderTime;
+        return 0;
+    }
+
+    /**
+     * @return The total reordering time (ms).
+     */
+    public long getTotalReorderTime() {
+        return totalReorderTime;
+    }
+
+    private long runtime() {
+        return System.currentTimeMillis() - startTime;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import net.sf.javabdd.*;
+
+/**
+ * Chooses the initial sizes of the node table and the operator caches of the
+ * BDD factory based on the size of the problem, instead of always starting
+ * with the largest tables. The node table grows during the search anyway, so
+ * it only has to hold the transition relations with some room to spare.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class TableSizes {
+    /** The initial number of nodes per variable and action. */
+    private static final int NODES_PER_VAR_AND_ACTION = 16;
+    /** The smallest initial node table. */
+    private static final int MIN_NODES = 1 << 20;
+    /** The largest initial node table. */
+    private static final int MAX_NODES = 16000000;
+    /** The smallest cache. */
+    private static final int MIN_CACHE = 1 << 16;
+    /**
+     * At most this fraction of the heap is used for the initial node table
+     * of the Java libraries, with 20 bytes per node.
+     */
+    private static final int HEAP_FRACTION = 4;
+
+    /**
+     * Calculates the initial size of the node table.
+     *
+     * @param library
+     *            The BDD library used.
+     * @param numberOfVars
+     *            The number of boolean variables.
+     * @param numberOfActions
+     *            The number of grounded actions.
+     * @return The initial number of nodes.
+     */
+    public static int nodes(String library, int numberOfVars,
+            int numberOfActions) {
+        long nodes = (long) numberOfVars * numberOfActions
+                * NODES_PER_VAR_AND_ACTION;
+        long max = MAX_NODES;
+        if (!library.equals("cudd"))
+            max = Math.min(max, Runtime.getRuntime().maxMemory()
+                    / HEAP_FRACTION / 20);
+        return (int) Math.max(Math.min(nodes, max), Math.min(MIN_NODES, max));
+    }
+
+    /**
+     * Calculates the size of the operator caches.
+     *
+     * @param nodes
+     *            The initial number of nodes.
+     * @return The number of cache entries.
+     */
+    public static int cache(int nodes) {
+        return Math.max(nodes / 8, MIN_CACHE);
+    }
+
+    /**
+     * Initializes the BDD factory with tables fitting the problem and
+     * announces it to the {@link Budget}.
+     *
+     * @param library
+     *            The BDD library used.
+     * @param numberOfVars
+     *            The number of boolean variables.
+     * @param numberOfActions
+     *            The number of grounded actions.
+     * @return The new factory.
+     */
+    public static BDDFactory init(String library, int numberOfVars,
+            int numberOfActions) {
+        int nodes = nodes(library, numberOfVars, numberOfActions);
+        int cache = cache(nodes);
+        System.out.println("   initial node table: " + nodes
+                + " nodes, cache: " + cache + " entries");
+        BDDFactory factory = BDDFactory.init(library, nodes, cache);
+        Budget.attach(factory);
+        return factory;
+    }
+}
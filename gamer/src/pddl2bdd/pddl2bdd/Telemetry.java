@@ -0,0 +1,377 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import net.sf.javabdd.*;
+
+/**
+ * Writes one record per expansion of the searches to a file in the JSON Lines
+ * format, i.e., one JSON object per line.
+ *
+ * A record holds the search and direction, the g- and f-value, the node
+ * counts (and optionally the state counts) of the expanded frontier and the
+ * closed set, the time of the images for each action cost, the time spent in
+ * reordering and garbage collection during the step and the cache hit rates
+ * of the BDD package. The search only hands the finished records to a ring
+ * buffer; they are formatted and written by a background thread. If the
+ * buffer is full the record is dropped and the number of dropped records is
+ * reported with the next one.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class Telemetry {
+    /** The number of records the ring buffer holds; a power of two. */
+    private static final int CAPACITY = 1024;
+    /** The time the writer thread sleeps if there is nothing to write (ns). */
+    private static final long IDLE_NANOS = 10 * 1000 * 1000;
+
+    private static volatile Telemetry instance;
+    private static boolean shutdownHookAdded = false;
+    private static final Step INACTIVE = new Step(null, null, null, null, 0);
+
+    private final Writer writer;
+    private final boolean countStates;
+    private final long startTime = System.currentTimeMillis();
+    private final Step[] ring = new Step[CAPACITY];
+    private final AtomicLong head = new AtomicLong(); // next slot to fill
+    private final AtomicLong tail = new AtomicLong(); // next slot to write
+    private int dropped = 0;
+    private volatile boolean closed = false;
+    private final Thread writerThread;
+
+    private Telemetry(Writer writer, boolean countStates) {
+        this.writer = writer;
+        this.countStates = countStates;
+        writerThread = new Thread("telemetry writer") {
+            public void run() {
+                writeRecords();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Starts writing the telemetry records. The records still in the buffer
+     * are written by {@link #close()}, at the latest when the planner exits.
+     *
+     * @param fileName
+     *            The file to write the records to.
+     * @param countStates
+     *            Whether to count the states of the frontier and the closed
+     *            set, which takes time linear in the size of the BDDs.
+     */
+    public static void open(String fileName, boolean countStates) {
+        try {
+            instance = new Telemetry(new BufferedWriter(new FileWriter(fileName)), countStates);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        if (!shutdownHookAdded) {
+            shutdownHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    close();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if telemetry records are written.
+     */
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Writes the remaining records and closes the file.
+     */
+    public static void close() {
+        Telemetry telemetry = instance;
+        if (telemetry == null)
+            return;
+        instance = null;
+        telemetry.closed = true;
+        LockSupport.unpark(telemetry.writerThread);
+        try {
+            telemetry.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts the record of one expansion. If telemetry is disabled the
+     * returned step ignores all calls. The step and its images are also
+     * reported to the {@link PlannerMonitor}.
+     *
+     * @param factory
+     *            The BDD factory, for the garbage collection and cache
+     *            statistics.
+     * @param search
+     *            The search algorithm, e.g., "dijkstra".
+     * @param direction
+     *            The search direction, "forward" or "backward".
+     * @param g
+     *            The g-value of the expanded bucket or layer.
+     * @return The step to fill.
+     */
+    public static Step startStep(BDDFactory factory, String search, String direction, int g) {
+        PlannerMonitor.stepStarted(search, direction, g);
+        Telemetry telemetry = instance;
+        if (telemetry == null)
+            return INACTIVE;
+        return new Step(telemetry, factory, search, direction, g);
+    }
+
+    private void publish(Step step) {
+        long h = head.get();
+        if (h - tail.get() >= CAPACITY) {
+            dropped++;
+            return;
+        }
+        step.dropped = dropped;
+        dropped = 0;
+        ring[(int) h & (CAPACITY - 1)] = step;
+        head.lazySet(h + 1);
+    }
+
+    private void writeRecords() {
+        StringBuilder sb = new StringBuilder(512);
+        try {
+            while (true) {
+                boolean last = closed;
+                long t = tail.get();
+                long h = head.get();
+                if (t == h) {
+                    writer.flush();
+                    if (last)
+                        break;
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                for (; t < h; t++) {
+                    int slot = (int) t & (CAPACITY - 1);
+                    Step step = ring[slot];
+                    ring[slot] = null;
+                    sb.setLength(0);
+                    step.toJSON(sb, startTime);
+                    sb.append('\n');
+                    writer.write(sb.toString());
+                }
+                tail.lazySet(t);
+            }
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error: telemetry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The record of one expansion.
+     */
+    public static class Step {
+        private final Telemetry telemetry;
+        private final BDDFactory factory;
+        private final String search;
+        private final String direction;
+        private final int g;
+        private int f = -1;
+        private final long startTime;
+        private long time;
+        private long frontierNodes = -1;
+        private long closedNodes = -1;
+        private double frontierStates = -1;
+        private double closedStates = -1;
+        private int[] imageCosts = new int[4];
+        private long[] imageTimes = new long[4];
+        private int images = 0;
+        private long reorderTime = 0;
+        private long predictedTime = -1;
+        private long gcTime;
+        private int gcs;
+        private long opHits;
+        private long opMisses;
+        private long uniqueHits;
+        private long uniqueMisses;
+        private int dropped;
+
+        private Step(Telemetry telemetry, BDDFactory factory, String search, String direction, int g) {
+            this.telemetry = telemetry;
+            this.factory = factory;
+            this.search = search;
+            this.direction = direction;
+            this.g = g;
+            this.startTime = System.currentTimeMillis();
+            if (telemetry != null) {
+                BDDFactory.GCStats gcStats = factory.getGCStats();
+                gcTime = gcStats.sumtime;
+                gcs = gcStats.num;
+                BDDFactory.CacheStats cacheStats = factory.getCacheStats();
+                opHits = cacheStats.opHit;
+                opMisses = cacheStats.opMiss;
+                uniqueHits = cacheStats.uniqueHit;
+                uniqueMisses = cacheStats.uniqueMiss;
+            }
+        }
+
+        /**
+         * Records the frontier that is expanded.
+         *
+         * @param frontier
+         *            The frontier.
+         * @param cube
+         *            The variables the states are counted over.
+         */
+        public void frontier(BDD frontier, BDDVarSet cube) {
+            if (telemetry == null || frontier == null)
+                return;
+            frontierNodes = frontier.nodeCount();
+            if (telemetry.countStates)
+                frontierStates = frontier.satCount(cube);
+        }
+
+        /**
+         * Records the closed set after the expansion.
+         *
+         * @param closed
+         *            The closed set.
+         * @param cube
+         *            The variables the states are counted over.
+         */
+        public void closed(BDD closed, BDDVarSet cube) {
+            if (telemetry == null || closed == null)
+                return;
+            closedNodes = closed.nodeCount();
+            if (telemetry.countStates)
+                closedStates = closed.satCount(cube);
+        }
+
+        /**
+         * Records the time of the image for one action cost.
+         *
+         * @param cost
+         *            The action cost.
+         * @param time
+         *            The time of the image (ms).
+         */
+        public void imageTime(int cost, long time) {
+            PlannerMonitor.imageFinished(cost, time);
+            if (telemetry == null)
+                return;
+            if (images == imageCosts.length) {
+                int[] costs = new int[2 * images];
+                long[] times = new long[2 * images];
+                System.arraycopy(imageCosts, 0, costs, 0, images);
+                System.arraycopy(imageTimes, 0, times, 0, images);
+                imageCosts = costs;
+                imageTimes = times;
+            }
+            imageCosts[images] = cost;
+            imageTimes[images] = time;
+            images++;
+        }
+
+        /**
+         * Records the time spent in reordering during the step.
+         *
+         * @param time
+         *            The reordering time (ms).
+         */
+        public void reorderTime(long time) {
+            reorderTime = time;
+        }
+
+        /**
+         * Records the time the step was predicted to take.
+         *
+         * @param time
+         *            The predicted time (ms), or -1 if there is none.
+         */
+        public void predictedTime(long time) {
+            predictedTime = time;
+        }
+
+        /**
+         * Finishes the record and hands it to the writer.
+         *
+         * @param f
+         *            The f-value of the step, or -1 if there is none.
+         */
+        public void finish(int f) {
+            if (telemetry == null)
+                return;
+            this.f = f;
+            time = System.currentTimeMillis() - startTime;
+            BDDFactory.GCStats gcStats = factory.getGCStats();
+            gcTime = gcStats.sumtime - gcTime;
+            gcs = gcStats.num - gcs;
+            BDDFactory.CacheStats cacheStats = factory.getCacheStats();
+            opHits = cacheStats.opHit - opHits;
+            opMisses = cacheStats.opMiss - opMisses;
+            uniqueHits = cacheStats.uniqueHit - uniqueHits;
+            uniqueMisses = cacheStats.uniqueMiss - uniqueMisses;
+            telemetry.publish(this);
+        }
+
+        private void toJSON(StringBuilder sb, long runStartTime) {
+            sb.append("{\"t\":").append(startTime - runStartTime);
+            sb.append(",\"search\":\"").append(search);
+            sb.append("\",\"dir\":\"").append(direction);
+            sb.append("\",\"g\":").append(g);
+            if (f >= 0)
+                sb.append(",\"f\":").append(f);
+            if (frontierNodes >= 0)
+                sb.append(",\"frontierNodes\":").append(frontierNodes);
+            if (closedNodes >= 0)
+                sb.append(",\"closedNodes\":").append(closedNodes);
+            if (frontierStates >= 0)
+                sb.append(",\"frontierStates\":").append(frontierStates);
+            if (closedStates >= 0)
+                sb.append(",\"closedStates\":").append(closedStates);
+            sb.append(",\"imageMs\":{");
+            for (int i = 0; i < images; i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append('"').append(imageCosts[i]).append("\":").append(imageTimes[i]);
+            }
+            sb.append("},\"stepMs\":").append(time);
+            if (predictedTime >= 0)
+                sb.append(",\"predictedMs\":").append(predictedTime);
+            sb.append(",\"reorderMs\":").append(reorderTime);
+            sb.append(",\"gcMs\":").append(gcTime);
+            sb.append(",\"gcs\":").append(gcs);
+            if (opHits + opMisses > 0)
+                sb.append(",\"opHitRate\":").append((double) opHits / (opHits + opMisses));
+            if (uniqueHits + uniqueMisses > 0)
+                sb.append(",\"uniqueHitRate\":").append((double) uniqueHits / (uniqueHits + uniqueMisses));
+            if (dropped > 0)
+                sb.append(",\"dropped\":").append(dropped);
+            sb.append('}');
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.pddl2bdd;
+
+import java.util.*;
+import net.sf.javabdd.*;
+
+/**
+ * Calculates the closure of a set of states under the zero-cost actions.
+ *
+ * Instead of a breadth-first search, where each round applies the disjunction
+ * of all zero-cost actions to the last layer, the actions are applied one
+ * after the other (chaining), so that the successors generated by one action
+ * are immediately available to the following ones. The actions are processed
+ * bottom-up, i.e., those whose topmost variable lies deepest in the current
+ * variable ordering first, in the manner of saturation. Each action is
+ * applied to every layer exactly once.
+ *
+ * Whenever an action generates new states these are stored as a new layer.
+ * Thus, every state of a layer has a predecessor in some earlier layer that
+ * is connected to it by a single zero-cost action, which is what the solution
+ * reconstruction relies on.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class ZeroCostClosure {
+    /** The closure has been completely calculated. */
+    public static final int CLOSED = 0;
+    /** Some new layer intersects the states to stop at. */
+    public static final int STOPPED = 1;
+    /** The deadline has been exceeded. */
+    public static final int TIMEOUT = 2;
+
+    private LinkedList<BDD> actions;
+
+    /**
+     * Creates a new closure calculator.
+     *
+     * @param actions
+     *            The transition relations of the zero-cost actions.
+     */
+    public ZeroCostClosure(LinkedList<BDD> actions) {
+        this.actions = actions;
+    }
+
+    private BDD[] saturationOrder() {
+        BDD[] order = actions.toArray(new BDD[actions.size()]);
+        Arrays.sort(order, new Comparator<BDD>() {
+            public int compare(BDD a, BDD b) {
+                return b.level() - a.level();
+            }
+        });
+        return order;
+    }
+
+    /**
+     * Calculates the zero-cost closure of the given layers.
+     *
+     * @param layers
+     *            The layers of states; all of them are expanded, new layers
+     *            are appended.
+     * @param total
+     *            A vector holding the disjunction of all layers as its only
+     *            element; it is replaced by the new disjunction.
+     * @param negatedReached
+     *            The states that may be added, or <code>null</code> if there
+     *            is no restriction.
+     * @param stopAt
+     *            If a new layer intersects these states the calculation stops
+     *            immediately, with that layer being the last one. May be
+     *            <code>null</code>.
+     * @param varSet
+     *            The variables to be abstracted in the image.
+     * @param pairing
+     *            The pairing to rename the successors.
+     * @param deadline
+     *            The time (in ms) at which the calculation is cancelled.
+     * @return CLOSED, STOPPED, or TIMEOUT.
+     */
+    public int saturate(Vector<BDD> layers, Vector<BDD> total,
+            BDD negatedReached, BDD stopAt, BDDVarSet varSet,
+            BDDPairing pairing, long deadline) {
+        // the loop works on raw handles, so that it produces no garbage
+        BDDFactory factory = varSet.getFactory();
+        long tmp1;
+        long tmp2;
+        long from;
+        long newStates;
+        BDD[] order = saturationOrder();
+        int[] expanded = new int[order.length];
+        boolean changed = true;
+        int result = CLOSED;
+        long reached = factory.handle(total.firstElement());
+        long initial = reached;
+
+        search: while (changed) {
+            changed = false;
+            for (int i = 0; i < order.length; i++) {
+                if (expanded[i] == layers.size())
+                    continue;
+                from = factory.handle(layers.get(expanded[i]));
+                for (int j = expanded[i] + 1; j < layers.size(); j++) {
+                    tmp1 = from;
+                    tmp2 = factory.handle(layers.get(j));
+                    from = factory.orRaw(tmp1, tmp2);
+                    factory.deref(tmp1);
+                    factory.deref(tmp2);
+                }
+                expanded[i] = layers.size();
+                tmp1 = factory.handle(order[i]);
+                tmp2 = factory.relnextRaw(tmp1, from, varSet, pairing);
+                factory.deref(tmp1);
+                factory.deref(from);
+                if (negatedReached != null) {
+                    tmp1 = tmp2;
+                    from = factory.handle(negatedReached);
+                    tmp2 = factory.andRaw(tmp1, from);
+                    factory.deref(from);
+                    factory.deref(tmp1);
+                }
+                newStates = factory.diffRaw(tmp2, reached);
+                factory.deref(tmp2);
+                if (System.currentTimeMillis() > deadline) {
+                    factory.deref(newStates);
+                    result = TIMEOUT;
+                    break search;
+                }
+                if (factory.isZeroRaw(newStates)) {
+                    factory.deref(newStates);
+                    continue;
+                }
+                layers.add(factory.fromHandle(newStates));
+                changed = true;
+                if (stopAt != null) {
+                    from = factory.handle(stopAt);
+                    tmp1 = factory.andRaw(newStates, from);
+                    factory.deref(from);
+                    boolean stop = !factory.isZeroRaw(tmp1);
+                    factory.deref(tmp1);
+                    if (stop) {
+                        factory.deref(newStates);
+                        result = STOPPED;
+                        break search;
+                    }
+                }
+                tmp1 = reached;
+                reached = factory.orRaw(tmp1, newStates);
+                factory.deref(tmp1);
+                factory.deref(newStates);
+            }
+        }
+        if (reached != initial) {
+            total.firstElement().free();
+            total.set(0, factory.fromHandle(reached));
+        }
+        factory.deref(reached);
+        return result;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2012 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.util;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A monotone bucket queue (radix heap with a single level) for buckets that
+ * are addressed by an integer key, e.g., the g- or f-value of a set of
+ * states.
+ *
+ * The keys in the range [base, base + width) are stored in a circular array,
+ * all other keys in an overflow map. As long as the queue is used in a
+ * monotone way, i.e., all keys inserted are at least the current minimum and
+ * at most <code>width - 1</code> larger than it, every operation works in
+ * constant time (amortized for <code>minKey</code>). Any other key is still
+ * handled correctly, only in logarithmic time.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class BucketQueue<E> {
+    /** The circular array of buckets. */
+    private Object[] buckets;
+    /** The smallest key that can be stored in the circular array. */
+    private int base;
+    /** The number of non-empty buckets in the circular array. */
+    private int ringSize;
+    /** The buckets whose keys lie outside the circular array's range. */
+    private TreeMap<Integer, E> overflow;
+
+    /**
+     * Creates a new bucket queue.
+     *
+     * @param maxIncrement
+     *            The largest difference between the current minimum and a
+     *            newly inserted key that is to be supported in constant time,
+     *            typically the highest action cost. The circular array will
+     *            hold <code>maxIncrement + 1</code> buckets.
+     */
+    public BucketQueue(int maxIncrement) {
+        buckets = new Object[Math.max(maxIncrement, 0) + 1];
+        base = 0;
+        ringSize = 0;
+        overflow = new TreeMap<Integer, E>();
+    }
+
+    private boolean inRing(int key) {
+        return key >= base && key - base < buckets.length;
+    }
+
+    private int slot(int key) {
+        return key % buckets.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E ringGet(int key) {
+        return (E) buckets[slot(key)];
+    }
+
+    /**
+     * Returns the bucket stored for the given key.
+     *
+     * @param key
+     *            The key of the bucket.
+     * @return The bucket or <code>null</code>, if there is none.
+     */
+    public E get(int key) {
+        if (inRing(key))
+            return ringGet(key);
+        return overflow.get(key);
+    }
+
+    /**
+     * Checks whether a bucket is stored for the given key.
+     *
+     * @param key
+     *            The key of the bucket.
+     * @return true, if there is a bucket for the key.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Stores a bucket for the given key, replacing the one stored so far.
+     *
+     * @param key
+     *            The key of the bucket. Negative keys are not allowed.
+     * @param bucket
+     *            The new bucket; must not be <code>null</code>.
+     * @return The bucket stored for the key so far, or <code>null</code>.
+     */
+    public E put(int key, E bucket) {
+        if (key < 0) {
+            throw new IllegalArgumentException("negative key " + key);
+        }
+        if (bucket == null) {
+            throw new IllegalArgumentException("null bucket for key " + key);
+        }
+        if (inRing(key)) {
+            E old = ringGet(key);
+            buckets[slot(key)] = bucket;
+            if (old == null)
+                ringSize++;
+            return old;
+        }
+        return overflow.put(key, bucket);
+    }
+
+    /**
+     * Removes the bucket stored for the given key.
+     *
+     * @param key
+     *            The key of the bucket.
+     * @return The removed bucket, or <code>null</code>, if there was none.
+     */
+    public E remove(int key) {
+        if (inRing(key)) {
+            E old = ringGet(key);
+            if (old != null) {
+                buckets[slot(key)] = null;
+                ringSize--;
+            }
+            return old;
+        }
+        return overflow.remove(key);
+    }
+
+    /**
+     * @return The number of non-empty buckets.
+     */
+    public int size() {
+        return ringSize + overflow.size();
+    }
+
+    /**
+     * @return true, if no bucket is stored.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the smallest key for which a bucket is stored. The range of the
+     * circular array is moved forward to start at that key, so that all
+     * subsequent keys up to <code>maxIncrement</code> larger can be handled
+     * in constant time.
+     *
+     * @return The smallest key.
+     * @throws NoSuchElementException
+     *             if the queue is empty.
+     */
+    public int minKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("bucket queue is empty");
+        }
+        if (!overflow.isEmpty() && overflow.firstKey() < base) {
+            // non-monotone insertion below the circular array
+            return overflow.firstKey();
+        }
+        if (ringSize == 0) {
+            // nothing in the circular array, so jump directly to the next key
+            base = overflow.firstKey();
+            SortedMap<Integer, E> window = overflow.headMap(base
+                    + buckets.length);
+            for (Map.Entry<Integer, E> entry : window.entrySet()) {
+                buckets[slot(entry.getKey())] = entry.getValue();
+                ringSize++;
+            }
+            window.clear();
+        }
+        while (buckets[slot(base)] == null) {
+            base++;
+            int top = base + buckets.length - 1;
+            E moved = overflow.remove(top);
+            if (moved != null) {
+                buckets[slot(top)] = moved;
+                ringSize++;
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Removes the bucket with the smallest key.
+     *
+     * @return The removed bucket.
+     * @throws NoSuchElementException
+     *             if the queue is empty.
+     */
+    public E removeMin() {
+        return remove(minKey());
+    }
+
+    /**
+     * @return All keys for which a bucket is stored, in ascending order.
+     */
+    public List<Integer> keys() {
+        LinkedList<Integer> keys = new LinkedList<Integer>();
+        for (int key : overflow.headMap(base).keySet())
+            keys.add(key);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[slot(base + i)] != null)
+                keys.add(base + i);
+        }
+        for (int key : overflow.tailMap(base).keySet())
+            keys.add(key);
+        return keys;
+    }
+
+    /**
+     * @return All stored buckets, in ascending order of their keys.
+     */
+    public Collection<E> values() {
+        LinkedList<E> values = new LinkedList<E>();
+        for (int key : keys())
+            values.add(get(key));
+        return values;
+    }
+
+    /**
+     * Removes all buckets.
+     */
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = null;
+        ringSize = 0;
+        overflow.clear();
+    }
+}
@@ -57,11 +57,11 @@ public class Maths {
     }
 
     public static int gcd(int a, int b) {
-        if (b == 0)
-            return a;
-        if (a > b)
-            return gcd(a - b, b);
-        else
-            return gcd(a, b - a);
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
     }
 }
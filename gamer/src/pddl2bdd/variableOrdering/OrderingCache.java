@@ -0,0 +1,123 @@
+/*
+ * Gamer, a tool for finding optimal plans
+ * Copyright (C) 2007-2013 by Peter Kissmann
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package pddl2bdd.variableOrdering;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Keeps the influences of the causal graph and the variable orderings of the
+ * last solved problems, so that a planner solving several problems in one
+ * JVM does not derive them again for a problem with the same grounded
+ * actions and variable groups, which are identified by a digest of the
+ * grounded domain file and the groups. The initial state and the goal are
+ * not part of the key, as neither the causal graph nor the ordering depends
+ * on them.
+ *
+ * The cache is disabled unless {@link #enable()} was called.
+ *
+ * @author Peter Kissmann
+ * @version 2.0
+ */
+public class OrderingCache {
+    /** The number of problems the cache holds. */
+    private static final int CAPACITY = 64;
+
+    private static LinkedHashMap<String, Object> entries = null;
+
+    /**
+     * Enables the cache.
+     */
+    public static void enable() {
+        entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Calculates the key of a problem.
+     *
+     * @param domainFileName
+     *            The grounded domain file.
+     * @param partitions
+     *            The variable groups.
+     * @return The key, or null if the cache is disabled or the domain file
+     *         cannot be read.
+     */
+    public static String key(String domainFileName,
+            LinkedList<LinkedList<String>> partitions) {
+        if (entries == null)
+            return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            InputStream in = new FileInputStream(domainFileName);
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                digest.update(buffer, 0, read);
+            in.close();
+            digest.update(partitions.toString().getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (Exception e) {
+            System.err.println("Warning: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The cached influences of the problem with the key, or null.
+     */
+    public static boolean[][] getInfluences(String key) {
+        if (key == null)
+            return null;
+        return (boolean[][]) entries.get(key);
+    }
+
+    public static void putInfluences(String key, boolean[][] influences) {
+        if (key != null)
+            entries.put(key, influences);
+    }
+
+    /**
+     * @return The cached ordering by the heuristic of the problem with the
+     *         key, or null.
+     */
+    public static int[] getOrdering(String key, String heuristic) {
+        if (key == null)
+            return null;
+        int[] ordering = (int[]) entries.get(key + " " + heuristic);
+        if (ordering != null)
+            System.out.println("using cached variable ordering");
+        return ordering == null ? null : ordering.clone();
+    }
+
+    public static void putOrdering(String key, String heuristic, int[] ordering) {
+        if (key != null)
+            entries.put(key + " " + heuristic, ordering.clone());
+    }
+}